@@ -34,8 +34,12 @@ import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JToolBar;
 import javax.swing.SwingConstants;
+import javax.swing.event.ChangeEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import xtrememp.player.audio.AudioPlayer;
+import xtrememp.player.audio.EqualizerProcessor;
+import xtrememp.player.audio.PlayerException;
 import xtrememp.util.Utilities;
 import static xtrememp.util.Utilities.tr;
 
@@ -46,7 +50,6 @@ import static xtrememp.util.Utilities.tr;
 public class EqualizerDialog extends JDialog implements ActionListener {
 
     private final Logger logger = LoggerFactory.getLogger(EqualizerDialog.class);
-    private final String[] sliderLabels = {"60", "170", "310", "600", "1K", "3K", "6K", "12K", "14K", "16K"};
     private final String[] presetsLabels = {"Normal", "Classical", "Club", "Dance", "Full Bass", "Full Bass & Treble", "Full Treble", "Laptop", "Live", "Party", "Pop", "Reggae", "Rock", "Techno"};
     private final int[] gainValue = {50, 50, 50, 50, 50, 50, 50, 50, 50, 50, 50};
     private final int[] PRESET_NORMAL = {50, 50, 50, 50, 50, 50, 50, 50, 50, 50};
@@ -66,18 +69,19 @@ public class EqualizerDialog extends JDialog implements ActionListener {
     private Map<String, int[]> presetMap;
     public static final int LINEARDIST = 1;
     public static final int OVERDIST = 2;
-    private float[] bands = null;
 //    private int[] eqgains = null;
     private final int eqdist = OVERDIST;
+    private final AudioPlayer audioPlayer;
     private JCheckBox activateCheckBox;
     private JComboBox<String> presetComboBox;
     private JSlider panSlider;
     private JSlider[] sliders;
 
-    public EqualizerDialog(JFrame mainFrame) {
+    public EqualizerDialog(JFrame mainFrame, AudioPlayer audioPlayer) {
         super(mainFrame, false);
+        this.audioPlayer = audioPlayer;
         setLayout(new BorderLayout());
-        setTitle(tr("Equalizer"));
+        setTitle(tr("Dialog.Equalizer"));
         initComponents();
         Utilities.closeOnEscape(this);
 
@@ -92,11 +96,21 @@ public class EqualizerDialog extends JDialog implements ActionListener {
 
         JToolBar toolBar = new JToolBar();
         toolBar.setFloatable(false);
-        activateCheckBox = new JCheckBox("Activate");
+        activateCheckBox = new JCheckBox(tr("Dialog.Equalizer.Activate"));
+        activateCheckBox.setSelected(Settings.isEqualizerEnabled());
+        activateCheckBox.addActionListener(this);
         toolBar.add(activateCheckBox);
         toolBar.addSeparator();
         JPanel panPanel = new JPanel(new BorderLayout());
-        panSlider = new JSlider(-100, 100, 0);
+        panSlider = new JSlider(-100, 100, Settings.getPan());
+        panSlider.addChangeListener((ChangeEvent e) -> {
+            try {
+                audioPlayer.setPan(panSlider.getValue() / 100.0F);
+                Settings.setPan(panSlider.getValue());
+            } catch (PlayerException ex) {
+                logger.debug(ex.getMessage(), ex);
+            }
+        });
         panPanel.add(new JLabel("L"), BorderLayout.WEST);
         panPanel.add(panSlider, BorderLayout.CENTER);
         panPanel.add(new JLabel("R"), BorderLayout.EAST);
@@ -123,18 +137,27 @@ public class EqualizerDialog extends JDialog implements ActionListener {
         toolBar.add(presetComboBox);
         container.add(toolBar, BorderLayout.NORTH);
 
-        sliders = new JSlider[10];
+        int[] bandValues = Settings.getEqualizerBands();
+        sliders = new JSlider[EqualizerProcessor.BAND_COUNT];
         int sLength = sliders.length;
         JPanel centerPanel = new JPanel(new GridLayout(0, sLength));
-        sliders = new JSlider[10];
         for (int i = 0; i < sLength; i++) {
+            final int band = i;
             JPanel sliderPanel = new JPanel(new BorderLayout());
-            sliders[i] = new JSlider(SwingConstants.VERTICAL, 0, 100, 50);
+            sliders[i] = new JSlider(SwingConstants.VERTICAL, 0, 100, bandValues[i]);
             sliders[i].setMajorTickSpacing(50);
             sliders[i].setMinorTickSpacing(5);
             sliders[i].setPaintTicks(true);
+            sliders[i].addChangeListener((ChangeEvent e) -> {
+                gainValue[band + 1] = sliders[band].getValue();
+                audioPlayer.getEqualizer().setBandGain(band, toGain(gainValue[band + 1]));
+                if (!sliders[band].getValueIsAdjusting()) {
+                    Settings.setEqualizerBands(getBandValues());
+                }
+            });
+            gainValue[i + 1] = bandValues[i];
             sliderPanel.add(sliders[i], BorderLayout.CENTER);
-            JLabel sliderLabel = new JLabel(sliderLabels[i]);
+            JLabel sliderLabel = new JLabel(getBandLabel(i));
             sliderLabel.setHorizontalAlignment(JLabel.CENTER);
             sliderPanel.add(sliderLabel, BorderLayout.SOUTH);
             centerPanel.add(sliderPanel);
@@ -143,25 +166,59 @@ public class EqualizerDialog extends JDialog implements ActionListener {
     }
 
     /**
-     * Set bands array for equalizer.
+     * Converts a slider value to a band gain.
      *
-     * @param bands
+     * @param value a slider value, from 0 to 100.
+     * @return the gain in dB.
      */
-    public void setBands(float[] bands) {
-        this.bands = bands;
+    public static float toGain(int value) {
+        return (value - 50) * EqualizerProcessor.MAX_GAIN / 50.0F;
+    }
+
+    /**
+     * Applies the saved equalizer settings to the player.
+     *
+     * @param audioPlayer
+     */
+    public static void applySettings(AudioPlayer audioPlayer) {
+        int[] bandValues = Settings.getEqualizerBands();
+        float[] gains = new float[bandValues.length];
+        for (int i = 0; i < gains.length; i++) {
+            gains[i] = toGain(bandValues[i]);
+        }
+        audioPlayer.getEqualizer().setBandGains(gains);
+        audioPlayer.getEqualizer().setEnabled(Settings.isEqualizerEnabled());
+    }
+
+    private static String getBandLabel(int band) {
+        double frequency = EqualizerProcessor.getBandFrequency(band);
+        if (frequency >= 1000) {
+            return String.format("%.3gK", frequency / 1000);
+        }
+        return String.valueOf(Math.round(frequency));
+    }
+
+    private int[] getBandValues() {
+        int[] values = new int[sliders.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = sliders[i].getValue();
+        }
+        return values;
     }
 
     /**
-     * Update sliders from gains array.
+     * Update sliders from gains array. Presets use the Winamp scale, where
+     * lower values boost the band.
      *
      * @param gains
      */
     public void updateSliders(int[] gains) {
         if (gains != null) {
             for (int i = 0, len = gains.length; i < len; i++) {
-                gainValue[i + 1] = gains[i];
+                gainValue[i + 1] = 100 - gains[i];
                 sliders[i].setValue(gainValue[i + 1]);
             }
+            Settings.setEqualizerBands(getBandValues());
         }
     }
 
@@ -170,6 +227,8 @@ public class EqualizerDialog extends JDialog implements ActionListener {
         Object source = e.getSource();
 
         if (source == activateCheckBox) {
+            audioPlayer.getEqualizer().setEnabled(activateCheckBox.isSelected());
+            Settings.setEqualizerEnabled(activateCheckBox.isSelected());
         } else if (source == presetComboBox) {
             Settings.setEqualizerPresetIndex(presetComboBox.getSelectedIndex());
             String currentPreset = String.valueOf(presetComboBox.getSelectedItem());
@@ -39,12 +39,16 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSeparator;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import net.miginfocom.swing.MigLayout;
 import xtrememp.player.audio.AudioPlayer;
+import xtrememp.player.dsp.Loudness.GainMode;
+import xtrememp.player.dsp.OfflineAnalysisEngine;
 import xtrememp.ui.combobox.IconComboBox;
 import xtrememp.ui.combobox.SkinComboSelector;
 import xtrememp.ui.skin.GFXUIListener;
@@ -75,6 +79,17 @@ public class PreferencesDialog extends JDialog implements ActionListener {
     private JCheckBox updatesCheckBox;
     private JTextField cacheDirTextField;
     private JComboBox<String> mixerComboBox;
+    private JCheckBox gaplessCheckBox;
+    private JCheckBox lowLatencyCheckBox;
+    private JCheckBox parallelDspCheckBox;
+    private JCheckBox parallelDecodingCheckBox;
+    private JComboBox<String> replayGainComboBox;
+    private JSpinner latencySpinner;
+    private JSpinner crossfadeSpinner;
+    private JCheckBox silenceTrimCheckBox;
+    private JSpinner silenceThresholdSpinner;
+    private JSpinner silenceMinLengthSpinner;
+    private JLabel underrunsLabel;
     private JButton changeCacheDirButton;
     private JButton resetButton;
     private JButton closeButton;
@@ -134,6 +149,27 @@ public class PreferencesDialog extends JDialog implements ActionListener {
             String mixerName = (String) mixerComboBox.getSelectedItem();
             audioPlayer.setMixerName(mixerName);
             Settings.setMixerName(mixerName);
+        } else if (source.equals(gaplessCheckBox)) {
+            audioPlayer.setGaplessEnabled(gaplessCheckBox.isSelected());
+            Settings.setGaplessPlaybackEnabled(gaplessCheckBox.isSelected());
+        } else if (source.equals(lowLatencyCheckBox)) {
+            audioPlayer.setLowLatencyEnabled(lowLatencyCheckBox.isSelected());
+            Settings.setLowLatencyEnabled(lowLatencyCheckBox.isSelected());
+            latencySpinner.setEnabled(lowLatencyCheckBox.isSelected());
+        } else if (source.equals(parallelDspCheckBox)) {
+            audioPlayer.getDSS().setParallelDispatchEnabled(parallelDspCheckBox.isSelected());
+            Settings.setParallelDspEnabled(parallelDspCheckBox.isSelected());
+        } else if (source.equals(parallelDecodingCheckBox)) {
+            OfflineAnalysisEngine.setParallelDecodingEnabled(parallelDecodingCheckBox.isSelected());
+            Settings.setParallelDecodingEnabled(parallelDecodingCheckBox.isSelected());
+        } else if (source.equals(silenceTrimCheckBox)) {
+            audioPlayer.setSilenceTrimEnabled(silenceTrimCheckBox.isSelected());
+            Settings.setSilenceTrimEnabled(silenceTrimCheckBox.isSelected());
+            silenceThresholdSpinner.setEnabled(silenceTrimCheckBox.isSelected());
+            silenceMinLengthSpinner.setEnabled(silenceTrimCheckBox.isSelected());
+        } else if (source.equals(replayGainComboBox)) {
+            Settings.setReplayGainMode(GainMode.values()[replayGainComboBox.getSelectedIndex()]);
+            XtremeMP.getInstance().updateReplayGain();
         } else if (source.equals(resetButton)) {
         } else if (source.equals(closeButton)) {
             dispose();
@@ -244,6 +280,79 @@ public class PreferencesDialog extends JDialog implements ActionListener {
         mixerComboBox.setSelectedItem(Settings.getMixerName());
         mixerComboBox.addActionListener(this);
         audioPanel.add(mixerComboBox, "span,growx");
+        addTextSeparator(audioPanel, tr("Dialog.Preferences.Audio.Playback"));
+        gaplessCheckBox = new JCheckBox(tr("Dialog.Preferences.Audio.Playback.Gapless"));
+        gaplessCheckBox.setSelected(Settings.isGaplessPlaybackEnabled());
+        gaplessCheckBox.addActionListener(this);
+        audioPanel.add(gaplessCheckBox, "span,growx");
+        audioPanel.add(new JLabel(tr("Dialog.Preferences.Audio.Playback.Crossfade"), SwingConstants.LEADING));
+        crossfadeSpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(0, Math.min(AudioPlayer.MAX_CROSSFADE, Settings.getCrossfadeDuration())) / 1000,
+                0, AudioPlayer.MAX_CROSSFADE / 1000, 1));
+        crossfadeSpinner.addChangeListener(e -> {
+            int crossfade = (Integer) crossfadeSpinner.getValue() * 1000;
+            audioPlayer.setCrossfadeDuration(crossfade);
+            Settings.setCrossfadeDuration(crossfade);
+        });
+        audioPanel.add(crossfadeSpinner, "span,growx");
+        audioPanel.add(new JLabel(tr("Dialog.Preferences.Audio.Playback.ReplayGain"), SwingConstants.LEADING));
+        replayGainComboBox = new JComboBox<>(new String[]{
+            tr("Dialog.Preferences.Audio.Playback.ReplayGain.Off"),
+            tr("Dialog.Preferences.Audio.Playback.ReplayGain.Track"),
+            tr("Dialog.Preferences.Audio.Playback.ReplayGain.Album")});
+        replayGainComboBox.setSelectedIndex(Settings.getReplayGainMode().ordinal());
+        replayGainComboBox.addActionListener(this);
+        audioPanel.add(replayGainComboBox, "span,growx");
+        silenceTrimCheckBox = new JCheckBox(tr("Dialog.Preferences.Audio.Playback.SilenceTrim"));
+        silenceTrimCheckBox.setSelected(Settings.isSilenceTrimEnabled());
+        silenceTrimCheckBox.addActionListener(this);
+        audioPanel.add(silenceTrimCheckBox, "span,growx");
+        audioPanel.add(new JLabel(tr("Dialog.Preferences.Audio.Playback.SilenceThreshold"), SwingConstants.LEADING));
+        silenceThresholdSpinner = new JSpinner(new SpinnerNumberModel(
+                Math.round(audioPlayer.getSilenceThreshold()), -96, -20, 1));
+        silenceThresholdSpinner.setEnabled(silenceTrimCheckBox.isSelected());
+        silenceThresholdSpinner.addChangeListener(e -> {
+            int threshold = (Integer) silenceThresholdSpinner.getValue();
+            audioPlayer.setSilenceThreshold(threshold);
+            Settings.setSilenceThreshold(threshold);
+        });
+        audioPanel.add(silenceThresholdSpinner, "span,growx");
+        audioPanel.add(new JLabel(tr("Dialog.Preferences.Audio.Playback.SilenceMinLength"), SwingConstants.LEADING));
+        silenceMinLengthSpinner = new JSpinner(new SpinnerNumberModel(
+                audioPlayer.getSilenceMinLength(), 100, 10000, 100));
+        silenceMinLengthSpinner.setEnabled(silenceTrimCheckBox.isSelected());
+        silenceMinLengthSpinner.addChangeListener(e -> {
+            int minLength = (Integer) silenceMinLengthSpinner.getValue();
+            audioPlayer.setSilenceMinLength(minLength);
+            Settings.setSilenceMinLength(minLength);
+        });
+        audioPanel.add(silenceMinLengthSpinner, "span,growx");
+        lowLatencyCheckBox = new JCheckBox(tr("Dialog.Preferences.Audio.Playback.LowLatency"));
+        lowLatencyCheckBox.setSelected(Settings.isLowLatencyEnabled());
+        lowLatencyCheckBox.addActionListener(this);
+        audioPanel.add(lowLatencyCheckBox, "span,growx");
+        audioPanel.add(new JLabel(tr("Dialog.Preferences.Audio.Playback.LatencyTarget"), SwingConstants.LEADING));
+        latencySpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(10, Math.min(AudioPlayer.MAX_LATENCY, Settings.getLatencyTarget())),
+                10, AudioPlayer.MAX_LATENCY, 10));
+        latencySpinner.setEnabled(lowLatencyCheckBox.isSelected());
+        latencySpinner.addChangeListener(e -> {
+            int latency = (Integer) latencySpinner.getValue();
+            audioPlayer.setLatencyTarget(latency);
+            Settings.setLatencyTarget(latency);
+        });
+        audioPanel.add(latencySpinner, "span,growx");
+        underrunsLabel = new JLabel(tr("Dialog.Preferences.Audio.Playback.Underruns") + " "
+                + audioPlayer.getLineUnderruns(), SwingConstants.LEADING);
+        audioPanel.add(underrunsLabel, "span,growx");
+        parallelDspCheckBox = new JCheckBox(tr("Dialog.Preferences.Audio.Playback.ParallelDsp"));
+        parallelDspCheckBox.setSelected(Settings.isParallelDspEnabled());
+        parallelDspCheckBox.addActionListener(this);
+        audioPanel.add(parallelDspCheckBox, "span,growx");
+        parallelDecodingCheckBox = new JCheckBox(tr("Dialog.Preferences.Audio.Playback.ParallelDecoding"));
+        parallelDecodingCheckBox.setSelected(Settings.isParallelDecodingEnabled());
+        parallelDecodingCheckBox.addActionListener(this);
+        audioPanel.add(parallelDecodingCheckBox, "span,growx");
         centerPanel.add(audioPanel, AUDIO_PANEL);
         // hotkeys panel
         JPanel hotkeysPanel = new JPanel(new MigLayout("ins 8,fillx"));
@@ -31,6 +31,7 @@ import java.util.Properties;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import xtrememp.player.dsp.Loudness.GainMode;
 import xtrememp.playlist.Playlist.PlayMode;
 import xtrememp.ui.skin.DarkSapphireSkin;
 import xtrememp.ui.table.PlaylistColumn;
@@ -51,7 +52,19 @@ public final class Settings {
     private static final String PROPERTY_PLAYER_AUDIO_PAN = "xtrememp.player.audio.pan";
     private static final String PROPERTY_PLAYER_AUDIO_MUTE = "xtrememp.player.audio.mute";
     private static final String PROPERTY_PLAYER_AUDIO_MIXERNAME = "xtrememp.player.audio.mixer.name";
+    private static final String PROPERTY_PLAYER_AUDIO_GAPLESS = "xtrememp.player.audio.gapless";
+    private static final String PROPERTY_PLAYER_AUDIO_LOWLATENCY = "xtrememp.player.audio.lowlatency";
+    private static final String PROPERTY_PLAYER_AUDIO_LATENCY = "xtrememp.player.audio.latency";
+    private static final String PROPERTY_PLAYER_AUDIO_CROSSFADE = "xtrememp.player.audio.crossfade";
+    private static final String PROPERTY_PLAYER_DSP_PARALLEL = "xtrememp.player.dsp.parallel";
+    private static final String PROPERTY_PLAYER_DSP_PARALLEL_DECODING = "xtrememp.player.dsp.parallel.decoding";
+    private static final String PROPERTY_PLAYER_AUDIO_REPLAYGAIN = "xtrememp.player.audio.replaygain";
+    private static final String PROPERTY_PLAYER_AUDIO_SILENCE_TRIM = "xtrememp.player.audio.silence.trim";
+    private static final String PROPERTY_PLAYER_AUDIO_SILENCE_THRESHOLD = "xtrememp.player.audio.silence.threshold";
+    private static final String PROPERTY_PLAYER_AUDIO_SILENCE_MINLENGTH = "xtrememp.player.audio.silence.minlength";
     private static final String PROPERTY_EQUILAZER_PRESET_INDEX = "xtrememp.equilazer.preset.index";
+    private static final String PROPERTY_EQUILAZER_ENABLED = "xtrememp.equilazer.enabled";
+    private static final String PROPERTY_EQUILAZER_BANDS = "xtrememp.equilazer.bands";
     private static final String PROPERTY_LAST_DIR = "xtrememp.last.dir";
     private static final String PROPERTY_LAST_VIEW = "xtrememp.last.view";
     private static final String PROPERTY_PLAYLIST_POSITION = "xtrememp.playlist.position";
@@ -198,6 +211,86 @@ public final class Settings {
         properties.setProperty(PROPERTY_PLAYER_AUDIO_MIXERNAME, mixerName);
     }
 
+    public static boolean isGaplessPlaybackEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PLAYER_AUDIO_GAPLESS, Boolean.toString(false)));
+    }
+
+    public static void setGaplessPlaybackEnabled(boolean gapless) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_GAPLESS, Boolean.toString(gapless));
+    }
+
+    public static boolean isParallelDspEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PLAYER_DSP_PARALLEL, Boolean.toString(false)));
+    }
+
+    public static void setParallelDspEnabled(boolean parallel) {
+        properties.setProperty(PROPERTY_PLAYER_DSP_PARALLEL, Boolean.toString(parallel));
+    }
+
+    public static boolean isParallelDecodingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PLAYER_DSP_PARALLEL_DECODING, Boolean.toString(false)));
+    }
+
+    public static void setParallelDecodingEnabled(boolean parallel) {
+        properties.setProperty(PROPERTY_PLAYER_DSP_PARALLEL_DECODING, Boolean.toString(parallel));
+    }
+
+    public static GainMode getReplayGainMode() {
+        return GainMode.valueOf(properties.getProperty(PROPERTY_PLAYER_AUDIO_REPLAYGAIN, GainMode.OFF.name()));
+    }
+
+    public static void setReplayGainMode(GainMode mode) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_REPLAYGAIN, mode.name());
+    }
+
+    public static boolean isSilenceTrimEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PLAYER_AUDIO_SILENCE_TRIM, Boolean.toString(false)));
+    }
+
+    public static void setSilenceTrimEnabled(boolean silenceTrim) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_SILENCE_TRIM, Boolean.toString(silenceTrim));
+    }
+
+    public static int getSilenceThreshold() {
+        return Integer.parseInt(properties.getProperty(PROPERTY_PLAYER_AUDIO_SILENCE_THRESHOLD, "-60"));
+    }
+
+    public static void setSilenceThreshold(int threshold) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_SILENCE_THRESHOLD, Integer.toString(threshold));
+    }
+
+    public static int getSilenceMinLength() {
+        return Integer.parseInt(properties.getProperty(PROPERTY_PLAYER_AUDIO_SILENCE_MINLENGTH, "1000"));
+    }
+
+    public static void setSilenceMinLength(int minLength) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_SILENCE_MINLENGTH, Integer.toString(minLength));
+    }
+
+    public static boolean isLowLatencyEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_PLAYER_AUDIO_LOWLATENCY, Boolean.toString(false)));
+    }
+
+    public static void setLowLatencyEnabled(boolean lowLatency) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_LOWLATENCY, Boolean.toString(lowLatency));
+    }
+
+    public static int getLatencyTarget() {
+        return Integer.parseInt(properties.getProperty(PROPERTY_PLAYER_AUDIO_LATENCY, "50"));
+    }
+
+    public static void setLatencyTarget(int latency) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_LATENCY, Integer.toString(latency));
+    }
+
+    public static int getCrossfadeDuration() {
+        return Integer.parseInt(properties.getProperty(PROPERTY_PLAYER_AUDIO_CROSSFADE, "0"));
+    }
+
+    public static void setCrossfadeDuration(int crossfade) {
+        properties.setProperty(PROPERTY_PLAYER_AUDIO_CROSSFADE, Integer.toString(crossfade));
+    }
+
     public static int getEqualizerPresetIndex() {
         return Integer.parseInt(properties.getProperty(PROPERTY_EQUILAZER_PRESET_INDEX, "0"));
     }
@@ -206,6 +299,42 @@ public final class Settings {
         properties.setProperty(PROPERTY_EQUILAZER_PRESET_INDEX, Integer.toString(eqIndex));
     }
 
+    public static boolean isEqualizerEnabled() {
+        return Boolean.parseBoolean(properties.getProperty(PROPERTY_EQUILAZER_ENABLED, Boolean.toString(false)));
+    }
+
+    public static void setEqualizerEnabled(boolean enabled) {
+        properties.setProperty(PROPERTY_EQUILAZER_ENABLED, Boolean.toString(enabled));
+    }
+
+    /**
+     * Returns the equalizer slider values, from 0 to 100 with 50 for a flat
+     * response.
+     */
+    public static int[] getEqualizerBands() {
+        int[] bands = {50, 50, 50, 50, 50, 50, 50, 50, 50, 50};
+        String propertyBands = properties.getProperty(PROPERTY_EQUILAZER_BANDS);
+        if (propertyBands != null) {
+            String[] values = propertyBands.split(";");
+            for (int i = 0; i < bands.length && i < values.length; i++) {
+                try {
+                    bands[i] = Integer.parseInt(values[i].trim());
+                } catch (NumberFormatException ex) {
+                    //The config file might be corrupted → keep default.
+                }
+            }
+        }
+        return bands;
+    }
+
+    public static void setEqualizerBands(int[] bands) {
+        StringBuilder sb = new StringBuilder();
+        for (int band : bands) {
+            sb.append(band).append(";");
+        }
+        properties.setProperty(PROPERTY_EQUILAZER_BANDS, sb.toString());
+    }
+
     public static String getSkin() {
         return properties.getProperty(PROPERTY_SKIN, DarkSapphireSkin.class.getName());
     }
@@ -43,9 +43,17 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import net.miginfocom.swing.MigLayout;
 import xtrememp.player.audio.AudioPlayer;
+import xtrememp.player.audio.FrameIndexCache;
 import xtrememp.player.audio.PlaybackEvent;
 import xtrememp.player.audio.PlaybackListener;
 import xtrememp.player.audio.PlayerException;
+import xtrememp.player.audio.SilenceCache;
+import xtrememp.player.dsp.Loudness;
+import xtrememp.player.dsp.Loudness.GainMode;
+import xtrememp.player.dsp.LoudnessScanner;
+import xtrememp.player.dsp.OfflineAnalysisEngine;
+import xtrememp.player.dsp.PeakCache;
+import xtrememp.player.dsp.PeakOverview;
 import xtrememp.playlist.Playlist;
 import xtrememp.playlist.PlaylistEvent;
 import xtrememp.playlist.PlaylistException;
@@ -150,6 +158,7 @@ public final class XtremeMP implements ActionListener, ControlListener,
     private JMenuItem stopMenuItem;
     private JMenuItem previousMenuItem;
     private JMenuItem randomizePlaylistMenuItem;
+    private JMenuItem equalizerMenuItem;
     private JRadioButtonMenuItem playlistManagerMenuItem;
     private JRadioButtonMenuItem visualizationMenuItem;
     private JRadioButtonMenuItem playModeRepeatNoneMenuItem;
@@ -163,6 +172,8 @@ public final class XtremeMP implements ActionListener, ControlListener,
     private VisualizationManager visualizationManager;
     private JPanel controlPanel;
     private AudioPlayer audioPlayer;
+    private PeakCache peakCache;
+    private LoudnessScanner loudnessScanner;
     private Playlist playlist;
     private PlaylistManager playlistManager;
     private StopButton stopButton;
@@ -176,6 +187,7 @@ public final class XtremeMP implements ActionListener, ControlListener,
     private JLabel playModeLabel;
     private SeekSlider seekSlider;
     private PlaylistItem currentPli;
+    private PlaylistItem nextPli;
 
     private XtremeMP() {
     }
@@ -242,6 +254,32 @@ public final class XtremeMP implements ActionListener, ControlListener,
             if (!Utilities.isNullOrEmpty(mixerName)) {
                 audioPlayer.setMixerName(mixerName);
             }
+            audioPlayer.setGaplessEnabled(Settings.isGaplessPlaybackEnabled());
+            audioPlayer.setLatencyTarget(Settings.getLatencyTarget());
+            audioPlayer.setLowLatencyEnabled(Settings.isLowLatencyEnabled());
+            audioPlayer.setCrossfadeDuration(Settings.getCrossfadeDuration());
+            audioPlayer.getDSS().setParallelDispatchEnabled(Settings.isParallelDspEnabled());
+            OfflineAnalysisEngine.setParallelDecodingEnabled(Settings.isParallelDecodingEnabled());
+            audioPlayer.setSilenceTrimEnabled(Settings.isSilenceTrimEnabled());
+            audioPlayer.setSilenceThreshold(Settings.getSilenceThreshold());
+            audioPlayer.setSilenceMinLength(Settings.getSilenceMinLength());
+            audioPlayer.setSilenceCache(new SilenceCache(Settings.getCacheDir()));
+            FrameIndexCache frameIndexCache = new FrameIndexCache(new File(Settings.getCacheDir(), "index"));
+            audioPlayer.setFrameIndexCache(frameIndexCache);
+            OfflineAnalysisEngine.setFrameIndexCache(frameIndexCache);
+            EqualizerDialog.applySettings(audioPlayer);
+
+            // Initialize loudness normalization
+            loudnessScanner = new LoudnessScanner(Settings.getCacheDir());
+
+            // Initialize waveform overviews
+            peakCache = new PeakCache(new File(Settings.getCacheDir(), "peaks"));
+            peakCache.addListener((file, overview) -> EventQueue.invokeLater(() -> {
+                if (currentPli != null && currentPli.isFile()
+                        && new File(currentPli.getLocation()).getAbsoluteFile().equals(file)) {
+                    seekSlider.setOverview(overview);
+                }
+            }));
 
             // Launch gui
             EventQueue.invokeLater(() -> {
@@ -389,7 +427,11 @@ public final class XtremeMP implements ActionListener, ControlListener,
             logger.error("Can't save default playlist", ex);
         }
         // Release audio engine resources
-        audioPlayer.stop();
+        audioPlayer.shutdown();
+        peakCache.shutdown();
+        loudnessScanner.shutdown();
+        audioPlayer.getSilenceCache().save();
+        audioPlayer.getFrameIndexCache().shutdown();
         // Clean up all resources used by JIntellitype
         if (JIntellitype.isJIntellitypeSupported()) {
             JIntellitype.getInstance().cleanUp();
@@ -517,6 +559,12 @@ public final class XtremeMP implements ActionListener, ControlListener,
         randomizePlaylistMenuItem.setEnabled(false);
         randomizePlaylistMenuItem.addActionListener(this);
         playerMenu.add(randomizePlaylistMenuItem);
+        playerMenu.addSeparator();
+
+        equalizerMenuItem = new JMenuItem(tr("MainFrame.Menu.Player.Equalizer"));
+        equalizerMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.CTRL_DOWN_MASK));
+        equalizerMenuItem.addActionListener(this);
+        playerMenu.add(equalizerMenuItem);
 
         menuBar.add(playerMenu);
 
@@ -763,6 +811,8 @@ public final class XtremeMP implements ActionListener, ControlListener,
         } else if (source == preferencesMenuItem) {
             PreferencesDialog preferencesDialog = new PreferencesDialog(audioPlayer, this);
             preferencesDialog.setVisible(true);
+        } else if (source == equalizerMenuItem) {
+            new EqualizerDialog(mainFrame, audioPlayer);
         } else if (source == exitMenuItem) {
             exit();
         } else if (source == playPauseMenuItem || source == playPauseButton) {
@@ -852,6 +902,7 @@ public final class XtremeMP implements ActionListener, ControlListener,
     public void playbackOpened(PlaybackEvent pe) {
         try {
             audioPlayer.setGain(Settings.getGain() / 100.0F);
+            audioPlayer.setPan(Settings.getPan() / 100.0F);
             audioPlayer.setMuted(Settings.isMuted());
         } catch (PlayerException ex) {
             logger.error(ex.getMessage(), ex);
@@ -951,6 +1002,127 @@ public final class XtremeMP implements ActionListener, ControlListener,
         });
     }
 
+    @Override
+    public void playbackTransition(PlaybackEvent pe) {
+        PlaylistItem pli = nextPli;
+        nextPli = null;
+        if (pli == null) {
+            return;
+        }
+        playlist.nextCursor();
+        if (playlist.getCursor() != pli) {
+            playlist.setCursor(pli);
+        }
+        currentPli = pli;
+        updateReplayGain();
+        setStatus(currentPli.getFormattedName());
+        final int duration = Math.round(audioPlayer.getDuration() / 1000);
+        EventQueue.invokeLater(() -> {
+            seekSlider.reset();
+            playlistManager.colorizeRow();
+            showOverview(pli);
+            if (duration > 0) {
+                seekSlider.setMaximum(duration);
+                seekSlider.setEnabled(true);
+            } else {
+                seekSlider.setMaximum((int) (pli.getDuration() * 1000));
+                seekSlider.setEnabled(false);
+            }
+        });
+        prepareNextTrack();
+    }
+
+    /**
+     * Applies the loudness normalization of the current playlist item. The
+     * gain is only set when a track starts, so a track whose loudness isn't
+     * known yet plays unchanged rather than jumping in level; it is queued
+     * for scanning instead. Album gain treats the playlist items of the same
+     * folder as the album, and falls back to track gain until all of them
+     * are scanned.
+     */
+    public void updateReplayGain() {
+        PlaylistItem pli = currentPli;
+        GainMode mode = Settings.getReplayGainMode();
+        float replayGain = 1.0F;
+        if (mode != GainMode.OFF && pli != null && pli.isFile()) {
+            File file = new File(pli.getLocation());
+            Loudness loudness = null;
+            if (mode == GainMode.ALBUM) {
+                List<File> albumFiles = getAlbumFiles(file);
+                loudness = loudnessScanner.getAlbumLoudness(albumFiles);
+                if (loudness == null) {
+                    loudnessScanner.submitAll(albumFiles);
+                }
+            }
+            if (loudness == null) {
+                loudness = loudnessScanner.getLoudness(file);
+            }
+            if (loudness == null) {
+                loudnessScanner.submit(file);
+            } else {
+                replayGain = loudness.getGainFactor();
+            }
+        }
+        audioPlayer.setReplayGain(replayGain);
+    }
+
+    /**
+     * Returns the playlist files in the folder of the given one.
+     */
+    private List<File> getAlbumFiles(File file) {
+        File folder = file.getAbsoluteFile().getParentFile();
+        List<File> albumFiles = new ArrayList<>();
+        for (PlaylistItem pli : playlist.listAllItems()) {
+            if (pli.isFile()) {
+                File albumFile = new File(pli.getLocation()).getAbsoluteFile();
+                if (albumFile.getParentFile() != null && albumFile.getParentFile().equals(folder)) {
+                    albumFiles.add(albumFile);
+                }
+            }
+        }
+        if (albumFiles.isEmpty()) {
+            albumFiles.add(file.getAbsoluteFile());
+        }
+        return albumFiles;
+    }
+
+    /**
+     * Shows the waveform of a playlist item on the seek slider, extracting it
+     * ahead of the rest of the playlist if it isn't ready.
+     */
+    private void showOverview(PlaylistItem pli) {
+        if (pli != null && pli.isFile()) {
+            File file = new File(pli.getLocation());
+            PeakOverview overview = peakCache.getOverview(file);
+            seekSlider.setOverview(overview);
+            if (overview == null) {
+                peakCache.submit(file, true);
+            }
+        }
+    }
+
+    /**
+     * Lets the audio player open the upcoming playlist item in advance, so
+     * that it follows the current one without a gap.
+     */
+    private void prepareNextTrack() {
+        if (audioPlayer.isGaplessEnabled() || audioPlayer.getCrossfadeDuration() > 0) {
+            PlaylistItem pli = null;
+            if (playlist.getPlayMode() != Playlist.PlayMode.REPEAT_ONE) {
+                pli = playlist.peekNextCursor();
+            }
+            if (pli != null && pli.isFile()) {
+                nextPli = pli;
+                if (Settings.getReplayGainMode() != GainMode.OFF) {
+                    loudnessScanner.submit(new File(pli.getLocation()));
+                }
+                audioPlayer.prepareNext(new File(pli.getLocation()));
+            } else {
+                nextPli = null;
+            }
+        }
+    }
+
     @Override
     public void acOpen() {
         PlayerLauncher playerLauncher = new PlayerLauncher(false);
@@ -1051,7 +1223,7 @@ public final class XtremeMP implements ActionListener, ControlListener,
     public void acSeek() {
         try {
             if (seekSlider.isEnabled()) {
-                audioPlayer.seek(Math.round(audioPlayer.getByteLength() * (double) seekSlider.getValue() / seekSlider.getMaximum()));
+                audioPlayer.seek(seekSlider.getValue() * 1000L);
             }
         } catch (PlayerException ex) {
             logger.error(ex.getMessage(), ex);
@@ -1063,10 +1235,21 @@ public final class XtremeMP implements ActionListener, ControlListener,
         if (!playlist.isEmpty() && !previousButton.isEnabled()) {
             enableControlButtons(true);
         }
+        PlaylistItem pli = e.getPlaylistItem();
+        if (pli != null && pli.isFile()) {
+            peakCache.submit(new File(pli.getLocation()), false);
+            if (Settings.getReplayGainMode() != GainMode.OFF) {
+                loudnessScanner.submit(new File(pli.getLocation()));
+            }
+        }
     }
 
     @Override
     public void playlistItemRemoved(PlaylistEvent e) {
+        PlaylistItem pli = e.getPlaylistItem();
+        if (pli != null && pli.isFile()) {
+            peakCache.cancel(new File(pli.getLocation()));
+        }
         if (playlist.isEmpty()) {
             if (audioPlayer.getState() != AudioPlayer.PLAY
                     && audioPlayer.getState() != AudioPlayer.PAUSE) {
@@ -1185,9 +1368,11 @@ public final class XtremeMP implements ActionListener, ControlListener,
                 } else {
                     audioPlayer.open(new URL(pli.getLocation()));
                 }
+                updateReplayGain();
                 if (play) {
                     audioPlayer.play();
                 }
+                prepareNextTrack();
                 return Boolean.TRUE;
             }
             currentPli = null;
@@ -1202,6 +1387,7 @@ public final class XtremeMP implements ActionListener, ControlListener,
                         seekSlider.reset();
                         playlistManager.colorizeRow();
                         if (isFile) {
+                            showOverview(currentPli);
                             if (duration > 0) {
                                 seekSlider.setMaximum(duration);
                                 seekSlider.setEnabled(true);
@@ -20,31 +20,34 @@ package xtrememp.player.audio;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.BooleanControl;
 import javax.sound.sampled.Control;
 import javax.sound.sampled.DataLine;
-import javax.sound.sampled.FloatControl;
 import javax.sound.sampled.Line;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
@@ -57,6 +60,8 @@ import org.tritonus.share.sampled.TAudioFormat;
 import org.tritonus.share.sampled.file.TAudioFileFormat;
 
 import javazoom.spi.PropertiesContainer;
+import javazoom.spi.mpeg.sampled.convert.DecodedMpegAudioInputStream;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
 import xtrememp.player.dsp.DigitalSignalSynchronizer;
 
 /**
@@ -66,23 +71,42 @@ import xtrememp.player.dsp.DigitalSignalSynchronizer;
 public class AudioPlayer implements Callable<Void> {
 
     private final Logger logger = LoggerFactory.getLogger(AudioPlayer.class);
-    protected final int READ_BUFFER_SIZE = 4 * 1024;
+    // A whole number of frames for 8 to 24-bit audio of up to 6 channels.
+    protected final int READ_BUFFER_SIZE = 4608;
     protected final Lock lock = new ReentrantLock();
     protected final Condition pauseCondition = lock.newCondition();
-    protected Object audioSource;
+    // Signalled when the output thread parks or completes.
+    protected final Condition parkedCondition = lock.newCondition();
+    protected boolean outputRunning = false; // guarded by lock
+    protected boolean outputParked = false; // guarded by lock
+    // The track being heard, swapped by the output thread on transitions.
+    protected volatile Object audioSource;
     protected DigitalSignalSynchronizer dss;
-    protected AudioFileFormat audioFileFormat;
+    protected volatile AudioFileFormat audioFileFormat;
+    protected volatile AudioInputStream playingStream;
+    // The stream being decoded, ahead of the one heard across a transition.
     protected AudioInputStream audioInputStream;
     protected SourceDataLine sourceDataLine;
     protected String mixerName;
     protected List<PlaybackListener> listeners;
+    protected PlaybackEventDispatcher eventDispatcher;
     protected ExecutorService execService;
     protected Future<Void> future;
-    protected Map<String, Object> properties;
-    protected FloatControl gainControl;
-    protected FloatControl panControl;
-    protected BooleanControl muteControl;
+    protected volatile Map<String, Object> properties;
+    protected final SampleProcessingChain processingChain = new SampleProcessingChain();
+    protected final EqualizerProcessor equalizer = new EqualizerProcessor();
     protected int bufferSize = AudioSystem.NOT_SPECIFIED;
+    // Low-latency output
+    public static final int DEFAULT_LATENCY_TARGET = 50; // milliseconds
+    public static final int MAX_LATENCY = 1000; // milliseconds
+    protected volatile boolean lowLatencyEnabled = false;
+    protected volatile int latencyTarget = DEFAULT_LATENCY_TARGET;
+    protected volatile int lineLatency = DEFAULT_LATENCY_TARGET; // grows on underruns
+    protected volatile boolean lineResizePending = false;
+    // Grown after an underrun, applied when the line next stops.
+    protected volatile boolean lineResizeDeferred = false;
+    protected volatile long lineUnderruns = 0;
+    protected boolean lineFed = false;
     public static final int INIT = 0;
     public static final int PLAY = 1;
     public static final int PAUSE = 2;
@@ -91,14 +115,108 @@ public class AudioPlayer implements Callable<Void> {
     protected volatile int state = AudioSystem.NOT_SPECIFIED;
     protected Map<String, Object> emptyMap = new HashMap<String, Object>();
     protected long oldPosition = 0;
+    // Gapless playback
+    protected ExecutorService prefetchService;
+    protected volatile boolean gaplessEnabled = false;
+    protected volatile Object nextSource;
+    protected volatile Future<NextTrack> nextTrackFuture;
+    protected byte[] prerollBuffer;
+    protected int prerollOffset = 0;
+    protected int prerollLength = 0;
+    protected volatile long trackEndTime = AudioSystem.NOT_SPECIFIED; // nanoseconds
+    protected volatile long trackGap = AudioSystem.NOT_SPECIFIED; // milliseconds
+    // Decoder/output pipeline
+    protected static final long DECODER_WAIT_NANOS = 50000000L;
+    protected static final long OUTPUT_WAIT_NANOS = 10000000L;
+    protected ExecutorService decoderService;
+    protected Future<?> decoderFuture;
+    protected volatile boolean decoding = false;
+    protected volatile IOException decoderException;
+    protected PcmRingBuffer ringBuffer;
+    protected int ringBufferCapacity = PcmRingBuffer.DEFAULT_CAPACITY;
+    protected int ringBufferLowWatermark = PcmRingBuffer.DEFAULT_CAPACITY / 2;
+    protected int ringBufferHighWatermark = PcmRingBuffer.DEFAULT_CAPACITY;
+    protected volatile long ringBufferUnderruns = 0;
+    protected long trackFrame = 0;
+    protected long trackFrameLength = AudioSystem.NOT_SPECIFIED;
+    // Decoder CPU accounting
+    protected static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    protected volatile long decoderCpuTime = 0L; // nanoseconds
+    protected volatile long fadeDecoderCpuTime = 0L; // nanoseconds
+    // Crossfade
+    public static final int MAX_CROSSFADE = 12000; // milliseconds
+    protected volatile int crossfadeDuration = 0; // milliseconds
+    protected ExecutorService fadeDecoderService;
+    protected Future<?> fadeDecoderFuture;
+    protected volatile boolean fadeDecoding = false;
+    protected PcmRingBuffer fadeRingBuffer;
+    protected final CrossfadeMixer crossfadeMixer = new CrossfadeMixer();
+    protected byte[] fadeBlock;
+    protected int fadeBlockOffset = 0;
+    protected volatile NextTrack fadeTrack;
+    protected volatile NextTrack pendingTransition;
+    protected volatile boolean fading = false;
+    protected long fadeFrame = 0;
+    protected long fadeFrames = 0;
+    // Silence trimming
+    public static final int MAX_LEAD_IN = 30000; // milliseconds
+    protected static final int MAX_HOLD_BYTES = 1 << 21;
+    protected volatile boolean silenceTrimEnabled = false;
+    protected volatile float silenceThreshold = SilenceDetector.DEFAULT_THRESHOLD;
+    protected volatile int silenceMinLength = SilenceDetector.DEFAULT_MIN_LENGTH;
+    protected volatile SilenceCache silenceCache;
+    protected SilenceDetector silenceDetector;
+    protected Object silenceSource;
+    protected long trackStartFrame = 0;
+    protected long trackEndFrame = AudioSystem.NOT_SPECIFIED;
+    protected byte[] holdBuffer;
+    protected byte[] holdScratch;
+    protected int holdLength = 0;
+    // Seek index
+    protected volatile FrameIndexCache frameIndexCache;
+    // Progress notification
+    public static final long DEFAULT_PROGRESS_INTERVAL = 100L; // milliseconds
+    protected volatile long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    protected long nextProgressTime = 0L; // nanoseconds
 
     public AudioPlayer() {
-        execService = Executors.newFixedThreadPool(1);
+        execService = newAudioService("AudioOutput", Thread.NORM_PRIORITY);
+        decoderService = newAudioService("AudioDecoder", Thread.NORM_PRIORITY);
+        prefetchService = newAudioService("AudioPrefetch", Thread.NORM_PRIORITY);
+        // Runs behind the primary decoder.
+        fadeDecoderService = newAudioService("FadeDecoder", Thread.MIN_PRIORITY);
         dss = new DigitalSignalSynchronizer();
-        listeners = new ArrayList<PlaybackListener>();
+        listeners = new CopyOnWriteArrayList<PlaybackListener>();
+        eventDispatcher = new PlaybackEventDispatcher(this, listeners);
+        processingChain.add(equalizer);
         reset();
     }
 
+    /**
+     * Creates a single thread executor whose thread does not keep the
+     * application alive.
+     */
+    private static ExecutorService newAudioService(String name, int priority) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops playback and releases the threads of the player, which cannot be
+     * used anymore afterwards.
+     */
+    public void shutdown() {
+        stop();
+        execService.shutdownNow();
+        decoderService.shutdownNow();
+        prefetchService.shutdownNow();
+        fadeDecoderService.shutdownNow();
+    }
+
     public void addPlaybackListener(PlaybackListener listener) {
         if (listener != null && !listeners.contains(listener)) {
             listeners.add(listener);
@@ -119,15 +237,28 @@ public class AudioPlayer implements Callable<Void> {
         notifyEvent(state, emptyMap);
     }
 
-    protected void notifyEvent(Playback state, Map properties) {
-        for (PlaybackListener listener : listeners) {
-            PlaybackEventLauncher launcher = new PlaybackEventLauncher(this, 
-                    state, getPosition() - oldPosition, properties, listener);
-            launcher.start();
+    protected void notifyEvent(Playback state, Map<String, Object> properties) {
+        if (!listeners.isEmpty()) {
+            eventDispatcher.post(state, getPosition() - oldPosition, properties);
         }
         logger.info("{}", state);
     }
 
+    /**
+     * Notifies the listeners from the output thread, which must not wait for
+     * room in the event queue. The event is queued even if the queue is full.
+     */
+    protected void notifyAudioEvent(Playback state, Map<String, Object> properties) {
+        if (!listeners.isEmpty()) {
+            eventDispatcher.offer(state, getPosition() - oldPosition, properties);
+        }
+        logger.info("{}", state);
+    }
+
+    public PlaybackEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
     private void reset() {
         if (sourceDataLine != null) {
             sourceDataLine.flush();
@@ -135,12 +266,17 @@ public class AudioPlayer implements Callable<Void> {
             sourceDataLine = null;
         }
         audioFileFormat = null;
-        gainControl = null;
-        panControl = null;
-        muteControl = null;
         future = null;
         emptyMap.clear();
         oldPosition = 0;
+        prerollBuffer = null;
+        prerollOffset = 0;
+        prerollLength = 0;
+        silenceDetector = null;
+        silenceSource = null;
+        trackStartFrame = 0;
+        trackEndFrame = AudioSystem.NOT_SPECIFIED;
+        holdLength = 0;
     }
 
     /**
@@ -183,13 +319,615 @@ public class AudioPlayer implements Callable<Void> {
         lock.lock();
         try {
             reset();
-            initAudioInputStream();
+            if (!adoptNextTrack()) {
+                initAudioInputStream();
+                trimLeadingSilence();
+            }
             initSourceDataLine();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Enables or disables gapless playback. When enabled, a track prepared
+     * with {@link #prepareNext(File)} is spliced into the open line as soon
+     * as the current one ends, provided both share the same audio format.
+     *
+     * @param gaplessEnabled <code>true</code> to enable gapless playback.
+     */
+    public void setGaplessEnabled(boolean gaplessEnabled) {
+        this.gaplessEnabled = gaplessEnabled;
+        if (!gaplessEnabled && crossfadeDuration == 0) {
+            cancelNextTrack();
+        }
+    }
+
+    public boolean isGaplessEnabled() {
+        return gaplessEnabled;
+    }
+
+    /**
+     * Sets the crossfade length. When set, the track prepared with
+     * {@link #prepareNext(File)} is decoded alongside the end of the current
+     * one and mixed in with an equal-power curve, on the same line. Both
+     * tracks must share the same audio format and the current one must have
+     * a known duration.
+     *
+     * @param crossfadeDuration the length in milliseconds, 0 to disable and
+     * up to {@link #MAX_CROSSFADE}.
+     */
+    public void setCrossfadeDuration(int crossfadeDuration) {
+        this.crossfadeDuration = Math.max(0, Math.min(MAX_CROSSFADE, crossfadeDuration));
+        if (this.crossfadeDuration == 0 && !gaplessEnabled) {
+            cancelNextTrack();
+        }
+    }
+
+    public int getCrossfadeDuration() {
+        return crossfadeDuration;
+    }
+
+    /**
+     * Enables or disables silence trimming. When enabled, leading silence is
+     * skipped when a track is opened and the track ends at its last audible
+     * sample, which also brings gapless and crossfade transitions closer.
+     * Applies from the next track opened.
+     *
+     * @param silenceTrimEnabled <code>true</code> to trim silence.
+     */
+    public void setSilenceTrimEnabled(boolean silenceTrimEnabled) {
+        this.silenceTrimEnabled = silenceTrimEnabled;
+    }
+
+    public boolean isSilenceTrimEnabled() {
+        return silenceTrimEnabled;
+    }
+
+    /**
+     * Sets the level below which audio counts as silence.
+     *
+     * @param silenceThreshold a level between -96 and -20 dBFS.
+     */
+    public void setSilenceThreshold(float silenceThreshold) {
+        this.silenceThreshold = Math.max(-96.0F, Math.min(-20.0F, silenceThreshold));
+    }
+
+    public float getSilenceThreshold() {
+        return silenceThreshold;
+    }
+
+    /**
+     * Sets the shortest silence that is trimmed, so short pauses at the
+     * start or end of a track are kept.
+     *
+     * @param silenceMinLength a length between 100 and 10000 milliseconds.
+     */
+    public void setSilenceMinLength(int silenceMinLength) {
+        this.silenceMinLength = Math.max(100, Math.min(10000, silenceMinLength));
+    }
+
+    public int getSilenceMinLength() {
+        return silenceMinLength;
+    }
+
+    /**
+     * Sets where the audible range of scanned files is remembered. Without
+     * a cache, trailing silence is only trimmed as it is found.
+     *
+     * @param silenceCache the cache, or <code>null</code>.
+     */
+    public void setSilenceCache(SilenceCache silenceCache) {
+        this.silenceCache = silenceCache;
+    }
+
+    public SilenceCache getSilenceCache() {
+        return silenceCache;
+    }
+
+    /**
+     * Sets where the frame indexes of MP3 files are kept. Files are indexed
+     * when opened, and seek exactly once their index is built.
+     *
+     * @param frameIndexCache the cache, or <code>null</code>.
+     */
+    public void setFrameIndexCache(FrameIndexCache frameIndexCache) {
+        this.frameIndexCache = frameIndexCache;
+    }
+
+    public FrameIndexCache getFrameIndexCache() {
+        return frameIndexCache;
+    }
+
+    /**
+     * Returns the CPU time spent decoding the playing tracks.
+     *
+     * @return nanoseconds of CPU time.
+     */
+    public long getDecoderCpuTime() {
+        return decoderCpuTime;
+    }
+
+    /**
+     * Returns the CPU time spent decoding tracks being faded in.
+     *
+     * @return nanoseconds of CPU time.
+     */
+    public long getFadeDecoderCpuTime() {
+        return fadeDecoderCpuTime;
+    }
+
+    /**
+     * Opens and pre-decodes the given file in the background while the
+     * current track is playing. Has no effect unless gapless playback or
+     * crossfade is enabled.
+     *
+     * @param file the track that will follow the current one.
+     */
+    public void prepareNext(final File file) {
+        if ((!gaplessEnabled && crossfadeDuration <= 0) || file == null) {
+            return;
+        }
+        if (file.equals(nextSource)) {
+            return;
+        }
+        cancelNextTrack();
+        nextSource = file;
+        nextTrackFuture = prefetchService.submit(new Callable<NextTrack>() {
+
+            @Override
+            public NextTrack call() throws Exception {
+                NextTrack nextTrack = new NextTrack(file);
+                AudioInputStream sourceStream = AudioSystem.getAudioInputStream(file);
+                nextTrack.audioFileFormat = AudioSystem.getAudioFileFormat(file);
+                nextTrack.audioInputStream = getDecodedAudioInputStream(sourceStream);
+                attachFrameIndex(nextTrack.audioInputStream, file);
+                nextTrack.properties = getAudioProperties(nextTrack.audioFileFormat);
+                // Pre-decode the first block so the decoder is warmed up.
+                readLeadIn(nextTrack, true);
+                if (Thread.currentThread().isInterrupted()) {
+                    // Cancelled while opening.
+                    nextTrack.close();
+                    return null;
+                }
+                logger.info("Next track prepared: {}", file);
+                return nextTrack;
+            }
+        });
+    }
+
+    /**
+     * Discards the prepared next track, if any, and releases its stream.
+     */
+    protected void cancelNextTrack() {
+        Future<NextTrack> pending = nextTrackFuture;
+        nextTrackFuture = null;
+        nextSource = null;
+        if (pending != null) {
+            pending.cancel(true);
+            try {
+                NextTrack nextTrack = pending.get();
+                nextTrack.close();
+            } catch (Exception ex) {
+                // Not completed or failed, nothing to release.
+            }
+        }
+    }
+
+    /**
+     * Returns the prepared next track if it has been fully opened, else
+     * <code>null</code>.
+     *
+     * @param wait if <code>true</code> waits for a pending preparation.
+     * @return the prepared track or <code>null</code>.
+     */
+    protected NextTrack takeNextTrack(boolean wait) {
+        Future<NextTrack> pending = nextTrackFuture;
+        if (pending == null || (!wait && !pending.isDone())) {
+            return null;
+        }
+        nextTrackFuture = null;
+        nextSource = null;
+        try {
+            return pending.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            logger.error("Next track not available", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the audio stream with the prepared next track, when the
+     * opened data source matches it. This avoids opening and probing the
+     * same file twice.
+     *
+     * @return <code>true</code> if the prepared track was used.
+     */
+    protected boolean adoptNextTrack() {
+        if (nextSource == null) {
+            return false;
+        }
+        if (!nextSource.equals(audioSource)) {
+            cancelNextTrack();
+            return false;
+        }
+        NextTrack nextTrack = takeNextTrack(true);
+        if (nextTrack == null) {
+            return false;
+        }
+        swapTrack(nextTrack);
+        return true;
+    }
+
+    /**
+     * Makes the given prepared track the current one, both decoded and
+     * heard. Only called while the output thread is not playing.
+     *
+     * @param nextTrack a prepared track.
+     */
+    protected void swapTrack(NextTrack nextTrack) {
+        spliceTrack(nextTrack);
+        enterTrack(nextTrack);
+    }
+
+    /**
+     * Makes the given prepared track the one being decoded. The track
+     * before keeps being heard, and its stream open, until the output
+     * thread enters the new one.
+     *
+     * @param nextTrack a prepared track.
+     */
+    protected void spliceTrack(NextTrack nextTrack) {
+        nextTrack.previousStream = audioInputStream;
+        audioInputStream = nextTrack.audioInputStream;
+        prerollBuffer = nextTrack.preroll;
+        prerollOffset = nextTrack.prerollOffset;
+        prerollLength = nextTrack.prerollLength;
+        trackFrame = nextTrack.decodedFrames;
+        initSilenceTracking(nextTrack);
+        nextTrack.releasePrevious();
+    }
+
+    /**
+     * Makes the given spliced track the one heard. Called by the output
+     * thread when it plays the first block of the track.
+     *
+     * @param track a track spliced into the decoder.
+     */
+    protected void enterTrack(NextTrack track) {
+        audioSource = track.source;
+        audioFileFormat = track.audioFileFormat;
+        properties = track.properties;
+        playingStream = track.audioInputStream;
+        track.releasePrevious();
+        logger.info("Data source: {}", track.source);
+    }
+
+    /**
+     * Reads past the leading silence of the current track, freshly opened,
+     * and starts tracking its trailing silence.
+     *
+     * @throws PlayerException
+     */
+    protected void trimLeadingSilence() throws PlayerException {
+        if (audioInputStream == null) {
+            return;
+        }
+        NextTrack leadIn = new NextTrack(audioSource);
+        leadIn.audioInputStream = audioInputStream;
+        leadIn.properties = properties;
+        try {
+            readLeadIn(leadIn, false);
+        } catch (IOException ex) {
+            throw new PlayerException(ex);
+        }
+        prerollBuffer = leadIn.preroll;
+        prerollOffset = 0;
+        prerollLength = leadIn.prerollLength;
+        trackFrame = leadIn.decodedFrames;
+        initSilenceTracking(leadIn);
+    }
+
+    /**
+     * Reads the beginning of a track opened at its start into its preroll.
+     * When silence trimming is on, leading silence of at least the minimum
+     * length is skipped, directly if the cache knows where the audio starts
+     * and by decoding ahead otherwise.
+     *
+     * @param track the track.
+     * @param preroll <code>true</code> to decode a block ahead even if no
+     * silence has to be skipped.
+     * @throws IOException
+     */
+    protected void readLeadIn(NextTrack track, boolean preroll) throws IOException {
+        AudioInputStream stream = track.audioInputStream;
+        AudioFormat format = stream.getFormat();
+        if (silenceTrimEnabled && SampleProcessingChain.isSupported(format)) {
+            SilenceCache cache = silenceCache;
+            long[] range = (cache != null && track.source instanceof File)
+                    ? cache.get((File) track.source, silenceThreshold, silenceMinLength) : null;
+            if (range == null) {
+                scanLeadIn(track);
+                return;
+            }
+            track.endFrame = range[1];
+            if (range[0] > 0) {
+                long reached = seekStream(stream, range[0]);
+                track.startFrame = Math.max(0L, reached);
+                track.decodedFrames = track.startFrame;
+                logger.info("Skipped {} frames of leading silence", track.startFrame);
+            }
+        }
+        if (preroll) {
+            track.preroll = new byte[READ_BUFFER_SIZE];
+            int nBytesRead;
+            while (track.prerollLength < READ_BUFFER_SIZE && (nBytesRead = stream.read(track.preroll,
+                    track.prerollLength, READ_BUFFER_SIZE - track.prerollLength)) != -1) {
+                track.prerollLength += nBytesRead;
+            }
+        }
+    }
+
+    /**
+     * Decodes a track until its first audible frame. A silence shorter than
+     * the minimum length is kept in the preroll and played; a longer one is
+     * dropped as it is read, up to {@link #MAX_LEAD_IN}.
+     */
+    protected void scanLeadIn(NextTrack track) throws IOException {
+        AudioInputStream stream = track.audioInputStream;
+        AudioFormat format = stream.getFormat();
+        int frameSize = format.getFrameSize();
+        SilenceDetector detector = new SilenceDetector(format, silenceThreshold, silenceMinLength);
+        long maxFrames = Math.round(MAX_LEAD_IN * (double) format.getFrameRate() / 1000.0D);
+        byte[] block = new byte[READ_BUFFER_SIZE - READ_BUFFER_SIZE % frameSize];
+        byte[] held = new byte[(int) Math.min(Integer.MAX_VALUE - block.length,
+                detector.getMinFrames() * frameSize) + block.length];
+        int heldLength = 0;
+        long start = 0;
+        while (true) {
+            int length = 0;
+            int nBytesRead = 0;
+            while (length < block.length && (nBytesRead = stream.read(block, length, block.length - length)) != -1) {
+                length += nBytesRead;
+            }
+            length -= length % frameSize;
+            if (length == 0) {
+                // Silent to the end.
+                start = detector.getFrames();
+                heldLength = 0;
+                break;
+            }
+            int first = detector.process(block, length);
+            if (first >= 0) {
+                long audible = detector.getFrames() - length / frameSize + first;
+                if (audible >= detector.getMinFrames()) {
+                    start = audible;
+                    System.arraycopy(block, first * frameSize, held, 0, length - first * frameSize);
+                    heldLength = length - first * frameSize;
+                } else {
+                    System.arraycopy(block, 0, held, heldLength, length);
+                    heldLength += length;
+                }
+                break;
+            }
+            if (detector.getFrames() <= detector.getMinFrames()) {
+                // Maybe too short to trim, keep it.
+                System.arraycopy(block, 0, held, heldLength, length);
+                heldLength += length;
+            } else {
+                heldLength = 0;
+                if (detector.getFrames() >= maxFrames || nBytesRead == -1) {
+                    start = detector.getFrames();
+                    break;
+                }
+            }
+            if (nBytesRead == -1) {
+                break;
+            }
+        }
+        track.preroll = held;
+        track.prerollOffset = 0;
+        track.prerollLength = heldLength;
+        track.startFrame = start;
+        track.decodedFrames = start;
+        if (start > 0) {
+            logger.info("Skipped {} frames of leading silence", start);
+        }
+    }
+
+    /**
+     * Prepares the decoder for the silence of a track that becomes the
+     * current one: the end known from the cache, or a detector finding the
+     * trailing silence while it is decoded.
+     *
+     * @param track the track, whose lead-in has been read.
+     */
+    protected void initSilenceTracking(NextTrack track) {
+        silenceSource = track.source;
+        trackStartFrame = track.startFrame;
+        trackEndFrame = track.endFrame;
+        trackFrameLength = getTrackFrameLength(track.properties);
+        holdLength = 0;
+        silenceDetector = null;
+        AudioFormat format = audioInputStream.getFormat();
+        if (silenceTrimEnabled && trackEndFrame == AudioSystem.NOT_SPECIFIED
+                && track.source instanceof File && SampleProcessingChain.isSupported(format)) {
+            silenceDetector = new SilenceDetector(format, silenceThreshold, silenceMinLength);
+            silenceDetector.reset(trackFrame);
+        }
+    }
+
+    /**
+     * Ends the decoded track: the silence held back is dropped if it is long
+     * enough to be trimmed, and the audible range found is remembered.
+     *
+     * @return <code>false</code> if the decoder was stopped.
+     */
+    protected boolean endSilenceTracking() {
+        SilenceDetector detector = silenceDetector;
+        silenceDetector = null;
+        if (detector == null) {
+            return true;
+        }
+        boolean trailing = detector.getTrailingSilence() >= detector.getMinFrames();
+        if (holdLength > 0) {
+            if (trailing) {
+                logger.info("Trimmed {} bytes of trailing silence", holdLength);
+                holdLength = 0;
+            } else if (!publishHold(null)) {
+                return false;
+            }
+        }
+        SilenceCache cache = silenceCache;
+        if (cache != null && silenceSource instanceof File) {
+            long end = trailing ? detector.getAudibleEnd() : detector.getFrames();
+            cache.put((File) silenceSource, detector.getThreshold(), detector.getMinLength(), trackStartFrame, end);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a silent block out of the ring while it may turn out to be the
+     * trailing silence of the track.
+     *
+     * @return <code>true</code> if the block was held back.
+     */
+    protected boolean holdSilence(byte[] block, int length) {
+        if (holdLength + length > MAX_HOLD_BYTES) {
+            return false;
+        }
+        if (holdBuffer == null) {
+            holdBuffer = new byte[MAX_HOLD_BYTES];
+        }
+        System.arraycopy(block, 0, holdBuffer, holdLength, length);
+        holdLength += length;
+        return true;
+    }
+
+    /**
+     * Publishes the silence held back, which turned out to be followed by
+     * audio.
+     *
+     * @param block the claimed block to fill first, or <code>null</code> to
+     * claim one.
+     * @return <code>false</code> if the decoder was stopped.
+     */
+    protected boolean publishHold(byte[] block) {
+        for (int offset = 0; offset < holdLength;) {
+            byte[] target = (block != null) ? block : claimBlock();
+            block = null;
+            if (target == null) {
+                return false;
+            }
+            int count = Math.min(target.length, holdLength - offset);
+            System.arraycopy(holdBuffer, offset, target, 0, count);
+            ringBuffer.publish(count, false);
+            offset += count;
+        }
+        holdLength = 0;
+        return true;
+    }
+
+    /**
+     * Publishes the silence held back ahead of the block just read, then
+     * moves that block to a newly claimed one.
+     *
+     * @param block the claimed block holding the data just read.
+     * @param length the number of bytes read.
+     * @return the block now holding the data, or <code>null</code> if the
+     * decoder was stopped.
+     */
+    protected byte[] flushHold(byte[] block, int length) {
+        if (holdScratch == null || holdScratch.length < length) {
+            holdScratch = new byte[block.length];
+        }
+        System.arraycopy(block, 0, holdScratch, 0, length);
+        if (!publishHold(block)) {
+            return null;
+        }
+        byte[] target = claimBlock();
+        if (target != null) {
+            System.arraycopy(holdScratch, 0, target, 0, length);
+        }
+        return target;
+    }
+
+    /**
+     * Claims a block of the ring, waiting for space while decoding.
+     *
+     * @return the block, or <code>null</code> if the decoder was stopped.
+     */
+    protected byte[] claimBlock() {
+        while (decoding) {
+            byte[] block = ringBuffer.isFilled() ? null : ringBuffer.claim();
+            if (block != null) {
+                return block;
+            }
+            ringBuffer.awaitSpace(DECODER_WAIT_NANOS);
+        }
+        return null;
+    }
+
+    /**
+     * Splices the prepared next track into the decoder once the current
+     * one has been completely decoded. The line is kept open only if both
+     * tracks share the same audio format. The output thread enters the new
+     * track, and announces the transition, when it plays its first block.
+     *
+     * @return <code>true</code> if decoding continues with the next track.
+     */
+    protected boolean spliceNextTrack() {
+        if (!gaplessEnabled || sourceDataLine == null) {
+            return false;
+        }
+        Future<NextTrack> pending = nextTrackFuture;
+        if (pending == null || !pending.isDone()) {
+            return false;
+        }
+        NextTrack nextTrack = takeNextTrack(false);
+        if (nextTrack == null) {
+            return false;
+        }
+        if (!nextTrack.audioInputStream.getFormat().matches(audioInputStream.getFormat())) {
+            // Keep it prepared, the line will be reopened for it.
+            logger.info("Next track format differs, line will be reopened");
+            nextSource = nextTrack.source;
+            nextTrackFuture = CompletableFuture.completedFuture(nextTrack);
+            return false;
+        }
+        spliceTrack(nextTrack);
+        pendingTransition = nextTrack;
+        return true;
+    }
+
+    /**
+     * Returns the duration of the audio data written to the line but not
+     * yet played.
+     *
+     * @return microseconds of buffered audio.
+     */
+    protected long getBufferedMicroseconds() {
+        long micros = 0;
+        if (sourceDataLine != null) {
+            AudioFormat format = sourceDataLine.getFormat();
+            int bufferedBytes = sourceDataLine.getBufferSize() - sourceDataLine.available();
+            if (bufferedBytes > 0 && format.getFrameRate() > 0) {
+                micros = (long) (bufferedBytes / format.getFrameSize() * 1000000L / format.getFrameRate());
+            }
+        }
+        return micros;
+    }
+
+    /**
+     * Returns the silence gap measured between the last two tracks.
+     *
+     * @return the gap in milliseconds, or -1 (AudioSystem.NOT_SPECIFIED)
+     * if no track change has been measured yet.
+     */
+    public long getTrackGap() {
+        return trackGap;
+    }
+
     /**
      * Inits AudioInputStream and AudioFileFormat from the data source.
      * @throws PlayerException
@@ -206,64 +944,12 @@ public class AudioPlayer implements Callable<Void> {
                 } else if (audioSource instanceof URL) {
                     initAudioInputStream((URL) audioSource);
                 }
-                AudioFormat sourceAudioFormat = audioInputStream.getFormat();
-                logger.info("Source format: {}", sourceAudioFormat);
-                int nSampleSizeInBits = sourceAudioFormat.getSampleSizeInBits();
-                if (nSampleSizeInBits <= 0) {
-                    nSampleSizeInBits = 16;
-                }
-                if ((sourceAudioFormat.getEncoding() == AudioFormat.Encoding.ULAW) || (sourceAudioFormat.getEncoding() == AudioFormat.Encoding.ALAW)) {
-                    nSampleSizeInBits = 16;
-                }
-                if (nSampleSizeInBits != 8) {
-                    nSampleSizeInBits = 16;
-                }
-                AudioFormat targetAudioFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceAudioFormat.getSampleRate(), nSampleSizeInBits, sourceAudioFormat.getChannels(), sourceAudioFormat.getChannels() * (nSampleSizeInBits / 8), sourceAudioFormat.getSampleRate(), false);
-                logger.info("Target format: {}", targetAudioFormat);
-                // Create decoded stream.
-                audioInputStream = AudioSystem.getAudioInputStream(targetAudioFormat, audioInputStream);
-                if (audioFileFormat instanceof TAudioFileFormat) {
-                    // Tritonus SPI compliant audio file format.
-                    properties = ((TAudioFileFormat) audioFileFormat).properties();
-                    // Clone the Map because it is not mutable.
-                    properties = deepCopy(properties);
-                } else {
-                    properties = new HashMap<String, Object>();
-                }
-                // Add JavaSound properties.
-                if (audioFileFormat.getByteLength() > 0) {
-                    properties.put("audio.length.bytes", new Integer(audioFileFormat.getByteLength()));
-                }
-                if (audioFileFormat.getFrameLength() > 0) {
-                    properties.put("audio.length.frames", new Integer(audioFileFormat.getFrameLength()));
-                }
-                if (audioFileFormat.getType() != null) {
-                    properties.put("audio.type", audioFileFormat.getType().toString());
-                }
-                // Audio format.
-                AudioFormat audioFormat = audioFileFormat.getFormat();
-                if (audioFormat.getFrameRate() > 0) {
-                    properties.put("audio.framerate.fps", new Float(audioFormat.getFrameRate()));
-                }
-                if (audioFormat.getFrameSize() > 0) {
-                    properties.put("audio.framesize.bytes", new Integer(audioFormat.getFrameSize()));
-                }
-                if (audioFormat.getSampleRate() > 0) {
-                    properties.put("audio.samplerate.hz", new Float(audioFormat.getSampleRate()));
-                }
-                if (audioFormat.getSampleSizeInBits() > 0) {
-                    properties.put("audio.samplesize.bits", new Integer(audioFormat.getSampleSizeInBits()));
-                }
-                if (audioFormat.getChannels() > 0) {
-                    properties.put("audio.channels", new Integer(audioFormat.getChannels()));
-                }
-                if (audioFormat instanceof TAudioFormat) {
-                    // Tritonus SPI compliant audio format.
-                    properties.putAll(((TAudioFormat) audioFormat).properties());
-                }
-                for (String key : properties.keySet()) {
-                    logger.info("Audio Format Properties: {} = {}", key, properties.get(key));
-                }
+                audioInputStream = getDecodedAudioInputStream(audioInputStream);
+                attachFrameIndex(audioInputStream, audioSource);
+                properties = getAudioProperties(audioFileFormat);
+                playingStream = audioInputStream;
+                trackFrame = 0;
+                trackFrameLength = getTrackFrameLength();
             } catch (UnsupportedAudioFileException ex) {
                 throw new PlayerException(ex);
             } catch (IOException ex) {
@@ -272,6 +958,105 @@ public class AudioPlayer implements Callable<Void> {
         }
     }
 
+    /**
+     * Creates a PCM stream decoded from the given source stream.
+     * @param sourceStream
+     * @return the decoded audio stream
+     */
+    protected AudioInputStream getDecodedAudioInputStream(AudioInputStream sourceStream) {
+        AudioFormat sourceAudioFormat = sourceStream.getFormat();
+        logger.info("Source format: {}", sourceAudioFormat);
+        int nSampleSizeInBits = sourceAudioFormat.getSampleSizeInBits();
+        if (nSampleSizeInBits <= 0) {
+            nSampleSizeInBits = 16;
+        }
+        if ((sourceAudioFormat.getEncoding() == AudioFormat.Encoding.ULAW) || (sourceAudioFormat.getEncoding() == AudioFormat.Encoding.ALAW)) {
+            nSampleSizeInBits = 16;
+        }
+        if (nSampleSizeInBits > 16) {
+            // Keep the resolution of high definition sources for processing.
+            nSampleSizeInBits = 24;
+        } else if (nSampleSizeInBits != 8) {
+            nSampleSizeInBits = 16;
+        }
+        if (nSampleSizeInBits == 24) {
+            try {
+                return AudioSystem.getAudioInputStream(getPcmFormat(sourceAudioFormat, 24), sourceStream);
+            } catch (IllegalArgumentException ex) {
+                logger.info("No 24 bit decoder, falling back to 16 bit");
+                nSampleSizeInBits = 16;
+            }
+        }
+        // Create decoded stream.
+        return AudioSystem.getAudioInputStream(getPcmFormat(sourceAudioFormat, nSampleSizeInBits), sourceStream);
+    }
+
+    /**
+     * Returns the signed little-endian PCM format of the given sample size
+     * with the rate and channels of the given format.
+     * @param format
+     * @param sampleSizeInBits
+     * @return a PCM audio format
+     */
+    protected AudioFormat getPcmFormat(AudioFormat format, int sampleSizeInBits) {
+        AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), sampleSizeInBits, format.getChannels(), format.getChannels() * (sampleSizeInBits / 8), format.getSampleRate(), false);
+        logger.info("Target format: {}", pcmFormat);
+        return pcmFormat;
+    }
+
+    /**
+     * Collects the properties of the given audio file format.
+     * @param fileFormat
+     * @return a mutable map of properties
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getAudioProperties(AudioFileFormat fileFormat) {
+        Map<String, Object> audioProperties;
+        if (fileFormat instanceof TAudioFileFormat) {
+            // Tritonus SPI compliant audio file format.
+            audioProperties = ((TAudioFileFormat) fileFormat).properties();
+            // Clone the Map because it is not mutable.
+            audioProperties = deepCopy(audioProperties);
+        } else {
+            audioProperties = new HashMap<String, Object>();
+        }
+        // Add JavaSound properties.
+        if (fileFormat.getByteLength() > 0) {
+            audioProperties.put("audio.length.bytes", new Integer(fileFormat.getByteLength()));
+        }
+        if (fileFormat.getFrameLength() > 0) {
+            audioProperties.put("audio.length.frames", new Integer(fileFormat.getFrameLength()));
+        }
+        if (fileFormat.getType() != null) {
+            audioProperties.put("audio.type", fileFormat.getType().toString());
+        }
+        // Audio format.
+        AudioFormat audioFormat = fileFormat.getFormat();
+        if (audioFormat.getFrameRate() > 0) {
+            audioProperties.put("audio.framerate.fps", new Float(audioFormat.getFrameRate()));
+        }
+        if (audioFormat.getFrameSize() > 0) {
+            audioProperties.put("audio.framesize.bytes", new Integer(audioFormat.getFrameSize()));
+        }
+        if (audioFormat.getSampleRate() > 0) {
+            audioProperties.put("audio.samplerate.hz", new Float(audioFormat.getSampleRate()));
+        }
+        if (audioFormat.getSampleSizeInBits() > 0) {
+            audioProperties.put("audio.samplesize.bits", new Integer(audioFormat.getSampleSizeInBits()));
+        }
+        if (audioFormat.getChannels() > 0) {
+            audioProperties.put("audio.channels", new Integer(audioFormat.getChannels()));
+        }
+        if (audioFormat instanceof TAudioFormat) {
+            // Tritonus SPI compliant audio format.
+            audioProperties.putAll(((TAudioFormat) audioFormat).properties());
+        }
+        for (String key : audioProperties.keySet()) {
+            logger.info("Audio Format Properties: {} = {}", key, audioProperties.get(key));
+        }
+        return audioProperties;
+    }
+
     /**
      * Inits Audio resources from file.
      * @param file
@@ -302,24 +1087,14 @@ public class AudioPlayer implements Callable<Void> {
         if (sourceDataLine == null) {
             try {
                 logger.info("Create Source Data Line");
-                AudioFormat audioFormat = audioInputStream.getFormat();
-                DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat, AudioSystem.NOT_SPECIFIED);
-                if (!AudioSystem.isLineSupported(lineInfo)) {
-                    throw new PlayerException(lineInfo + " is not supported");
-                }
-
                 if (mixerName == null) {
                     // Primary Sound Driver
                     mixerName = getMixers().get(0);
                 }
                 Mixer mixer = getMixer(mixerName);
-                if (mixer != null) {
-                    logger.info("Mixer: {}", mixer.getMixerInfo().toString());
-                    sourceDataLine = (SourceDataLine) mixer.getLine(lineInfo);
-                } else {
-                    sourceDataLine = (SourceDataLine) AudioSystem.getLine(lineInfo);
-                    mixerName = null;
-                }
+                AudioFormat audioFormat = getLineFormat(mixer, audioInputStream.getFormat());
+                DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, audioFormat, AudioSystem.NOT_SPECIFIED);
+                sourceDataLine = getSourceDataLine(mixer, lineInfo);
 
                 sourceDataLine.addLineListener(dss);
 
@@ -329,22 +1104,16 @@ public class AudioPlayer implements Callable<Void> {
                 if (bufferSize <= 0) {
                     bufferSize = sourceDataLine.getBufferSize();
                 }
-                sourceDataLine.open(audioFormat, bufferSize);
+                sourceDataLine.open(audioFormat, getLineBufferSize(audioFormat));
+                lineResizePending = false;
+                lineResizeDeferred = false;
 
                 logger.info("Line BufferSize: {}", sourceDataLine.getBufferSize());
                 for (Control c : sourceDataLine.getControls()) {
                     logger.info("Line Controls: {}", c);
                 }
 
-                if (sourceDataLine.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
-                    gainControl = (FloatControl) sourceDataLine.getControl(FloatControl.Type.MASTER_GAIN);
-                }
-                if (sourceDataLine.isControlSupported(FloatControl.Type.PAN)) {
-                    panControl = (FloatControl) sourceDataLine.getControl(FloatControl.Type.PAN);
-                }
-                if (sourceDataLine.isControlSupported(BooleanControl.Type.MUTE)) {
-                    muteControl = (BooleanControl) sourceDataLine.getControl(BooleanControl.Type.MUTE);
-                }
+                processingChain.init(audioInputStream.getFormat(), sourceDataLine.getFormat(), READ_BUFFER_SIZE);
                 sourceDataLine.start();
                 state = INIT;
                 future = execService.submit(this);
@@ -355,6 +1124,119 @@ public class AudioPlayer implements Callable<Void> {
         }
     }
 
+    /**
+     * Gets a line, not yet open, from the given mixer.
+     * @param mixer the selected mixer or <code>null</code> for the default.
+     * @param lineInfo the line wanted.
+     * @return the line.
+     * @throws LineUnavailableException
+     * @throws PlayerException if no mixer supports the line.
+     */
+    protected SourceDataLine getSourceDataLine(Mixer mixer, DataLine.Info lineInfo)
+            throws LineUnavailableException, PlayerException {
+        if (!AudioSystem.isLineSupported(lineInfo)) {
+            throw new PlayerException(lineInfo + " is not supported");
+        }
+        if (mixer != null) {
+            logger.info("Mixer: {}", mixer.getMixerInfo().toString());
+            return (SourceDataLine) mixer.getLine(lineInfo);
+        }
+        mixerName = null;
+        return (SourceDataLine) AudioSystem.getLine(lineInfo);
+    }
+
+    /**
+     * Returns the format to open the line with: the decoded format when the
+     * mixer accepts it, else 16 bit signed PCM, which every mixer supports.
+     * The processing chain converts between the two.
+     * @param mixer the selected mixer or <code>null</code> for the default.
+     * @param decodedFormat the format of the decoded stream.
+     * @return the line audio format.
+     */
+    protected AudioFormat getLineFormat(Mixer mixer, AudioFormat decodedFormat) {
+        DataLine.Info lineInfo = new DataLine.Info(SourceDataLine.class, decodedFormat, AudioSystem.NOT_SPECIFIED);
+        boolean supported = (mixer != null) ? mixer.isLineSupported(lineInfo) : AudioSystem.isLineSupported(lineInfo);
+        if (supported && SampleProcessingChain.isSupported(decodedFormat)) {
+            return decodedFormat;
+        }
+        return getPcmFormat(decodedFormat, 16);
+    }
+
+    /**
+     * Returns the size to open the line with: the configured buffer size,
+     * or in low-latency mode the smallest one holding the current line
+     * latency.
+     * @param format the line audio format.
+     * @return the buffer size in bytes.
+     */
+    protected int getLineBufferSize(AudioFormat format) {
+        int frameSize = format.getFrameSize();
+        float frameRate = format.getFrameRate();
+        if (!lowLatencyEnabled || frameSize <= 0 || frameRate <= 0) {
+            return bufferSize;
+        }
+        long frames = Math.max(1L, Math.round(frameRate * lineLatency / 1000.0D));
+        return (int) (frames * frameSize);
+    }
+
+    /**
+     * Reopens the line with the buffer size for the current latency. The
+     * same line is closed and opened again, without going back to the
+     * mixer, and whatever it still holds is played out first.
+     */
+    protected void resizeLine() {
+        lineResizePending = false;
+        lineResizeDeferred = false;
+        AudioFormat audioFormat = sourceDataLine.getFormat();
+        int size = getLineBufferSize(audioFormat);
+        if (size <= 0 || size == sourceDataLine.getBufferSize()) {
+            return;
+        }
+        boolean running = sourceDataLine.isRunning();
+        sourceDataLine.drain();
+        // The line position restarts from zero once reopened.
+        oldPosition -= getPosition();
+        sourceDataLine.stop();
+        sourceDataLine.close();
+        try {
+            sourceDataLine.open(audioFormat, size);
+        } catch (LineUnavailableException ex) {
+            logger.error("Cannot resize line, falling back to the default size", ex);
+            try {
+                sourceDataLine.open(audioFormat);
+            } catch (LineUnavailableException e) {
+                logger.error(e.getMessage(), e);
+                state = STOP;
+                return;
+            }
+        }
+        logger.info("Line BufferSize: {}", sourceDataLine.getBufferSize());
+        lineFed = false;
+        if (running) {
+            sourceDataLine.start();
+        }
+    }
+
+    /**
+     * Counts an underrun when the line has played out everything written to
+     * it, and in low-latency mode raises the latency to avoid the next one.
+     * Resizing drains and reopens the line, a second gap, so the larger
+     * buffer is only opened when the line next stops: on pause, seek or
+     * when the next track opens a new line. The latency is raised once per
+     * resize.
+     */
+    protected void checkLineUnderrun() {
+        if (lineFed && sourceDataLine.available() >= sourceDataLine.getBufferSize()) {
+            lineUnderruns++;
+            if (lowLatencyEnabled && !lineResizeDeferred && lineLatency < MAX_LATENCY) {
+                lineLatency = Math.min(MAX_LATENCY, lineLatency * 3 / 2 + 1);
+                lineResizeDeferred = true;
+                logger.info("Line underrun, latency raised to {} ms", lineLatency);
+            }
+        }
+        lineFed = true;
+    }
+
     /**
      * Set SourceDataLine buffer size. It affects audio latency
      * (the delay between SourceDataLine.write(data) and real sound).
@@ -377,6 +1259,140 @@ public class AudioPlayer implements Callable<Void> {
         return bufferSize;
     }
 
+    /**
+     * Enables or disables low-latency output. When enabled the line buffer
+     * is sized from the latency target instead of the buffer size, and
+     * grows each time the line runs dry. Applies to the playing line.
+     * @param lowLatencyEnabled
+     */
+    public void setLowLatencyEnabled(boolean lowLatencyEnabled) {
+        this.lowLatencyEnabled = lowLatencyEnabled;
+        lineLatency = latencyTarget;
+        lineResizePending = true;
+    }
+
+    public boolean isLowLatencyEnabled() {
+        return lowLatencyEnabled;
+    }
+
+    /**
+     * Set the line latency aimed at in low-latency mode.
+     * @param latencyTarget the latency in milliseconds, up to
+     * {@link #MAX_LATENCY}.
+     */
+    public void setLatencyTarget(int latencyTarget) {
+        this.latencyTarget = Math.max(1, Math.min(MAX_LATENCY, latencyTarget));
+        lineLatency = this.latencyTarget;
+        lineResizePending = lowLatencyEnabled;
+    }
+
+    public int getLatencyTarget() {
+        return latencyTarget;
+    }
+
+    /**
+     * Returns the latency of the line buffer, which in low-latency mode may
+     * have grown past the target after underruns.
+     * @return the latency in milliseconds.
+     */
+    public int getLineLatency() {
+        SourceDataLine line = sourceDataLine;
+        if (line != null && line.isOpen()) {
+            AudioFormat format = line.getFormat();
+            if (format.getFrameSize() > 0 && format.getFrameRate() > 0) {
+                return Math.round(1000.0F * line.getBufferSize() / format.getFrameSize() / format.getFrameRate());
+            }
+        }
+        return lowLatencyEnabled ? lineLatency : AudioSystem.NOT_SPECIFIED;
+    }
+
+    /**
+     * Returns how many times the line played out all the data written to
+     * it while playing, leaving a gap in the audio.
+     * @return the line underrun count.
+     */
+    public long getLineUnderruns() {
+        return lineUnderruns;
+    }
+
+    /**
+     * Set the number of decoded blocks the ring buffer between the decoder
+     * and the line can hold. Takes effect with the next opened line.
+     * @param capacity the ring capacity, at least 2 blocks.
+     */
+    public void setRingBufferCapacity(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 2");
+        }
+        ringBufferCapacity = capacity;
+        ringBufferLowWatermark = capacity / 2;
+        ringBufferHighWatermark = capacity;
+    }
+
+    public int getRingBufferCapacity() {
+        return ringBufferCapacity;
+    }
+
+    /**
+     * Set the ring buffer fill levels, in blocks. The decoder pauses once
+     * the high watermark is reached and resumes when the ring drains to
+     * the low watermark. Playback starts after a seek once the low
+     * watermark is filled.
+     * @param lowWatermark
+     * @param highWatermark at most the ring capacity.
+     */
+    public void setRingBufferWatermarks(int lowWatermark, int highWatermark) {
+        if (lowWatermark < 0 || highWatermark > ringBufferCapacity || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Invalid ring buffer watermarks");
+        }
+        ringBufferLowWatermark = lowWatermark;
+        ringBufferHighWatermark = highWatermark;
+        PcmRingBuffer ring = ringBuffer;
+        if (ring != null && ring.getCapacity() == ringBufferCapacity) {
+            ring.setWatermarks(lowWatermark, highWatermark);
+        }
+    }
+
+    public int getRingBufferLowWatermark() {
+        return ringBufferLowWatermark;
+    }
+
+    public int getRingBufferHighWatermark() {
+        return ringBufferHighWatermark;
+    }
+
+    /**
+     * Returns the number of decoded blocks waiting to be written to the line.
+     * @return the ring buffer fill level in blocks.
+     */
+    public int getRingBufferLevel() {
+        PcmRingBuffer ring = ringBuffer;
+        return (ring != null) ? ring.size() : 0;
+    }
+
+    /**
+     * Returns how many times the output found the ring buffer empty before
+     * the end of the stream, i.e. the decoder could not keep up.
+     * @return the ring buffer underrun count.
+     */
+    public long getRingBufferUnderruns() {
+        return ringBufferUnderruns;
+    }
+
+    /**
+     * Set how often playback progress is published to the listeners. The
+     * progress event is reused, listeners must not keep a reference to it.
+     * @param progressInterval the interval in milliseconds, 0 to publish
+     * after every written block.
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = Math.max(0L, progressInterval);
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
     /**
      * Deep copy of a Map.
      * @param src
@@ -435,6 +1451,10 @@ public class AudioPlayer implements Callable<Void> {
     }
 
     public long getDuration() {
+        return getDuration(properties);
+    }
+
+    protected long getDuration(Map<String, Object> properties) {
         long duration = AudioSystem.NOT_SPECIFIED;
         if (properties.containsKey("duration")) {
             duration = ((Long) properties.get("duration")).longValue();
@@ -458,11 +1478,11 @@ public class AudioPlayer implements Callable<Void> {
         int positionByte = AudioSystem.NOT_SPECIFIED;
         if (properties != null) {
             if (properties.containsKey("mp3.position.byte")) {
-                positionByte = ((Integer) properties.get("mp3.position.byte")).intValue();
+                positionByte = ((Number) properties.get("mp3.position.byte")).intValue();
                 return positionByte;
             }
             if (properties.containsKey("ogg.position.byte")) {
-                positionByte = ((Integer) properties.get("ogg.position.byte")).intValue();
+                positionByte = ((Number) properties.get("ogg.position.byte")).intValue();
                 return positionByte;
             }
         }
@@ -507,30 +1527,32 @@ public class AudioPlayer implements Callable<Void> {
     }
 
     /**
-     * Sets Gain value.
-     * @param gain a value bitween -1.0 and +1.0
+     * Sets Gain value. The gain is applied in software by the processing
+     * chain, so it works whatever the mixer controls are.
+     * @param gain a linear value between 0.0 and 1.0
      * @throws PlayerException
      */
     public void setGain(float gain) throws PlayerException {
-        if (gainControl != null) {
-            double minGain = gainControl.getMinimum();
-            double maxGain = gainControl.getMaximum();
-            double ampGain = ((10.0f / 20.0f) * maxGain) - minGain;
-            double cste = Math.log(10.0) / 20;
-            double value = minGain + (1 / cste) * Math.log(1 + (Math.exp(cste * ampGain) - 1) * gain);
-            gainControl.setValue((float) value);
-            logger.info("{}", gainControl.toString());
-        } else {
-            throw new PlayerException("Gain control not supported");
-        }
+        processingChain.getGainProcessor().setGain(gain);
+        logger.debug("Gain: {}", gain);
     }
 
     public float getGain() {
-        float gain = 0.0f;
-        if (gainControl != null) {
-            gain = gainControl.getValue();
-        }
-        return gain;
+        return processingChain.getGainProcessor().getGain();
+    }
+
+    /**
+     * Sets the loudness normalization factor of the current track, applied
+     * on top of the gain.
+     * @param replayGain a linear factor, 1.0 for none
+     */
+    public void setReplayGain(float replayGain) {
+        processingChain.getGainProcessor().setReplayGain(replayGain);
+        logger.debug("Replay gain: {}", replayGain);
+    }
+
+    public float getReplayGain() {
+        return processingChain.getGainProcessor().getReplayGain();
     }
 
     /**
@@ -539,20 +1561,12 @@ public class AudioPlayer implements Callable<Void> {
      * @throws PlayerException
      */
     public void setPan(float pan) throws PlayerException {
-        if (panControl != null) {
-            panControl.setValue(pan);
-            logger.info("{}", panControl.toString());
-        } else {
-            throw new PlayerException("Pan control not supported");
-        }
+        processingChain.getGainProcessor().setPan(pan);
+        logger.debug("Pan: {}", pan);
     }
 
     public float getPan() {
-        float pan = 0.0f;
-        if (panControl != null) {
-            pan = panControl.getValue();
-        }
-        return pan;
+        return processingChain.getGainProcessor().getPan();
     }
 
     /**
@@ -561,20 +1575,31 @@ public class AudioPlayer implements Callable<Void> {
      * @throws PlayerException
      */
     public void setMuted(boolean mute) throws PlayerException {
-        if (muteControl != null) {
-            muteControl.setValue(mute);
-            logger.info("{}", muteControl.toString());
-        } else {
-            throw new PlayerException("Mute control not supported");
-        }
+        processingChain.getGainProcessor().setMuted(mute);
+        logger.debug("Mute: {}", mute);
     }
 
     public boolean isMuted() {
-        boolean muted = false;
-        if (muteControl != null) {
-            muted = muteControl.getValue();
-        }
-        return muted;
+        return processingChain.getGainProcessor().isMuted();
+    }
+
+    /**
+     * Returns the floating-point chain the decoded audio goes through
+     * before reaching the line. Stages added to it apply to the playing
+     * track right away.
+     * @return the sample processing chain.
+     */
+    public SampleProcessingChain getProcessingChain() {
+        return processingChain;
+    }
+
+    /**
+     * Returns the equalizer stage of the processing chain, disabled by
+     * default.
+     * @return the equalizer.
+     */
+    public EqualizerProcessor getEqualizer() {
+        return equalizer;
     }
 
     public long getPosition() {
@@ -595,68 +1620,623 @@ public class AudioPlayer implements Callable<Void> {
 
     @Override
     public Void call() throws PlayerException {
-        logger.info("Decoding thread started");
-        int nBytesRead = 0;
-        int audioDataLength = READ_BUFFER_SIZE;
-        ByteBuffer audioDataBuffer = ByteBuffer.allocate(audioDataLength);
-        audioDataBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        logger.info("Output thread started");
+        boolean endOfMedia = false;
+        boolean prebuffering = true;
+        boolean starved = false;
+        IOException decodeError = null;
         lock.lock();
         try {
-            while ((nBytesRead != -1) && (state != STOP) && (state != SEEK) && (state != AudioSystem.NOT_SPECIFIED)) {
-                try {
-                    if (state == PLAY) {
-                        int toRead = audioDataLength;
-                        int totalRead = 0;
-                        while (toRead > 0 && (nBytesRead = audioInputStream.read(audioDataBuffer.array(), totalRead, toRead)) != -1) {
-                            totalRead += nBytesRead;
-                            toRead -= nBytesRead;
+            outputRunning = true;
+            lineFed = false;
+            initRingBuffer();
+            startDecoder();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // Blocks are written without the lock, control calls only take it
+            // while the output thread is parked.
+            while (!endOfMedia && (state != STOP) && (state != SEEK) && (state != AudioSystem.NOT_SPECIFIED)) {
+                if (state == PLAY) {
+                    if (prebuffering) {
+                        // Give the decoder a head start after opening or seeking.
+                        if (!ringBuffer.awaitFill(ringBuffer.getLowWatermark(), OUTPUT_WAIT_NANOS)) {
+                            continue;
                         }
-                        if (totalRead > 0) {
-                            byte[] trimBuffer = audioDataBuffer.array();
-                            if (totalRead < trimBuffer.length) {
-                                trimBuffer = new byte[totalRead];
-                                System.arraycopy(audioDataBuffer.array(), 0, trimBuffer, 0, totalRead);
+                        prebuffering = false;
+                    }
+                    byte[] block = ringBuffer.peek();
+                    if (block == null) {
+                        if (ringBuffer.isEndOfStream()) {
+                            decodeError = decoderException;
+                            if (decodeError != null) {
+                                break;
                             }
-                            sourceDataLine.write(trimBuffer, 0, totalRead);
-                            dss.writeAudioData(trimBuffer, 0, totalRead);
-                            for (PlaybackListener pl : listeners) {
-                                PlaybackEvent pe = new PlaybackEvent(this, Playback.PLAYING, getPosition() - oldPosition, emptyMap);
-                                if (audioInputStream instanceof PropertiesContainer) {
-                                    // Pass audio parameters such as instant bitrate, ...
-                                    pe.setProperties(((PropertiesContainer) audioInputStream).properties());
-                                }
-                                pl.playbackProgress(pe);
+                            endOfMedia = true;
+                        } else {
+                            if (!starved) {
+                                starved = true;
+                                ringBufferUnderruns++;
                             }
+                            ringBuffer.awaitFill(1, OUTPUT_WAIT_NANOS);
+                        }
+                        continue;
+                    }
+                    starved = false;
+                    int length = ringBuffer.peekLength();
+                    if (ringBuffer.peekTrackStart()) {
+                        // First block of a track spliced in by the decoder.
+                        NextTrack incoming = pendingTransition;
+                        if (incoming != null) {
+                            // The new track is heard from now on.
+                            pendingTransition = null;
+                            enterTrack(incoming);
+                        }
+                        trackEndTime = System.nanoTime() + getBufferedMicroseconds() * 1000L;
+                        oldPosition = getPosition() + getBufferedMicroseconds();
+                        notifyAudioEvent(Playback.TRANSITION, properties);
+                    }
+                    measureTrackGap();
+                    if (lineResizePending) {
+                        // The line is replaced, keep play() off it meanwhile.
+                        lock.lock();
+                        try {
+                            resizeLine();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    checkLineUnderrun();
+                    length = processingChain.process(block, length);
+                    byte[] output = processingChain.getOutput();
+                    sourceDataLine.write(output, 0, length);
+                    dss.writeAudioData(output, 0, length);
+                    ringBuffer.release();
+                    notifyProgress();
+                } else if (state == INIT || state == PAUSE) {
+                    lock.lock();
+                    try {
+                        // play() may have come first, it signals with the lock held.
+                        if (state != INIT && state != PAUSE) {
+                            continue;
                         }
-                    } else if (state == INIT || state == PAUSE) {
                         if (sourceDataLine != null && sourceDataLine.isRunning()) {
                             sourceDataLine.flush();
                             sourceDataLine.stop();
                         }
+                        if (lineResizeDeferred && sourceDataLine != null) {
+                            // Nothing left to play out, the line can grow now.
+                            resizeLine();
+                        }
+                        lineFed = false;
+                        outputParked = true;
+                        parkedCondition.signalAll();
                         pauseCondition.awaitUninterruptibly();
+                        outputParked = false;
+                    } finally {
+                        lock.unlock();
                     }
-                } catch (IOException ex) {
-                    logger.error("Decoder Exception: ", ex);
-                    state = STOP;
-                    notifyEvent(Playback.STOPPED);
-                    throw new PlayerException(ex);
+                    // The ring may have been refilled from a new position.
+                    prebuffering = true;
+                    nextProgressTime = 0L;
                 }
             }
-            if (sourceDataLine != null) {
-                sourceDataLine.flush();
-                sourceDataLine.stop();
-                sourceDataLine.close();
-                sourceDataLine = null;
+        } finally {
+            lock.lock();
+            try {
+                try {
+                    stopDecoder();
+                    discardFade();
+                    if (decodeError != null) {
+                        logger.error("Decoder Exception: ", decodeError);
+                        state = STOP;
+                        notifyAudioEvent(Playback.STOPPED, emptyMap);
+                    }
+                    if (sourceDataLine != null) {
+                        if (endOfMedia) {
+                            // Let the end of the track play out.
+                            trackEndTime = System.nanoTime() + getBufferedMicroseconds() * 1000L;
+                            sourceDataLine.drain();
+                        } else {
+                            sourceDataLine.flush();
+                        }
+                        sourceDataLine.stop();
+                        sourceDataLine.close();
+                        sourceDataLine = null;
+                    }
+                    closeStream();
+                    if (endOfMedia) {
+                        notifyAudioEvent(Playback.EOM, emptyMap);
+                    }
+                } finally {
+                    outputRunning = false;
+                    parkedCondition.signalAll();
+                }
+            } finally {
+                lock.unlock();
             }
-            closeStream();
-            if (nBytesRead == -1) {
-                notifyEvent(Playback.EOM);
+        }
+        logger.info("Output thread completed");
+        if (decodeError != null) {
+            throw new PlayerException(decodeError);
+        }
+        return null;
+    }
+
+    /**
+     * Waits, with the lock held, until the output thread is parked or has
+     * completed, so that the line and the decoder can be touched safely.
+     */
+    protected void awaitOutputParked() {
+        while (outputRunning && !outputParked) {
+            parkedCondition.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Publishes the playback position to the listeners, at most once per
+     * progress interval. The event dispatcher delivers it, so listeners never
+     * run on the output thread.
+     */
+    protected void notifyProgress() {
+        long now = System.nanoTime();
+        if (now - nextProgressTime < 0L) {
+            return;
+        }
+        nextProgressTime = now + progressInterval * 1000000L;
+        if (!listeners.isEmpty()) {
+            eventDispatcher.publishProgress(getPosition() - oldPosition);
+        }
+    }
+
+    /**
+     * Returns the properties passed with progress events. Called from the
+     * event dispatcher thread, once per delivered event, so the stream boxes
+     * its values there rather than on the output thread.
+     *
+     * @return audio parameters such as instant bitrate, ...
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getProgressProperties() {
+        AudioInputStream stream = playingStream;
+        if (stream instanceof PropertiesContainer) {
+            return ((PropertiesContainer) stream).properties();
+        }
+        return emptyMap;
+    }
+
+    /**
+     * Creates the ring buffer between the decoder and the output thread, or
+     * empties the existing one if its capacity has not changed.
+     */
+    protected void initRingBuffer() {
+        if (ringBuffer == null || ringBuffer.getCapacity() != ringBufferCapacity) {
+            ringBuffer = new PcmRingBuffer(ringBufferCapacity, READ_BUFFER_SIZE);
+        }
+        ringBuffer.setWatermarks(ringBufferLowWatermark, ringBufferHighWatermark);
+        ringBuffer.clear();
+        if (fadeRingBuffer == null || fadeRingBuffer.getCapacity() != ringBufferCapacity) {
+            fadeRingBuffer = new PcmRingBuffer(ringBufferCapacity, READ_BUFFER_SIZE);
+            fadeBlock = new byte[READ_BUFFER_SIZE];
+        }
+        fadeRingBuffer.setWatermarks(ringBufferLowWatermark, ringBufferHighWatermark);
+    }
+
+    /**
+     * Starts decoding the current audio stream into the ring buffer.
+     */
+    protected void startDecoder() {
+        decoderException = null;
+        decoding = true;
+        decoderFuture = decoderService.submit(this::decode);
+    }
+
+    /**
+     * Stops the decoder thread and waits for it to finish, so the audio
+     * stream and the ring buffer can be safely reset.
+     */
+    protected void stopDecoder() {
+        decoding = false;
+        Future<?> pending = decoderFuture;
+        if (pending != null) {
+            ringBuffer.wakeProducer();
+            try {
+                pending.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.error(ex.getMessage(), ex);
             }
-        } finally {
-            lock.unlock();
+            decoderFuture = null;
+        }
+        stopFadeDecoder();
+    }
+
+    /**
+     * Decodes the audio stream into the ring buffer ahead of the output
+     * thread, pausing whenever the ring reaches its high watermark. Near
+     * the end of a track the next one is mixed in when crossfade is on.
+     */
+    protected void decode() {
+        logger.info("Decoding thread started");
+        boolean trackStart = false;
+        int nBytesRead = 0;
+        int frameSize = audioInputStream.getFormat().getFrameSize();
+        long cpuTime = getThreadCpuTime();
+        try {
+            while (decoding) {
+                long now = getThreadCpuTime();
+                decoderCpuTime += now - cpuTime;
+                cpuTime = now;
+                byte[] block = ringBuffer.isFilled() ? null : ringBuffer.claim();
+                if (block == null) {
+                    ringBuffer.awaitSpace(DECODER_WAIT_NANOS);
+                    continue;
+                }
+                int toRead = block.length;
+                int totalRead = 0;
+                if (prerollLength > 0) {
+                    // Data already decoded while opening this track.
+                    int count = Math.min(prerollLength, toRead);
+                    System.arraycopy(prerollBuffer, prerollOffset, block, 0, count);
+                    totalRead = count;
+                    toRead -= count;
+                    prerollOffset += count;
+                    prerollLength -= count;
+                    if (prerollLength == 0) {
+                        prerollOffset = 0;
+                        prerollBuffer = null;
+                    }
+                }
+                while (toRead > 0 && (nBytesRead = audioInputStream.read(block, totalRead, toRead)) != -1) {
+                    totalRead += nBytesRead;
+                    toRead -= nBytesRead;
+                }
+                if (silenceTrimEnabled && trackEndFrame > 0 && trackFrame + totalRead / frameSize >= trackEndFrame) {
+                    // Only trailing silence is left.
+                    totalRead = (int) Math.max(0L, trackEndFrame - trackFrame) * frameSize;
+                    nBytesRead = -1;
+                }
+                long blockFrame = trackFrame;
+                trackFrame += totalRead / frameSize;
+                if (totalRead > 0 && silenceDetector != null) {
+                    boolean silent = silenceDetector.process(block, totalRead) < 0;
+                    if (silent && fadeTrack == null && !trackStart && holdSilence(block, totalRead)) {
+                        // Published if audio follows, else trimmed.
+                        totalRead = 0;
+                    } else if (holdLength > 0) {
+                        block = flushHold(block, totalRead);
+                        if (block == null) {
+                            break;
+                        }
+                    }
+                }
+                if (totalRead > 0) {
+                    if (fadeTrack != null) {
+                        if (!fading && trackFrame > trackFrameLength - getCrossfadeFrames()) {
+                            // The crossfade starts with this block.
+                            fading = true;
+                            fadeFrame = 0;
+                            fadeFrames = Math.max(1L, trackFrameLength - blockFrame);
+                            pendingTransition = fadeTrack;
+                            trackStart = true;
+                            logger.info("Crossfade started: {} frames", fadeFrames);
+                        }
+                        if (fading) {
+                            readFade(fadeBlock, totalRead);
+                            crossfadeMixer.mix(block, fadeBlock, totalRead, fadeFrame, fadeFrames);
+                            fadeFrame += totalRead / frameSize;
+                        }
+                    }
+                    ringBuffer.publish(totalRead, trackStart);
+                    trackStart = false;
+                }
+                if (nBytesRead == -1) {
+                    if (!endSilenceTracking()) {
+                        break;
+                    }
+                    if (fadeTrack != null) {
+                        trackStart = finishFade();
+                    } else if (spliceNextTrack()) {
+                        trackStart = true;
+                    } else {
+                        ringBuffer.publishEndOfStream();
+                        break;
+                    }
+                    nBytesRead = 0;
+                } else if (fadeTrack == null) {
+                    startFadeDecoder();
+                }
+            }
+        } catch (IOException ex) {
+            decoderException = ex;
+            ringBuffer.publishEndOfStream();
         }
+        decoderCpuTime += getThreadCpuTime() - cpuTime;
         logger.info("Decoding thread completed");
-        return null;
+    }
+
+    /**
+     * Returns the CPU time used by the calling thread, or 0 if the JVM does
+     * not measure it.
+     *
+     * @return nanoseconds of CPU time.
+     */
+    protected long getThreadCpuTime() {
+        if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return threadMXBean.getCurrentThreadCpuTime();
+        }
+        return 0L;
+    }
+
+    /**
+     * Returns the exact length of the current track, the crossfade needs to
+     * know where the track ends. A length estimated from the duration could
+     * start the fade too late or cut the track short, so tracks without an
+     * exact length are spliced gaplessly instead.
+     *
+     * @return the number of PCM frames, or -1 if unknown.
+     */
+    protected long getTrackFrameLength() {
+        return getTrackFrameLength(properties);
+    }
+
+    /**
+     * @param properties the properties of the track being decoded.
+     */
+    protected long getTrackFrameLength(Map<String, Object> properties) {
+        long frameLength = getExactFrameLength(audioInputStream, properties);
+        if (silenceTrimEnabled && trackEndFrame > 0) {
+            // Ends with the last audible frame.
+            frameLength = (frameLength > 0) ? Math.min(frameLength, trackEndFrame) : trackEndFrame;
+        }
+        return frameLength;
+    }
+
+    /**
+     * Returns the number of PCM frames a decoded stream holds when it is
+     * known exactly: from the frame index of an MP3 file, the STREAMINFO of
+     * a FLAC file or the header of an uncompressed file.
+     *
+     * @param stream the decoded stream.
+     * @param properties the properties of its file.
+     * @return the number of PCM frames, or -1 if unknown.
+     */
+    protected long getExactFrameLength(AudioInputStream stream, Map<String, Object> properties) {
+        if (stream instanceof DecodedMpegAudioInputStream) {
+            MpegFrameIndex index = ((DecodedMpegAudioInputStream) stream).getFrameIndex();
+            return (index != null) ? index.getSampleCount() : AudioSystem.NOT_SPECIFIED;
+        }
+        Object totalSamples = properties.get("flac.totalSamples");
+        if (totalSamples instanceof Number) {
+            // Zero when the encoder didn't know the length.
+            long samples = ((Number) totalSamples).longValue();
+            return (samples > 0) ? samples : AudioSystem.NOT_SPECIFIED;
+        }
+        Object type = properties.get("audio.type");
+        if (stream.getFrameLength() > 0 && (AudioFileFormat.Type.WAVE.toString().equals(type)
+                || AudioFileFormat.Type.AIFF.toString().equals(type)
+                || AudioFileFormat.Type.AIFC.toString().equals(type)
+                || AudioFileFormat.Type.AU.toString().equals(type))) {
+            return stream.getFrameLength();
+        }
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    protected long getCrossfadeFrames() {
+        return Math.round(crossfadeDuration * (double) audioInputStream.getFormat().getFrameRate() / 1000.0D);
+    }
+
+    /**
+     * Starts decoding the prepared next track on the fade decoder once the
+     * current track gets close enough to its end, so a ring of it is ready
+     * when the crossfade begins.
+     */
+    protected void startFadeDecoder() {
+        if (crossfadeDuration <= 0 || trackFrameLength <= 0) {
+            return;
+        }
+        long lead = getCrossfadeFrames() + (long) fadeRingBuffer.getCapacity() * fadeBlock.length
+                / audioInputStream.getFormat().getFrameSize();
+        if (trackFrame < trackFrameLength - lead) {
+            return;
+        }
+        Future<NextTrack> pending = nextTrackFuture;
+        if (pending == null || !pending.isDone()) {
+            return;
+        }
+        try {
+            NextTrack nextTrack = pending.get();
+            if (nextTrack == null || !nextTrack.audioInputStream.getFormat().matches(audioInputStream.getFormat())) {
+                // Left for a gapless splice or a new line.
+                return;
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            return;
+        }
+        NextTrack nextTrack = takeNextTrack(false);
+        if (nextTrack == null) {
+            return;
+        }
+        crossfadeMixer.init(audioInputStream.getFormat(), READ_BUFFER_SIZE);
+        fadeRingBuffer.clear();
+        fadeBlockOffset = 0;
+        fading = false;
+        fadeTrack = nextTrack;
+        fadeDecoding = true;
+        fadeDecoderFuture = fadeDecoderService.submit(this::decodeFade);
+        logger.info("Fade decoder started: {}", nextTrack.source);
+    }
+
+    /**
+     * Decodes the next track into the fade ring. Until the crossfade
+     * starts, it only runs while the primary decoder is ahead of the output,
+     * so it never starves the track that is playing.
+     */
+    protected void decodeFade() {
+        NextTrack track = fadeTrack;
+        int frameSize = track.audioInputStream.getFormat().getFrameSize();
+        int nBytesRead = 0;
+        long cpuTime = getThreadCpuTime();
+        try {
+            while (fadeDecoding) {
+                long now = getThreadCpuTime();
+                fadeDecoderCpuTime += now - cpuTime;
+                cpuTime = now;
+                if (!fading && ringBuffer.size() < ringBuffer.getLowWatermark()) {
+                    LockSupport.parkNanos(this, OUTPUT_WAIT_NANOS);
+                    continue;
+                }
+                byte[] block = fadeRingBuffer.isFilled() ? null : fadeRingBuffer.claim();
+                if (block == null) {
+                    fadeRingBuffer.awaitSpace(DECODER_WAIT_NANOS);
+                    continue;
+                }
+                int toRead = block.length;
+                int totalRead = 0;
+                if (track.prerollLength > 0) {
+                    int count = Math.min(track.prerollLength, toRead);
+                    System.arraycopy(track.preroll, track.prerollOffset, block, 0, count);
+                    totalRead = count;
+                    toRead -= count;
+                    track.prerollOffset += count;
+                    track.prerollLength -= count;
+                    if (track.prerollLength == 0) {
+                        track.prerollOffset = 0;
+                        track.preroll = null;
+                    }
+                }
+                while (toRead > 0 && (nBytesRead = track.audioInputStream.read(block, totalRead, toRead)) != -1) {
+                    totalRead += nBytesRead;
+                    toRead -= nBytesRead;
+                }
+                if (totalRead > 0) {
+                    track.decodedFrames += totalRead / frameSize;
+                    fadeRingBuffer.publish(totalRead, false);
+                }
+                if (nBytesRead == -1) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Fade decoder failed", ex);
+        }
+        fadeRingBuffer.publishEndOfStream();
+        fadeDecoderCpuTime += getThreadCpuTime() - cpuTime;
+    }
+
+    /**
+     * Reads data of the next track from the fade ring, waiting for the fade
+     * decoder if needed. Pads with silence if the next track ends first.
+     */
+    protected void readFade(byte[] buffer, int length) {
+        int offset = 0;
+        while (offset < length) {
+            byte[] block = fadeRingBuffer.peek();
+            if (block == null) {
+                if (fadeRingBuffer.isEndOfStream() || !decoding) {
+                    Arrays.fill(buffer, offset, length, (byte) 0);
+                    return;
+                }
+                fadeRingBuffer.awaitFill(1, DECODER_WAIT_NANOS);
+                continue;
+            }
+            int count = Math.min(length - offset, fadeRingBuffer.peekLength() - fadeBlockOffset);
+            System.arraycopy(block, fadeBlockOffset, buffer, offset, count);
+            offset += count;
+            fadeBlockOffset += count;
+            if (fadeBlockOffset == fadeRingBuffer.peekLength()) {
+                fadeRingBuffer.release();
+                fadeBlockOffset = 0;
+            }
+        }
+    }
+
+    /**
+     * Makes the fading-in track the current one once the outgoing track has
+     * ended. Whatever the fade decoder decoded ahead is queued first.
+     *
+     * @return <code>true</code> if the next published block starts the new
+     * track.
+     */
+    protected boolean finishFade() {
+        stopFadeDecoder();
+        NextTrack nextTrack = fadeTrack;
+        boolean trackStart = !fading;
+        if (trackStart) {
+            // Never mixed in, it is entered with its first block.
+            pendingTransition = nextTrack;
+        }
+        fadeTrack = null;
+        fading = false;
+        while (decoding) {
+            byte[] data = fadeRingBuffer.peek();
+            if (data == null) {
+                break;
+            }
+            byte[] block = ringBuffer.isFilled() ? null : ringBuffer.claim();
+            if (block == null) {
+                ringBuffer.awaitSpace(DECODER_WAIT_NANOS);
+                continue;
+            }
+            int length = fadeRingBuffer.peekLength() - fadeBlockOffset;
+            System.arraycopy(data, fadeBlockOffset, block, 0, length);
+            ringBuffer.publish(length, trackStart);
+            trackStart = false;
+            fadeRingBuffer.release();
+            fadeBlockOffset = 0;
+        }
+        spliceTrack(nextTrack);
+        logger.info("Crossfade completed");
+        return trackStart;
+    }
+
+    /**
+     * Stops the fade decoder and waits for it to finish. The track it was
+     * decoding is kept.
+     */
+    protected void stopFadeDecoder() {
+        fadeDecoding = false;
+        Future<?> pending = fadeDecoderFuture;
+        if (pending != null) {
+            fadeRingBuffer.wakeProducer();
+            try {
+                pending.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+            fadeDecoderFuture = null;
+        }
+    }
+
+    /**
+     * Drops the track being faded in, if any.
+     */
+    protected void discardFade() {
+        NextTrack nextTrack = fadeTrack;
+        NextTrack incoming = pendingTransition;
+        fadeTrack = null;
+        pendingTransition = null;
+        fading = false;
+        if (nextTrack != null) {
+            nextTrack.close();
+        }
+        if (incoming != null && incoming != nextTrack) {
+            // Spliced but never heard, the track before is done with.
+            incoming.releasePrevious();
+        }
+    }
+
+    /**
+     * Measures the silence between the end of the previous track and the
+     * first block of the current one reaching the line.
+     */
+    protected void measureTrackGap() {
+        if (trackEndTime != AudioSystem.NOT_SPECIFIED) {
+            long trackStartTime = System.nanoTime() + getBufferedMicroseconds() * 1000L;
+            trackGap = Math.max(0L, trackStartTime - trackEndTime) / 1000000L;
+            trackEndTime = AudioSystem.NOT_SPECIFIED;
+            logger.info("Track gap: {} ms", trackGap);
+        }
     }
 
     private void awaitTermination() {
@@ -680,6 +2260,7 @@ public class AudioPlayer implements Callable<Void> {
             switch (state) {
                 case STOP:
                     initAudioInputStream();
+                    trimLeadingSilence();
                     initSourceDataLine();
                 default:
                     if (sourceDataLine != null && !sourceDataLine.isRunning()) {
@@ -705,6 +2286,7 @@ public class AudioPlayer implements Callable<Void> {
     }
 
     public void stop() {
+        trackEndTime = AudioSystem.NOT_SPECIFIED;
         if (state != STOP) {
             int oldState = state;
             state = STOP;
@@ -717,54 +2299,206 @@ public class AudioPlayer implements Callable<Void> {
                 }
             }
             awaitTermination();
+            lock.lock();
+            try {
+                // Nothing is left to fade in after a stop.
+                stopDecoder();
+                discardFade();
+            } finally {
+                lock.unlock();
+            }
             notifyEvent(Playback.STOPPED);
         }
+        cancelNextTrack();
     }
 
-    public long seek(long bytes) throws PlayerException {
-        long totalSkipped = 0;
+    /**
+     * Seeks to the given playback time.
+     *
+     * @param microseconds the position from the start of the track.
+     * @return the position reached in microseconds.
+     * @throws PlayerException
+     */
+    public long seek(long microseconds) throws PlayerException {
+        long reached = AudioSystem.NOT_SPECIFIED;
+        if (audioFileFormat != null) {
+            float sampleRate = audioFileFormat.getFormat().getSampleRate();
+            if (sampleRate > 0) {
+                long frame = seekToFrame(Math.round(microseconds * (double) sampleRate / 1000000.0D));
+                if (frame >= 0) {
+                    reached = Math.round(frame * 1000000.0D / sampleRate);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Seeks to the given PCM frame of the decoded stream. Compressed formats
+     * are positioned through their own seek index rather than decoded up to
+     * the target. An open line is kept and flushed, only the decoder moves.
+     *
+     * @param pcmFrame the frame (sample) index from the start of the track.
+     * @return the frame reached.
+     * @throws PlayerException
+     */
+    public long seekToFrame(long pcmFrame) throws PlayerException {
+        long reached = AudioSystem.NOT_SPECIFIED;
         if (audioSource instanceof File) {
-            int bytesLength = getByteLength();
-            if ((bytesLength <= 0) || (bytes >= bytesLength)) {
+            long duration = getDuration();
+            float sampleRate = audioFileFormat.getFormat().getSampleRate();
+            long frameLength = Math.round(duration * (double) sampleRate / 1000000.0D);
+            if ((duration <= 0) || (pcmFrame >= frameLength)) {
                 notifyEvent(Playback.EOM);
-                return totalSkipped;
+                return reached;
             }
-            logger.info("Bytes to skip: {}", bytes);
-            oldPosition = getPosition();
+            logger.info("Frame to seek: {}", pcmFrame);
             int oldState = state;
             if (state == PLAY) {
                 state = PAUSE;
             }
+            boolean decoderStarted = false;
             lock.lock();
             try {
+                awaitOutputParked();
                 notifyEvent(Playback.SEEKING);
-                initAudioInputStream();
-                if (audioInputStream != null) {
-//                    long skipped = 0;
-//                    while (totalSkipped < bytes) {
-//                        skipped = audioInputStream.skip(bytes - totalSkipped);
-//                        totalSkipped += skipped;
-//                        if (skipped == 0) {
-//                            break;
-//                        }
-//                    }
-                    totalSkipped = audioInputStream.skip(bytes);
-                    logger.info("Skipped bytes: {}/{}", totalSkipped, bytes);
-                    if (totalSkipped == -1) {
-                        throw new PlayerException("Seek not supported");
+                // The output thread is paused, reposition the decoder only.
+                decoderStarted = (decoderFuture != null);
+                stopDecoder();
+                NextTrack incoming = pendingTransition;
+                if (incoming != null && incoming != fadeTrack) {
+                    // Spliced but not heard yet: seek in the track heard.
+                    pendingTransition = null;
+                    audioInputStream = incoming.previousStream;
+                    incoming.previousStream = null;
+                    incoming.close();
+                    // Reopened below, its silence range is not known anymore.
+                    closeStream();
+                    trackStartFrame = 0;
+                    trackEndFrame = AudioSystem.NOT_SPECIFIED;
+                    if (incoming.source instanceof File) {
+                        prepareNext((File) incoming.source);
+                    }
+                }
+                if (fadeTrack != null && fading && pendingTransition == null) {
+                    // The incoming track is already the one being heard.
+                    NextTrack nextTrack = fadeTrack;
+                    fadeTrack = null;
+                    fading = false;
+                    spliceTrack(nextTrack);
+                }
+                discardFade();
+                prerollOffset = 0;
+                prerollLength = 0;
+                prerollBuffer = null;
+                // Trailing silence is only found decoding from the start.
+                silenceDetector = null;
+                holdLength = 0;
+                if (sourceDataLine != null) {
+                    sourceDataLine.flush();
+                }
+                oldPosition = getPosition();
+                if (isFrameSeekable(audioInputStream)) {
+                    // Forward seeks go on with the open stream.
+                    attachFrameIndex(audioInputStream, audioSource);
+                    reached = seekStream(pcmFrame);
+                }
+                if (reached == -1) {
+                    initAudioInputStream();
+                    if (audioInputStream != null) {
+                        reached = seekStream(pcmFrame);
                     }
-                    initSourceDataLine();
                 }
+                logger.info("Reached frame: {}/{}", reached, pcmFrame);
+                if (reached == -1) {
+                    throw new PlayerException("Seek not supported");
+                }
+                trackFrame = reached;
+                // Only a stopped player has no line left to reuse.
+                initSourceDataLine();
             } catch (IOException ex) {
                 throw new PlayerException(ex);
             } finally {
+                if (decoderStarted && audioInputStream != null) {
+                    ringBuffer.clear();
+                    startDecoder();
+                }
                 lock.unlock();
             }
             if (oldState == PLAY) {
                 play();
             }
         }
-        return totalSkipped;
+        return reached;
+    }
+
+    /**
+     * Gives an MP3 stream the frame index of its file, or queues the file for
+     * indexing if it has none yet.
+     *
+     * @param stream the decoded stream.
+     * @param source the data source of the stream.
+     */
+    protected void attachFrameIndex(AudioInputStream stream, Object source) {
+        FrameIndexCache cache = frameIndexCache;
+        if (cache == null || !(source instanceof File) || !(stream instanceof DecodedMpegAudioInputStream)) {
+            return;
+        }
+        DecodedMpegAudioInputStream mpegStream = (DecodedMpegAudioInputStream) stream;
+        if (mpegStream.getFrameIndex() != null) {
+            return;
+        }
+        MpegFrameIndex index = cache.getIndex((File) source);
+        if (index == null) {
+            cache.submit((File) source);
+        } else if (!mpegStream.setFrameIndex(index)) {
+            logger.info("Frame index does not match the stream: {}", source);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the decoder of the given stream seeks by
+     * itself, forward from any position.
+     */
+    protected boolean isFrameSeekable(AudioInputStream stream) {
+        return (stream instanceof javazoom.spi.FrameSeekable)
+                || (stream instanceof org.kc7bfi.jflac.FrameSeekable);
+    }
+
+    /**
+     * Positions the decoded stream on the given PCM frame. Decoders that
+     * know how to seek do it themselves, raw PCM is skipped from the start
+     * of a freshly opened stream.
+     *
+     * @param pcmFrame the frame index from the start of the stream.
+     * @return the frame reached, or -1 if the stream cannot seek.
+     * @throws IOException
+     */
+    protected long seekStream(long pcmFrame) throws IOException {
+        return seekStream(audioInputStream, pcmFrame);
+    }
+
+    protected long seekStream(AudioInputStream audioInputStream, long pcmFrame) throws IOException {
+        if (audioInputStream instanceof javazoom.spi.FrameSeekable) {
+            return ((javazoom.spi.FrameSeekable) audioInputStream).seekToFrame(pcmFrame);
+        }
+        if (audioInputStream instanceof org.kc7bfi.jflac.FrameSeekable) {
+            return ((org.kc7bfi.jflac.FrameSeekable) audioInputStream).seekToFrame(pcmFrame);
+        }
+        int frameSize = audioInputStream.getFormat().getFrameSize();
+        if (frameSize <= 0) {
+            return -1;
+        }
+        long bytes = pcmFrame * frameSize;
+        long totalSkipped = 0;
+        while (totalSkipped < bytes) {
+            long skipped = audioInputStream.skip(bytes - totalSkipped);
+            if (skipped <= 0) {
+                break;
+            }
+            totalSkipped += skipped;
+        }
+        return totalSkipped / frameSize;
     }
 
     protected void closeStream() {
@@ -772,10 +2506,63 @@ public class AudioPlayer implements Callable<Void> {
             try {
                 audioInputStream.close();
                 audioInputStream = null;
+                playingStream = null;
                 logger.info("Stream closed");
             } catch (IOException ex) {
                 logger.error("Cannot close stream", ex);
             }
         }
     }
+
+    /**
+     * An audio track opened ahead of time for gapless playback.
+     */
+    protected static class NextTrack {
+
+        protected final Object source;
+        protected AudioFileFormat audioFileFormat;
+        protected AudioInputStream audioInputStream;
+        protected Map<String, Object> properties;
+        protected byte[] preroll;
+        protected int prerollOffset = 0;
+        protected int prerollLength = 0;
+        protected long decodedFrames = 0;
+        protected long startFrame = 0;
+        protected long endFrame = AudioSystem.NOT_SPECIFIED;
+        // The stream of the track this one follows, closed once the decoder
+        // is done with it and this track is heard.
+        protected AudioInputStream previousStream;
+        private final AtomicInteger handover = new AtomicInteger(2);
+
+        protected NextTrack(Object source) {
+            this.source = source;
+        }
+
+        /**
+         * Called once by the decoder thread when it splices this track and
+         * once by the output thread when it enters it; the last call closes
+         * the stream of the track before.
+         */
+        protected void releasePrevious() {
+            if (handover.decrementAndGet() == 0 && previousStream != null) {
+                try {
+                    previousStream.close();
+                } catch (IOException ex) {
+                    // Nothing to do, the track has been played.
+                }
+                previousStream = null;
+            }
+        }
+
+        protected void close() {
+            if (audioInputStream != null) {
+                try {
+                    audioInputStream.close();
+                } catch (IOException ex) {
+                    // Nothing to do, the stream was never played.
+                }
+                audioInputStream = null;
+            }
+        }
+    }
 }
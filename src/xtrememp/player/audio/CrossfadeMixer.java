@@ -0,0 +1,99 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Mixes the start of the incoming track into the end of the outgoing one
+ * with an equal-power curve, so the loudness stays constant through the
+ * crossfade.
+ *
+ * @author Besmir Beqiri
+ */
+public class CrossfadeMixer {
+
+    private AudioFormat format;
+    private float[] outgoing = new float[0];
+    private float[] incoming = new float[0];
+    private int ditherSeed = 0x6C8E9CF5;
+
+    /**
+     * Allocates the mixing buffers.
+     *
+     * @param format the format of both tracks.
+     * @param maxBytes the largest block size passed to mix.
+     */
+    public void init(AudioFormat format, int maxBytes) {
+        if (!SampleProcessingChain.isSupported(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        this.format = format;
+        int sampleCount = maxBytes / format.getFrameSize() * format.getChannels();
+        if (outgoing.length < sampleCount) {
+            outgoing = new float[sampleCount];
+            incoming = new float[sampleCount];
+        }
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Mixes a block of the incoming track into a block of the outgoing one.
+     *
+     * @param out the outgoing block, replaced by the mix.
+     * @param in the incoming block, of the same length.
+     * @param length the number of bytes, a whole number of frames.
+     * @param position the frame of the crossfade the block starts at.
+     * @param fadeLength the length of the crossfade in frames.
+     */
+    public void mix(byte[] out, byte[] in, int length, long position, long fadeLength) {
+        int channels = format.getChannels();
+        int frames = length / format.getFrameSize();
+        int count = frames * channels;
+        SampleProcessingChain.toFloat(out, format, outgoing, count);
+        SampleProcessingChain.toFloat(in, format, incoming, count);
+        // Step cos/sin along the quarter circle by rotation.
+        double step = (Math.PI / 2) / Math.max(1L, fadeLength);
+        double angle = Math.min(position, fadeLength) * step;
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double cosStep = Math.cos(step);
+        double sinStep = Math.sin(step);
+        long remaining = fadeLength - position;
+        for (int f = 0, i = 0; f < frames; f++, i += channels) {
+            float outGain = 0.0F;
+            float inGain = 1.0F;
+            if (f < remaining) {
+                outGain = (float) cos;
+                inGain = (float) sin;
+                double c = cos * cosStep - sin * sinStep;
+                sin = sin * cosStep + cos * sinStep;
+                cos = c;
+            }
+            for (int ch = 0; ch < channels; ch++) {
+                outgoing[i + ch] = outgoing[i + ch] * outGain + incoming[i + ch] * inGain;
+            }
+        }
+        boolean dither = format.getSampleSizeInBits() < 24;
+        ditherSeed = SampleProcessingChain.fromFloat(outgoing, count, out, format, dither, ditherSeed);
+    }
+}
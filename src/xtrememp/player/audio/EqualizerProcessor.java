@@ -0,0 +1,382 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.Arrays;
+
+/**
+ * A 10-band octave graphic equalizer stage.
+ *
+ * Each band is a fourth-order shelving filter built from all-pass sections
+ * after the design of Martin Holtzer, licensed under the GPL. Every channel
+ * has its own filter state. Coefficients are computed from the actual
+ * sample rate and published as an immutable set, so band gains can change
+ * while the audio thread is running without any locking.
+ *
+ * @author alexs
+ * @author Besmir Beqiri
+ */
+public class EqualizerProcessor implements SampleProcessor {
+
+    /**
+     * Number of frequency bands.
+     */
+    public static final int BAND_COUNT = 10;
+    /**
+     * The band gain range in dB, both ways.
+     */
+    public static final int MAX_GAIN = 12;
+    /**
+     * Number of filter stages for each band. Each stage resembles one
+     * second-order stage of the low-shelving prototype, which becomes a
+     * fourth-order stage after frequency-shifting. The resulting filter order
+     * per band is thus 4 * STAGE_COUNT.
+     */
+    private static final int STAGE_COUNT = 2;
+    /**
+     * The maximum upper frequency. The highest band would have an even higher
+     * upper edge frequency, but it gets reduced to this value.
+     */
+    private static final double MAX_UPPER_FREQ = 19000;
+    /**
+     * Center frequency of the lowest band.
+     */
+    private static final double FIRST_CENTER_FREQUENCY = 30;
+    /**
+     * Stage dependent filter coefficient.
+     */
+    private static final double[] C = new double[STAGE_COUNT];
+
+    static {
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            C[stage] = Math.cos((.5 - (2. * stage + 1) / (4 * STAGE_COUNT)) * Math.PI);
+        }
+    }
+    private final float[] bandGains = new float[BAND_COUNT]; // dB
+    private volatile boolean enabled = false;
+    private volatile boolean resetPending = false;
+    private volatile Coefficients coefficients;
+    private float sampleRate = 44100.0F;
+    private int channels;
+    /**
+     * The filter states, per channel, band and stage. In each stage, states 1
+     * and 3 hold the state of delay inside the all-passes and states 0 and 2
+     * resemble the additional delay at the all-pass input.
+     */
+    private double[] filterStates = new double[0];
+    /**
+     * The block being processed, interleaved, between stages.
+     */
+    private double[] work = new double[0];
+    private Coefficients appliedCoefficients;
+
+    public EqualizerProcessor() {
+        coefficients = new Coefficients(bandGains, sampleRate);
+    }
+
+    /**
+     * Returns the center frequency of a band.
+     *
+     * @param band the band index.
+     * @return the frequency in Hz.
+     */
+    public static double getBandFrequency(int band) {
+        return FIRST_CENTER_FREQUENCY * Math.pow(2, band);
+    }
+
+    @Override
+    public synchronized void init(int maxFrames, float sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        int stateCount = channels * BAND_COUNT * STAGE_COUNT * 4;
+        if (filterStates.length != stateCount) {
+            filterStates = new double[stateCount];
+        } else {
+            Arrays.fill(filterStates, 0.0D);
+        }
+        if (work.length < maxFrames * channels) {
+            work = new double[maxFrames * channels];
+        }
+        coefficients = new Coefficients(bandGains, sampleRate);
+        appliedCoefficients = coefficients;
+    }
+
+    @Override
+    public boolean process(float[] samples, int frames) {
+        Coefficients coefs = coefficients;
+        if (resetPending) {
+            resetPending = false;
+            Arrays.fill(filterStates, 0.0D);
+            appliedCoefficients = coefs;
+        } else if (coefs != appliedCoefficients) {
+            resetInactiveBands(coefs);
+            appliedCoefficients = coefs;
+        }
+        if (!enabled || coefs.flat) {
+            return false;
+        }
+        int count = frames * channels;
+        if (work.length < count) {
+            work = new double[count];
+        }
+        final double[] x = work;
+        for (int i = 0; i < count; i++) {
+            x[i] = samples[i];
+        }
+        final int channelStride = BAND_COUNT * STAGE_COUNT * 4;
+        // The stages are in series, so each one can run over the whole
+        // block in turn, with its state and coefficients in registers. The
+        // recursion of a stage is a long chain of dependent operations;
+        // running two channels at once keeps the pipeline busy.
+        for (int band = 0; band < BAND_COUNT; band++) {
+            if (!coefs.active[band]) {
+                continue;
+            }
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                int ch = 0;
+                for (; ch + 1 < channels; ch += 2) {
+                    filterPair(coefs, band, stage, x, count, channels, ch,
+                            ch * channelStride, (ch + 1) * channelStride);
+                }
+                if (ch < channels) {
+                    filter(coefs, band, stage, x, count, channels, ch, ch * channelStride);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            samples[i] = (float) x[i];
+        }
+        return true;
+    }
+
+    /**
+     * Runs one stage of a band over one channel of the interleaved block.
+     *
+     * @param base the index of the channel in {@link #filterStates}.
+     */
+    private void filter(Coefficients coefs, int band, int stage, double[] x,
+            int count, int channels, int ch, int base) {
+        final double[] states = filterStates;
+        final double c0 = coefs.c0[band];
+        final double k = coefs.k[band];
+        final double v = coefs.v[band];
+        final double c = C[stage];
+        final double a0recip = coefs.a0recip[band * STAGE_COUNT + stage];
+        int s = base + (band * STAGE_COUNT + stage) * 4;
+        double s0 = states[s];
+        double s1 = states[s + 1];
+        double s2 = states[s + 2];
+        double s3 = states[s + 3];
+        for (int i = ch; i < count; i += channels) {
+            double u = x[i];
+            double x4 = -c0 * (s0 - s1);
+            double x6 = s1 + x4;
+            s1 = s0 + x4;
+            double x8 = -c0 * (s2 - s3);
+            double x7 = s3 + x8;
+            s3 = s2 + x8;
+            double x3 = 2 * x6;
+            double x2 = x7 + x3;
+            double x1 = a0recip * (k * u - (x7 - x3 + k * (-2 * c * x7 + k * x2)));
+            double x5 = k * (x1 + x2);
+            s0 = -x1;
+            s2 = -x6;
+            x[i] = v * (v * x5 + 2 * (x5 - c * (x7 - x1))) + u;
+        }
+        states[s] = s0;
+        states[s + 1] = s1;
+        states[s + 2] = s2;
+        states[s + 3] = s3;
+    }
+
+    /**
+     * Runs one stage of a band over two adjacent channels at once, the
+     * same computation as {@link #filter} interleaved.
+     */
+    private void filterPair(Coefficients coefs, int band, int stage, double[] x,
+            int count, int channels, int ch, int baseA, int baseB) {
+        final double[] states = filterStates;
+        final double c0 = coefs.c0[band];
+        final double k = coefs.k[band];
+        final double v = coefs.v[band];
+        final double c = C[stage];
+        final double a0recip = coefs.a0recip[band * STAGE_COUNT + stage];
+        int sa = baseA + (band * STAGE_COUNT + stage) * 4;
+        int sb = baseB + (band * STAGE_COUNT + stage) * 4;
+        double a0 = states[sa];
+        double a1 = states[sa + 1];
+        double a2 = states[sa + 2];
+        double a3 = states[sa + 3];
+        double b0 = states[sb];
+        double b1 = states[sb + 1];
+        double b2 = states[sb + 2];
+        double b3 = states[sb + 3];
+        for (int i = ch; i < count; i += channels) {
+            double ua = x[i];
+            double ub = x[i + 1];
+            double x4a = -c0 * (a0 - a1);
+            double x4b = -c0 * (b0 - b1);
+            double x6a = a1 + x4a;
+            double x6b = b1 + x4b;
+            a1 = a0 + x4a;
+            b1 = b0 + x4b;
+            double x8a = -c0 * (a2 - a3);
+            double x8b = -c0 * (b2 - b3);
+            double x7a = a3 + x8a;
+            double x7b = b3 + x8b;
+            a3 = a2 + x8a;
+            b3 = b2 + x8b;
+            double x3a = 2 * x6a;
+            double x3b = 2 * x6b;
+            double x2a = x7a + x3a;
+            double x2b = x7b + x3b;
+            double x1a = a0recip * (k * ua - (x7a - x3a + k * (-2 * c * x7a + k * x2a)));
+            double x1b = a0recip * (k * ub - (x7b - x3b + k * (-2 * c * x7b + k * x2b)));
+            double x5a = k * (x1a + x2a);
+            double x5b = k * (x1b + x2b);
+            a0 = -x1a;
+            b0 = -x1b;
+            a2 = -x6a;
+            b2 = -x6b;
+            x[i] = v * (v * x5a + 2 * (x5a - c * (x7a - x1a))) + ua;
+            x[i + 1] = v * (v * x5b + 2 * (x5b - c * (x7b - x1b))) + ub;
+        }
+        states[sa] = a0;
+        states[sa + 1] = a1;
+        states[sa + 2] = a2;
+        states[sa + 3] = a3;
+        states[sb] = b0;
+        states[sb + 1] = b1;
+        states[sb + 2] = b2;
+        states[sb + 3] = b3;
+    }
+
+    /**
+     * Clears the state of bands that were bypassed until now, so they start
+     * from silence instead of stale values.
+     */
+    private void resetInactiveBands(Coefficients coefs) {
+        Coefficients old = appliedCoefficients;
+        for (int band = 0; band < BAND_COUNT; band++) {
+            if (coefs.active[band] && (old == null || !old.active[band])) {
+                for (int ch = 0; ch < channels; ch++) {
+                    int s = (ch * BAND_COUNT + band) * STAGE_COUNT * 4;
+                    Arrays.fill(filterStates, s, s + STAGE_COUNT * 4, 0.0D);
+                }
+            }
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            // Restart all bands from silence.
+            resetPending = true;
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the gain of a band. Takes effect with the next processed block.
+     *
+     * @param band the band index.
+     * @param gain the gain in dB, between -{@link #MAX_GAIN} and
+     * +{@link #MAX_GAIN}.
+     */
+    public synchronized void setBandGain(int band, float gain) {
+        bandGains[band] = Math.max(-MAX_GAIN, Math.min(MAX_GAIN, gain));
+        coefficients = new Coefficients(bandGains, sampleRate);
+    }
+
+    /**
+     * Sets the gains of all bands at once.
+     *
+     * @param gains the gains in dB.
+     */
+    public synchronized void setBandGains(float[] gains) {
+        for (int band = 0; band < BAND_COUNT && band < gains.length; band++) {
+            bandGains[band] = Math.max(-MAX_GAIN, Math.min(MAX_GAIN, gains[band]));
+        }
+        coefficients = new Coefficients(bandGains, sampleRate);
+    }
+
+    public synchronized float getBandGain(int band) {
+        return bandGains[band];
+    }
+
+    /**
+     * An immutable set of filter coefficients for one sample rate.
+     */
+    private static final class Coefficients {
+
+        /**
+         * Band-width and gain dependent filter coefficient.
+         */
+        private final double[] k = new double[BAND_COUNT];
+        /**
+         * Gain dependent filter coefficient.
+         */
+        private final double[] v = new double[BAND_COUNT];
+        /**
+         * Auxiliary filter coefficient, per band and stage.
+         */
+        private final double[] a0recip = new double[BAND_COUNT * STAGE_COUNT];
+        /**
+         * Center frequency dependent coefficient.
+         */
+        private final double[] c0 = new double[BAND_COUNT];
+        /**
+         * Bands with a gain other than unity and below the Nyquist frequency.
+         */
+        private final boolean[] active = new boolean[BAND_COUNT];
+        private final boolean flat;
+
+        private Coefficients(float[] gains, float sampleRate) {
+            double maxUpper = Math.min(MAX_UPPER_FREQ, 0.45 * sampleRate);
+            boolean anyActive = false;
+            for (int band = 0; band < BAND_COUNT; band++) {
+                double fC = getBandFrequency(band);
+                double fL = fC / Math.sqrt(2);
+                double fU = Math.min(fC * Math.sqrt(2), maxUpper);
+                if (gains[band] == 0.0F || fL >= fU) {
+                    continue;
+                }
+                double fB = fU - fL;
+                double wB = 2 * Math.PI / sampleRate * fB;
+                double wU = 2 * Math.PI / sampleRate * fU;
+                double wL = 2 * Math.PI / sampleRate * fL;
+                double wM = 2 * Math.atan(Math.sqrt(Math.tan(wU / 2) * Math.tan(wL / 2)));
+                double gain = Math.pow(10, gains[band] / 20.);
+                c0[band] = Math.cos(wM);
+                k[band] = Math.pow(gain, -1. / (4 * STAGE_COUNT)) * Math.tan(wB / 2);
+                // Each stage contributes an equal share of the band gain.
+                v[band] = Math.pow(gain, 1. / (2 * STAGE_COUNT)) - 1;
+                for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                    a0recip[band * STAGE_COUNT + stage] = 1 / (1 + 2 * k[band] * C[stage] + k[band] * k[band]);
+                }
+                active[band] = true;
+                anyActive = true;
+            }
+            flat = !anyActive;
+        }
+    }
+}
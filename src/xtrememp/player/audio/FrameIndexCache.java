@@ -0,0 +1,171 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xtrememp.util.Utilities;
+
+/**
+ * Builds MPEG frame indexes in the background and keeps them in sidecar
+ * files, so seeking in an MP3 file lands on the exact frame at once, VBR
+ * files included.
+ *
+ * Sidecars are named after a hash of the file path and are rebuilt when the
+ * length or modification time of the file changes.
+ *
+ * @author Besmir Beqiri
+ */
+public class FrameIndexCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameIndexCache.class);
+    public static final String SIDECAR_EXTENSION = ".index";
+    private static final int MAX_INDEXES = 8;
+    private final File cacheDir;
+    private final ExecutorService execService;
+    private final Map<File, Future<?>> pending = new HashMap<>();
+    private final Map<File, MpegFrameIndex> indexes;
+
+    /**
+     * @param cacheDir the directory of the sidecar files.
+     */
+    public FrameIndexCache(File cacheDir) {
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        this.cacheDir = cacheDir;
+        this.indexes = Collections.synchronizedMap(new LinkedHashMap<File, MpegFrameIndex>(16, 0.75F, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, MpegFrameIndex> eldest) {
+                return size() > MAX_INDEXES;
+            }
+        });
+        this.execService = Executors.newSingleThreadExecutor(Utilities.lowPriorityThreadFactory("FrameIndexCache"));
+    }
+
+    /**
+     * Returns the index of a file if it has been built.
+     *
+     * @param file an MPEG audio file.
+     * @return the index, or <code>null</code>.
+     */
+    public MpegFrameIndex getIndex(File file) {
+        File key = file.getAbsoluteFile();
+        MpegFrameIndex index = indexes.get(key);
+        if (index != null && index.matches(key)) {
+            return index;
+        }
+        try {
+            index = MpegFrameIndex.load(getSidecarFile(key), key);
+        } catch (IOException ex) {
+            logger.debug("Can't read the frame index of {}", key, ex);
+            return null;
+        }
+        if (index != null) {
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Queues a file for indexing, unless it is queued already.
+     *
+     * @param file an MPEG audio file.
+     */
+    public void submit(File file) {
+        File key = file.getAbsoluteFile();
+        synchronized (pending) {
+            if (!pending.containsKey(key)) {
+                pending.put(key, execService.submit(() -> index(key)));
+            }
+        }
+    }
+
+    public void shutdown() {
+        execService.shutdownNow();
+    }
+
+    /**
+     * @param file the audio file.
+     * @return the sidecar file holding the frame index of the file.
+     */
+    public File getSidecarFile(File file) {
+        return Utilities.sidecarFile(cacheDir, file, SIDECAR_EXTENSION);
+    }
+
+    /**
+     * Returns the index of a file, building it in the calling thread if it
+     * hasn't been built yet.
+     *
+     * @param file an MPEG audio file.
+     * @return the index, or <code>null</code> if the file holds no frames.
+     * @throws IOException if reading the file fails.
+     */
+    public MpegFrameIndex buildIndex(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        MpegFrameIndex index = getIndex(key);
+        if (index != null) {
+            return index;
+        }
+        long time = System.nanoTime();
+        index = MpegFrameIndex.scan(key);
+        if (index == null) {
+            logger.info("No frames to index in {}", key);
+            return null;
+        }
+        try {
+            index.save(getSidecarFile(key));
+        } catch (IOException ex) {
+            // Still good for this time.
+            logger.error("Can't save the frame index of {}", key, ex);
+        }
+        indexes.put(key, index);
+        logger.info("Indexed {} frames of {} in {} ms", index.getFrameCount(), key,
+                (System.nanoTime() - time) / 1000000L);
+        return index;
+    }
+
+    private void index(File file) {
+        try {
+            buildIndex(file);
+        } catch (InterruptedIOException ex) {
+            logger.info("Stopped indexing {}", file);
+        } catch (IOException ex) {
+            logger.error("Can't index {}", file, ex);
+        } finally {
+            synchronized (pending) {
+                pending.remove(file);
+            }
+        }
+    }
+}
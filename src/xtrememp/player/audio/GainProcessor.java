@@ -0,0 +1,173 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+/**
+ * Software volume, balance, mute and replay gain.
+ *
+ * Changes are ramped over one block to avoid clicks. The pan follows the
+ * balance semantics of the Java Sound PAN control: the opposite channel is
+ * attenuated and the panned one is left untouched.
+ *
+ * @author Besmir Beqiri
+ */
+public class GainProcessor implements SampleProcessor {
+
+    private volatile float gain = 1.0F;
+    private volatile float replayGain = 1.0F;
+    private volatile float pan = 0.0F;
+    private volatile boolean muted = false;
+    private int channels;
+    // Per-channel factors applied at the end of the last block.
+    private float leftFactor = 1.0F;
+    private float rightFactor = 1.0F;
+
+    @Override
+    public void init(int maxFrames, float sampleRate, int channels) {
+        this.channels = channels;
+        leftFactor = getLeftFactor();
+        rightFactor = getRightFactor();
+    }
+
+    @Override
+    public boolean process(float[] samples, int frames) {
+        float left = getLeftFactor();
+        float right = getRightFactor();
+        if (frames <= 0) {
+            return false;
+        }
+        if (left == leftFactor && right == rightFactor) {
+            if (left == 1.0F && right == 1.0F) {
+                return false;
+            }
+            if (channels == 2) {
+                for (int i = 0, n = frames * 2; i < n; i += 2) {
+                    samples[i] *= left;
+                    samples[i + 1] *= right;
+                }
+            } else {
+                for (int i = 0, n = frames * channels; i < n; i++) {
+                    samples[i] *= left;
+                }
+            }
+            return true;
+        }
+        // Ramp from the previous factors to the new ones.
+        float leftStep = (left - leftFactor) / frames;
+        float rightStep = (right - rightFactor) / frames;
+        float l = leftFactor;
+        float r = rightFactor;
+        if (channels == 2) {
+            for (int i = 0, n = frames * 2; i < n; i += 2) {
+                l += leftStep;
+                r += rightStep;
+                samples[i] *= l;
+                samples[i + 1] *= r;
+            }
+        } else {
+            for (int i = 0, n = frames * channels; i < n; i += channels) {
+                l += leftStep;
+                for (int c = 0; c < channels; c++) {
+                    samples[i + c] *= l;
+                }
+            }
+        }
+        leftFactor = left;
+        rightFactor = right;
+        return true;
+    }
+
+    private float getLeftFactor() {
+        if (muted) {
+            return 0.0F;
+        }
+        float volume = gain * replayGain;
+        return (channels == 2 && pan > 0.0F) ? volume * (1.0F - pan) : volume;
+    }
+
+    private float getRightFactor() {
+        if (muted) {
+            return 0.0F;
+        }
+        float volume = gain * replayGain;
+        return (channels == 2 && pan < 0.0F) ? volume * (1.0F + pan) : volume;
+    }
+
+    /**
+     * Sets the volume.
+     *
+     * @param gain a linear amplitude factor between 0.0 and 1.0.
+     */
+    public void setGain(float gain) {
+        this.gain = Math.max(0.0F, Math.min(1.0F, gain));
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    /**
+     * Sets the loudness normalization of the current track, applied on top
+     * of the volume. Factors above 1.0 may push peaks into the limiter.
+     *
+     * @param replayGain a linear amplitude factor between 0.0 and 16.0.
+     */
+    public void setReplayGain(float replayGain) {
+        this.replayGain = Math.max(0.0F, Math.min(16.0F, replayGain));
+    }
+
+    public float getReplayGain() {
+        return replayGain;
+    }
+
+    /**
+     * Sets the balance of stereo streams.
+     *
+     * @param pan a value between -1.0 (left) and +1.0 (right).
+     */
+    public void setPan(float pan) {
+        this.pan = Math.max(-1.0F, Math.min(1.0F, pan));
+    }
+
+    public float getPan() {
+        return pan;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * @return <code>true</code> if samples pass through unchanged.
+     */
+    public boolean isUnity() {
+        return !muted && gain == 1.0F && replayGain == 1.0F && pan == 0.0F;
+    }
+
+    /**
+     * @return <code>true</code> if the output is silent.
+     */
+    public boolean isSilent() {
+        return muted || gain == 0.0F || replayGain == 0.0F;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+/**
+ * A peak limiter keeping the output below the line's full scale.
+ *
+ * The gain drops at once when a frame would exceed the threshold and
+ * recovers exponentially, so gain and equalization can boost the signal
+ * without clipping. All channels share the same gain to keep the stereo
+ * image. The default threshold is full scale, so integer PCM at unity gain
+ * never reaches it and passes through bit-identical.
+ *
+ * @author Besmir Beqiri
+ */
+public class LimiterProcessor implements SampleProcessor {
+
+    public static final float DEFAULT_THRESHOLD = 1.0F; // 0 dBFS
+    public static final float DEFAULT_RELEASE = 100.0F; // milliseconds
+    private volatile float threshold = DEFAULT_THRESHOLD;
+    private volatile float release = DEFAULT_RELEASE;
+    private float releaseCoefficient;
+    private float sampleRate;
+    private int channels;
+    private float envelope = 1.0F;
+    private volatile long activeFrames = 0L;
+
+    @Override
+    public void init(int maxFrames, float sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        envelope = 1.0F;
+        updateRelease();
+    }
+
+    @Override
+    public boolean process(float[] samples, int frames) {
+        float limit = threshold;
+        float env = envelope;
+        float coef = releaseCoefficient;
+        long active = 0L;
+        for (int i = 0, n = frames * channels; i < n; i += channels) {
+            float peak = 0.0F;
+            for (int c = 0; c < channels; c++) {
+                float s = Math.abs(samples[i + c]);
+                if (s > peak) {
+                    peak = s;
+                }
+            }
+            // Recover towards unity, then duck if still too loud.
+            env = 1.0F - (1.0F - env) * coef;
+            if (peak * env > limit) {
+                env = limit / peak;
+            }
+            if (env < 1.0F) {
+                for (int c = 0; c < channels; c++) {
+                    samples[i + c] *= env;
+                }
+                active++;
+            }
+        }
+        envelope = env;
+        if (active > 0L) {
+            activeFrames += active;
+        }
+        return active > 0L;
+    }
+
+    private void updateRelease() {
+        if (sampleRate > 0.0F) {
+            releaseCoefficient = (float) Math.exp(-1000.0D / (release * sampleRate));
+        }
+    }
+
+    /**
+     * Sets the level the output must not exceed.
+     *
+     * @param threshold a linear amplitude between 0.1 and 1.0.
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = Math.max(0.1F, Math.min(1.0F, threshold));
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets how fast the gain recovers after a peak.
+     *
+     * @param release the release time constant in milliseconds.
+     */
+    public void setRelease(float release) {
+        this.release = Math.max(1.0F, release);
+        updateRelease();
+    }
+
+    public float getRelease() {
+        return release;
+    }
+
+    /**
+     * Returns the number of frames the limiter has attenuated so far.
+     *
+     * @return a frame count.
+     */
+    public long getActiveFrames() {
+        return activeFrames;
+    }
+}
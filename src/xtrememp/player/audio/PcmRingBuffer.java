@@ -0,0 +1,307 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free ring of PCM blocks shared by exactly one producer (the decoding
+ * thread) and one consumer (the line output thread).
+ *
+ * The producer claims a block, fills it and publishes it; the consumer peeks
+ * at the oldest published block, writes it out and releases it. Once the ring
+ * holds {@link #getHighWatermark()} blocks the producer should wait until it
+ * drains to {@link #getLowWatermark()}, so decoding happens in bursts while
+ * the output keeps a cushion against decode jitter.
+ *
+ * The indices are published with volatile writes: each side writes its index
+ * and then checks whether the other side is parked, which a lazy write could
+ * be reordered after, losing the wake-up.
+ *
+ * @author Besmir Beqiri
+ */
+public class PcmRingBuffer {
+
+    public static final int DEFAULT_CAPACITY = 32;
+    private final byte[][] blocks;
+    private final int[] lengths;
+    private final boolean[] trackStarts;
+    private final int capacity;
+    private final int blockSize;
+    // Index of the next block to read, written by the consumer only.
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next block to write, written by the producer only.
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean endOfStream = false;
+    private volatile int highWatermark;
+    private volatile int lowWatermark;
+    private volatile Thread waitingProducer;
+    private volatile boolean producerWoken = false;
+    // Written by the producer only.
+    private boolean filled = false;
+    private volatile Thread waitingConsumer;
+    private volatile int consumerFillTarget = 1;
+
+    /**
+     * @param capacity the number of blocks in the ring.
+     * @param blockSize the size in bytes of each block.
+     */
+    public PcmRingBuffer(int capacity, int blockSize) {
+        if (capacity < 2 || blockSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.blockSize = blockSize;
+        this.blocks = new byte[capacity][blockSize];
+        this.lengths = new int[capacity];
+        this.trackStarts = new boolean[capacity];
+        this.highWatermark = capacity;
+        this.lowWatermark = capacity / 2;
+    }
+
+    /**
+     * Sets the fill levels, in blocks, between which the producer runs.
+     *
+     * @param lowWatermark the level at which a waiting producer resumes.
+     * @param highWatermark the level at which the producer should wait.
+     */
+    public void setWatermarks(int lowWatermark, int highWatermark) {
+        if (lowWatermark < 0 || highWatermark > capacity || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException();
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the number of published blocks not yet released.
+     *
+     * @return a value between 0 and the ring capacity.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns <code>true</code> once the producer has signaled the end of
+     * the stream and every block has been released.
+     *
+     * @return <code>true</code> if nothing more will be published.
+     */
+    public boolean isEndOfStream() {
+        return endOfStream && isEmpty();
+    }
+
+    /**
+     * Empties the ring. Must only be called while neither the producer nor
+     * the consumer is running.
+     */
+    public void clear() {
+        head.set(0L);
+        tail.set(0L);
+        endOfStream = false;
+        filled = false;
+        producerWoken = false;
+    }
+
+    // Producer side
+    /**
+     * Returns the next free block to fill.
+     *
+     * @return a block of {@link #getBlockSize()} bytes, or <code>null</code>
+     * if the ring is full.
+     */
+    public byte[] claim() {
+        long t = tail.get();
+        if (t - head.get() >= capacity) {
+            return null;
+        }
+        return blocks[(int) (t % capacity)];
+    }
+
+    /**
+     * Publishes the block returned by the last call to {@link #claim()}.
+     *
+     * @param length the number of valid bytes in the block.
+     * @param trackStart <code>true</code> if the block is the first one of a
+     * new track.
+     */
+    public void publish(int length, boolean trackStart) {
+        long t = tail.get();
+        int slot = (int) (t % capacity);
+        lengths[slot] = length;
+        trackStarts[slot] = trackStart;
+        tail.set(t + 1);
+        wakeConsumer();
+    }
+
+    /**
+     * Signals that no more blocks will be published.
+     */
+    public void publishEndOfStream() {
+        endOfStream = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> from the time the producer reaches the high
+     * watermark until the ring drains to the low watermark, meanwhile the
+     * producer should call {@link #awaitSpace(long)}.
+     *
+     * @return <code>true</code> if the ring is filled up.
+     */
+    public boolean isFilled() {
+        int size = size();
+        if (size >= highWatermark) {
+            filled = true;
+        } else if (size <= lowWatermark) {
+            filled = false;
+        }
+        return filled;
+    }
+
+    /**
+     * Parks the producer until the ring drains to the low watermark, the
+     * timeout elapses, the thread is interrupted or
+     * {@link #wakeProducer()} is called.
+     *
+     * @param timeout the maximum time to wait in nanoseconds.
+     */
+    public void awaitSpace(long timeout) {
+        long deadline = System.nanoTime() + timeout;
+        waitingProducer = Thread.currentThread();
+        try {
+            while (size() > lowWatermark && !producerWoken
+                    && !Thread.currentThread().isInterrupted()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingProducer = null;
+            producerWoken = false;
+        }
+    }
+
+    /**
+     * Makes a producer waiting in {@link #awaitSpace(long)} return at once,
+     * or the next call to it if none is waiting.
+     */
+    public void wakeProducer() {
+        producerWoken = true;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    // Consumer side
+    /**
+     * Returns the oldest published block without releasing it.
+     *
+     * @return a block or <code>null</code> if the ring is empty.
+     */
+    public byte[] peek() {
+        long h = head.get();
+        if (tail.get() == h) {
+            return null;
+        }
+        return blocks[(int) (h % capacity)];
+    }
+
+    /**
+     * @return the number of valid bytes in the block returned by
+     * {@link #peek()}.
+     */
+    public int peekLength() {
+        return lengths[(int) (head.get() % capacity)];
+    }
+
+    /**
+     * @return <code>true</code> if the block returned by {@link #peek()}
+     * starts a new track.
+     */
+    public boolean peekTrackStart() {
+        return trackStarts[(int) (head.get() % capacity)];
+    }
+
+    /**
+     * Releases the block returned by {@link #peek()} back to the producer.
+     */
+    public void release() {
+        head.set(head.get() + 1);
+        Thread producer = waitingProducer;
+        if (producer != null && size() <= lowWatermark) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Parks the consumer until at least the given number of blocks is
+     * available, the end of stream is reached or the timeout elapses.
+     *
+     * @param blockCount the number of blocks to wait for.
+     * @param timeout the maximum time to wait in nanoseconds.
+     * @return <code>true</code> if the blocks are available or the end of
+     * stream has been reached.
+     */
+    public boolean awaitFill(int blockCount, long timeout) {
+        int target = Math.min(Math.max(blockCount, 1), capacity);
+        consumerFillTarget = target;
+        waitingConsumer = Thread.currentThread();
+        if (size() < target && !endOfStream) {
+            LockSupport.parkNanos(this, timeout);
+        }
+        waitingConsumer = null;
+        return size() >= target || endOfStream;
+    }
+
+    private void wakeConsumer() {
+        Thread consumer = waitingConsumer;
+        if (consumer != null && size() >= consumerFillTarget) {
+            LockSupport.unpark(consumer);
+        }
+    }
+}
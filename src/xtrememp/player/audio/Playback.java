@@ -29,5 +29,6 @@ public enum Playback {
     PAUSED,
     STOPPED,
     SEEKING,
-    EOM
+    EOM,
+    TRANSITION
 }
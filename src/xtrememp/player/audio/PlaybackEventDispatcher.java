@@ -0,0 +1,406 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers playback events to the listeners of an {@link AudioPlayer} from a
+ * single long-lived thread, in the order they were posted.
+ *
+ * Events are never dropped: listeners act on state changes, an end of media
+ * advances the playlist. The capacity is a soft limit instead. Beyond it a
+ * poster waits up to {@link #getOfferTimeout()} milliseconds for room, then
+ * queues the event anyway. Posting from the dispatcher thread itself (a
+ * listener reacting to an event) or through
+ * {@link #offer(Playback, long, Map)}, as the audio threads do, never waits.
+ * An event with the same state as the last queued one replaces it instead of
+ * being queued again, except for end of media and transitions.
+ *
+ * Progress is not queued: {@link #publishProgress(long)} only overwrites a
+ * single slot, so the output thread never allocates nor waits to publish it.
+ * The dispatcher delivers the latest position, ahead of the events posted
+ * after it.
+ *
+ * @author Besmir Beqiri
+ */
+public class PlaybackEventDispatcher implements Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(PlaybackEventDispatcher.class);
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long DEFAULT_OFFER_TIMEOUT = 100L; // milliseconds
+    private final AudioPlayer source;
+    private final List<PlaybackListener> listeners;
+    private final ArrayDeque<PendingEvent> queue;
+    private final int capacity;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition notEmpty = queueLock.newCondition();
+    private final Condition notFull = queueLock.newCondition();
+    private long sequence = 0L;
+    // Progress slot, guarded by queueLock.
+    private boolean progressPending = false;
+    private long progressPosition = 0L;
+    private long progressSequence = 0L;
+    private PlaybackEvent progressEvent;
+    private volatile long offerTimeout = DEFAULT_OFFER_TIMEOUT;
+    private volatile Thread thread;
+    // Statistics
+    private volatile int maxQueueDepth = 0;
+    private final AtomicLong progressCount = new AtomicLong();
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private volatile long dispatchedCount = 0L;
+    private volatile long totalLatency = 0L;  // nanoseconds
+    private volatile long maxLatency = 0L;    // nanoseconds
+
+    public PlaybackEventDispatcher(AudioPlayer source, List<PlaybackListener> listeners) {
+        this(source, listeners, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param source the player whose events are dispatched.
+     * @param listeners the listeners to notify, read on every dispatch.
+     * @param capacity the number of queued events beyond which posters wait.
+     */
+    public PlaybackEventDispatcher(AudioPlayer source, List<PlaybackListener> listeners, int capacity) {
+        this.source = source;
+        this.listeners = listeners;
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<PendingEvent>(capacity);
+    }
+
+    /**
+     * Queues an event for all listeners, waiting a while for room if the
+     * queue is full.
+     *
+     * @param state the playback state.
+     * @param position the playback position in microseconds.
+     * @param properties the event properties.
+     * @return <code>false</code> if the event was queued beyond the capacity.
+     */
+    public boolean post(Playback state, long position, Map<String, Object> properties) {
+        return post(state, position, properties, true);
+    }
+
+    /**
+     * Queues an event for all listeners without ever waiting, so this is safe
+     * to call from the audio threads. An event queued beyond the capacity is
+     * counted.
+     *
+     * @param state the playback state.
+     * @param position the playback position in microseconds.
+     * @param properties the event properties.
+     * @return <code>false</code> if the event was queued beyond the capacity.
+     */
+    public boolean offer(Playback state, long position, Map<String, Object> properties) {
+        return post(state, position, properties, false);
+    }
+
+    private boolean post(Playback state, long position, Map<String, Object> properties, boolean wait) {
+        postedCount.incrementAndGet();
+        ensureStarted();
+        boolean hasRoom;
+        queueLock.lock();
+        try {
+            PendingEvent last = queue.peekLast();
+            if (last != null && last.state == state && isCoalescable(state)) {
+                last.position = position;
+                last.properties = properties;
+                coalescedCount.incrementAndGet();
+                return true;
+            }
+            hasRoom = (queue.size() < capacity);
+            if (!hasRoom && wait && Thread.currentThread() != thread) {
+                hasRoom = awaitRoom();
+            }
+            queue.offerLast(new PendingEvent(state, position, properties, ++sequence));
+            int depth = queue.size();
+            if (depth > maxQueueDepth) {
+                maxQueueDepth = depth;
+            }
+            notEmpty.signal();
+        } finally {
+            queueLock.unlock();
+        }
+        if (!hasRoom) {
+            overflowCount.incrementAndGet();
+            if (wait) {
+                logger.warn("Playback event queued beyond capacity: {}", state);
+            }
+        }
+        return hasRoom;
+    }
+
+    /**
+     * Waits up to the offer timeout for the queue to fall below capacity.
+     * Called with the queue lock held.
+     */
+    private boolean awaitRoom() {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(offerTimeout);
+        while (queue.size() >= capacity) {
+            if (remaining <= 0L) {
+                return false;
+            }
+            try {
+                remaining = notFull.awaitNanos(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the playback position for
+     * {@link PlaybackListener#playbackProgress(PlaybackEvent)}. A position not
+     * delivered yet is replaced, nothing is queued nor allocated, so this is
+     * safe to call from the output thread on every block.
+     *
+     * @param position the playback position in microseconds.
+     */
+    public void publishProgress(long position) {
+        ensureStarted();
+        queueLock.lock();
+        try {
+            progressPosition = position;
+            if (!progressPending) {
+                progressPending = true;
+                progressSequence = ++sequence;
+                notEmpty.signal();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * End of media and track transitions are counted by listeners, so they
+     * are never merged.
+     */
+    protected boolean isCoalescable(Playback state) {
+        return state != Playback.EOM && state != Playback.TRANSITION;
+    }
+
+    private void ensureStarted() {
+        if (thread == null) {
+            startThread();
+        }
+    }
+
+    private synchronized void startThread() {
+        if (thread == null) {
+            thread = new Thread(this, "PlaybackEventDispatcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            PendingEvent event = null;
+            long position = 0L;
+            queueLock.lock();
+            try {
+                while (queue.isEmpty() && !progressPending) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                PendingEvent head = queue.peekFirst();
+                if (progressPending && (head == null || progressSequence < head.sequence)) {
+                    progressPending = false;
+                    position = progressPosition;
+                } else {
+                    event = queue.pollFirst();
+                    if (queue.size() < capacity) {
+                        notFull.signalAll();
+                    }
+                }
+            } finally {
+                queueLock.unlock();
+            }
+            if (event == null) {
+                deliverProgress(position);
+                continue;
+            }
+            long latency = System.nanoTime() - event.postTime;
+            totalLatency += latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+            dispatchedCount++;
+            for (PlaybackListener listener : listeners) {
+                try {
+                    dispatch(listener, new PlaybackEvent(source, event.state, event.position, event.properties));
+                } catch (RuntimeException ex) {
+                    logger.error("Playback listener failed", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the latest position to the listeners. The same event instance is
+     * passed every time, with the current properties of the player.
+     */
+    private void deliverProgress(long position) {
+        progressCount.incrementAndGet();
+        if (progressEvent == null) {
+            progressEvent = new PlaybackEvent(source, Playback.PLAYING, 0L, Collections.emptyMap());
+        }
+        progressEvent.setPosition(position);
+        progressEvent.setProperties((source != null) ? source.getProgressProperties() : Collections.emptyMap());
+        for (PlaybackListener listener : listeners) {
+            try {
+                listener.playbackProgress(progressEvent);
+            } catch (RuntimeException ex) {
+                logger.error("Playback listener failed", ex);
+            }
+        }
+    }
+
+    protected void dispatch(PlaybackListener listener, PlaybackEvent pe) {
+        switch (pe.getState()) {
+            case BUFFERING:
+                listener.playbackBuffering(pe);
+                break;
+            case OPENED:
+                listener.playbackOpened(pe);
+                break;
+            case EOM:
+                listener.playbackEndOfMedia(pe);
+                break;
+            case PLAYING:
+                listener.playbackPlaying(pe);
+                break;
+            case PAUSED:
+                listener.playbackPaused(pe);
+                break;
+            case STOPPED:
+                listener.playbackStopped(pe);
+                break;
+            case TRANSITION:
+                listener.playbackTransition(pe);
+                break;
+        }
+    }
+
+    /**
+     * Set how long a poster waits for room in a full queue before queuing
+     * its event anyway.
+     *
+     * @param offerTimeout the timeout in milliseconds.
+     */
+    public void setOfferTimeout(long offerTimeout) {
+        this.offerTimeout = Math.max(0L, offerTimeout);
+    }
+
+    public long getOfferTimeout() {
+        return offerTimeout;
+    }
+
+    public int getQueueDepth() {
+        queueLock.lock();
+        try {
+            return queue.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * Returns the number of progress events delivered to the listeners.
+     */
+    public long getProgressCount() {
+        return progressCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of events queued while the queue was full.
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * Returns the average time events spent queued before dispatch.
+     *
+     * @return the latency in microseconds.
+     */
+    public long getAverageLatency() {
+        long count = dispatchedCount;
+        return (count > 0) ? totalLatency / count / 1000L : 0L;
+    }
+
+    /**
+     * Returns the longest time an event spent queued before dispatch.
+     *
+     * @return the latency in microseconds.
+     */
+    public long getMaxLatency() {
+        return maxLatency / 1000L;
+    }
+
+    /**
+     * A queued event, which can be updated until the dispatcher takes it.
+     * Guarded by the queue lock while queued.
+     */
+    private static class PendingEvent {
+
+        private final Playback state;
+        private final long sequence;
+        private final long postTime;
+        private long position;
+        private Map<String, Object> properties;
+
+        private PendingEvent(Playback state, long position, Map<String, Object> properties, long sequence) {
+            this.state = state;
+            this.position = position;
+            this.properties = properties;
+            this.sequence = sequence;
+            this.postTime = System.nanoTime();
+        }
+    }
+}
@@ -31,4 +31,5 @@ public interface PlaybackListener {
     public void playbackProgress(PlaybackEvent pe);
     public void playbackPaused(PlaybackEvent pe);
     public void playbackStopped(PlaybackEvent pe);
+    public void playbackTransition(PlaybackEvent pe);
 }
@@ -0,0 +1,242 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Processes decoded PCM blocks in 32-bit floating point before they are
+ * written to the line.
+ *
+ * A block is converted to float once, run through the registered
+ * {@link SampleProcessor} stages, the {@link GainProcessor} and the
+ * {@link LimiterProcessor}, then converted to the line format in a single
+ * pass. Samples are dithered (TPDF) whenever the result is narrower than 24
+ * bits and not bit-identical to the source. All buffers are allocated by
+ * {@link #init(AudioFormat, AudioFormat, int)}.
+ *
+ * @author Besmir Beqiri
+ */
+public class SampleProcessingChain {
+
+    private final List<SampleProcessor> stages = new CopyOnWriteArrayList<SampleProcessor>();
+    private final GainProcessor gainProcessor = new GainProcessor();
+    private final LimiterProcessor limiterProcessor = new LimiterProcessor();
+    private AudioFormat sourceFormat;
+    private AudioFormat targetFormat;
+    private int maxFrames;
+    private float[] samples = new float[0];
+    private byte[] output = new byte[0];
+    private int ditherSeed = 0x2545F491;
+
+    /**
+     * Prepares the chain for a source and line format pair.
+     *
+     * @param sourceFormat the format of the decoded blocks.
+     * @param targetFormat the format of the line.
+     * @param maxBytes the largest block size passed to process.
+     */
+    public synchronized void init(AudioFormat sourceFormat, AudioFormat targetFormat, int maxBytes) {
+        if (!isSupported(sourceFormat) || !isSupported(targetFormat)
+                || sourceFormat.getChannels() != targetFormat.getChannels()) {
+            throw new IllegalArgumentException("Unsupported conversion from "
+                    + sourceFormat + " to " + targetFormat);
+        }
+        this.sourceFormat = sourceFormat;
+        this.targetFormat = targetFormat;
+        maxFrames = maxBytes / sourceFormat.getFrameSize();
+        int sampleCount = maxFrames * sourceFormat.getChannels();
+        if (samples.length < sampleCount) {
+            samples = new float[sampleCount];
+        }
+        int outputLength = maxFrames * targetFormat.getFrameSize();
+        if (output.length < outputLength) {
+            output = new byte[outputLength];
+        }
+        for (SampleProcessor stage : stages) {
+            stage.init(maxFrames, sourceFormat.getSampleRate(), sourceFormat.getChannels());
+        }
+        gainProcessor.init(maxFrames, sourceFormat.getSampleRate(), sourceFormat.getChannels());
+        limiterProcessor.init(maxFrames, sourceFormat.getSampleRate(), sourceFormat.getChannels());
+    }
+
+    /**
+     * Returns <code>true</code> if the chain can read or write the given
+     * format: signed or unsigned integer PCM of 8 to 32 bits.
+     *
+     * @param format an audio format.
+     * @return <code>true</code> if the format is supported.
+     */
+    public static boolean isSupported(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        int channels = format.getChannels();
+        return (AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                || AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding()))
+                && bits > 0 && bits <= 32 && (bits % 8) == 0 && channels > 0
+                && format.getFrameSize() == channels * (bits / 8);
+    }
+
+    /**
+     * Adds a stage, run in order of registration before gain and limiter.
+     *
+     * @param stage a sample processor.
+     */
+    public synchronized void add(SampleProcessor stage) {
+        if (stage == null) {
+            throw new IllegalArgumentException();
+        }
+        if (sourceFormat != null) {
+            stage.init(maxFrames, sourceFormat.getSampleRate(), sourceFormat.getChannels());
+        }
+        stages.add(stage);
+    }
+
+    public void remove(SampleProcessor stage) {
+        stages.remove(stage);
+    }
+
+    public GainProcessor getGainProcessor() {
+        return gainProcessor;
+    }
+
+    public LimiterProcessor getLimiterProcessor() {
+        return limiterProcessor;
+    }
+
+    public AudioFormat getTargetFormat() {
+        return targetFormat;
+    }
+
+    /**
+     * Processes a block of decoded PCM data into {@link #getOutput()}.
+     *
+     * @param data the decoded data in the source format.
+     * @param length the number of bytes, a whole number of frames.
+     * @return the number of bytes written to the output buffer.
+     */
+    public int process(byte[] data, int length) {
+        int frames = length / sourceFormat.getFrameSize();
+        int count = frames * sourceFormat.getChannels();
+        toFloat(data, sourceFormat, samples, count);
+        boolean modified = false;
+        for (int i = 0, n = stages.size(); i < n; i++) {
+            modified |= stages.get(i).process(samples, frames);
+        }
+        modified |= gainProcessor.process(samples, frames);
+        modified |= limiterProcessor.process(samples, frames);
+        if (gainProcessor.isSilent()) {
+            // Digital silence stays silent.
+            modified = false;
+        }
+        int targetBits = targetFormat.getSampleSizeInBits();
+        boolean dither = targetBits < 24
+                && (modified || sourceFormat.getSampleSizeInBits() > targetBits);
+        ditherSeed = fromFloat(samples, count, output, targetFormat, dither, ditherSeed);
+        return frames * targetFormat.getFrameSize();
+    }
+
+    /**
+     * @return the buffer filled by {@link #process(byte[], int)}.
+     */
+    public byte[] getOutput() {
+        return output;
+    }
+
+    /**
+     * Converts integer PCM samples to floats in [-1.0, 1.0).
+     */
+    static void toFloat(byte[] in, AudioFormat format, float[] out, int count) {
+        int bytes = format.getSampleSizeInBits() / 8;
+        boolean bigEndian = format.isBigEndian();
+        boolean unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding());
+        if (bytes == 2 && !bigEndian && !unsigned) {
+            for (int i = 0, p = 0; i < count; i++, p += 2) {
+                out[i] = ((in[p + 1] << 8) | (in[p] & 0xFF)) * (1.0F / 32768.0F);
+            }
+            return;
+        }
+        float scale = 1.0F / (1L << (bytes * 8 - 1));
+        int shift = 32 - bytes * 8;
+        for (int i = 0, p = 0; i < count; i++, p += bytes) {
+            int value = 0;
+            for (int b = 0; b < bytes; b++) {
+                int pos = bigEndian ? p + b : p + bytes - 1 - b;
+                value = (value << 8) | (in[pos] & 0xFF);
+            }
+            if (unsigned) {
+                value ^= 1 << (bytes * 8 - 1);
+            }
+            // Sign extend.
+            value = (value << shift) >> shift;
+            out[i] = value * scale;
+        }
+    }
+
+    /**
+     * Converts float samples to integer PCM, clipping and optionally
+     * dithering them.
+     *
+     * @return the dither generator state to pass on the next call.
+     */
+    static int fromFloat(float[] in, int count, byte[] out, AudioFormat format, boolean dither, int ditherSeed) {
+        int bytes = format.getSampleSizeInBits() / 8;
+        boolean bigEndian = format.isBigEndian();
+        boolean unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding());
+        float scale = (float) (1L << (bytes * 8 - 1));
+        float max = scale - 1.0F;
+        float min = -scale;
+        int seed = ditherSeed;
+        if (bytes == 2 && !bigEndian && !unsigned) {
+            for (int i = 0, p = 0; i < count; i++, p += 2) {
+                float s = in[i] * 32768.0F;
+                if (dither) {
+                    // Triangular noise of one LSB peak from two uniform values.
+                    seed ^= seed << 13;
+                    seed ^= seed >>> 17;
+                    seed ^= seed << 5;
+                    s += ((seed & 0xFFFF) - (seed >>> 16)) * (1.0F / 65536.0F);
+                }
+                int value = Math.round(Math.max(-32768.0F, Math.min(32767.0F, s)));
+                out[p] = (byte) value;
+                out[p + 1] = (byte) (value >> 8);
+            }
+        } else {
+            for (int i = 0, p = 0; i < count; i++, p += bytes) {
+                float s = in[i] * scale;
+                if (dither) {
+                    seed ^= seed << 13;
+                    seed ^= seed >>> 17;
+                    seed ^= seed << 5;
+                    s += ((seed & 0xFFFF) - (seed >>> 16)) * (1.0F / 65536.0F);
+                }
+                int value = (s >= max) ? (int) max : (s <= min) ? (int) min : Math.round(s);
+                if (unsigned) {
+                    value ^= 1 << (bytes * 8 - 1);
+                }
+                for (int b = 0; b < bytes; b++) {
+                    int pos = bigEndian ? p + bytes - 1 - b : p + b;
+                    out[pos] = (byte) (value >> (b * 8));
+                }
+            }
+        }
+        return seed;
+    }
+}
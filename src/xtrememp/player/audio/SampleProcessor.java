@@ -0,0 +1,52 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+/**
+ * A processing stage of the floating-point sample chain between the decoder
+ * and the output line.
+ *
+ * Samples are interleaved and nominally within [-1.0, 1.0]; a stage may
+ * leave them outside that range, the limiter at the end of the chain brings
+ * them back.
+ *
+ * @author Besmir Beqiri
+ */
+public interface SampleProcessor {
+
+    /**
+     * Called by the {@link SampleProcessingChain} whenever the audio format
+     * changes. Allows a stage to prepare its buffers and reset its state.
+     *
+     * @param maxFrames The largest number of frames passed to process.
+     * @param sampleRate The sample rate in Hz.
+     * @param channels The number of interleaved channels.
+     */
+    void init(int maxFrames, float sampleRate, int channels);
+
+    /**
+     * Processes a block of samples in place.
+     *
+     * @param samples The interleaved samples.
+     * @param frames The number of frames in the block.
+     * @return <code>true</code> if the samples were changed, a bypassed
+     * stage returns <code>false</code>.
+     */
+    boolean process(float[] samples, int frames);
+}
@@ -0,0 +1,131 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers where the audio of each file starts and ends, so silence is
+ * trimmed without scanning a file again.
+ *
+ * Entries are keyed by the file path and hold the file length and
+ * modification time together with the detection settings, any of which
+ * changing makes the entry stale.
+ *
+ * @author Besmir Beqiri
+ */
+public class SilenceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SilenceCache.class);
+    public static final String CACHE_FILE = "silence.properties";
+    private final File cacheFile;
+    private final Properties properties = new Properties();
+    private volatile boolean modified = false;
+
+    /**
+     * @param cacheDir the directory of the cache file.
+     */
+    public SilenceCache(File cacheDir) {
+        this.cacheFile = new File(cacheDir, CACHE_FILE);
+        if (cacheFile.isFile()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                properties.load(in);
+            } catch (IOException | IllegalArgumentException ex) {
+                logger.error("Can't load the silence cache", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the audible range of a file.
+     *
+     * @param file the audio file.
+     * @param threshold the detection threshold in dBFS.
+     * @param minLength the minimum silence length in milliseconds.
+     * @return the first audible frame and the frame following the last
+     * audible one, or <code>null</code> if the file hasn't been scanned
+     * with these settings.
+     */
+    public long[] get(File file, float threshold, int minLength) {
+        String value = properties.getProperty(file.getAbsolutePath());
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split(",");
+        try {
+            if (fields.length == 6
+                    && Long.parseLong(fields[0]) == file.length()
+                    && Long.parseLong(fields[1]) == file.lastModified()
+                    && Float.parseFloat(fields[2]) == threshold
+                    && Integer.parseInt(fields[3]) == minLength) {
+                return new long[]{Long.parseLong(fields[4]), Long.parseLong(fields[5])};
+            }
+        } catch (NumberFormatException ex) {
+            logger.debug("Bad silence cache entry: {}", value);
+        }
+        return null;
+    }
+
+    /**
+     * Records the audible range of a file.
+     *
+     * @param file the audio file.
+     * @param threshold the detection threshold in dBFS.
+     * @param minLength the minimum silence length in milliseconds.
+     * @param start the first audible frame.
+     * @param end the frame following the last audible one.
+     */
+    public void put(File file, float threshold, int minLength, long start, long end) {
+        properties.setProperty(file.getAbsolutePath(), file.length() + "," + file.lastModified() + ","
+                + threshold + "," + minLength + "," + start + "," + end);
+        modified = true;
+    }
+
+    /**
+     * Writes the cache file if entries were added since the last save.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            properties.store(out, "Audible range of scanned files");
+        } catch (IOException ex) {
+            logger.error("Can't save the silence cache", ex);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            logger.error("Can't save the silence cache", ex);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Finds silence in a stream of PCM blocks.
+ *
+ * A frame is audible when any of its channels reaches the threshold. The
+ * detector only remembers the last audible frame, so it runs alongside the
+ * decoder at the cost of one conversion pass and no allocation per block.
+ *
+ * @author Besmir Beqiri
+ */
+public class SilenceDetector {
+
+    public static final float DEFAULT_THRESHOLD = -60.0F; // dBFS
+    public static final int DEFAULT_MIN_LENGTH = 1000; // milliseconds
+    private final AudioFormat format;
+    private final int channels;
+    private final int frameSize;
+    private final float thresholdDb;
+    private final int minLength;
+    private final float threshold;
+    private final long minFrames;
+    private float[] samples = new float[0];
+    private long frames;
+    private long lastAudibleFrame;
+
+    /**
+     * @param format the PCM format of the blocks.
+     * @param threshold the level below which audio is silent, in dBFS.
+     * @param minLength the shortest silence worth trimming, in milliseconds.
+     */
+    public SilenceDetector(AudioFormat format, float threshold, int minLength) {
+        if (!SampleProcessingChain.isSupported(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        this.format = format;
+        this.channels = format.getChannels();
+        this.frameSize = format.getFrameSize();
+        this.thresholdDb = threshold;
+        this.minLength = minLength;
+        this.threshold = (float) Math.pow(10.0D, threshold / 20.0D);
+        this.minFrames = Math.round(Math.max(0, minLength) * (double) format.getFrameRate() / 1000.0D);
+        reset(0L);
+    }
+
+    /**
+     * Restarts detection at the given frame of the track. Frames before it
+     * are taken as audible.
+     *
+     * @param frame the index of the next frame passed to process.
+     */
+    public final void reset(long frame) {
+        frames = frame;
+        lastAudibleFrame = frame - 1L;
+    }
+
+    /**
+     * Scans a block of frames.
+     *
+     * @param data the PCM data.
+     * @param length the number of bytes, a whole number of frames.
+     * @return the index in the block of the first audible frame, or -1 if
+     * the whole block is silent.
+     */
+    public int process(byte[] data, int length) {
+        int frameCount = length / frameSize;
+        int count = frameCount * channels;
+        if (samples.length < count) {
+            samples = new float[count];
+        }
+        SampleProcessingChain.toFloat(data, format, samples, count);
+        float limit = threshold;
+        int first = -1;
+        int last = -1;
+        for (int frame = 0, i = 0; frame < frameCount; frame++) {
+            boolean audible = false;
+            for (int c = 0; c < channels; c++, i++) {
+                float s = samples[i];
+                if (s >= limit || s <= -limit) {
+                    audible = true;
+                }
+            }
+            if (audible) {
+                if (first < 0) {
+                    first = frame;
+                }
+                last = frame;
+            }
+        }
+        if (last >= 0) {
+            lastAudibleFrame = frames + last;
+        }
+        frames += frameCount;
+        return first;
+    }
+
+    /**
+     * @return the number of frames scanned, counted from the frame passed to
+     * {@link #reset(long)}.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the frame following the last audible one.
+     */
+    public long getAudibleEnd() {
+        return lastAudibleFrame + 1L;
+    }
+
+    /**
+     * @return the length in frames of the silence the scanned frames end
+     * with.
+     */
+    public long getTrailingSilence() {
+        return frames - getAudibleEnd();
+    }
+
+    /**
+     * @return the threshold in dBFS.
+     */
+    public float getThreshold() {
+        return thresholdDb;
+    }
+
+    /**
+     * @return the shortest silence worth trimming, in milliseconds.
+     */
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @return the shortest silence worth trimming, in frames.
+     */
+    public long getMinFrames() {
+        return minFrames;
+    }
+}
@@ -18,17 +18,19 @@
  */
 package xtrememp.player.dsp;
 
-import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.sound.sampled.LineEvent;
 import javax.sound.sampled.LineListener;
 import javax.sound.sampled.SourceDataLine;
@@ -39,6 +41,19 @@ import org.slf4j.LoggerFactory;
  * This class provides synchronization between a digital signal processor and
  * speaker output.
  *
+ * Blocks are scheduled on the audio clock: the frame position of the line is
+ * divided into blocks of <code>sampleRate / blockRate</code> frames and the
+ * DSPs are run once per block, right after its boundary has been played.
+ * Blocks that went by while the DSPs were busy are skipped, not caught up.
+ *
+ * With parallel dispatch enabled each block is handed to the DSPs at once on
+ * a pool of worker threads, each block in its own {@link DssContext}. The
+ * deadline of a block is the start of the next one: a DSP still busy by then
+ * is not given the next block, so a slow DSP never delays the others. No more
+ * DSPs run at a time than the pool has threads, and a free thread goes to the
+ * DSP served least recently, so the blocks dropped are shared out evenly.
+ * With fewer than two threads to spare the DSPs are run serially.
+ *
  * Based on the KJ-DSS project by Kris Fudalewski at http://fudcom.com/main/libs/kjdss/.
  *
  * @author Besmir Beqiri
@@ -48,36 +63,37 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
     private static Logger logger = LoggerFactory.getLogger(DigitalSignalSynchronizer.class);
     public static final int DEFAULT_BLOCK_LENGTH = 8192;
     public static final double DEFAULT_BLOCK_RATE = 44100.0 / 1024.0; // 44100/1024 = 43 bps
-    private final List<DigitalSignalProcessor> dspList;
+    private final List<DspTiming> dspList;
     private final ExecutorService execService;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock rLock = lock.readLock();
-    private final Lock wLock = lock.writeLock();
-    private final Condition writeCondition = wLock.newCondition();
+    public static final int SNAPSHOT_RETRIES = 3;
+    // Guards line changes and DSP registration, never the audio data.
+    private final Lock lock = new ReentrantLock();
+    private final Condition dspCondition = lock.newCondition();
     private Future future;
     private int blockLength = DEFAULT_BLOCK_LENGTH;
     private double blockRate = DEFAULT_BLOCK_RATE;  // 43 blocks per second
-    private SourceDataLine sourceDataLine;
-    private ByteBuffer audioDataBuffer;
-    private DssContext dssContext;
+    private volatile SourceDataLine sourceDataLine;
+    private volatile DssRingBuffer ringBuffer;
+    private volatile DssContext dssContext;
+    // Contexts handed out to the DSPs by parallel dispatch.
+    private volatile DssContext[] contexts;
+    private volatile boolean parallelDispatch;
+    private int dispatchParallelism;
+    private volatile ForkJoinPool dispatchPool;
+    // DSPs running on the dispatch pool.
+    private final AtomicInteger dispatched = new AtomicInteger();
+    // Parallel dispatches so far, the clock of DspTiming.lastDispatch.
+    private long dispatchCount = 0L;
+    private volatile boolean running;
+    private final AtomicLong tornSnapshots = new AtomicLong();
+    private final AtomicLong skippedSnapshots = new AtomicLong();
 
-    // The following variables are used for "active rendering":
     private long blockPeriod = 0L;      // nanoseconds
-    private long beforeTime = 0L;       // nanoseconds
-    private long afterTime = 0L;        // nanoseconds
-    private long timeDiff = 0L;         // nanoseconds
-    private long desiredSleepTime = 0L; // nanoseconds
-    private long actualSleepTime = 0L;  // nanoseconds
-    private long overSleepTime = 0L;    // nanoseconds
-
-    // The following variables are used for performance monitoring and reporting:
-    private float measuredLinePeriod = (float) 0.0;
-    private float cumulativeLinePeriod = (float) 0.0;
-    private float cumulativeComputationTime = (float) 0.0;
-    private float cumulativeActualSleepTime = (float) 0.0;
-    private final int numLinesToAverage = 100;
-    private int lineCount = 0;
-    private int numMissedCycles = 0;
+    // Performance monitoring
+    private final Histogram frameTimeHistogram = new Histogram("us");
+    private final Histogram computeTimeHistogram = new Histogram("us");
+    private final Histogram missedCycleHistogram = new Histogram("");
+    private final AtomicLong missedCycles = new AtomicLong();
 
     /**
      * Default constructor.
@@ -112,14 +128,14 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
         if (sourceDataLine != null) {
             dsp.init(blockLength, sourceDataLine);
         }
-        if (dspList.add(dsp)) {
+        if (dspList.add(new DspTiming(dsp))) {
             logger.info("DSP added");
         }
-        wLock.lock();
+        lock.lock();
         try {
-            writeCondition.signal();
+            dspCondition.signal();
         } finally {
-            wLock.unlock();
+            lock.unlock();
         }
     }
 
@@ -132,8 +148,78 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
         if (dsp == null) {
             throw new IllegalArgumentException();
         }
-        if (dspList.remove(dsp)) {
-            logger.info("DSP removed");
+        for (DspTiming timing : dspList) {
+            if (timing.getDsp() == dsp && dspList.remove(timing)) {
+                logger.info("DSP removed");
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the timing statistics of a registered DSP.
+     *
+     * @param dsp A registered DSP.
+     * @return The statistics, or <code>null</code> if the DSP is not
+     * registered.
+     */
+    public DspTiming getDspTiming(DigitalSignalProcessor dsp) {
+        for (DspTiming timing : dspList) {
+            if (timing.getDsp() == dsp) {
+                return timing;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Enables or disables running the DSPs in parallel, on all cores but one
+     * left to the decoder. With fewer than three cores the DSPs keep running
+     * serially: a single worker thread would only drop blocks.
+     *
+     * @param enabled <code>true</code> to dispatch each block to all DSPs at
+     * once on a pool of worker threads.
+     */
+    public void setParallelDispatchEnabled(boolean enabled) {
+        setParallelDispatchEnabled(enabled, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @param parallelism the number of worker threads, serial dispatch below
+     * two.
+     */
+    synchronized void setParallelDispatchEnabled(boolean enabled, int parallelism) {
+        boolean parallel = enabled && parallelism >= 2;
+        if (enabled && !parallel) {
+            logger.info("Parallel DSP dispatch needs two spare cores, staying serial");
+        }
+        if (parallel == parallelDispatch && (!parallel || parallelism == dispatchParallelism)) {
+            return;
+        }
+        shutdownDispatchPool();
+        parallelDispatch = parallel;
+        dispatchParallelism = parallelism;
+        if (parallel && isRunning()) {
+            startDispatchPool();
+        }
+        logger.info(parallel ? "Parallel DSP dispatch enabled on {} threads"
+                : "Parallel DSP dispatch disabled", parallelism);
+    }
+
+    public boolean isParallelDispatchEnabled() {
+        return parallelDispatch;
+    }
+
+    private synchronized void startDispatchPool() {
+        if (parallelDispatch && dispatchPool == null) {
+            dispatchPool = new ForkJoinPool(dispatchParallelism);
+        }
+    }
+
+    private synchronized void shutdownDispatchPool() {
+        if (dispatchPool != null) {
+            dispatchPool.shutdown();
+            dispatchPool = null;
         }
     }
 
@@ -150,144 +236,356 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
 
         sourceDataLine = sdl;
         dssContext = new DssContext(sourceDataLine, blockLength);
-        audioDataBuffer = ByteBuffer.allocate(sdl.getBufferSize());
+        contexts = new DssContext[]{dssContext};
+        // Room for the line buffer and the block being analysed.
+        ringBuffer = new DssRingBuffer(sdl.getBufferSize() + 2 * dssContext.getSnapshotLength());
 
         //Initialize DSP registered with this DSS.
-        for (DigitalSignalProcessor dsp : dspList) {
-            dsp.init(blockLength, sourceDataLine);
+        for (DspTiming timing : dspList) {
+            timing.getDsp().init(blockLength, sourceDataLine);
         }
     }
 
     protected void start() {
         blockPeriod = Math.round(1000000000.0 / blockRate); // 23,219,955 nanoseconds
+        startDispatchPool();
+        // Set before the task starts, which may be before submit returns.
+        running = true;
         future = execService.submit(this);
     }
 
     protected boolean isRunning() {
-        if (future != null) {
-            return !future.isDone();
-        }
-        return false;
+        return running;
     }
 
     /**
      * Stop monitoring the current SourceDataLine and release resources.
      */
     protected void stop() {
+        running = false;
         if (future != null) {
             future.cancel(true);
         }
+        if (logger.isDebugEnabled() && frameTimeHistogram.getCount() > 0L) {
+            logger.debug("Frame time: {}", frameTimeHistogram);
+            logger.debug("Compute time: {}", computeTimeHistogram);
+            logger.debug("Missed cycles: {}", getMissedCycleCount());
+        }
     }
 
     protected void close() {
+        running = false;
         if (future != null) {
             future.cancel(true);
         }
-        if (audioDataBuffer != null) {
-            audioDataBuffer.clear();
-        }
+        // Started again with the next line.
+        shutdownDispatchPool();
     }
 
     /**
      * Writes part of specified buffer to the monitored source data line an any
-     * registered DSPs.
+     * registered DSPs. Never blocks, must only be called from the thread
+     * writing to the line.
      *
      * @param audioData Data to write.
      * @param offset Offset to start reading from the buffer.
      * @param length The length from the specified offset to read.
      */
     public void writeAudioData(byte[] audioData, int offset, int length) {
-        if (audioDataBuffer == null) {
-            return;
+        DssRingBuffer ring = ringBuffer;
+        if (ring != null) {
+            ring.write(audioData, offset, length);
         }
+    }
 
-        wLock.lock();
-        try {
-            if (audioDataBuffer.remaining() < length) {
-                audioDataBuffer.clear();
+    /**
+     * Takes a consistent snapshot of the audio about to be heard into the
+     * context, retrying a few times if the writer gets in the way.
+     *
+     * @return <code>false</code> if no snapshot could be taken.
+     */
+    protected boolean takeSnapshot(DssContext context, DssRingBuffer ring) {
+        int length = context.getSnapshotLength();
+        SourceDataLine line = context.getSourceDataLine();
+        int frameSize = line.getFormat().getFrameSize();
+        for (int i = 0; i < SNAPSHOT_RETRIES; i++) {
+            long end = ring.getWritePosition();
+            if (end < length) {
+                return false;
             }
-            audioDataBuffer.put(audioData, offset, length);
-        } finally {
-            wLock.unlock();
+            // The bytes queued in the line are the ones not heard yet.
+            long queued = Math.max(0, line.getBufferSize() - line.available());
+            long position = Math.min(end - queued, end - length);
+            position = Math.max(position, end - ring.getCapacity());
+            position -= position % frameSize;
+            if (ring.read(position, context.getSnapshot(), length)) {
+                context.extractData(position, (int) (position % ring.getCapacity()));
+                return true;
+            }
+            tornSnapshots.incrementAndGet();
         }
+        skippedSnapshots.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns how many snapshots were torn by a concurrent write and read
+     * again.
+     *
+     * @return the torn snapshot count.
+     */
+    public long getTornSnapshotCount() {
+        return tornSnapshots.get();
+    }
+
+    /**
+     * Returns how many snapshots were given up after too many retries, the
+     * block then not being dispatched.
+     *
+     * @return the skipped snapshot count.
+     */
+    public long getSkippedSnapshotCount() {
+        return skippedSnapshots.get();
     }
 
     @Override
     public void run() {
-        while (isRunning()) {
-            beforeTime = System.nanoTime();  // nanoseconds
+        long lastBlock = -1L;
+        long lastFrameTime = 0L;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            if (dspList.isEmpty()) {
+                if (!awaitDsp()) {
+                    return;
+                }
+                lastFrameTime = 0L;
+                continue;
+            }
+            DssContext context = dssContext;
+            DssRingBuffer ring = ringBuffer;
+            SourceDataLine line = context.getSourceDataLine();
+            if (!line.isRunning()) {
+                // Nothing is being played, a STOP event will end this task.
+                LockSupport.parkNanos(blockPeriod);
+                lastFrameTime = 0L;
+                continue;
+            }
 
-            if (!dspList.isEmpty()) {
-                rLock.lock();
-                try {
-                    dssContext.extractData(audioDataBuffer);
-                } finally {
-                    rLock.unlock();
+            float sampleRate = line.getFormat().getSampleRate();
+            double framesPerBlock = sampleRate / blockRate;
+            long block = (long) (line.getLongFramePosition() / framesPerBlock);
+            if (block < lastBlock) {
+                // The line was flushed or reopened: start a new timeline.
+                lastBlock = block - 1L;
+            }
+            if (block != lastBlock) {
+                long beforeTime = System.nanoTime();
+                if (lastBlock >= 0L) {
+                    long missed = block - lastBlock - 1L;
+                    missedCycleHistogram.record(missed);
+                    missedCycles.addAndGet(missed);
                 }
-                //Dispatch sample data to digital signal processors
-                for (DigitalSignalProcessor dsp : dspList) {
-                    dsp.process(dssContext);
+                if (lastFrameTime != 0L) {
+                    frameTimeHistogram.record((beforeTime - lastFrameTime) / 1000L);
                 }
-            } else {
-                wLock.lock();
-                try {
-                    writeCondition.awaitUninterruptibly();
-                } finally {
-                    wLock.unlock();
+                lastFrameTime = beforeTime;
+                lastBlock = block;
+
+                ForkJoinPool pool = dispatchPool;
+                if (pool == null) {
+                    if (takeSnapshot(context, ring)) {
+                        //Dispatch sample data to digital signal processors
+                        for (DspTiming timing : dspList) {
+                            timing.process(context);
+                        }
+                    }
+                } else {
+                    dispatchParallel(pool, ring);
                 }
+                computeTimeHistogram.record((System.nanoTime() - beforeTime) / 1000L);
+            }
+
+            // Sleep until the line plays the next block boundary.
+            long nextFrame = (long) Math.ceil((block + 1L) * framesPerBlock);
+            long framesLeft = nextFrame - line.getLongFramePosition();
+            if (framesLeft > 0L) {
+                long sleepTime = (long) (framesLeft * 1000000000.0 / sampleRate);
+                // The frame position may stall on underruns, poll meanwhile.
+                LockSupport.parkNanos(Math.min(sleepTime, blockPeriod));
             }
+        }
+    }
 
-            afterTime = System.nanoTime();      // nanoseconds
-            timeDiff = afterTime - beforeTime;  // This is the "computation time"
-            desiredSleepTime = blockPeriod - timeDiff - overSleepTime;  // nanoseconds
-
-            // logger.info("beforeTime       = "  + beforeTime );
-            // logger.info("afterTime        = "  + afterTime );
-            // logger.info("timeDiff         = "  + timeDiff );
-            // logger.info("desiredSleepTime = "  + desiredSleepTime );
-            // logger.info("blockPeriod      = "  + blockPeriod );
-            
-            if (desiredSleepTime > 0L) {   // some time left in this cycle.  This is good.
+    /**
+     * Snapshots a block into a free context and runs it on as many DSPs as
+     * the pool has free threads, those served least recently first. The
+     * other DSPs drop the block, the ones still busy with an earlier block
+     * having missed its deadline.
+     */
+    private void dispatchParallel(ForkJoinPool pool, DssRingBuffer ring) {
+        long dispatch = dispatchCount++;
+        int free = pool.getParallelism() - dispatched.get();
+        final DssContext context = (free > 0) ? acquireContext() : null;
+        if (context == null) {
+            for (DspTiming timing : dspList) {
+                timing.dropFrame();
+            }
+            return;
+        }
+        try {
+            if (!takeSnapshot(context, ring)) {
+                return;
+            }
+            for (; free > 0; free--) {
+                DspTiming next = null;
+                for (DspTiming timing : dspList) {
+                    if (timing.lastDispatch != dispatch && !timing.busy.get()
+                            && (next == null || timing.lastDispatch < next.lastDispatch)) {
+                        next = timing;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.lastDispatch = dispatch;
+                execute(pool, next, context);
+            }
+            for (DspTiming timing : dspList) {
+                if (timing.lastDispatch != dispatch) {
+                    timing.dropFrame();
+                }
+            }
+        } finally {
+            context.references.decrementAndGet();
+        }
+    }
+
+    private void execute(ForkJoinPool pool, final DspTiming timing, final DssContext context) {
+        timing.busy.set(true);
+        timing.resetDropRun();
+        dispatched.incrementAndGet();
+        context.references.incrementAndGet();
+        try {
+            pool.execute(() -> {
                 try {
-                    TimeUnit.NANOSECONDS.sleep(desiredSleepTime);
-                } catch (InterruptedException ex) {
+                    timing.process(context);
+                } finally {
+                    context.references.decrementAndGet();
+                    dispatched.decrementAndGet();
+                    timing.busy.set(false);
                 }
-                actualSleepTime = System.nanoTime() - afterTime; // nanoseconds
-                overSleepTime = actualSleepTime - desiredSleepTime; // corrects for sleep inaccuracies
-                // logger.info("actualSleepTime      = "  + actualSleepTime );
-                // logger.info("overSleepTime        = " + overSleepTime);
-            } else {
-                // sleepTime <= 0; The computation took longer than the blockPeriod. This is bad.
-                overSleepTime = 0;
-                numMissedCycles++;
+            });
+        } catch (RejectedExecutionException ex) {
+            // Parallel dispatch was just disabled.
+            context.references.decrementAndGet();
+            dispatched.decrementAndGet();
+            timing.busy.set(false);
+        }
+    }
+
+    /**
+     * Returns a context no DSP is reading, creating one if needed. There is
+     * never need for more than one context per DSP plus the one being
+     * filled.
+     *
+     * @return A context referenced once, or <code>null</code> if none is
+     * free.
+     */
+    private DssContext acquireContext() {
+        DssContext[] pool = contexts;
+        for (DssContext context : pool) {
+            if (context.references.get() == 0) {
+                context.references.set(1);
+                return context;
             }
-            /*
-            // This section computes some performance statics and reports them:
-            measuredLinePeriod = timeDiff + desiredSleepTime + overSleepTime;
-            cumulativeLinePeriod += measuredLinePeriod;
-            cumulativeComputationTime += timeDiff;
-            cumulativeActualSleepTime += actualSleepTime;
-
-            if (lineCount == numLinesToAverage - 1) {
-                logger.info("Average Line Period      = " + cumulativeLinePeriod / numLinesToAverage);
-                logger.info("Average Computation Time =  " + cumulativeComputationTime / numLinesToAverage);
-                logger.info("Average Actual Sleep Time= " + cumulativeActualSleepTime / numLinesToAverage);
-                logger.info("Total Missed Cycles      =  " + numMissedCycles);
-                lineCount = 0;
-                cumulativeLinePeriod = 0;
-                cumulativeComputationTime = 0;
-                cumulativeActualSleepTime = 0;
-                numMissedCycles = 0;
+        }
+        if (pool.length > dspList.size()) {
+            return null;
+        }
+        DssContext context = new DssContext(pool[0].getSourceDataLine(), blockLength);
+        context.references.set(1);
+        DssContext[] grown = new DssContext[pool.length + 1];
+        System.arraycopy(pool, 0, grown, 0, pool.length);
+        grown[pool.length] = context;
+        contexts = grown;
+        return context;
+    }
+
+    /**
+     * Waits until a DSP is added.
+     *
+     * @return <code>false</code> if interrupted by a stop.
+     */
+    private boolean awaitDsp() {
+        lock.lock();
+        try {
+            while (dspList.isEmpty()) {
+                dspCondition.await();
             }
-            lineCount++;
-            */
+            return true;
+        } catch (InterruptedException ex) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the distribution of the time between two runs of the DSPs,
+     * which should stay close to the block period.
+     *
+     * @return A histogram in microseconds.
+     */
+    public Histogram getFrameTimeHistogram() {
+        return frameTimeHistogram;
+    }
+
+    /**
+     * Returns the distribution of the time taken to snapshot the audio data
+     * and run all DSPs, or only to hand them the block when dispatching in
+     * parallel.
+     *
+     * @return A histogram in microseconds.
+     */
+    public Histogram getComputeTimeHistogram() {
+        return computeTimeHistogram;
+    }
+
+    /**
+     * Returns the distribution of the number of blocks skipped before each
+     * run of the DSPs.
+     *
+     * @return A histogram of block counts.
+     */
+    public Histogram getMissedCycleHistogram() {
+        return missedCycleHistogram;
+    }
+
+    /**
+     * Returns the total number of blocks skipped because the DSPs could not
+     * keep up with the audio clock.
+     *
+     * @return The missed cycle count.
+     */
+    public long getMissedCycleCount() {
+        return missedCycles.get();
+    }
+
+    public void resetMetrics() {
+        frameTimeHistogram.reset();
+        computeTimeHistogram.reset();
+        missedCycleHistogram.reset();
+        missedCycles.set(0L);
+        tornSnapshots.set(0L);
+        skippedSnapshots.set(0L);
+        for (DspTiming timing : dspList) {
+            timing.reset();
         }
     }
 
     @Override
     public void update(LineEvent event) {
         LineEvent.Type type = event.getType();
-        wLock.lock();
+        lock.lock();
         try {
             if (type.equals(LineEvent.Type.OPEN)) {
                 open((SourceDataLine) event.getLine());
@@ -299,7 +597,7 @@ public class DigitalSignalSynchronizer implements LineListener, Runnable {
                 close();
             }
         } finally {
-            wLock.unlock();
+            lock.unlock();
         }
     }
 }
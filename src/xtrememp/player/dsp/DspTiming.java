@@ -0,0 +1,108 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing statistics of a DSP registered with a
+ * {@link DigitalSignalSynchronizer}.
+ *
+ * @author Besmir Beqiri
+ */
+public class DspTiming {
+
+    private final DigitalSignalProcessor dsp;
+    private final Histogram processTimeHistogram = new Histogram("us");
+    private final AtomicLong droppedFrames = new AtomicLong();
+    // Set while the DSP processes a block on a worker thread.
+    final AtomicBoolean busy = new AtomicBoolean();
+    // The parallel dispatch that last gave the DSP a block, DSS thread only.
+    long lastDispatch = -1L;
+    private volatile int dropRun;
+    private volatile int longestDropRun;
+
+    DspTiming(DigitalSignalProcessor dsp) {
+        this.dsp = dsp;
+    }
+
+    public DigitalSignalProcessor getDsp() {
+        return dsp;
+    }
+
+    /**
+     * Returns the distribution of the time the DSP takes to process a block.
+     *
+     * @return A histogram in microseconds.
+     */
+    public Histogram getProcessTimeHistogram() {
+        return processTimeHistogram;
+    }
+
+    /**
+     * Returns the number of blocks the DSP was not given, because it was
+     * still processing an earlier one past its deadline or because all
+     * threads of parallel dispatch were taken.
+     *
+     * @return The dropped frame count.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Returns the most blocks in a row the DSP was not given.
+     *
+     * @return The longest run of dropped frames.
+     */
+    public int getLongestDropRun() {
+        return longestDropRun;
+    }
+
+    /**
+     * Runs the DSP on a block and records how long it took.
+     */
+    void process(DssContext context) {
+        long beforeTime = System.nanoTime();
+        dsp.process(context);
+        processTimeHistogram.record((System.nanoTime() - beforeTime) / 1000L);
+    }
+
+    void dropFrame() {
+        droppedFrames.incrementAndGet();
+        // Only the DSS thread drops frames.
+        int run = dropRun + 1;
+        dropRun = run;
+        if (run > longestDropRun) {
+            longestDropRun = run;
+        }
+    }
+
+    void resetDropRun() {
+        dropRun = 0;
+    }
+
+    void reset() {
+        processTimeHistogram.reset();
+        droppedFrames.set(0L);
+        dropRun = 0;
+        longestDropRun = 0;
+    }
+}
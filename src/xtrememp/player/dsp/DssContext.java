@@ -19,6 +19,10 @@
 package xtrememp.player.dsp;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.SourceDataLine;
 
@@ -31,6 +35,14 @@ public class DssContext {
     private final SourceDataLine sourceDataLine;
     private final AudioFormat audioFormat;
     private final float[][] audioChannels;
+    private final FloatBuffer[] channelBuffers;
+    private final byte[] snapshot;
+    // 16-bit little-endian view of the snapshot and its decode buffer.
+    private final ShortBuffer shortView;
+    private final short[] shortSamples;
+    private long position = -1L;
+    private long frameNumber = -1L;
+    private final SpectralAnalysis spectralAnalysis;
     private int offset;
     private final int blockLength;
     private final int channelCount;
@@ -38,6 +50,10 @@ public class DssContext {
     private final int ssib;
     private final int channelSize;
     private final float audioSampleSize;
+    private final boolean bigEndian;
+    private final boolean unsigned;
+    // Number of DSPs, and the DSS itself, still reading this context.
+    final AtomicInteger references = new AtomicInteger();
 
     /**
      * Create a DSS context from a source data line with a fixed sample size.
@@ -56,55 +72,109 @@ public class DssContext {
         ssib = audioFormat.getSampleSizeInBits();   // number of bits in each sample
         channelSize = frameSize / channelCount;     // channelSize = 4/2=2 or 2/1=2
         audioSampleSize = (1 << (ssib - 1));        // If ssib = 16 then audioSampleSize = 32768
+        bigEndian = audioFormat.isBigEndian();
+        unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(audioFormat.getEncoding());
+        snapshot = new byte[blockLength * frameSize];
+        if (ssib == 16 && !bigEndian && !unsigned && channelCount <= 2) {
+            shortView = ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            shortSamples = new short[blockLength * channelCount];
+        } else {
+            shortView = null;
+            shortSamples = null;
+        }
+        spectralAnalysis = new SpectralAnalysis(this);
+        channelBuffers = new FloatBuffer[audioChannels.length];
+        for (int i = 0; i < audioChannels.length; i++) {
+            channelBuffers[i] = FloatBuffer.wrap(audioChannels[i]).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Returns the buffer the DigitalSignalSynchronizer copies the audio data
+     * into before it is extracted.
+     */
+    byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of bytes of audio data a snapshot holds.
+     *
+     * @return the snapshot length in bytes.
+     */
+    public int getSnapshotLength() {
+        return snapshot.length;
     }
 
     /**
      * The method extractData() extracts the desired audio data from the
-     * audioDataBuffer provided by the DigitalSignalSynchronizer, performs some
+     * snapshot taken by the DigitalSignalSynchronizer, performs some
      * necessary reformatting on it, and outputs the audio samples data into a
      * two-dimensional array called audioChannels[][].
      * 
-     * @param audioDataBuffer 
+     * @param sequence the stream position of the snapshot.
+     * @param offset the offset of the snapshot in the DSS ring buffer.
      */
-    public void extractData(ByteBuffer audioDataBuffer) {
-        long lfp = sourceDataLine.getLongFramePosition();  // long frame position
-        offset = (int) ((long) (lfp * frameSize) % (long) (audioDataBuffer.capacity()));
-        int channelNum  = 0;    // audio channel number
-        int sampleNum   = 0;    // audio sample number
-        int cdp         = 0;    // channel data position
-        int position    = 0;
-        int bit         = 0;    // bit (as in 8th or 16th bit)
-        int bytePos     = 0;    // byte position (in the sample)
-        float signMask  = 0.0F; // sign mask
-        
-        // -- Loop through audio data.
-        for (sampleNum = 0, position = offset; sampleNum < blockLength; sampleNum++, position += frameSize) {
-            if (position >= audioDataBuffer.capacity()) {
-                position = 0;
-            }
-
-            // -- Loop through channels.
-            for (channelNum = 0, cdp = 0; channelNum < channelCount; channelNum++, cdp += channelSize) {
-
-                // -- Sign least significant byte. (PCM_SIGNED)
-                signMask = (audioDataBuffer.get(position + cdp) & 0xFF) - 128.0F;
-
-                for (bit = 8, bytePos = 1; bit < ssib; bit += 8) {
-                    signMask += audioDataBuffer.get(position + cdp + bytePos) << bit;
-                    bytePos++;
-                }
-
-                // -- Store normalized data.
-                audioChannels[channelNum][sampleNum] = signMask / audioSampleSize;
-            }
+    void extractData(long sequence, int offset) {
+        this.position = sequence;
+        this.offset = offset;
+        frameNumber++;
+        if (shortView != null) {
+            extract16();
+        } else {
+            extractGeneric();
         }
         // If the input audio signal has only 1 channel then the above loop will
         // produce only the audioChannel[0][] array.  We should create an
         // audioChannels[1][] array containing a replica of the input so that
         // all subsequent processing steps will have 2 channels to work with.
-        if(channelCount == 1) {
-            for (sampleNum = 0; sampleNum < blockLength; sampleNum++) {
-                audioChannels[1][sampleNum] = audioChannels[0][sampleNum];
+        if (channelCount == 1) {
+            System.arraycopy(audioChannels[0], 0, audioChannels[1], 0, blockLength);
+        }
+    }
+
+    /**
+     * Fast path for 16-bit signed little-endian mono and stereo, the format
+     * of nearly every line: one bulk read and a deinterleaving pass.
+     */
+    private void extract16() {
+        shortView.rewind();
+        shortView.get(shortSamples);
+        final float scale = 1.0F / 32768.0F;
+        float[] left = audioChannels[0];
+        if (channelCount == 2) {
+            float[] right = audioChannels[1];
+            for (int i = 0, j = 0; i < blockLength; i++, j += 2) {
+                left[i] = shortSamples[j] * scale;
+                right[i] = shortSamples[j + 1] * scale;
+            }
+        } else {
+            for (int i = 0; i < blockLength; i++) {
+                left[i] = shortSamples[i] * scale;
+            }
+        }
+    }
+
+    /**
+     * Any other integer PCM format. Channels beyond the second are ignored.
+     */
+    private void extractGeneric() {
+        byte[] audioData = snapshot;
+        int channels = Math.min(channelCount, audioChannels.length);
+        int shift = 32 - ssib;
+        float scale = 1.0F / audioSampleSize;
+        for (int sampleNum = 0, position = 0; sampleNum < blockLength; sampleNum++, position += frameSize) {
+            for (int channelNum = 0, cdp = position; channelNum < channels; channelNum++, cdp += channelSize) {
+                int value = 0;
+                for (int b = 0; b < channelSize; b++) {
+                    int pos = bigEndian ? cdp + b : cdp + channelSize - 1 - b;
+                    value = (value << 8) | (audioData[pos] & 0xFF);
+                }
+                if (unsigned) {
+                    value ^= 1 << (ssib - 1);
+                }
+                // -- Sign extend and store normalized data.
+                audioChannels[channelNum][sampleNum] = ((value << shift) >> shift) * scale;
             }
         }
     }
@@ -113,16 +183,67 @@ public class DssContext {
      * Returns a properly formatted audio sample array for each audio channel
      * originally provided by the DSS data buffer.
      *
-     * A clone of the audioChannels array is outputted in order to enforce a
-     * producer/consumer model of data transfer.  The DSS class is the audio data
-     * producer and the DSPs/visualizations are the consumers.  If a visualization
-     * modifies its copy of the audioChannels array, it does not effect any
-     * subsequent visualizations because they receive a pristine new array clone.
+     * The arrays are shared by all DSPs and reused for every block, so they
+     * must be treated as read-only. A DSP that needs to modify the samples
+     * takes its own copy with {@link #copyAudioData(float[][])}.
      * 
      * @return A float array for all audio channels.
      */
     public float[][] getAudioData() {
-        return audioChannels.clone();
+        return audioChannels;
+    }
+
+    /**
+     * Returns a read-only view of the samples of one channel. The view
+     * shares the channel array, only its position is private to the caller.
+     *
+     * @param channel 0 for left, 1 for right.
+     * @return A read-only {@link FloatBuffer} positioned at 0.
+     */
+    public FloatBuffer getChannelBuffer(int channel) {
+        return channelBuffers[channel].duplicate();
+    }
+
+    /**
+     * Copies the audio data into arrays the caller may modify, allocating
+     * them only if <code>dst</code> does not fit.
+     *
+     * @param dst the arrays to reuse, may be <code>null</code>.
+     * @return The filled arrays.
+     */
+    public float[][] copyAudioData(float[][] dst) {
+        if (dst == null || dst.length < audioChannels.length) {
+            dst = new float[audioChannels.length][];
+        }
+        for (int i = 0; i < audioChannels.length; i++) {
+            if (dst[i] == null || dst[i].length < blockLength) {
+                dst[i] = new float[blockLength];
+            }
+            System.arraycopy(audioChannels[i], 0, dst[i], 0, blockLength);
+        }
+        return dst;
+    }
+
+    /**
+     * Returns the spectrum of the channel average of the current data,
+     * computed once per block and shared by all DSPs.
+     *
+     * @param length The FFT length, at most the sample size.
+     * @param window The window type.
+     * @param scale The scale of the values.
+     * @return <code>length / 2</code> spectral values, which must not be
+     * modified.
+     * @see SpectralAnalysis
+     */
+    public float[] getSpectrum(int length, SpectralAnalysis.Window window, SpectralAnalysis.Scale scale) {
+        return spectralAnalysis.getSpectrum(length, window, scale);
+    }
+
+    /**
+     * Counts the blocks extracted into this context.
+     */
+    long getFrameNumber() {
+        return frameNumber;
     }
 
     /**
@@ -135,17 +256,28 @@ public class DssContext {
     }
 
     /**
-     * Returns the data buffer offset to start reading from. Please note that
-     * the offset + length can be beyond the buffer length. This simply means,
-     * the rest of data sample has rolled over to the beginning of the data
-     * buffer.
+     * Returns the data buffer offset the current data was read from. Please
+     * note that the offset + length can be beyond the buffer length. This
+     * simply means, the rest of data sample has rolled over to the beginning
+     * of the data buffer.
      *
-     * @return The data buffer offset to start reading from.
+     * @return The data buffer offset the data was read from.
      */
     public int getOffset() {
         return offset;
     }
 
+    /**
+     * Returns the stream position, in bytes written to the line, of the
+     * first sample of the current data. It stamps each snapshot: DSPs see
+     * the same value again when no new snapshot could be taken.
+     *
+     * @return The snapshot position, or -1 before the first snapshot.
+     */
+    public long getPosition() {
+        return position;
+    }
+
     /**
      * Returns the monitored source data line.
      *
@@ -0,0 +1,128 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A ring of the audio bytes written to the line, shared by a single writer
+ * (the audio output thread) and any number of readers.
+ *
+ * The writer never blocks: the write lock of the {@link StampedLock} is
+ * only ever taken by the writer itself, so acquiring it always succeeds at
+ * once. It serves as a sequence counter that readers validate their
+ * optimistic copies against, seqlock style. A reader that races with a
+ * write gets a torn snapshot and has to retry or skip it.
+ *
+ * @author Besmir Beqiri
+ */
+public class DssRingBuffer {
+
+    private final byte[] data;
+    private final int capacity;
+    private final StampedLock sequenceLock = new StampedLock();
+    // Total number of bytes written so far.
+    private volatile long writePosition = 0L;
+
+    /**
+     * @param capacity the size of the ring in bytes.
+     */
+    public DssRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.data = new byte[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of bytes written since the ring was created, which
+     * is also the position just after the newest byte.
+     *
+     * @return the write position.
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Appends data to the ring, overwriting the oldest bytes. Must only be
+     * called from the writer thread.
+     *
+     * @param src the data to write.
+     * @param offset the offset in src.
+     * @param length the number of bytes.
+     */
+    public void write(byte[] src, int offset, int length) {
+        long position = writePosition;
+        if (length > capacity) {
+            // Only the tail fits.
+            position += length - capacity;
+            offset += length - capacity;
+            length = capacity;
+        }
+        // Uncontended: readers never take the lock.
+        long stamp = sequenceLock.tryWriteLock();
+        try {
+            int start = (int) (position % capacity);
+            int first = Math.min(length, capacity - start);
+            System.arraycopy(src, offset, data, start, first);
+            if (first < length) {
+                System.arraycopy(src, offset + first, data, 0, length - first);
+            }
+            writePosition = position + length;
+        } finally {
+            if (stamp != 0L) {
+                sequenceLock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Copies bytes from the ring without blocking the writer.
+     *
+     * @param position the absolute position of the first byte, which must
+     * still be within the ring.
+     * @param dst the destination of the copy.
+     * @param length the number of bytes.
+     * @return <code>true</code> if the copy is consistent, <code>false</code>
+     * if it was torn by a concurrent write or the data has been overwritten.
+     */
+    public boolean read(long position, byte[] dst, int length) {
+        long stamp = sequenceLock.tryOptimisticRead();
+        if (stamp == 0L) {
+            return false;
+        }
+        long end = writePosition;
+        if (position < end - capacity || position + length > end || length > capacity) {
+            return false;
+        }
+        int start = (int) (position % capacity);
+        int first = Math.min(length, capacity - start);
+        System.arraycopy(data, start, dst, 0, first);
+        if (first < length) {
+            System.arraycopy(data, 0, dst, first, length - first);
+        }
+        return sequenceLock.validate(stamp);
+    }
+}
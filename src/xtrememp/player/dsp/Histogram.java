@@ -0,0 +1,156 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with power-of-two buckets:
+ * bucket 0 counts the value 0 and bucket <i>n</i> the values from
+ * 2<sup>n-1</sup> to 2<sup>n</sup>-1. Recording never allocates, so it can
+ * be done from the DSS thread on every cycle.
+ *
+ * @author Besmir Beqiri
+ */
+public class Histogram {
+
+    public static final int BUCKET_COUNT = 64;
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private volatile long max = 0L;
+
+    /**
+     * @param unit the unit of the recorded values, for display only.
+     */
+    public Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Records a value, negative values being counted as 0.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0L) {
+            value = 0L;
+        }
+        buckets.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Returns the bucket a value falls into.
+     *
+     * @param value a non-negative value.
+     * @return the bucket index.
+     */
+    public static int getBucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Returns the smallest value counted in a bucket.
+     *
+     * @param bucket the bucket index.
+     * @return the lower bound of the bucket.
+     */
+    public static long getBucketLowerBound(int bucket) {
+        return (bucket == 0) ? 0L : 1L << (bucket - 1);
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @return a copy of the bucket counts.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return (n > 0L) ? sum.get() / n : 0L;
+    }
+
+    /**
+     * Returns an upper estimate of a percentile: the upper bound of the
+     * bucket holding it.
+     *
+     * @param percentile a value between 0.0 and 100.0.
+     * @return the estimated value, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0L) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(n * Math.max(0.0, Math.min(100.0, percentile)) / 100.0);
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0L) {
+                return Math.min(max, (i == 0) ? 0L : (1L << i) - 1L);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max = 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " mean=" + getMean() + unit
+                + " p50=" + getPercentile(50.0) + unit
+                + " p99=" + getPercentile(99.0) + unit
+                + " max=" + getMax() + unit;
+    }
+}
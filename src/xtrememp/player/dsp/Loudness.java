@@ -0,0 +1,159 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The loudness of a track or an album, as measured by a
+ * {@link LoudnessMeter}.
+ *
+ * @author Besmir Beqiri
+ */
+public final class Loudness {
+
+    /**
+     * The level tracks are normalized to, in LUFS. This is the reference of
+     * ReplayGain 2.0, 5 LU above EBU R128 to leave room for quiet masters.
+     */
+    public static final double REFERENCE_LOUDNESS = -18.0D;
+
+    /**
+     * Which loudness playback is normalized by.
+     */
+    public enum GainMode {
+
+        OFF, TRACK, ALBUM
+    }
+    private final double integratedLoudness;
+    private final float truePeak;
+    private final int[] histogram;
+
+    Loudness(double integratedLoudness, float truePeak, int[] histogram) {
+        this.integratedLoudness = integratedLoudness;
+        this.truePeak = truePeak;
+        this.histogram = histogram.clone();
+    }
+
+    /**
+     * Combines the loudness of the tracks of an album. Blocks of all tracks
+     * are gated together, as if the album were one file.
+     *
+     * @param tracks the tracks.
+     * @return the loudness of the album.
+     */
+    public static Loudness merge(Collection<Loudness> tracks) {
+        int[] histogram = new int[LoudnessMeter.HISTOGRAM_BINS];
+        float truePeak = 0.0F;
+        for (Loudness track : tracks) {
+            for (int bin = 0; bin < histogram.length; bin++) {
+                histogram[bin] += track.histogram[bin];
+            }
+            truePeak = Math.max(truePeak, track.truePeak);
+        }
+        return new Loudness(LoudnessMeter.getIntegratedLoudness(histogram), truePeak, histogram);
+    }
+
+    /**
+     * @return the gated loudness in LUFS, or negative infinity for silence.
+     */
+    public double getIntegratedLoudness() {
+        return integratedLoudness;
+    }
+
+    /**
+     * @return the true peak as a linear amplitude.
+     */
+    public float getTruePeak() {
+        return truePeak;
+    }
+
+    /**
+     * @return the true peak in dBTP.
+     */
+    public double getTruePeakDb() {
+        return 20.0D * Math.log10(truePeak);
+    }
+
+    /**
+     * @return the gain bringing this loudness to the reference, in dB, or 0
+     * for silence.
+     */
+    public double getReplayGain() {
+        return Double.isInfinite(integratedLoudness) ? 0.0D : REFERENCE_LOUDNESS - integratedLoudness;
+    }
+
+    /**
+     * Returns the linear factor applying the replay gain, reduced if needed
+     * so the true peak stays below full scale.
+     *
+     * @return the gain factor.
+     */
+    public float getGainFactor() {
+        double factor = Math.pow(10.0D, getReplayGain() / 20.0D);
+        if (truePeak > 0.0F) {
+            factor = Math.min(factor, 1.0D / truePeak);
+        }
+        return (float) factor;
+    }
+
+    /**
+     * Writes the non-empty histogram bins, which is all needed to merge this
+     * loudness into an album later.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeDouble(integratedLoudness);
+        out.writeFloat(truePeak);
+        int bins = 0;
+        for (int count : histogram) {
+            if (count != 0) {
+                bins++;
+            }
+        }
+        out.writeShort(bins);
+        for (int bin = 0; bin < histogram.length; bin++) {
+            if (histogram[bin] != 0) {
+                out.writeShort(bin);
+                out.writeInt(histogram[bin]);
+            }
+        }
+    }
+
+    static Loudness read(DataInput in) throws IOException {
+        double integratedLoudness = in.readDouble();
+        float truePeak = in.readFloat();
+        int[] histogram = new int[LoudnessMeter.HISTOGRAM_BINS];
+        for (int i = 0, bins = in.readUnsignedShort(); i < bins; i++) {
+            int bin = in.readUnsignedShort();
+            if (bin >= histogram.length) {
+                throw new IOException("Bad histogram bin: " + bin);
+            }
+            histogram[bin] = in.readInt();
+        }
+        return new Loudness(integratedLoudness, truePeak, histogram);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f LUFS, %.1f dBTP", integratedLoudness, getTruePeakDb());
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Measures loudness as defined by ITU-R BS.1770-4 and EBU R128.
+ *
+ * Samples are K-weighted, summed over 400 ms blocks overlapping by 75% and
+ * gated at -70 LUFS and then 10 LU below the ungated level. Block levels are
+ * kept in a histogram of 0.1 LU bins rather than a list, so memory does not
+ * grow with the length of the file and the histograms of several tracks can
+ * be merged into the loudness of an album. The true peak is estimated by
+ * upsampling four times with a 48 tap interpolation filter.
+ *
+ * A meter is not thread safe and allocates nothing once created.
+ *
+ * @author Besmir Beqiri
+ */
+public final class LoudnessMeter {
+
+    public static final double ABSOLUTE_GATE = -70.0D; // LUFS
+    public static final double RELATIVE_GATE = -10.0D; // LU
+    static final double HISTOGRAM_MIN = -70.0D;
+    static final double HISTOGRAM_STEP = 0.1D;
+    static final int HISTOGRAM_BINS = 1000; // -70 to +30 LUFS
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS_PER_PHASE = 12;
+    private static final double[][] INTERPOLATOR = createInterpolator();
+    private final int channels;
+    private final double[] channelWeights;
+    // K-weighting: a high shelf then a high pass, one state pair per channel.
+    private final double b0, b1, b2, a1, a2;
+    private final double c1, c2;
+    private final double[] shelfZ1, shelfZ2, passZ1, passZ2;
+    // Four 100 ms sub-blocks make a 400 ms block.
+    private final int stepFrames;
+    private final double[] subBlocks = new double[4];
+    private int subBlockCount;
+    private int stepPosition;
+    private double stepEnergy;
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+    // The last samples of each channel, for true peak interpolation.
+    private final float[] history;
+    private int historyPosition;
+    private float truePeak;
+    private long frames;
+
+    /**
+     * @param sampleRate the sample rate in Hz.
+     * @param channels the number of interleaved channels. Six channels are
+     * taken as 5.1: the LFE channel is left out and the surround channels
+     * weigh +1.5 dB.
+     */
+    public LoudnessMeter(float sampleRate, int channels) {
+        if (sampleRate <= 0.0F || channels <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.channels = channels;
+        this.channelWeights = new double[channels];
+        Arrays.fill(channelWeights, 1.0D);
+        if (channels == 6) {
+            channelWeights[3] = 0.0D;
+            channelWeights[4] = 1.41D;
+            channelWeights[5] = 1.41D;
+        }
+
+        // Stage 1, the high shelf modelling the head.
+        double f0 = 1681.974450955533D;
+        double gain = 3.999843853973347D;
+        double q = 0.7071752369554196D;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0D, gain / 20.0D);
+        double vb = Math.pow(vh, 0.4996667741545416D);
+        double a0 = 1.0D + k / q + k * k;
+        b0 = (vh + vb * k / q + k * k) / a0;
+        b1 = 2.0D * (k * k - vh) / a0;
+        b2 = (vh - vb * k / q + k * k) / a0;
+        a1 = 2.0D * (k * k - 1.0D) / a0;
+        a2 = (1.0D - k / q + k * k) / a0;
+        // Stage 2, the RLB high pass; its numerator is 1, -2, 1.
+        f0 = 38.13547087602444D;
+        q = 0.5003270373238773D;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1.0D + k / q + k * k;
+        c1 = 2.0D * (k * k - 1.0D) / a0;
+        c2 = (1.0D - k / q + k * k) / a0;
+        shelfZ1 = new double[channels];
+        shelfZ2 = new double[channels];
+        passZ1 = new double[channels];
+        passZ2 = new double[channels];
+
+        stepFrames = Math.max(1, Math.round(sampleRate / 10.0F));
+        history = new float[channels * TAPS_PER_PHASE];
+    }
+
+    /**
+     * Measures a block of samples.
+     *
+     * @param samples interleaved samples within [-1.0, 1.0].
+     * @param frameCount the number of frames in the block.
+     */
+    public void process(float[] samples, int frameCount) {
+        for (int i = 0, n = frameCount * channels; i < n; i += channels) {
+            double energy = 0.0D;
+            for (int c = 0; c < channels; c++) {
+                float x = samples[i + c];
+                // Direct form II transposed, two stages.
+                double y = b0 * x + shelfZ1[c];
+                shelfZ1[c] = b1 * x - a1 * y + shelfZ2[c];
+                shelfZ2[c] = b2 * x - a2 * y;
+                double z = y + passZ1[c];
+                passZ1[c] = -2.0D * y - c1 * z + passZ2[c];
+                passZ2[c] = y - c2 * z;
+                energy += channelWeights[c] * z * z;
+
+                truePeak(c, x);
+            }
+            historyPosition = (historyPosition + 1) % TAPS_PER_PHASE;
+            stepEnergy += energy;
+            if (++stepPosition == stepFrames) {
+                endStep();
+            }
+        }
+        frames += frameCount;
+    }
+
+    private void truePeak(int channel, float x) {
+        int base = channel * TAPS_PER_PHASE;
+        history[base + historyPosition] = x;
+        float peak = Math.abs(x);
+        for (int phase = 1; phase < OVERSAMPLING; phase++) {
+            double[] h = INTERPOLATOR[phase];
+            double y = 0.0D;
+            for (int t = 0, p = historyPosition; t < TAPS_PER_PHASE; t++) {
+                y += h[t] * history[base + p];
+                p = (p == 0) ? TAPS_PER_PHASE - 1 : p - 1;
+            }
+            float abs = (float) Math.abs(y);
+            if (abs > peak) {
+                peak = abs;
+            }
+        }
+        if (peak > truePeak) {
+            truePeak = peak;
+        }
+    }
+
+    private void endStep() {
+        subBlocks[subBlockCount & 3] = stepEnergy;
+        subBlockCount++;
+        stepEnergy = 0.0D;
+        stepPosition = 0;
+        if (subBlockCount >= 4) {
+            double energy = (subBlocks[0] + subBlocks[1] + subBlocks[2] + subBlocks[3]) / (4.0D * stepFrames);
+            double loudness = toLoudness(energy);
+            if (loudness > ABSOLUTE_GATE) {
+                int bin = (int) ((loudness - HISTOGRAM_MIN) / HISTOGRAM_STEP);
+                histogram[Math.min(HISTOGRAM_BINS - 1, bin)]++;
+            }
+        }
+    }
+
+    /**
+     * @return the gated loudness of the samples measured so far, in LUFS.
+     */
+    public double getIntegratedLoudness() {
+        return getIntegratedLoudness(histogram);
+    }
+
+    /**
+     * @return the highest interpolated sample magnitude so far, linear.
+     */
+    public float getTruePeak() {
+        return truePeak;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the measurement so far.
+     */
+    public Loudness getLoudness() {
+        return new Loudness(getIntegratedLoudness(), truePeak, histogram);
+    }
+
+    /**
+     * Computes the gated loudness of a block histogram.
+     *
+     * @param histogram block counts per 0.1 LU bin from -70 LUFS.
+     * @return the loudness in LUFS, or negative infinity if every block was
+     * below the absolute gate.
+     */
+    static double getIntegratedLoudness(int[] histogram) {
+        double energy = 0.0D;
+        long count = 0L;
+        for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+            if (histogram[bin] != 0) {
+                energy += histogram[bin] * binEnergy(bin);
+                count += histogram[bin];
+            }
+        }
+        if (count == 0L) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double relativeGate = toLoudness(energy / count) + RELATIVE_GATE;
+        int firstBin = Math.max(0, (int) Math.ceil((relativeGate - HISTOGRAM_MIN) / HISTOGRAM_STEP));
+        energy = 0.0D;
+        count = 0L;
+        for (int bin = firstBin; bin < HISTOGRAM_BINS; bin++) {
+            if (histogram[bin] != 0) {
+                energy += histogram[bin] * binEnergy(bin);
+                count += histogram[bin];
+            }
+        }
+        return (count == 0L) ? Double.NEGATIVE_INFINITY : toLoudness(energy / count);
+    }
+
+    private static double binEnergy(int bin) {
+        double loudness = HISTOGRAM_MIN + (bin + 0.5D) * HISTOGRAM_STEP;
+        return Math.pow(10.0D, (loudness + 0.691D) / 10.0D);
+    }
+
+    private static double toLoudness(double energy) {
+        return -0.691D + 10.0D * Math.log10(energy);
+    }
+
+    /**
+     * Creates the polyphase interpolation filter: a Hann windowed sinc cut
+     * at the original Nyquist frequency. Phase p estimates the signal p/4 of
+     * a sample after the middle of the history; phase 0 is the original
+     * sample itself and is not used.
+     */
+    private static double[][] createInterpolator() {
+        double halfWidth = TAPS_PER_PHASE / 2.0D + 0.5D;
+        double[][] phases = new double[OVERSAMPLING][TAPS_PER_PHASE];
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double sum = 0.0D;
+            for (int t = 0; t < TAPS_PER_PHASE; t++) {
+                // Distance from the t-th newest sample, in samples.
+                double x = t - TAPS_PER_PHASE / 2 + (double) phase / OVERSAMPLING;
+                double sinc = (x == 0.0D) ? 1.0D : Math.sin(Math.PI * x) / (Math.PI * x);
+                double window = 0.5D + 0.5D * Math.cos(Math.PI * x / halfWidth);
+                phases[phase][t] = sinc * window;
+                sum += phases[phase][t];
+            }
+            // Unity gain at DC.
+            for (int t = 0; t < TAPS_PER_PHASE; t++) {
+                phases[phase][t] /= sum;
+            }
+        }
+        return phases;
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xtrememp.util.Utilities;
+
+/**
+ * Measures the loudness of audio files in the background and remembers it.
+ *
+ * Files are decoded by the installed SPIs and measured by a
+ * {@link LoudnessMeter} on a work-stealing pool of low priority threads, so
+ * idle threads take queued files from busy ones. Results are kept in a cache
+ * file keyed by the file path, length and modification time, and a changed
+ * file is measured again.
+ *
+ * @author Besmir Beqiri
+ */
+public class LoudnessScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoudnessScanner.class);
+    public static final String CACHE_FILE = "loudness.cache";
+    private static final int MAGIC = 0x584C4331; // "XLC1"
+    private static final int VERSION = 1;
+    private static final int BLOCK_FRAMES = 4096;
+    private static final int SAVE_INTERVAL = 16;
+    private final File cacheFile;
+    private final ForkJoinPool pool;
+    private final Map<File, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<File, Future<Loudness>> pending = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger unsaved = new AtomicInteger();
+
+    /**
+     * Notified when a file has been measured, on a scanner thread.
+     */
+    public interface Listener {
+
+        void loudnessScanned(File file, Loudness loudness);
+    }
+
+    /**
+     * Creates a scanner using all but one core.
+     *
+     * @param cacheDir the directory of the cache file.
+     */
+    public LoudnessScanner(File cacheDir) {
+        this(cacheDir, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * @param cacheDir the directory of the cache file.
+     * @param threads the number of files measured at once.
+     */
+    public LoudnessScanner(File cacheDir, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.cacheFile = new File(cacheDir, CACHE_FILE);
+        this.pool = new ForkJoinPool(threads, Utilities.lowPriorityWorkerThreadFactory("LoudnessScanner"), null, true);
+        load();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the loudness of a file if it has been measured, without
+     * blocking on the measurement.
+     *
+     * @param file the audio file.
+     * @return the loudness, or <code>null</code> if it isn't known yet.
+     */
+    public Loudness getLoudness(File file) {
+        File key = file.getAbsoluteFile();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.isValid(key)) {
+            return entry.loudness;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the loudness of an album if all of its tracks have been
+     * measured.
+     *
+     * @param files the tracks of the album.
+     * @return the album loudness, or <code>null</code> if a track isn't
+     * known yet.
+     */
+    public Loudness getAlbumLoudness(Collection<File> files) {
+        List<Loudness> tracks = new ArrayList<>(files.size());
+        for (File file : files) {
+            Loudness loudness = getLoudness(file);
+            if (loudness == null) {
+                return null;
+            }
+            tracks.add(loudness);
+        }
+        return tracks.isEmpty() ? null : Loudness.merge(tracks);
+    }
+
+    /**
+     * Queues a file for measurement. Files already measured complete at once.
+     *
+     * @param file the audio file.
+     * @return the pending loudness.
+     */
+    public Future<Loudness> submit(File file) {
+        final File key = file.getAbsoluteFile();
+        Loudness loudness = getLoudness(key);
+        if (loudness != null) {
+            return CompletableFuture.completedFuture(loudness);
+        }
+        return pending.computeIfAbsent(key, k -> pool.submit(() -> {
+            try {
+                return scan(k);
+            } finally {
+                pending.remove(k);
+            }
+        }));
+    }
+
+    /**
+     * Queues files for measurement.
+     *
+     * @param files the audio files.
+     */
+    public void submitAll(Collection<File> files) {
+        for (File file : files) {
+            submit(file);
+        }
+    }
+
+    /**
+     * Stops accepting files, interrupts the running measurements and saves
+     * the cache.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        save();
+    }
+
+    /**
+     * Measures a file in the calling thread and caches the result.
+     *
+     * @param file the audio file.
+     * @return the loudness of the file.
+     * @throws UnsupportedAudioFileException if no SPI can read the file.
+     * @throws IOException if reading fails or the thread is interrupted.
+     */
+    public Loudness scan(File file) throws UnsupportedAudioFileException, IOException {
+        File key = file.getAbsoluteFile();
+        long startTime = System.nanoTime();
+        long length = key.length();
+        long modified = key.lastModified();
+        LoudnessMeter meter;
+        try (AudioInputStream pcmStream = OfflineAnalysisEngine.openPcmStream(key)) {
+            AudioFormat format = pcmStream.getFormat();
+            int channels = format.getChannels();
+            int frameSize = format.getFrameSize();
+            meter = new LoudnessMeter(format.getSampleRate(), channels);
+            byte[] block = new byte[BLOCK_FRAMES * frameSize];
+            float[] samples = new float[BLOCK_FRAMES * channels];
+            int read;
+            while ((read = OfflineAnalysisEngine.readFrames(pcmStream, block, 0, block.length, frameSize)) > 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Loudness scan interrupted");
+                }
+                int count = read / 2;
+                for (int i = 0, p = 0; i < count; i++, p += 2) {
+                    samples[i] = ((block[p + 1] << 8) | (block[p] & 0xFF)) * (1.0F / 32768.0F);
+                }
+                meter.process(samples, read / frameSize);
+            }
+        }
+        Loudness loudness = meter.getLoudness();
+        cache.put(key, new Entry(length, modified, loudness));
+        logger.debug("Scanned {}: {} in {} ms", key, loudness, (System.nanoTime() - startTime) / 1000000L);
+        for (Listener listener : listeners) {
+            listener.loudnessScanned(key, loudness);
+        }
+        if (unsaved.incrementAndGet() >= SAVE_INTERVAL) {
+            save();
+        }
+        return loudness;
+    }
+
+    /**
+     * Writes the cache file, replacing the previous one only once the new
+     * one is complete.
+     */
+    public synchronized void save() {
+        if (unsaved.getAndSet(0) == 0 && cacheFile.exists()) {
+            return;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<Map.Entry<File, Entry>> entries = new ArrayList<>(cache.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<File, Entry> e : entries) {
+                out.writeUTF(e.getKey().getPath());
+                out.writeLong(e.getValue().length);
+                out.writeLong(e.getValue().modified);
+                e.getValue().loudness.write(out);
+            }
+        } catch (IOException ex) {
+            logger.error("Can't save the loudness cache", ex);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            logger.error("Can't save the loudness cache", ex);
+        }
+    }
+
+    private void load() {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.info("Ignoring loudness cache of another version");
+                return;
+            }
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                File file = new File(in.readUTF());
+                long length = in.readLong();
+                long modified = in.readLong();
+                cache.put(file, new Entry(length, modified, Loudness.read(in)));
+            }
+            logger.debug("Loaded the loudness of {} files", cache.size());
+        } catch (IOException ex) {
+            logger.error("Can't load the loudness cache", ex);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long length;
+        private final long modified;
+        private final Loudness loudness;
+
+        Entry(long length, long modified, Loudness loudness) {
+            this.length = length;
+            this.modified = modified;
+            this.loudness = loudness;
+        }
+
+        boolean isValid(File file) {
+            return file.length() == length && file.lastModified() == modified;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import javazoom.spi.mpeg.sampled.convert.ParallelMpegDecoder;
+import javazoom.spi.mpeg.sampled.file.MpegEncoding;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xtrememp.player.audio.FrameIndexCache;
+import xtrememp.util.Utilities;
+
+/**
+ * Runs digital signal processors over audio files without playing them.
+ *
+ * Files are decoded by the installed SPIs as fast as the CPU allows and
+ * handed to the DSPs block by block through a {@link DssContext} on an
+ * {@link OfflineSourceDataLine}: the same blocks, spaced the same way, as
+ * the {@link DigitalSignalSynchronizer} would pass them during playback.
+ * Many files can be analysed at once on the engine's thread pool, and with
+ * parallel decoding enabled an MPEG audio file is itself decoded in chunks
+ * on all the cores.
+ *
+ * @author Besmir Beqiri
+ */
+public class OfflineAnalysisEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineAnalysisEngine.class);
+    private static volatile ForkJoinPool decodePool;
+    private static volatile FrameIndexCache frameIndexCache;
+    private final ExecutorService execService;
+    private final int blockLength;
+    private final double blockRate;
+
+    /**
+     * Creates the DSPs analysing a file. DSPs keep state between blocks, so
+     * each file gets its own.
+     */
+    public interface DspFactory {
+
+        List<DigitalSignalProcessor> createProcessors(File file);
+    }
+
+    /**
+     * Creates an engine using one thread per core and the block length and
+     * rate of the DSS.
+     */
+    public OfflineAnalysisEngine() {
+        this(Runtime.getRuntime().availableProcessors(),
+                DigitalSignalSynchronizer.DEFAULT_BLOCK_LENGTH,
+                DigitalSignalSynchronizer.DEFAULT_BLOCK_RATE);
+    }
+
+    /**
+     * @param threads the number of files analysed at once.
+     * @param blockLength the number of frames in each block.
+     * @param blockRate the number of blocks per second of audio.
+     */
+    public OfflineAnalysisEngine(int threads, int blockLength, double blockRate) {
+        if (threads <= 0 || blockLength <= 0 || blockRate <= 0.0) {
+            throw new IllegalArgumentException();
+        }
+        this.blockLength = blockLength;
+        this.blockRate = blockRate;
+        this.execService = Executors.newFixedThreadPool(threads, Utilities.lowPriorityThreadFactory("OfflineAnalysis"));
+    }
+
+    /**
+     * Queues a file for analysis.
+     *
+     * @param file the audio file.
+     * @param factory creates the DSPs for the file.
+     * @return the pending result; cancelling it stops the analysis.
+     */
+    public Future<Result> submit(final File file, final DspFactory factory) {
+        return execService.submit(() -> analyze(file, factory.createProcessors(file)));
+    }
+
+    /**
+     * Queues files for analysis.
+     *
+     * @param files the audio files.
+     * @param factory creates the DSPs for each file.
+     * @return the pending results, in the order of the files.
+     */
+    public List<Future<Result>> submitAll(Collection<File> files, DspFactory factory) {
+        List<Future<Result>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(submit(file, factory));
+        }
+        return futures;
+    }
+
+    /**
+     * Stops accepting files and interrupts the running analyses.
+     */
+    public void shutdown() {
+        execService.shutdownNow();
+    }
+
+    /**
+     * Analyses a file in the calling thread.
+     *
+     * @param file the audio file.
+     * @param processors the DSPs to run.
+     * @return the analysis result.
+     * @throws UnsupportedAudioFileException if no SPI can read the file.
+     * @throws IOException if reading fails or the thread is interrupted.
+     */
+    public Result analyze(File file, List<DigitalSignalProcessor> processors)
+            throws UnsupportedAudioFileException, IOException {
+        try (AudioInputStream pcmStream = openPcmStream(file)) {
+            return analyze(file, pcmStream, processors);
+        }
+    }
+
+    /**
+     * Analyses a stream in the calling thread. The stream is not closed.
+     *
+     * @param file the file the stream reads, or <code>null</code>.
+     * @param sourceStream the stream, in any format an SPI can decode.
+     * @param processors the DSPs to run.
+     * @return the analysis result.
+     * @throws IOException if reading fails or the thread is interrupted.
+     */
+    public Result analyze(File file, AudioInputStream sourceStream, List<DigitalSignalProcessor> processors)
+            throws IOException {
+        long startTime = System.nanoTime();
+        AudioInputStream pcmStream = getPcmStream(sourceStream);
+        AudioFormat format = pcmStream.getFormat();
+        int frameSize = format.getFrameSize();
+        OfflineSourceDataLine line = new OfflineSourceDataLine(format, blockLength * frameSize);
+        DssContext context = new DssContext(line, blockLength);
+        for (DigitalSignalProcessor dsp : processors) {
+            dsp.init(blockLength, line);
+        }
+
+        // Blocks overlap: each one moves the window forward by a hop.
+        int hop = (int) Math.max(1L, Math.min(blockLength, Math.round(format.getFrameRate() / blockRate)));
+        int hopBytes = hop * frameSize;
+        byte[] window = context.getSnapshot();
+        Arrays.fill(window, (byte) 0);
+        long bytesRead = 0L;
+        long blocks = 0L;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Analysis interrupted");
+            }
+            System.arraycopy(window, hopBytes, window, 0, window.length - hopBytes);
+            int read = readFrames(pcmStream, window, window.length - hopBytes, hopBytes, frameSize);
+            if (read <= 0) {
+                break;
+            }
+            if (read < hopBytes) {
+                Arrays.fill(window, window.length - hopBytes + read, window.length, (byte) 0);
+            }
+            bytesRead += read;
+            line.advance(read / frameSize);
+            context.extractData(Math.max(0L, bytesRead - window.length), 0);
+            for (DigitalSignalProcessor dsp : processors) {
+                dsp.process(context);
+            }
+            blocks++;
+            if (read < hopBytes) {
+                break;
+            }
+        }
+        line.close();
+        Result result = new Result(file, format, bytesRead / frameSize, blocks, System.nanoTime() - startTime);
+        logger.debug("Analysed {}", result);
+        return result;
+    }
+
+    /**
+     * Enables or disables decoding MPEG audio files on several threads when
+     * they are opened with {@link #openPcmStream(File)}.
+     *
+     * @param enabled <code>true</code> to decode the chunks of a file on a
+     * pool of one thread per core.
+     */
+    public static synchronized void setParallelDecodingEnabled(boolean enabled) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (enabled && decodePool == null && parallelism > 1) {
+            decodePool = new ForkJoinPool(parallelism, Utilities.lowPriorityWorkerThreadFactory("OfflineDecoder"),
+                    null, false);
+            logger.info("Parallel offline decoding enabled on {} threads", parallelism);
+        } else if (!enabled && decodePool != null) {
+            decodePool.shutdown();
+            decodePool = null;
+            logger.info("Parallel offline decoding disabled");
+        }
+    }
+
+    public static boolean isParallelDecodingEnabled() {
+        return decodePool != null;
+    }
+
+    /**
+     * Sets the cache the frame indexes of MPEG audio files decoded in
+     * parallel are taken from and kept in, so a file is only scanned once.
+     *
+     * @param frameIndexCache the cache, or <code>null</code> to scan the
+     * file every time.
+     */
+    public static void setFrameIndexCache(FrameIndexCache frameIndexCache) {
+        OfflineAnalysisEngine.frameIndexCache = frameIndexCache;
+    }
+
+    public static FrameIndexCache getFrameIndexCache() {
+        return frameIndexCache;
+    }
+
+    /**
+     * Opens a file decoded to the PCM of {@link #getPcmStream(AudioInputStream)}.
+     * MPEG audio files are decoded on several threads if parallel decoding
+     * is enabled, into the same samples.
+     *
+     * @param file the audio file.
+     * @return the decoded stream; closing it closes the file.
+     * @throws UnsupportedAudioFileException if no SPI can read the file.
+     * @throws IOException if reading fails.
+     */
+    static AudioInputStream openPcmStream(File file) throws UnsupportedAudioFileException, IOException {
+        ForkJoinPool pool = decodePool;
+        if (pool != null) {
+            AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+            if (fileFormat.getFormat().getEncoding() instanceof MpegEncoding) {
+                FrameIndexCache cache = frameIndexCache;
+                MpegFrameIndex index = (cache != null) ? cache.buildIndex(file) : MpegFrameIndex.scan(file);
+                if (index != null && index.getFrameCount() > 0) {
+                    return new ParallelMpegDecoder(file, index, pool).getAudioInputStream();
+                }
+            }
+        }
+        AudioInputStream sourceStream = AudioSystem.getAudioInputStream(file);
+        AudioInputStream pcmStream = getPcmStream(sourceStream);
+        if (pcmStream == sourceStream) {
+            return pcmStream;
+        }
+        // Closes the source along with the decoder.
+        return new AudioInputStream(pcmStream, pcmStream.getFormat(), pcmStream.getFrameLength()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    sourceStream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Decodes to 16-bit signed little-endian PCM, the format DssContext
+     * reads fastest and any analysis needs at most.
+     */
+    static AudioInputStream getPcmStream(AudioInputStream sourceStream) {
+        AudioFormat format = sourceStream.getFormat();
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                && format.getSampleSizeInBits() == 16 && !format.isBigEndian()) {
+            return sourceStream;
+        }
+        int channels = format.getChannels();
+        AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                format.getSampleRate(), 16, channels, channels * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcmFormat, sourceStream);
+    }
+
+    /**
+     * Reads whole frames until the length is reached or the stream ends.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream.
+     */
+    static int readFrames(InputStream in, byte[] b, int off, int len, int frameSize) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        total -= total % frameSize;
+        return (total == 0) ? -1 : total;
+    }
+
+    /**
+     * The outcome of the analysis of one file.
+     */
+    public static class Result {
+
+        private final File file;
+        private final AudioFormat format;
+        private final long frames;
+        private final long blocks;
+        private final long elapsedTime;
+
+        Result(File file, AudioFormat format, long frames, long blocks, long elapsedTime) {
+            this.file = file;
+            this.format = format;
+            this.frames = frames;
+            this.blocks = blocks;
+            this.elapsedTime = elapsedTime;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the PCM format the DSPs were given.
+         */
+        public AudioFormat getFormat() {
+            return format;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @return the duration of the audio in microseconds.
+         */
+        public long getDuration() {
+            return (long) (frames * 1000000.0 / format.getFrameRate());
+        }
+
+        /**
+         * @return the time the analysis took in nanoseconds.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        /**
+         * @return how many times faster than real time the file was analysed.
+         */
+        public double getSpeed() {
+            return (elapsedTime > 0L) ? getDuration() * 1000.0 / elapsedTime : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + frames + " frames, " + blocks + " blocks, "
+                    + String.format("%.1f", getSpeed()) + "x real time";
+        }
+    }
+}
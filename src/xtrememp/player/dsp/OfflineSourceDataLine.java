@@ -0,0 +1,185 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A line that plays nothing, standing in for the output line when audio is
+ * analysed offline. Its position is the number of frames fed to the DSPs,
+ * so code relying on the line format and clock works unchanged.
+ *
+ * @author Besmir Beqiri
+ */
+class OfflineSourceDataLine implements SourceDataLine {
+
+    private final AudioFormat format;
+    private final int bufferSize;
+    private final DataLine.Info info;
+    private volatile long framePosition = 0L;
+    private volatile boolean open = true;
+    private volatile boolean running = true;
+
+    /**
+     * @param format the format of the analysed data.
+     * @param bufferSize the size of the analysis window in bytes.
+     */
+    OfflineSourceDataLine(AudioFormat format, int bufferSize) {
+        this.format = format;
+        this.bufferSize = bufferSize;
+        this.info = new DataLine.Info(SourceDataLine.class, format, bufferSize);
+    }
+
+    /**
+     * Moves the line clock forward.
+     *
+     * @param frames the number of frames analysed.
+     */
+    void advance(long frames) {
+        framePosition += frames;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        open = true;
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open = true;
+    }
+
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        advance(len / format.getFrameSize());
+        return len;
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int available() {
+        return bufferSize;
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) framePosition;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return framePosition;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (long) (framePosition * 1000000.0 / format.getFrameRate());
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public DataLine.Info getLineInfo() {
+        return info;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Unsupported control type: " + control);
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+    }
+}
@@ -0,0 +1,443 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xtrememp.util.Utilities;
+
+/**
+ * Extracts waveform overviews of audio files in the background and keeps
+ * them in sidecar files, one per audio file, so they are ready the next time
+ * the file is shown.
+ *
+ * Sidecars are named after a hash of the file path and are rebuilt when the
+ * length or modification time of the file changes. Peaks are extracted into a
+ * temporary file renamed over the sidecar once complete, so a sidecar is
+ * never changed while an overview maps it. The peak count in the header of
+ * the temporary file is updated as extraction goes, so extraction interrupted
+ * by exit picks up where it stopped the next time the file is queued. Files are
+ * extracted in parallel on low priority threads; files queued as urgent, such
+ * as the one just opened, jump ahead of the rest.
+ *
+ * @author Besmir Beqiri
+ */
+public class PeakCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeakCache.class);
+    public static final int DEFAULT_FRAMES_PER_PEAK = 1024;
+    public static final String SIDECAR_EXTENSION = ".peaks";
+    public static final String TEMP_EXTENSION = ".tmp";
+    /**
+     * Channels beyond the first two are left out of the overview.
+     */
+    public static final int MAX_CHANNELS = 2;
+    private static final int MAX_OVERVIEWS = 32;
+    private static final int FLUSH_PEAKS = 256;
+    private final File cacheDir;
+    private final int framesPerPeak;
+    private final ThreadPoolExecutor execService;
+    private final Map<File, PeakTask> pending = new HashMap<>();
+    private final Map<File, PeakOverview> overviews;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong taskCount = new AtomicLong();
+
+    /**
+     * Notified when an overview has been extracted, on an extraction thread.
+     */
+    public interface Listener {
+
+        void overviewReady(File file, PeakOverview overview);
+    }
+
+    /**
+     * Creates a cache using half of the cores and a peak every
+     * {@link #DEFAULT_FRAMES_PER_PEAK} frames.
+     *
+     * @param cacheDir the directory of the sidecar files.
+     */
+    public PeakCache(File cacheDir) {
+        this(cacheDir, Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                DEFAULT_FRAMES_PER_PEAK);
+    }
+
+    /**
+     * @param cacheDir the directory of the sidecar files.
+     * @param threads the number of files extracted at once.
+     * @param framesPerPeak the number of frames summarised by each peak.
+     */
+    public PeakCache(File cacheDir, int threads, int framesPerPeak) {
+        if (threads <= 0 || framesPerPeak <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        this.cacheDir = cacheDir;
+        this.framesPerPeak = framesPerPeak;
+        this.overviews = Collections.synchronizedMap(new LinkedHashMap<File, PeakOverview>(16, 0.75F, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, PeakOverview> eldest) {
+                return size() > MAX_OVERVIEWS;
+            }
+        });
+        this.execService = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), Utilities.lowPriorityThreadFactory("PeakCache"));
+        this.execService.allowCoreThreadTimeOut(true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the overview of a file if it has been extracted, without
+     * blocking on extraction.
+     *
+     * @param file the audio file.
+     * @return the overview, or <code>null</code> if it isn't ready.
+     */
+    public PeakOverview getOverview(File file) {
+        File key = file.getAbsoluteFile();
+        PeakOverview overview = overviews.get(key);
+        if (overview != null && overview.isValid(key)) {
+            return overview;
+        }
+        overviews.remove(key);
+        try {
+            overview = PeakOverview.open(getSidecarFile(key), key);
+        } catch (IOException ex) {
+            logger.debug("Can't read the peaks of {}", key, ex);
+            return null;
+        }
+        if (overview != null) {
+            overviews.put(key, overview);
+        }
+        return overview;
+    }
+
+    /**
+     * Queues a file for extraction. Files already extracted complete at once.
+     *
+     * @param file the audio file.
+     * @param urgent <code>true</code> to extract the file before the
+     * non-urgent ones.
+     * @return the pending overview.
+     */
+    public Future<PeakOverview> submit(File file, boolean urgent) {
+        File key = file.getAbsoluteFile();
+        synchronized (pending) {
+            PeakTask task = pending.get(key);
+            if (task == null) {
+                task = new PeakTask(key, urgent);
+                execService.execute(task);
+                pending.put(key, task);
+            } else if (urgent && !task.urgent && execService.remove(task)) {
+                // Re-queue with its new priority.
+                task.urgent = true;
+                execService.execute(task);
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Queues files for extraction behind the urgent ones.
+     *
+     * @param files the audio files.
+     */
+    public void submitAll(Collection<File> files) {
+        for (File file : files) {
+            submit(file, false);
+        }
+    }
+
+    /**
+     * Drops a file from the queue. An extraction already running finishes.
+     *
+     * @param file the audio file.
+     */
+    public void cancel(File file) {
+        File key = file.getAbsoluteFile();
+        synchronized (pending) {
+            PeakTask task = pending.get(key);
+            if (task != null && execService.remove(task)) {
+                pending.remove(key);
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting files and interrupts the running extractions, which
+     * resume when their files are queued again.
+     */
+    public void shutdown() {
+        execService.shutdownNow();
+    }
+
+    /**
+     * @param file the audio file.
+     * @return the sidecar file holding the peaks of the file.
+     */
+    public File getSidecarFile(File file) {
+        return Utilities.sidecarFile(cacheDir, file, SIDECAR_EXTENSION);
+    }
+
+    /**
+     * @param file the audio file.
+     * @return the file the peaks are extracted into before they replace the
+     * sidecar.
+     */
+    File getTempFile(File file) {
+        return new File(getSidecarFile(file).getPath() + TEMP_EXTENSION);
+    }
+
+    /**
+     * Extracts the peaks of a file into a temporary file, resuming from the
+     * peaks already written if it is unfinished but still valid, then renames
+     * it over the sidecar. The temporary file is never mapped, so it can be
+     * truncated safely.
+     */
+    private PeakOverview extract(File file) throws UnsupportedAudioFileException, IOException {
+        File sidecar = getSidecarFile(file);
+        PeakOverview overview = PeakOverview.open(sidecar, file);
+        if (overview != null) {
+            return overview;
+        }
+        File tempFile = getTempFile(file);
+        long startTime = System.nanoTime();
+        long sourceLength = file.length();
+        long sourceModified = file.lastModified();
+        try (AudioInputStream pcmStream = OfflineAnalysisEngine.openPcmStream(file);
+                RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            AudioFormat format = pcmStream.getFormat();
+            int frameSize = format.getFrameSize();
+            int sourceChannels = format.getChannels();
+            int channels = Math.min(sourceChannels, MAX_CHANNELS);
+            int entrySize = channels * PeakOverview.BYTES_PER_CHANNEL;
+
+            ByteBuffer header = ByteBuffer.allocate(PeakOverview.HEADER_SIZE);
+            int peakCount = 0;
+            if (raf.length() >= PeakOverview.HEADER_SIZE) {
+                raf.readFully(header.array());
+                if (PeakOverview.isValidHeader(header, file)
+                        && header.getFloat(PeakOverview.OFFSET_SAMPLE_RATE) == format.getSampleRate()
+                        && header.getInt(PeakOverview.OFFSET_CHANNELS) == channels
+                        && header.getInt(PeakOverview.OFFSET_FRAMES_PER_PEAK) == framesPerPeak) {
+                    peakCount = (int) Math.min(header.getInt(PeakOverview.OFFSET_PEAK_COUNT),
+                            (raf.length() - PeakOverview.HEADER_SIZE) / entrySize);
+                }
+            }
+            if (peakCount == 0) {
+                header.clear();
+                header.putInt(PeakOverview.MAGIC).putInt(PeakOverview.VERSION);
+                header.putLong(PeakOverview.OFFSET_SOURCE_LENGTH, sourceLength);
+                header.putLong(PeakOverview.OFFSET_SOURCE_MODIFIED, sourceModified);
+                header.putFloat(PeakOverview.OFFSET_SAMPLE_RATE, format.getSampleRate());
+                header.putInt(PeakOverview.OFFSET_CHANNELS, channels);
+                header.putInt(PeakOverview.OFFSET_FRAMES_PER_PEAK, framesPerPeak);
+                header.putInt(PeakOverview.OFFSET_PEAK_COUNT, 0);
+                header.putLong(PeakOverview.OFFSET_TOTAL_FRAMES, 0L);
+                header.put(PeakOverview.OFFSET_COMPLETE, (byte) 0);
+                raf.setLength(0L);
+                raf.write(header.array());
+            } else {
+                raf.setLength(PeakOverview.HEADER_SIZE + (long) peakCount * entrySize);
+                logger.debug("Resuming peaks of {} at peak {}", file, peakCount);
+            }
+
+            byte[] block = new byte[framesPerPeak * frameSize];
+            long frames = 0L;
+            // Decoding can't be skipped, but the peaks already stored can.
+            for (int i = 0; i < peakCount; i++) {
+                int read = OfflineAnalysisEngine.readFrames(pcmStream, block, 0, block.length, frameSize);
+                if (read <= 0) {
+                    throw new IOException("Unfinished peaks longer than " + file);
+                }
+                frames += read / frameSize;
+            }
+
+            ByteBuffer entries = ByteBuffer.allocate(FLUSH_PEAKS * entrySize);
+            int[] min = new int[channels];
+            int[] max = new int[channels];
+            long[] sumSquares = new long[channels];
+            boolean interrupted = false;
+            while (true) {
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    break;
+                }
+                int read = OfflineAnalysisEngine.readFrames(pcmStream, block, 0, block.length, frameSize);
+                if (read <= 0) {
+                    break;
+                }
+                int blockFrames = read / frameSize;
+                for (int ch = 0; ch < channels; ch++) {
+                    int lo = Short.MAX_VALUE;
+                    int hi = Short.MIN_VALUE;
+                    long sum = 0L;
+                    for (int pos = ch * 2; pos < read; pos += frameSize) {
+                        int sample = (block[pos + 1] << 8) | (block[pos] & 0xFF);
+                        lo = Math.min(lo, sample);
+                        hi = Math.max(hi, sample);
+                        sum += sample * sample;
+                    }
+                    min[ch] = lo;
+                    max[ch] = hi;
+                    sumSquares[ch] = sum;
+                }
+                for (int ch = 0; ch < channels; ch++) {
+                    double rms = Math.sqrt((double) sumSquares[ch] / blockFrames);
+                    entries.put((byte) Math.max(-127, Math.round(min[ch] * 127F / 32768F)));
+                    entries.put((byte) Math.min(127, Math.round(max[ch] * 127F / 32768F)));
+                    entries.put((byte) Math.min(255, Math.round(rms * 255.0 / 32768.0)));
+                }
+                frames += blockFrames;
+                if (!entries.hasRemaining()) {
+                    peakCount = flush(raf, entries, peakCount, entrySize);
+                }
+            }
+            peakCount = flush(raf, entries, peakCount, entrySize);
+            if (interrupted) {
+                throw new InterruptedIOException("Peak extraction interrupted");
+            }
+            raf.seek(PeakOverview.OFFSET_TOTAL_FRAMES);
+            raf.writeLong(frames);
+            raf.seek(PeakOverview.OFFSET_COMPLETE);
+            raf.writeByte(1);
+        }
+        // Readers mapping the old sidecar keep it until they are collected.
+        Files.move(tempFile.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        overview = PeakOverview.open(sidecar, file);
+        logger.debug("Extracted {} peaks of {} in {} ms", (overview == null) ? 0 : overview.getPeakCount(),
+                file, (System.nanoTime() - startTime) / 1000000L);
+        return overview;
+    }
+
+    /**
+     * Appends the buffered entries to the sidecar and then records them in
+     * the header, so an interrupted sidecar never counts unwritten peaks.
+     */
+    private static int flush(RandomAccessFile raf, ByteBuffer entries, int peakCount, int entrySize)
+            throws IOException {
+        if (entries.position() == 0) {
+            return peakCount;
+        }
+        raf.seek(PeakOverview.HEADER_SIZE + (long) peakCount * entrySize);
+        raf.write(entries.array(), 0, entries.position());
+        peakCount += entries.position() / entrySize;
+        entries.clear();
+        raf.seek(PeakOverview.OFFSET_PEAK_COUNT);
+        raf.writeInt(peakCount);
+        return peakCount;
+    }
+
+    /**
+     * An extraction ordered by urgency, then by submission: the most recent
+     * urgent file first, the other files in the order they were queued.
+     */
+    private final class PeakTask extends FutureTask<PeakOverview> implements Comparable<PeakTask> {
+
+        private final File file;
+        private final long sequence;
+        private volatile boolean urgent;
+
+        PeakTask(File file, boolean urgent) {
+            super(() -> extract(file));
+            this.file = file;
+            this.urgent = urgent;
+            this.sequence = taskCount.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                synchronized (pending) {
+                    pending.remove(file, this);
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                PeakOverview overview = get();
+                if (overview != null) {
+                    overviews.put(file, overview);
+                    for (Listener listener : listeners) {
+                        listener.overviewReady(file, overview);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof InterruptedIOException) {
+                    logger.debug("Stopped extracting the peaks of {}", file);
+                } else {
+                    logger.debug("Can't extract the peaks of {}", file, ex.getCause());
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(PeakTask other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            return urgent ? Long.compare(other.sequence, sequence) : Long.compare(sequence, other.sequence);
+        }
+    }
+}
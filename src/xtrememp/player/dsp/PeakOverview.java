@@ -0,0 +1,206 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only view of a peak sidecar written by {@link PeakCache}.
+ *
+ * The sidecar holds a fixed size header followed by one entry per peak. Each
+ * entry stores, for every channel, the minimum and maximum sample as signed
+ * bytes and the RMS level as an unsigned byte, all relative to full scale.
+ * The file is memory mapped, so opening an overview costs a system call and
+ * reading it never copies more than the pages actually painted.
+ *
+ * @author Besmir Beqiri
+ */
+public final class PeakOverview {
+
+    static final int MAGIC = 0x58504B31; // "XPK1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int OFFSET_SOURCE_LENGTH = 8;
+    static final int OFFSET_SOURCE_MODIFIED = 16;
+    static final int OFFSET_SAMPLE_RATE = 24;
+    static final int OFFSET_CHANNELS = 28;
+    static final int OFFSET_FRAMES_PER_PEAK = 32;
+    static final int OFFSET_PEAK_COUNT = 36;
+    static final int OFFSET_TOTAL_FRAMES = 40;
+    static final int OFFSET_COMPLETE = 48;
+    static final int BYTES_PER_CHANNEL = 3;
+    private final MappedByteBuffer buffer;
+    private final float sampleRate;
+    private final int channels;
+    private final int framesPerPeak;
+    private final int peakCount;
+    private final long totalFrames;
+    private final int entrySize;
+
+    private PeakOverview(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.sampleRate = buffer.getFloat(OFFSET_SAMPLE_RATE);
+        this.channels = buffer.getInt(OFFSET_CHANNELS);
+        this.framesPerPeak = buffer.getInt(OFFSET_FRAMES_PER_PEAK);
+        this.peakCount = buffer.getInt(OFFSET_PEAK_COUNT);
+        this.totalFrames = buffer.getLong(OFFSET_TOTAL_FRAMES);
+        this.entrySize = channels * BYTES_PER_CHANNEL;
+    }
+
+    /**
+     * Maps a complete sidecar describing the given source file.
+     *
+     * @param sidecar the sidecar file.
+     * @param source the audio file the sidecar must describe.
+     * @return the overview, or <code>null</code> if the sidecar is missing,
+     * unfinished or stale.
+     * @throws IOException if the sidecar can't be read.
+     */
+    static PeakOverview open(File sidecar, File source) throws IOException {
+        if (!sidecar.isFile() || sidecar.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(sidecar, "r");
+                FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!isValidHeader(buffer, source) || buffer.get(OFFSET_COMPLETE) == 0) {
+                return null;
+            }
+            PeakOverview overview = new PeakOverview(buffer);
+            if (HEADER_SIZE + (long) overview.peakCount * overview.entrySize > buffer.capacity()) {
+                return null;
+            }
+            return overview;
+        }
+    }
+
+    /**
+     * Checks that a sidecar header is of this version and still describes the
+     * source file, by its length and modification time.
+     */
+    static boolean isValidHeader(ByteBuffer header, File source) {
+        return header.getInt(0) == MAGIC
+                && header.getInt(4) == VERSION
+                && header.getLong(OFFSET_SOURCE_LENGTH) == source.length()
+                && header.getLong(OFFSET_SOURCE_MODIFIED) == source.lastModified()
+                && header.getInt(OFFSET_CHANNELS) > 0
+                && header.getInt(OFFSET_FRAMES_PER_PEAK) > 0;
+    }
+
+    /**
+     * Checks whether this overview still describes the source file.
+     *
+     * @param source the audio file.
+     * @return <code>true</code> if the file hasn't changed since extraction.
+     */
+    public boolean isValid(File source) {
+        return isValidHeader(buffer, source);
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFramesPerPeak() {
+        return framesPerPeak;
+    }
+
+    public int getPeakCount() {
+        return peakCount;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * @param peak the peak index.
+     * @param channel the channel index.
+     * @return the lowest sample in the range -1 to 1.
+     */
+    public float getMin(int peak, int channel) {
+        return buffer.get(offset(peak, channel)) / 127F;
+    }
+
+    /**
+     * @param peak the peak index.
+     * @param channel the channel index.
+     * @return the highest sample in the range -1 to 1.
+     */
+    public float getMax(int peak, int channel) {
+        return buffer.get(offset(peak, channel) + 1) / 127F;
+    }
+
+    /**
+     * @param peak the peak index.
+     * @param channel the channel index.
+     * @return the RMS level in the range 0 to 1.
+     */
+    public float getRms(int peak, int channel) {
+        return (buffer.get(offset(peak, channel) + 2) & 0xFF) / 255F;
+    }
+
+    /**
+     * Summarises a range of peaks over all channels, as needed to paint one
+     * column of a waveform.
+     *
+     * @param fromPeak the first peak, inclusive.
+     * @param toPeak the last peak, exclusive. At least one peak is always read.
+     * @param dst receives the minimum, maximum and RMS level, in that order.
+     */
+    public void summarize(int fromPeak, int toPeak, float[] dst) {
+        if (peakCount == 0) {
+            dst[0] = dst[1] = dst[2] = 0F;
+            return;
+        }
+        int from = Math.max(0, Math.min(fromPeak, peakCount - 1));
+        int to = Math.max(from + 1, Math.min(toPeak, peakCount));
+        int min = 127;
+        int max = -127;
+        long rmsSum = 0L;
+        for (int peak = from; peak < to; peak++) {
+            int pos = HEADER_SIZE + peak * entrySize;
+            for (int ch = 0; ch < channels; ch++, pos += BYTES_PER_CHANNEL) {
+                min = Math.min(min, buffer.get(pos));
+                max = Math.max(max, buffer.get(pos + 1));
+                int rms = buffer.get(pos + 2) & 0xFF;
+                rmsSum += rms * rms;
+            }
+        }
+        dst[0] = min / 127F;
+        dst[1] = max / 127F;
+        dst[2] = (float) Math.sqrt((double) rmsSum / ((to - from) * channels)) / 255F;
+    }
+
+    private int offset(int peak, int channel) {
+        if (peak < 0 || peak >= peakCount || channel < 0 || channel >= channels) {
+            throw new IndexOutOfBoundsException("peak: " + peak + ", channel: " + channel);
+        }
+        return HEADER_SIZE + peak * entrySize + channel * BYTES_PER_CHANNEL;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * Spectral analysis shared by all DSPs reading a {@link DssContext}.
+ *
+ * The spectrum of the channel average is computed at most once per block
+ * for each window length and window type actually requested, and each scale
+ * of it at most once more. Any number of spectrum visualizations then cost
+ * a single FFT per block.
+ *
+ * @author Besmir Beqiri
+ */
+public class SpectralAnalysis {
+
+    /**
+     * The window applied to the samples before the FFT.
+     */
+    public enum Window {
+
+        RECTANGULAR, HAMMING, HANN;
+
+        float[] createCoefficients(int length) {
+            float[] coefficients = new float[length];
+            for (int k = 0; k < length; k++) {
+                double cos = Math.cos(2.0 * Math.PI * k / length);
+                switch (this) {
+                    case HAMMING:
+                        coefficients[k] = (float) (0.54 - 0.46 * cos);
+                        break;
+                    case HANN:
+                        coefficients[k] = (float) (0.5 - 0.5 * cos);
+                        break;
+                    default:
+                        coefficients[k] = 1.0F;
+                }
+            }
+            return coefficients;
+        }
+    }
+
+    /**
+     * The scale of the spectral values.
+     */
+    public enum Scale {
+
+        AMPLITUDE, POWER, DECIBEL
+    }
+
+    private static final float ONE_OVER_LOG10 = (float) (1.0 / Math.log(10));
+    private static final float LN2 = (float) Math.log(2);
+    private final DssContext context;
+    private final List<Transform> transforms = new ArrayList<>();
+
+    SpectralAnalysis(DssContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Returns the spectrum of the current block of the context.
+     *
+     * @param length the FFT length, at most the block length.
+     * @param window the window type.
+     * @param scale the scale of the values.
+     * @return <code>length / 2</code> spectral values shared with the other
+     * DSPs, which must not be modified.
+     */
+    public synchronized float[] getSpectrum(int length, Window window, Scale scale) {
+        if (length <= 1 || length > context.getSampleSize()) {
+            throw new IllegalArgumentException("Invalid FFT length: " + length);
+        }
+        Transform transform = null;
+        // Indexed, an iterator would be allocated on every call.
+        for (int i = 0, n = transforms.size(); i < n; i++) {
+            Transform t = transforms.get(i);
+            if (t.length == length && t.window == window) {
+                transform = t;
+                break;
+            }
+        }
+        if (transform == null) {
+            transform = new Transform(length, window);
+            transforms.add(transform);
+        }
+        return transform.getSpectrum(context.getFrameNumber(), scale);
+    }
+
+    private final class Transform {
+
+        private final int length;
+        private final Window window;
+        private final FloatFFT_1D fft;
+        private final float[] coefficients;
+        private final float[] bins;
+        private final float[][] spectra = new float[Scale.values().length][];
+        private final long[] spectraFrames = new long[Scale.values().length];
+        private long frame = -1L;
+
+        private Transform(int length, Window window) {
+            this.length = length;
+            this.window = window;
+            this.fft = new FloatFFT_1D(length);
+            this.coefficients = window.createCoefficients(length);
+            this.bins = new float[length];
+            Arrays.fill(spectraFrames, -1L);
+        }
+
+        private float[] getSpectrum(long currentFrame, Scale scale) {
+            if (frame != currentFrame) {
+                float[][] audioChannels = context.getAudioData();
+                float[] left = audioChannels[0];
+                float[] right = audioChannels[1];
+                for (int i = 0; i < length; i++) {
+                    bins[i] = (left[i] + right[i]) * 0.5F * coefficients[i];
+                }
+                // In place: leaves the real and imaginary parts of each bin.
+                fft.realForward(bins);
+                frame = currentFrame;
+            }
+            int s = scale.ordinal();
+            if (spectraFrames[s] != currentFrame) {
+                if (spectra[s] == null) {
+                    spectra[s] = new float[length / 2];
+                }
+                applyScale(scale, bins, spectra[s]);
+                spectraFrames[s] = currentFrame;
+            }
+            return spectra[s];
+        }
+    }
+
+    /**
+     * Merges the real and imaginary parts of the FFT output into spectral
+     * values of the selected scale.
+     */
+    private static void applyScale(Scale scale, float[] bins, float[] spectrum) {
+        for (int k = 0, length = spectrum.length; k < length; k++) {
+            float re = bins[2 * k];
+            float im = bins[2 * k + 1];
+            float power = re * re + im * im;
+            switch (scale) {
+                case AMPLITUDE:
+                    spectrum[k] = (float) Math.sqrt(power);
+                    break;
+                case POWER:
+                    spectrum[k] = power / 100.0F;
+                    break;
+                default:
+                    spectrum[k] = 10.0F * log(1.0F + power * ONE_OVER_LOG10);
+            }
+        }
+    }
+
+    /**
+     * Natural logarithm of a normal positive float, within 1e-5 of
+     * {@link Math#log(double)}, that is 1e-4 dB on the dB scale.
+     *
+     * The exponent is taken from the float bits and the log of the mantissa m
+     * in [1, 2) from the series 2 * atanh((m - 1) / (m + 1)), which converges
+     * fast since its argument is at most 1/3.
+     *
+     * @param x a value of at least {@link Float#MIN_NORMAL}.
+     * @return the natural logarithm of x.
+     */
+    static float log(float x) {
+        int bits = Float.floatToRawIntBits(x);
+        int exponent = ((bits >>> 23) & 0xFF) - 127;
+        float m = Float.intBitsToFloat((bits & 0x007FFFFF) | 0x3F800000);
+        float t = (m - 1.0F) / (m + 1.0F);
+        float t2 = t * t;
+        float series = 1.0F + t2 * (1.0F / 3.0F + t2 * (1.0F / 5.0F + t2 * (1.0F / 7.0F + t2 * (1.0F / 9.0F))));
+        return exponent * LN2 + 2.0F * t * series;
+    }
+}
@@ -391,6 +391,36 @@ public class Playlist {
         }
     }
 
+    /**
+     * Returns the playlist item that {@link #nextCursor()} would move the
+     * cursor to, without moving it.
+     *
+     * @return A playlist item or <code>null</code> if there is none, or the
+     *         end of the playlist is reached in {@link PlayMode#REPEAT_NONE}.
+     */
+    public PlaylistItem peekNextCursor() {
+        if (filteredPlaylist.isEmpty()) {
+            return null;
+        }
+        if (playMode == PlayMode.SHUFFLE) {
+            if (shuffledList.isEmpty()) {
+                return null;
+            }
+            int nextIndex = (shuffledIndex + 1 > shuffledList.size() - 1) ? 0 : shuffledIndex + 1;
+            return shuffledList.get(nextIndex);
+        } else {
+            int cursorPos = getCursorPosition();
+            cursorPos++;
+            if (cursorPos > size() - 1) {
+                if (playMode == PlayMode.REPEAT_NONE) {
+                    return null;
+                }
+                cursorPos = 0;
+            }
+            return getItemAt(cursorPos);
+        }
+    }
+
     /**
      * Computes cursor position (previous).
      */
@@ -18,16 +18,23 @@
  */
 package xtrememp.ui.slider;
 
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Transparency;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import javax.swing.JSlider;
 import javax.swing.plaf.SliderUI;
 import javax.swing.plaf.basic.BasicSliderUI;
 import javax.swing.plaf.basic.BasicSliderUI.TrackListener;
 import xtrememp.ControlListener;
+import xtrememp.player.dsp.PeakOverview;
 
 /**
  *
@@ -38,6 +45,8 @@ public class SeekSlider extends JSlider {
     private final ControlListener listener;
     private volatile int oldValue = 0;
     private volatile boolean seekPressed = false;
+    private PeakOverview overview;
+    private BufferedImage waveformImage;
 
     public SeekSlider(ControlListener controlListener) {
         super(0, 0, 0);
@@ -98,6 +107,80 @@ public class SeekSlider extends JSlider {
         setValue(0);
         setMinimum(0);
         setMaximum(0);
+        setOverview(null);
+    }
+
+    /**
+     * Sets the waveform painted behind the track.
+     *
+     * @param overview the waveform of the current track, or <code>null</code>
+     * for none.
+     */
+    public void setOverview(PeakOverview overview) {
+        if (this.overview != overview) {
+            this.overview = overview;
+            waveformImage = null;
+            repaint();
+        }
+    }
+
+    public PeakOverview getOverview() {
+        return overview;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (overview != null && getOrientation() == JSlider.HORIZONTAL) {
+            Insets insets = getInsets();
+            int width = getWidth() - insets.left - insets.right;
+            int height = getHeight() - insets.top - insets.bottom;
+            if (width > 0 && height > 0) {
+                if (waveformImage == null || waveformImage.getWidth() != width
+                        || waveformImage.getHeight() != height) {
+                    waveformImage = createWaveformImage(width, height);
+                }
+                g.drawImage(waveformImage, insets.left, insets.top, null);
+            }
+        }
+        super.paintComponent(g);
+    }
+
+    @Override
+    public void updateUI() {
+        super.updateUI();
+        // The foreground color may have changed.
+        waveformImage = null;
+    }
+
+    /**
+     * Paints the waveform once per size, so repaints while playing only copy
+     * the image.
+     */
+    private BufferedImage createWaveformImage(int width, int height) {
+        BufferedImage image = getGraphicsConfiguration() == null
+                ? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+                : getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D g2d = image.createGraphics();
+        Color fg = getForeground();
+        Color peakColor = new Color(fg.getRed(), fg.getGreen(), fg.getBlue(), 64);
+        Color rmsColor = new Color(fg.getRed(), fg.getGreen(), fg.getBlue(), 112);
+        int peakCount = overview.getPeakCount();
+        float halfHeight = height / 2F;
+        float[] column = new float[3];
+        for (int x = 0; x < width; x++) {
+            int fromPeak = (int) ((long) x * peakCount / width);
+            int toPeak = (int) ((long) (x + 1) * peakCount / width);
+            overview.summarize(fromPeak, toPeak, column);
+            int top = Math.round(halfHeight - column[1] * halfHeight);
+            int bottom = Math.round(halfHeight - column[0] * halfHeight);
+            g2d.setColor(peakColor);
+            g2d.drawLine(x, top, x, bottom);
+            int rms = Math.round(column[2] * halfHeight);
+            g2d.setColor(rmsColor);
+            g2d.drawLine(x, Math.round(halfHeight) - rms, x, Math.round(halfHeight) + rms);
+        }
+        g2d.dispose();
+        return image;
     }
 
     public boolean isPressed() {
@@ -22,11 +22,19 @@ import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
@@ -312,4 +320,63 @@ public final class Utilities {
         }
         return substrings.toArray(new String[]{});
     }
+
+    /**
+     * Returns the file in a cache directory holding data derived from a
+     * file, named after a hash of the file path.
+     *
+     * @param cacheDir the cache directory.
+     * @param file the file the data is derived from.
+     * @param extension the extension of the cache file, with its dot.
+     * @return the cache file.
+     */
+    public static File sidecarFile(File cacheDir, File file, String extension) {
+        String path = file.getAbsolutePath();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + extension.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(cacheDir, name.append(extension).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JRE has SHA-1.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns a factory of daemon threads of the lowest priority, for
+     * background work that must stay behind playback.
+     *
+     * @param name the name of the threads, numbered from 1.
+     * @return a {@link ThreadFactory} object.
+     */
+    public static ThreadFactory lowPriorityThreadFactory(String name) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns a factory of daemon worker threads of the lowest priority, for
+     * fork/join pools doing background work that must stay behind playback.
+     *
+     * @param name the name of the threads, numbered from 1.
+     * @return a {@link ForkJoinPool.ForkJoinWorkerThreadFactory} object.
+     */
+    public static ForkJoinPool.ForkJoinWorkerThreadFactory lowPriorityWorkerThreadFactory(String name) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
 }
@@ -24,6 +24,7 @@ import java.awt.GraphicsConfiguration;
 import java.awt.image.BufferedImage;
 import javax.sound.sampled.SourceDataLine;
 import xtrememp.player.dsp.DssContext;
+import xtrememp.visualization.toolbox.ColorPalette;
 
 /**
  * Visualization base class.
@@ -37,6 +38,9 @@ public abstract class AbstractVisualization implements Comparable<AbstractVisual
     protected Color foregroundColor = Color.white;
     protected BufferedImage buffImage;
     protected Graphics2D buffGraphics;
+    private ColorPalette colorRamp;
+    private Color colorRampBackground;
+    private Color colorRampForeground;
 
     /**
      * Returns the display name of <code>this</code> visualization.
@@ -101,6 +105,22 @@ public abstract class AbstractVisualization implements Comparable<AbstractVisual
         this.foregroundColor = foregroundColor;
     }
 
+    /**
+     * Returns a palette shifting from the background to the foreground
+     * color, created again only when one of them changes.
+     *
+     * @return A color palette.
+     */
+    protected ColorPalette getColorRamp() {
+        if (colorRamp == null || colorRampBackground != backgroundColor
+                || colorRampForeground != foregroundColor) {
+            colorRamp = ColorPalette.createRamp(backgroundColor, foregroundColor);
+            colorRampBackground = backgroundColor;
+            colorRampForeground = foregroundColor;
+        }
+        return colorRamp;
+    }
+
     /**
      * This method is used by visualizations processing a single channel of
      * audio data. It averages the left and right values from each channel to
@@ -112,9 +132,20 @@ public abstract class AbstractVisualization implements Comparable<AbstractVisual
      * @return A float array object.
      */
     public float[] averageChannels(float[][] audioChannels) {
+        return averageChannels(audioChannels, new float[audioChannels[0].length]);
+    }
+
+    /**
+     * Same as {@link #averageChannels(float[][])}, writing to a caller
+     * supplied array.
+     *
+     * @param audioChannels  An array of floats containing the input audio data.
+     * @param outputSamples  The array to fill, at least as long as a channel.
+     * @return outputSamples.
+     */
+    public float[] averageChannels(float[][] audioChannels, float[] outputSamples) {
         int length = audioChannels[0].length;       // length = 8192
         int channelCount = audioChannels.length;    // channelCount = 1 or 2
-        float[] outputSamples = new float[length];
         
         for (int sampleNum = 0; sampleNum < length; sampleNum++) {
             float sum = 0;  // the sum of the left and right audio samples
@@ -127,6 +158,19 @@ public abstract class AbstractVisualization implements Comparable<AbstractVisual
         return outputSamples;
     }
 
+    /**
+     * Scrolls the image of a sliding visualization one pixel to the left,
+     * leaving the rightmost column to be drawn.
+     *
+     * @param g2d the graphics of the image.
+     * @param width the image width.
+     * @param height the image height.
+     */
+    protected void scrollLeft(Graphics2D g2d, int width, int height) {
+        // Unlike drawing the image onto itself, copies without allocating.
+        g2d.copyArea(1, 0, width - 1, height, -1, 0);
+    }
+
     public BufferedImage getBuffImage() {
         return buffImage;
     }
@@ -18,11 +18,11 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import javax.sound.sampled.SourceDataLine;
 import xtrememp.player.dsp.DssContext;
+import xtrememp.visualization.toolbox.ColorPalette;
 
 /**
  * Renders a spectrogram covering the full frequency range provided by the FFT.
@@ -43,30 +43,17 @@ public final class FullSpectrogram extends AbstractSpectrumAnalyzer {
     private final float gain;
     private final float slope;
     private float binHeight;
-    private float[][] audioChannels;
-    private float[]   channelSamples;
-    private float[]   windowedChannelSamples;
     private float[]   binValues;
-    private final float[] brgb;
-    private final float[] frgb;
 
     public FullSpectrogram() {
         this.gain  = DEFAULT_SPECTROGRAM_GAIN;
         this.slope = DEFAULT_SPECTROGRAM_SLOPE;
-        brgb = new float[3];
-        frgb = new float[3];
     }
 
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = Math.min(blockLength, 2048); // If blockLength=8192 then fftWindowLength=2048
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 2; // 2048/2 = 1024 displayed frequency bins
-        this.audioChannels = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.windowedChannelSamples = new float[fftWindowLength];
-        this.binValues= new float[binCount];
     }
 
     @Override
@@ -97,15 +84,12 @@ public final class FullSpectrogram extends AbstractSpectrumAnalyzer {
          */
 
         // FFT processing:
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels); // channelSamples has length blockLength
-        System.arraycopy(channelSamples, 0, windowedChannelSamples, 0, fftWindowLength); // windowedChannelSamples has length fftWindowLength
-        applyWindow(fftWindowLength, windowedChannelSamples);
-        binValues = computeFFT(windowedChannelSamples); // binValues typically range from 0.0 dB to 96.0 dB
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues typically range from 0.0 dB to 96.0 dB
         
         binHeight = (float) height / (float) binCount;
 
         // Rendering.
+        ColorPalette colorRamp = getColorRamp();
         float y = height;
         int widthm1 = width - 1; // width minus 1
         int binNum;
@@ -117,19 +101,13 @@ public final class FullSpectrogram extends AbstractSpectrumAnalyzer {
             if ( binMag > 1.0F ) { binMag = 1.0F; }   // Limit over-saturation.
 
             // Calculate spectrogram color shifting between foreground and background colors.
-            float _binMag = 1.0F - binMag;
-            backgroundColor.getColorComponents(brgb);
-            foregroundColor.getColorComponents(frgb);
-            Color color = new Color(frgb[0] * binMag + brgb[0] * _binMag,
-                    frgb[1] * binMag + brgb[1] * _binMag,
-                    frgb[2] * binMag + brgb[2] * _binMag);
-            g2d.setColor(color);
+            g2d.setColor(colorRamp.getColor(binMag));
             g2d.drawLine(widthm1, Math.round(y), widthm1, Math.round(y - binHeight));
 
             y -= binHeight;
         }
 
-        g2d.drawImage(buffImage, -1, 0, null);
+        scrollLeft(g2d, width, height);
         
     }  // end of render() method
     
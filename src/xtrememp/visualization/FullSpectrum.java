@@ -18,7 +18,6 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -47,10 +46,8 @@ public final class FullSpectrum extends AbstractSpectrumAnalyzer
     private int fftWindowLength;
     private Whitener whitener;
 
-    private float[][] audioChannels;
-    private float[]   channelSamples;
-    private float[]   windowedChannelSamples;
     private float[]   binValues;
+    private float[]   normalizedBinValues;
     private float[]   meanValues;
     private float[]   whiteBinValues;
     private float[]   peakBinValues;
@@ -58,14 +55,9 @@ public final class FullSpectrum extends AbstractSpectrumAnalyzer
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine)
     {   this.fftWindowLength = Math.min(blockLength, 2048); // If blockLength=8192 then fftWindowLength=2048
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 2;
         this.whitener = new Whitener(binCount);
-        this.audioChannels = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.windowedChannelSamples = new float[fftWindowLength];
-        this.binValues= new float[binCount];
+        this.normalizedBinValues = new float[binCount];
         this.meanValues = new float[binCount];
         this.whiteBinValues = new float[binCount];
         this.peakBinValues = new float[binCount];
@@ -101,12 +93,8 @@ public final class FullSpectrum extends AbstractSpectrumAnalyzer
         g2d.setColor(foregroundColor);
 
         // FFT processing.
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels); // channelSamples has length blockLength
-        System.arraycopy(channelSamples, 0, windowedChannelSamples, 0, fftWindowLength); // windowedChannelSamples has length fftWindowLength
-        applyWindow(fftWindowLength, windowedChannelSamples);
-        binValues = computeFFT(windowedChannelSamples); // binValues typically range from 0.0 dB to 96.0 dB
-        if(maxOverLine == true) {binValues = applyMaxOverLineNormalization(binValues);}
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues typically range from 0.0 dB to 96.0 dB
+        if(maxOverLine == true) {binValues = applyMaxOverLineNormalization(binValues, normalizedBinValues);}
         whitener.whiten ( binValues, meanValues, whiteBinValues);
         whitener.pickPeaks ( whiteBinValues, peakBinValues);
         
@@ -21,9 +21,9 @@ package xtrememp.visualization;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import xtrememp.player.dsp.DssContext;
+import xtrememp.visualization.toolbox.ColorPalette;
 import xtrememp.visualization.toolbox.BinToBandMap;
 import xtrememp.visualization.toolbox.BinToBandMap_Notes;
-import org.jtransforms.fft.FloatFFT_1D;
 import javax.sound.sampled.SourceDataLine;
 import xtrememp.visualization.toolbox.Whitener;
 
@@ -73,10 +73,6 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
     private final float gain;
     private final float slope;
     private float bandHeight;
-    private final float[] brgb;
-    private final float[] frgb;
-    private float[][] audioChannels;
-    private float[]   channelSamples;
     private float[]   binValues;
     private int[] topBinNumArray;
     private Whitener    whitener;
@@ -94,8 +90,6 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
     {   this.binToBandMap = BIN_TO_BAND_MAP_NOTES;
         this.gain  = DEFAULT_SPECTROGRAM_GAIN;
         this.slope = DEFAULT_SPECTROGRAM_SLOPE;
-        brgb = new float[3];
-        frgb = new float[3];
     }  // end of PianoRoll constructor
 
     @Override
@@ -103,11 +97,7 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
     {   this.fftWindowLength = blockLength; // fftWindowLength = 8192
         this.fftSampleRate = sourceDataLine.getFormat().getFrameRate(); // fftSampleRate = 44100
         this.maxFreq =  fftSampleRate / 2.0f;  // maxFreq = 22050 Hz
-        this.audioChannels = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
 
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         setBinCount( fftWindowLength / 2 ); // 8192 / 2 = 4096
         setBandCount(octaveCount*notesPerOctave*bandsPerNote + bandsPerNote);  // covers 8 octaves plus 1 note
         // 8*12*1 + 1 = 97 bands or 8*12*5 + 5 = 485 bands or 8*12*9 + 9 = 873
@@ -122,7 +112,6 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
     public synchronized void setBinCount(int count)
     {   binCount = count;
         this.whitener       = new Whitener(binCount);
-        this.binValues      = new float[binCount];
         this.meanValues     = new float[binCount];
         this.whiteBinValues = new float[binCount];
         this.peakBinValues  = new float[binCount];
@@ -139,7 +128,7 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
 
     private void computeBandTables()
     {   topBinNumArray  = new int [bandCount];
-        if (bandCount > 0 && fftWindowLength > 0 & fft != null)
+        if (bandCount > 0 && fftWindowLength > 0)
         {   topBinNumArray =  binToBandMap.createTopBinNumArray(binCount, maxFreq, bandCount);
         }
     }
@@ -174,16 +163,15 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
         */
                 
         // FFT processing:
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels);// channelSamples has length blockLength
-        applyWindow(fftWindowLength, channelSamples);   // fftWindowLength = blockLength
-        binValues = computeFFT(channelSamples);         // binValues has length fftWindowLength/2
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues has length fftWindowLength/2
         whitener.whiten ( binValues, meanValues, whiteBinValues);   // binValues typically range from 0.0 dB to 96.0 dB
         whitener.pickPeaks ( whiteBinValues, peakBinValues);
         
         bandHeight = (float) height / (float) bandCount;
         
         // Rendering:
+        ColorPalette colorRamp = getColorRamp();
+        
         float   y = height;
         int     widthm1 = width - 1;// width minus 1
         int     binNum;             // binNum = bin number
@@ -214,13 +202,7 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
             if (bandValue > 1.0F) { bandValue = 1.0F; } // Limit over-saturation.
 
             // Calculate spectrogram color shifting between foreground and background colors.
-            float _bandValue = 1.0F - bandValue;
-            backgroundColor.getColorComponents(brgb);
-            foregroundColor.getColorComponents(frgb);
-            Color color = new Color(frgb[0] * bandValue + brgb[0] * _bandValue,
-                                    frgb[1] * bandValue + brgb[1] * _bandValue,
-                                    frgb[2] * bandValue + brgb[2] * _bandValue);
-            g2d.setColor(color);
+            g2d.setColor(colorRamp.getColor(bandValue));
             g2d.drawLine(widthm1, Math.round(y), widthm1, Math.round(y - bandHeight));
 
             // Optionally, draw the peaks spectrum:
@@ -233,7 +215,7 @@ public final class PianoRoll extends AbstractSpectrumAnalyzer
             y -= bandHeight;
         }
 
-        g2d.drawImage(buffImage, -1, 0, null);
+        scrollLeft(g2d, width, height);
         
     }  // end of render() method
     
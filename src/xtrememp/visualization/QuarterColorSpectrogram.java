@@ -18,11 +18,11 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import javax.sound.sampled.SourceDataLine;
 import xtrememp.player.dsp.DssContext;
+import xtrememp.visualization.toolbox.ColorPalette;
 
 /**
  * Renders a quarter-spectrogram. The visualization displays only the lowest
@@ -48,11 +48,11 @@ public final class QuarterColorSpectrogram extends AbstractSpectrumAnalyzer {
     private final float slope;
     private boolean     maxOverLine = false;
     private float       binHeight;
-    private float[][]   audioChannels;
-    private float[]     channelSamples;
     private float[]     binValues;
     private float[]     displayedBinValues;
-    private float red = 0.0F, green = 0.0F, blue  = 0.0F, alpha = 0.0F;
+    private ColorPalette palette;
+    private boolean paletteDark;
+    private Color paletteBackground;
         
     public QuarterColorSpectrogram() {
         this.gain = DEFAULT_SPECTROGRAM_GAIN;
@@ -62,12 +62,7 @@ public final class QuarterColorSpectrogram extends AbstractSpectrumAnalyzer {
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = blockLength;  // If blockLength = 8192 then fftWindowLength = 8192
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 8; // 8192/8 = 1024 displayed frequency bins
-        this.audioChannels  = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.binValues      = new float[ fftWindowLength / 2 ]; // used to capture output of computeFFT()
         this.displayedBinValues= new float[binCount]; // We only display 1024 of the 4096 binValues computed
     }
 
@@ -99,89 +94,97 @@ public final class QuarterColorSpectrogram extends AbstractSpectrumAnalyzer {
          */
 
         // FFT processing:
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels);// channelSamples has length blockLength
-        applyWindow(fftWindowLength, channelSamples);   // fftWindowLength = blockLength = 8192
-        binValues = computeFFT(channelSamples);         // binValues has length fftWindowLength/2 = 4096
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues has length fftWindowLength/2 = 4096
         System.arraycopy(binValues, 0, displayedBinValues, 0, binCount); // displayedBinValues has length binCount = 1024
-        if(maxOverLine == true) {displayedBinValues = applyMaxOverLineNormalization(displayedBinValues);}
+        if(maxOverLine == true) {applyMaxOverLineNormalization(displayedBinValues, displayedBinValues);}
 
         binHeight = (float) height / (float) binCount;
 
         // Rendering.
+        if (palette == null || paletteDark != colorSchemeDark || paletteBackground != backgroundColor) {
+            // Opaque, so every line covers the previous frame by itself.
+            palette = new ColorPalette(this::getBinColor).over(backgroundColor);
+            paletteDark = colorSchemeDark;
+            paletteBackground = backgroundColor;
+        }
         float y = height;
         int widthm1 = width - 1; // width minus 1
         int binNum;
         float mag; // magnitude of selected FFT bin 
             
         for (binNum = 0; binNum < binCount; binNum++) {
-            
-            // First draw a vertical line segment with the background color:
-            g2d.setColor(backgroundColor);
-            g2d.drawLine(widthm1, Math.round(y), widthm1, Math.round(y - binHeight));
-
             mag = (gain + (slope * binNum)) * displayedBinValues[binNum];
             if ( mag < 0.01F ) { mag = 0.01F; }   // Limit under-saturation.
             if ( mag > 0.99F ) { mag = 0.99F; }   // Limit over-saturation.
-            /*
-            Calculate each spectrogram bin color using the "Hot" color map.
-            The "Hot" color map depicts the light emitted from a metal block as
-            it is heated hotter and hotter.  It goes from black to dark red to
-            bright red to orange to yellow to white.
-            If the background is dark then:
-            The first third of the range goes from backround to red; the second goes
-            from red to orange to yellow; and the third goes from yellow to white.
-            */
-            if (colorSchemeDark) { 
-                if (mag < 0.333F) {
-                    red     = 3.0F * mag; 
-                    green   = 0.0F;
-                    blue    = 0.0F;
-                    alpha   = 3.0F * mag;}
-                else if(mag < 0.666F){
-                    red     = 1.0F; 
-                    green   = 3.0F * (mag - 0.333F);
-                    blue    = 0.0F;
-                    alpha   = 1.0F;}
-                else {
-                    red     = 1.0F; 
-                    green   = 1.0F; 
-                    blue    = 3.0F * (mag - 0.666F);
-                    alpha   = 1.0F;}
-            }
-            
-            /*
-            When the user selects a light-colored background, we use the inverse
-            of the Hot map.  If the background is light (that is, not dark) then:
-            The first third of the range goes from backround to yellow; the second
-            goes from yellow to orange to red; and the third goes from red to black.
-            */
-            else { 
-                if (mag < 0.333F) {
-                    red     = 1.0F; 
-                    green   = 1.0F;
-                    blue    = 1.0F - (3.0F * mag);
-                    alpha   = 3.0F * mag;}
-                else if(mag < 0.666F){
-                    red     = 1.0F; 
-                    green   = 1.0F - (3.0F * (mag - 0.333F));
-                    blue    = 0.0F;
-                    alpha   = 1.0F;}
-                else {
-                    red     = 1.0F - (3.0F * (mag - 0.666F)); 
-                    green   = 0.0F; 
-                    blue    = 0.0F;
-                    alpha   = 1.0F;}
-            }
-
-            g2d.setColor(new Color( red, green, blue, alpha ));
+            g2d.setColor(palette.getColor(mag));
             g2d.drawLine(widthm1, Math.round(y), widthm1, Math.round(y - binHeight));
 
             y -= binHeight;
         }
 
-        g2d.drawImage(buffImage, -1, 0, null);
+        scrollLeft(g2d, width, height);
         
     }  // end of render() method
+
+    /**
+     * Computes the color of a bin magnitude for the current color scheme.
+     */
+    private Color getBinColor(float mag) {
+        // The map is only defined over the magnitudes render() draws.
+        mag = Math.max(0.01F, Math.min(0.99F, mag));
+        float red, green, blue, alpha;
+        /*
+        Calculate each spectrogram bin color using the "Hot" color map.
+        The "Hot" color map depicts the light emitted from a metal block as
+        it is heated hotter and hotter.  It goes from black to dark red to
+        bright red to orange to yellow to white.
+        If the background is dark then:
+        The first third of the range goes from backround to red; the second goes
+        from red to orange to yellow; and the third goes from yellow to white.
+        */
+        if (colorSchemeDark) { 
+            if (mag < 0.333F) {
+                red     = 3.0F * mag; 
+                green   = 0.0F;
+                blue    = 0.0F;
+                alpha   = 3.0F * mag;}
+            else if(mag < 0.666F){
+                red     = 1.0F; 
+                green   = 3.0F * (mag - 0.333F);
+                blue    = 0.0F;
+                alpha   = 1.0F;}
+            else {
+                red     = 1.0F; 
+                green   = 1.0F; 
+                blue    = 3.0F * (mag - 0.666F);
+                alpha   = 1.0F;}
+        }
+        
+        /*
+        When the user selects a light-colored background, we use the inverse
+        of the Hot map.  If the background is light (that is, not dark) then:
+        The first third of the range goes from backround to yellow; the second
+        goes from yellow to orange to red; and the third goes from red to black.
+        */
+        else { 
+            if (mag < 0.333F) {
+                red     = 1.0F; 
+                green   = 1.0F;
+                blue    = 1.0F - (3.0F * mag);
+                alpha   = 3.0F * mag;}
+            else if(mag < 0.666F){
+                red     = 1.0F; 
+                green   = 1.0F - (3.0F * (mag - 0.333F));
+                blue    = 0.0F;
+                alpha   = 1.0F;}
+            else {
+                red     = 1.0F - (3.0F * (mag - 0.666F)); 
+                green   = 0.0F; 
+                blue    = 0.0F;
+                alpha   = 1.0F;}
+        }
+
+        return new Color( red, green, blue, alpha );
+    }
     
 }  // end of QuarterColorSpectrogram class
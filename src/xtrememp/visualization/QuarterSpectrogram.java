@@ -18,11 +18,11 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import javax.sound.sampled.SourceDataLine;
 import xtrememp.player.dsp.DssContext;
+import xtrememp.visualization.toolbox.ColorPalette;
 
 /**
  * Renders a quarter-spectrogram. The visualization displays only the lowest
@@ -47,29 +47,18 @@ public final class QuarterSpectrogram extends AbstractSpectrumAnalyzer {
     private final float slope;
     private boolean     maxOverLine = false;
     private float       binHeight;
-    private final float[] brgb;
-    private final float[] frgb;
-    private float[][]   audioChannels;
-    private float[]     channelSamples;
     private float[]     binValues;
     private float[]     displayedBinValues;
 
     public QuarterSpectrogram() {
         this.gain = DEFAULT_SPECTROGRAM_GAIN;
         this.slope = DEFAULT_SPECTROGRAM_SLOPE;
-        brgb = new float[3];
-        frgb = new float[3];
     }
 
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = blockLength;  // If blockLength = 8192 then fftWindowLength = 8192
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 8; // 8192/8 = 1024 displayed frequency bins
-        this.audioChannels  = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.binValues      = new float[ fftWindowLength / 2 ]; // used to capture output of computeFFT()
         this.displayedBinValues= new float[binCount]; // We only display 1024 of the 4096 binValues computed
     }
 
@@ -101,16 +90,14 @@ public final class QuarterSpectrogram extends AbstractSpectrumAnalyzer {
          */
 
         // FFT processing:
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels);// channelSamples has length blockLength
-        applyWindow(fftWindowLength, channelSamples);   // fftWindowLength = blockLength = 8192
-        binValues = computeFFT(channelSamples);         // binValues has length fftWindowLength/2 = 4096
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues has length fftWindowLength/2 = 4096
         System.arraycopy(binValues, 0, displayedBinValues, 0, binCount); // displayedBinValues has length binCount = 1024
-        if(maxOverLine == true) {displayedBinValues = applyMaxOverLineNormalization(displayedBinValues);}
+        if(maxOverLine == true) {applyMaxOverLineNormalization(displayedBinValues, displayedBinValues);}
 
         binHeight = (float) height / (float) binCount;
 
         // Rendering.
+        ColorPalette colorRamp = getColorRamp();
         float y = height;
         int widthm1 = width - 1; // width minus 1
         int binNum;
@@ -122,19 +109,13 @@ public final class QuarterSpectrogram extends AbstractSpectrumAnalyzer {
             if ( binMag > 1.0F ) { binMag = 1.0F; }   // Limit over-saturation.
 
             // Calculate spectrogram color shifting between foreground and background colors.
-            float _binMag = 1.0F - binMag;
-            backgroundColor.getColorComponents(brgb);
-            foregroundColor.getColorComponents(frgb);
-            Color color = new Color(frgb[0] * binMag + brgb[0] * _binMag,
-                    frgb[1] * binMag + brgb[1] * _binMag,
-                    frgb[2] * binMag + brgb[2] * _binMag);
-            g2d.setColor(color);
+            g2d.setColor(colorRamp.getColor(binMag));
             g2d.drawLine(widthm1, Math.round(y), widthm1, Math.round(y - binHeight));
 
             y -= binHeight;
         }
 
-        g2d.drawImage(buffImage, -1, 0, null);
+        scrollLeft(g2d, width, height);
         
     }  // end of render() method
     
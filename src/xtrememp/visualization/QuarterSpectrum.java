@@ -18,7 +18,6 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -51,8 +50,6 @@ public final class QuarterSpectrum extends AbstractSpectrumAnalyzer {
     private int fftWindowLength;
     private Whitener whitener;
     
-    private float[][] audioChannels;
-    private float[]   channelSamples;
     private float[]   binValues;
     private float[]   displayedBinValues;
     private float[]   meanValues;
@@ -62,13 +59,8 @@ public final class QuarterSpectrum extends AbstractSpectrumAnalyzer {
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = blockLength;  // If blockLength = 8192 then fftWindowLength = 8192
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 8; // 8192/8 = 1024 displayed frequency bins
         this.whitener = new Whitener(binCount);
-        this.audioChannels = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.binValues= new float[ fftWindowLength / 2 ]; // used to capture output of computeFFT()
         this.displayedBinValues= new float[binCount];     // We only display 1024 of the 4096 binValues computed
         this.meanValues = new float[binCount];
         this.whiteBinValues = new float[binCount];
@@ -105,12 +97,9 @@ public final class QuarterSpectrum extends AbstractSpectrumAnalyzer {
         g2d.setColor(foregroundColor);
 
         // FFT processing.
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels);// channelSamples has length blockLength
-        applyWindow(fftWindowLength, channelSamples);   // fftWindowLength = blockLength = 8192
-        binValues = computeFFT(channelSamples);         // binValues has length fftWindowLength/2 = 4096
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues has length fftWindowLength/2 = 4096
         System.arraycopy(binValues, 0, displayedBinValues, 0, binCount); // displayedBinValues has length binCount = 1024
-        if(maxOverLine == true) {displayedBinValues = applyMaxOverLineNormalization(displayedBinValues);}
+        if(maxOverLine == true) {applyMaxOverLineNormalization(displayedBinValues, displayedBinValues);}
         whitener.whiten ( displayedBinValues, meanValues, whiteBinValues ); // binValues typically range from 0.0 dB to 96.0 dB
         whitener.pickPeaks ( whiteBinValues, peakBinValues );
         
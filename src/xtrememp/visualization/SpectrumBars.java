@@ -18,7 +18,6 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
@@ -99,9 +98,7 @@ public final class SpectrumBars extends AbstractSpectrumAnalyzer {
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = Math.min(blockLength, 2048); // If blockLength=8192 then fftWindowLength=2048
         this.fftSampleRate = sourceDataLine.getFormat().getFrameRate();
-        this.fft = new FloatFFT_1D(fftWindowLength);
         this.oldBinMagArray = new float[bandCount];
-        calculateWindowCoefficients(fftWindowLength);
         computeBandTables();
     }
     
@@ -144,7 +141,7 @@ public final class SpectrumBars extends AbstractSpectrumAnalyzer {
     }
 
     private void computeBandTables() {
-        if (bandCount > 0 && fftWindowLength > 0 & fft != null) {
+        if (bandCount > 0 && fftWindowLength > 0) {
             int binCount = fftWindowLength >> 1;
             
             // Create a band distribution table.
@@ -270,10 +267,7 @@ public final class SpectrumBars extends AbstractSpectrumAnalyzer {
             }
         }
         // FFT processing.
-        float[][] audioChannels = dssContext.getAudioData();
-        float[] channelSamples = averageChannels(audioChannels);
-        applyWindow(fftWindowLength, channelSamples);
-        float[] binValues = computeFFT(channelSamples);
+        float[] binValues = computeSpectrum(dssContext, fftWindowLength);
         bandWidth = (float) width / (float) bandCount;
 
         // Group up available bands using band distribution table.
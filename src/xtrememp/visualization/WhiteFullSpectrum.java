@@ -18,7 +18,6 @@
  */
 package xtrememp.visualization;
 
-import org.jtransforms.fft.FloatFFT_1D;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
@@ -51,9 +50,6 @@ public final class WhiteFullSpectrum extends AbstractSpectrumAnalyzer {
     private int fftWindowLength;
     private Whitener whitener;
 
-    private float[][] audioChannels;
-    private float[]   channelSamples;
-    private float[]   windowedChannelSamples;
     private float[]   binValues;
     private float[]   meanValues;
     private float[]   whiteBinValues;
@@ -62,14 +58,8 @@ public final class WhiteFullSpectrum extends AbstractSpectrumAnalyzer {
     @Override
     public void init(int blockLength, SourceDataLine sourceDataLine) {
         this.fftWindowLength = Math.min(blockLength, 2048); // If blockLength=8192 then fftWindowLength=2048
-        this.fft = new FloatFFT_1D(fftWindowLength);
-        calculateWindowCoefficients(fftWindowLength);
         binCount = fftWindowLength / 2; // 2048/2 = 1024 displayed frequency bins
         this.whitener = new Whitener(binCount);
-        this.audioChannels = new float[2][blockLength];
-        this.channelSamples = new float[blockLength];
-        this.windowedChannelSamples = new float[fftWindowLength];
-        this.binValues= new float[binCount];
         this.meanValues = new float[binCount];
         this.whiteBinValues = new float[binCount];
         this.peakBinValues = new float[binCount];
@@ -105,11 +95,7 @@ public final class WhiteFullSpectrum extends AbstractSpectrumAnalyzer {
         g2d.setColor(foregroundColor);
 
         // FFT processing.
-        audioChannels = dssContext.getAudioData();
-        channelSamples = averageChannels(audioChannels); // channelSamples has length blockLength
-        System.arraycopy(channelSamples, 0, windowedChannelSamples, 0, fftWindowLength); // windowedChannelSamples has length fftWindowLength
-        applyWindow(fftWindowLength, windowedChannelSamples);
-        binValues = computeFFT(windowedChannelSamples); // binValues typically range from 0.0 dB to 96.0 dB
+        binValues = computeSpectrum(dssContext, fftWindowLength); // binValues typically range from 0.0 dB to 96.0 dB
         whitener.whiten ( binValues, meanValues, whiteBinValues);
         whitener.pickPeaks ( whiteBinValues, peakBinValues);
         
@@ -0,0 +1,104 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.visualization.toolbox;
+
+import java.awt.Color;
+
+/**
+ * A table of colors for values from 0.0 to 1.0, so that visualizations
+ * coloring every bin of every frame do not create a new Color each time.
+ * 256 levels are more than a display can tell apart.
+ *
+ * @author Besmir Beqiri
+ */
+public class ColorPalette {
+
+    public static final int SIZE = 256;
+    private final Color[] colors = new Color[SIZE];
+
+    /**
+     * Computes the color of a value.
+     */
+    public interface ColorFunction {
+
+        Color getColor(float value);
+    }
+
+    /**
+     * @param function the function to tabulate for values from 0.0 to 1.0.
+     */
+    public ColorPalette(ColorFunction function) {
+        for (int i = 0; i < SIZE; i++) {
+            colors[i] = function.getColor(i / (float) (SIZE - 1));
+        }
+    }
+
+    /**
+     * Returns this palette with its translucent colors blended over an
+     * opaque background once and for all. Painting with opaque colors skips
+     * alpha compositing, which allocates on every call.
+     *
+     * @param background the color the palette is painted over.
+     * @return An opaque palette.
+     */
+    public ColorPalette over(Color background) {
+        final float[] bg = background.getColorComponents(null);
+        return new ColorPalette(value -> {
+            Color color = getColor(value);
+            float[] c = color.getRGBComponents(null);
+            float a = c[3];
+            return new Color(
+                    c[0] * a + bg[0] * (1.0F - a),
+                    c[1] * a + bg[1] * (1.0F - a),
+                    c[2] * a + bg[2] * (1.0F - a));
+        });
+    }
+
+    /**
+     * Creates a palette shifting from one color to another.
+     *
+     * @param from the color of 0.0.
+     * @param to the color of 1.0.
+     * @return A linear color ramp.
+     */
+    public static ColorPalette createRamp(Color from, Color to) {
+        final float[] frgb = from.getColorComponents(null);
+        final float[] trgb = to.getColorComponents(null);
+        return new ColorPalette(value -> new Color(
+                trgb[0] * value + frgb[0] * (1.0F - value),
+                trgb[1] * value + frgb[1] * (1.0F - value),
+                trgb[2] * value + frgb[2] * (1.0F - value)));
+    }
+
+    /**
+     * Returns the color of a value, clamped to the range 0.0 to 1.0.
+     *
+     * @param value the value.
+     * @return The nearest tabulated color.
+     */
+    public Color getColor(float value) {
+        if (value <= 0.0F) {
+            return colors[0];
+        }
+        if (value >= 1.0F) {
+            return colors[SIZE - 1];
+        }
+        return colors[(int) (value * (SIZE - 1) + 0.5F)];
+    }
+}
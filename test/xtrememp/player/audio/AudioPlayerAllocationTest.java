@@ -0,0 +1,153 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2010 Besmir Beqiri
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that publishing progress on every block allocates nothing once
+ * playback has reached a steady state, and that listeners are called from
+ * the event dispatcher rather than the output thread.
+ *
+ * @author Besmir Beqiri
+ */
+public class AudioPlayerAllocationTest {
+
+    private static final int BLOCKS = 100000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private AudioPlayer player;
+    private CountingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        player = new AudioPlayer();
+        player.setProgressInterval(0L);
+        listener = new CountingListener();
+        player.addPlaybackListener(listener);
+        player.audioSource = TestStreams.mpegLayer1(200, 1L);
+        player.initAudioInputStream();
+    }
+
+    @After
+    public void tearDown() {
+        if (player != null) {
+            player.closeStream();
+        }
+    }
+
+    @Test
+    public void progressIsPublishedWithoutAllocating() throws Exception {
+        byte[] block = new byte[4608];
+        for (int i = 0; i < BLOCKS; i++) {
+            // Move the stream so the dynamic properties change between calls.
+            if (i % 1000 == 0) {
+                player.audioInputStream.read(block);
+            }
+            player.notifyProgress();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < BLOCKS; i++) {
+            player.notifyProgress();
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Leave room for the measurement itself, not for one object per block.
+        assertTrue("allocated " + allocated + " bytes over " + BLOCKS + " blocks", allocated < BLOCKS / 10);
+        // Delivered by the dispatcher, positions not delivered yet are merged.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (listener.events == 0L && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+        long events = listener.events;
+        assertTrue("delivered " + events + " events", events > 0L && events <= 2L * BLOCKS);
+        // The documented immutable types, boxed on the dispatcher thread.
+        Map<String, Object> properties = listener.properties;
+        assertTrue(properties.get("mp3.position.byte") instanceof Long);
+        assertTrue(properties.get("mp3.frame.bitrate") instanceof Integer);
+    }
+
+    @Test
+    public void progressIsNotDeliveredOnThePublishingThread() throws Exception {
+        player.notifyProgress();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (listener.thread == null && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertNotNull(listener.thread);
+        assertNotSame(Thread.currentThread(), listener.thread);
+    }
+
+    private static final class CountingListener implements PlaybackListener {
+
+        volatile long events;
+        volatile Map<String, Object> properties;
+        volatile Thread thread;
+
+        @Override
+        public void playbackBuffering(PlaybackEvent pe) {
+        }
+
+        @Override
+        public void playbackOpened(PlaybackEvent pe) {
+        }
+
+        @Override
+        public void playbackEndOfMedia(PlaybackEvent pe) {
+        }
+
+        @Override
+        public void playbackPlaying(PlaybackEvent pe) {
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void playbackProgress(PlaybackEvent pe) {
+            properties = pe.getProperties();
+            thread = Thread.currentThread();
+            events++;
+        }
+
+        @Override
+        public void playbackPaused(PlaybackEvent pe) {
+        }
+
+        @Override
+        public void playbackStopped(PlaybackEvent pe) {
+        }
+
+        @Override
+        public void playbackTransition(PlaybackEvent pe) {
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the line buffer sizing of the low-latency mode, and that an
+ * underrun grows the buffer only once the line stops instead of draining
+ * and reopening it while it plays.
+ *
+ * @author Besmir Beqiri
+ */
+public class AudioPlayerLatencyTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0F, 16, 2, true, false);
+    private volatile RecordingSourceDataLine line;
+    private AudioPlayer player;
+
+    @Before
+    public void setUp() {
+        player = new AudioPlayer() {
+            @Override
+            protected SourceDataLine getSourceDataLine(Mixer mixer, DataLine.Info lineInfo) {
+                line = new RecordingSourceDataLine(lineInfo.getFormats()[0]);
+                return line;
+            }
+        };
+        player.setMixerName("Recording");
+    }
+
+    @After
+    public void tearDown() {
+        player.shutdown();
+    }
+
+    @Test
+    public void bufferSizeHoldsTheLatency() {
+        player.setBufferSize(12345);
+        assertEquals(12345, player.getLineBufferSize(FORMAT));
+        player.setLowLatencyEnabled(true);
+        assertEquals(AudioPlayer.DEFAULT_LATENCY_TARGET, player.getLatencyTarget());
+        assertEquals(2205 * 4, player.getLineBufferSize(FORMAT));
+        player.setLatencyTarget(10);
+        assertEquals(441 * 4, player.getLineBufferSize(FORMAT));
+        player.setLatencyTarget(5000);
+        assertEquals(AudioPlayer.MAX_LATENCY, player.getLatencyTarget());
+        assertEquals(44100 * 4, player.getLineBufferSize(FORMAT));
+        AudioFormat mono = new AudioFormat(48000.0F, 24, 1, true, false);
+        player.setLatencyTarget(20);
+        assertEquals(960 * 3, player.getLineBufferSize(mono));
+        player.setLowLatencyEnabled(false);
+        assertEquals(12345, player.getLineBufferSize(FORMAT));
+    }
+
+    @Test
+    public void underrunsAreCountedWithoutReopeningTheLine() {
+        player.setLowLatencyEnabled(true);
+        RecordingSourceDataLine fake = new RecordingSourceDataLine(FORMAT);
+        fake.open(FORMAT, player.getLineBufferSize(FORMAT));
+        fake.clearCalls();
+        player.sourceDataLine = fake;
+        player.lineFed = false;
+        // Nothing was written yet, an empty line is no underrun.
+        fake.setStarved(true);
+        player.checkLineUnderrun();
+        assertEquals(0L, player.getLineUnderruns());
+        fake.setStarved(false);
+        player.checkLineUnderrun();
+        assertEquals(0L, player.getLineUnderruns());
+        fake.setStarved(true);
+        player.checkLineUnderrun();
+        assertEquals(1L, player.getLineUnderruns());
+        assertEquals(76, player.lineLatency);
+        assertTrue(player.lineResizeDeferred);
+        // Raised once until the line is resized.
+        player.checkLineUnderrun();
+        assertEquals(2L, player.getLineUnderruns());
+        assertEquals(76, player.lineLatency);
+        assertTrue(fake.getCalls().isEmpty());
+        assertEquals(3352 * 4, player.getLineBufferSize(FORMAT));
+    }
+
+    @Test
+    public void lineGrowsWhenPaused() throws Exception {
+        player.setLowLatencyEnabled(true);
+        player.open(TestStreams.mpegLayer1(2000, 1L));
+        assertEquals("open " + 2205 * 4, line.getCalls().get(0));
+        line.setWriteDelay(2L);
+        player.play();
+        await(() -> line.getBytesWritten() > 0L);
+        line.setStarved(true);
+        await(() -> player.getLineUnderruns() > 0L);
+        line.setStarved(false);
+        assertEquals(76, player.lineLatency);
+        assertEquals(0, line.count("drain"));
+        assertEquals(0, line.count("close"));
+        assertEquals(1, line.count("open"));
+
+        player.pause();
+        await(() -> line.count("open") == 2);
+        assertEquals("open " + 3352 * 4, line.getCalls().get(line.getCalls().size() - 1));
+        assertFalse(player.lineResizeDeferred);
+        assertEquals(76, player.getLineLatency());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(2L);
+        }
+    }
+}
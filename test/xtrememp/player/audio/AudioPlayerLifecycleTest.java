@@ -0,0 +1,166 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2010 Besmir Beqiri
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.File;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the player threads neither outlive it nor keep work pending
+ * after a stop, and that seeking keeps the line.
+ *
+ * @author Besmir Beqiri
+ */
+public class AudioPlayerLifecycleTest {
+
+    private volatile RecordingSourceDataLine line;
+    private AudioPlayer player;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        player = new AudioPlayer() {
+            @Override
+            protected SourceDataLine getSourceDataLine(Mixer mixer, DataLine.Info lineInfo) {
+                line = new RecordingSourceDataLine(lineInfo.getFormats()[0]);
+                return line;
+            }
+        };
+        player.setMixerName("Recording");
+        player.setGaplessEnabled(true);
+        file = TestStreams.mpegLayer1(200, 1L);
+    }
+
+    @After
+    public void tearDown() {
+        player.shutdown();
+    }
+
+    @Test
+    public void stopCancelsThePreparedTrack() throws Exception {
+        player.prepareNext(file);
+        Future<AudioPlayer.NextTrack> pending = player.nextTrackFuture;
+        assertNotNull(pending);
+        player.stop();
+        assertNull(player.nextTrackFuture);
+        assertNull(player.nextSource);
+        assertTrue(pending.isDone());
+    }
+
+    @Test
+    public void stopCancelsThePendingFade() throws Exception {
+        player.initRingBuffer();
+        AudioPlayer.NextTrack fadeTrack = new AudioPlayer.NextTrack(file);
+        player.fadeTrack = fadeTrack;
+        player.fadeDecoding = true;
+        Future<?> pending = player.fadeDecoderService.submit(() -> {
+            // Stands for the fade decoder waiting for the crossfade.
+            while (player.fadeDecoding) {
+                Thread.sleep(1L);
+            }
+            return null;
+        });
+        player.fadeDecoderFuture = pending;
+        player.stop();
+        assertTrue(pending.isDone());
+        assertNull(player.fadeDecoderFuture);
+        assertNull(player.fadeTrack);
+        assertFalse(player.fading);
+    }
+
+    @Test
+    public void shutdownReleasesThePlayerThreads() throws Exception {
+        player.prepareNext(file);
+        player.nextTrackFuture.get(5L, TimeUnit.SECONDS);
+        Thread prefetch = findThread("AudioPrefetch");
+        assertNotNull(prefetch);
+        assertTrue("player threads must not keep the application alive", prefetch.isDaemon());
+        player.shutdown();
+        prefetch.join(TimeUnit.SECONDS.toMillis(5L));
+        assertFalse(prefetch.isAlive());
+        assertTrue(player.prefetchService.isShutdown());
+        assertTrue(player.execService.isShutdown());
+        assertTrue(player.decoderService.isShutdown());
+        assertTrue(player.fadeDecoderService.isShutdown());
+    }
+
+    @Test
+    public void seekKeepsTheLineAndItsSettings() throws Exception {
+        player.open(TestStreams.mpegLayer1(2000, 2L));
+        RecordingSourceDataLine opened = line;
+        opened.setWriteDelay(2L);
+        player.setGain(0.5F);
+        player.setPan(-0.25F);
+        player.setMuted(true);
+        player.play();
+        await(() -> opened.getBytesWritten() > 0L);
+        opened.clearCalls();
+
+        assertTrue(player.seek(5000000L) >= 0L);
+        assertSeekKeptTheLine(opened);
+        opened.clearCalls();
+        assertTrue(player.seekToFrame(44100L) >= 0L);
+        assertSeekKeptTheLine(opened);
+        opened.clearCalls();
+        // Backwards, which reopens the stream but not the line.
+        assertTrue(player.seekToFrame(1000L) >= 0L);
+        assertSeekKeptTheLine(opened);
+    }
+
+    private void assertSeekKeptTheLine(RecordingSourceDataLine opened) throws Exception {
+        assertSame(opened, line);
+        assertTrue(opened.isOpen());
+        assertEquals(0, opened.count("close"));
+        assertEquals(0, opened.count("open"));
+        assertEquals(0, opened.count("drain"));
+        assertTrue(opened.count("flush") > 0);
+        assertEquals(0.5F, player.getGain(), 0.0F);
+        assertEquals(-0.25F, player.getPan(), 0.0F);
+        assertTrue(player.isMuted());
+        // Playback goes on from the new position.
+        long written = opened.getBytesWritten();
+        await(() -> opened.getBytesWritten() > written);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(2L);
+        }
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (name.equals(thread.getName())) {
+                return thread;
+            }
+        }
+        return null;
+    }
+}
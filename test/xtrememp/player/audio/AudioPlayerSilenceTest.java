@@ -0,0 +1,221 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that leading and trailing silence of at least the minimum length
+ * is trimmed while shorter pauses play, and that the audible range is taken
+ * from {@link SilenceCache} until the file changes.
+ *
+ * @author Besmir Beqiri
+ */
+public class AudioPlayerSilenceTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0F, 16, 2, true, false);
+    private static final int FRAME_SIZE = 4;
+    private static final int LONG_SILENCE = 66150; // 1.5 s
+    private static final int SHORT_SILENCE = 13230; // 0.3 s
+    private static final int AUDIO = 44100;
+    private static final int TAIL = 88200;
+    private volatile RecordingSourceDataLine line;
+    private AudioPlayer player;
+    private File cacheDir;
+    private SilenceCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        player = new AudioPlayer() {
+            @Override
+            protected SourceDataLine getSourceDataLine(Mixer mixer, DataLine.Info lineInfo) {
+                line = new RecordingSourceDataLine(lineInfo.getFormats()[0]);
+                return line;
+            }
+        };
+        player.setMixerName("Recording");
+        player.setSilenceTrimEnabled(true);
+        cacheDir = Files.createTempDirectory("xtrememp-silence").toFile();
+        cache = new SilenceCache(cacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        player.shutdown();
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+        cacheDir.delete();
+    }
+
+    @Test
+    public void detectorFindsTheAudibleFrames() {
+        SilenceDetector detector = new SilenceDetector(FORMAT, -60.0F, 1000);
+        assertEquals(44100L, detector.getMinFrames());
+        byte[] block = signal(100, 10, 100);
+        assertEquals(100, detector.process(block, block.length));
+        assertEquals(110L, detector.getAudibleEnd());
+        assertEquals(100L, detector.getTrailingSilence());
+        block = signal(50, 0, 0);
+        assertEquals(-1, detector.process(block, block.length));
+        assertEquals(260L, detector.getFrames());
+        assertEquals(150L, detector.getTrailingSilence());
+        // Below -60 dBFS on both channels.
+        putSample(block, 0, 0, 30);
+        putSample(block, 0, 1, -30);
+        assertEquals(-1, detector.process(block, block.length));
+        detector.reset(1000L);
+        assertEquals(1000L, detector.getAudibleEnd());
+        assertEquals(0L, detector.getTrailingSilence());
+    }
+
+    @Test
+    public void longLeadingSilenceIsSkipped() throws Exception {
+        AudioPlayer.NextTrack track = leadIn(TestStreams.wave(FORMAT, signal(LONG_SILENCE, AUDIO, TAIL)));
+        assertEquals(LONG_SILENCE, track.startFrame);
+        assertEquals(LONG_SILENCE, track.decodedFrames);
+        assertTrue(track.prerollLength > 0);
+        // The preroll starts with the first audible frame.
+        assertEquals(16384, getSample(track.preroll, track.prerollOffset / FRAME_SIZE, 0));
+        track.audioInputStream.close();
+    }
+
+    @Test
+    public void shortLeadingSilenceIsKept() throws Exception {
+        AudioPlayer.NextTrack track = leadIn(TestStreams.wave(FORMAT, signal(SHORT_SILENCE, AUDIO, TAIL)));
+        assertEquals(0L, track.startFrame);
+        assertTrue(track.prerollLength > SHORT_SILENCE * FRAME_SIZE);
+        assertEquals(0, getSample(track.preroll, SHORT_SILENCE - 1, 0));
+        assertEquals(16384, getSample(track.preroll, SHORT_SILENCE, 0));
+        track.audioInputStream.close();
+    }
+
+    @Test
+    public void trailingSilenceIsTrimmedAndRemembered() throws Exception {
+        File file = TestStreams.wave(FORMAT, signal(LONG_SILENCE, AUDIO, TAIL));
+        player.setSilenceCache(cache);
+        playToEnd(file);
+        // Silence is held back a whole block at a time.
+        long written = line.getBytesWritten();
+        assertTrue("wrote " + written + " bytes", written >= AUDIO * FRAME_SIZE
+                && written < AUDIO * FRAME_SIZE + player.READ_BUFFER_SIZE);
+        long[] range = cache.get(file, player.getSilenceThreshold(), player.getSilenceMinLength());
+        assertNotNull(range);
+        assertEquals(LONG_SILENCE, range[0]);
+        assertEquals(LONG_SILENCE + AUDIO, range[1]);
+        // Other settings need a scan of their own.
+        assertNull(cache.get(file, -50.0F, player.getSilenceMinLength()));
+        assertNull(cache.get(file, player.getSilenceThreshold(), 2000));
+    }
+
+    @Test
+    public void shortTrailingSilenceIsPlayed() throws Exception {
+        File file = TestStreams.wave(FORMAT, signal(0, AUDIO, SHORT_SILENCE));
+        player.setSilenceCache(cache);
+        playToEnd(file);
+        assertEquals((AUDIO + SHORT_SILENCE) * FRAME_SIZE, line.getBytesWritten());
+        long[] range = cache.get(file, player.getSilenceThreshold(), player.getSilenceMinLength());
+        assertArrayEquals(new long[]{0L, AUDIO + SHORT_SILENCE}, range);
+    }
+
+    @Test
+    public void cachedRangeIsPlayedUntilTheFileChanges() throws Exception {
+        File file = TestStreams.wave(FORMAT, signal(LONG_SILENCE, AUDIO, TAIL));
+        // A range no scan would find, so playing it shows the cache was used.
+        cache.put(file, player.getSilenceThreshold(), player.getSilenceMinLength(), 1000L, 21000L);
+        player.setSilenceCache(cache);
+        playToEnd(file);
+        assertEquals(20000L * FRAME_SIZE, line.getBytesWritten());
+
+        assertTrue(file.setLastModified(file.lastModified() + 2000L));
+        assertNull(cache.get(file, player.getSilenceThreshold(), player.getSilenceMinLength()));
+        playToEnd(file);
+        long[] range = cache.get(file, player.getSilenceThreshold(), player.getSilenceMinLength());
+        assertArrayEquals(new long[]{LONG_SILENCE, LONG_SILENCE + AUDIO}, range);
+    }
+
+    @Test
+    public void cacheIsSavedAndLoaded() throws Exception {
+        File file = TestStreams.wave(FORMAT, signal(10, 10, 10));
+        cache.put(file, -60.0F, 1000, 123L, 456L);
+        cache.save();
+        File cacheFile = new File(cacheDir, SilenceCache.CACHE_FILE);
+        assertTrue(cacheFile.isFile());
+        assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+        assertArrayEquals(new long[]{123L, 456L}, new SilenceCache(cacheDir).get(file, -60.0F, 1000));
+    }
+
+    private AudioPlayer.NextTrack leadIn(File file) throws Exception {
+        AudioPlayer.NextTrack track = new AudioPlayer.NextTrack(file);
+        track.audioInputStream = AudioSystem.getAudioInputStream(file);
+        player.scanLeadIn(track);
+        return track;
+    }
+
+    private void playToEnd(File file) throws Exception {
+        player.open(file);
+        RecordingSourceDataLine opened = line;
+        player.play();
+        await(() -> opened.count("drain") == 1);
+    }
+
+    /**
+     * Silence, then a square wave at -6 dBFS, then silence again.
+     */
+    private static byte[] signal(int lead, int audio, int tail) {
+        byte[] data = new byte[(lead + audio + tail) * FRAME_SIZE];
+        for (int frame = lead; frame < lead + audio; frame++) {
+            int value = ((frame - lead) / 50 % 2 == 0) ? 16384 : -16384;
+            putSample(data, frame, 0, value);
+            putSample(data, frame, 1, value);
+        }
+        return data;
+    }
+
+    private static void putSample(byte[] data, int frame, int channel, int value) {
+        int offset = frame * FRAME_SIZE + channel * 2;
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static int getSample(byte[] data, int frame, int channel) {
+        int offset = frame * FRAME_SIZE + channel * 2;
+        return (data[offset] & 0xFF) | (data[offset + 1] << 8);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(2L);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javazoom.spi.mpeg.sampled.convert.DecodedMpegAudioInputStream;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the crossfade only relies on exact track lengths, and leaves
+ * the other tracks to a gapless splice.
+ *
+ * @author Besmir Beqiri
+ */
+public class AudioPlayerTrackLengthTest {
+
+    private AudioPlayer player;
+
+    @Before
+    public void setUp() {
+        player = new AudioPlayer();
+    }
+
+    @After
+    public void tearDown() {
+        player.shutdown();
+    }
+
+    @Test
+    public void waveLengthIsExact() throws Exception {
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        File file = TestStreams.wave(format, new byte[12345 * 4]);
+        open(file);
+        assertEquals(12345L, player.getTrackFrameLength());
+        player.audioInputStream.close();
+    }
+
+    @Test
+    public void mpegLengthComesFromTheFrameIndex() throws Exception {
+        File file = TestStreams.mpegLayer1(200, 2L);
+        open(file);
+        assertTrue(player.audioInputStream instanceof DecodedMpegAudioInputStream);
+        // Only the duration is known until the file is indexed.
+        assertTrue(player.getDuration(player.properties) > 0);
+        assertEquals(AudioSystem.NOT_SPECIFIED, player.getTrackFrameLength());
+        MpegFrameIndex index = MpegFrameIndex.scan(file);
+        assertTrue(((DecodedMpegAudioInputStream) player.audioInputStream).setFrameIndex(index));
+        assertEquals(200L * 384L, player.getTrackFrameLength());
+        player.audioInputStream.close();
+    }
+
+    @Test
+    public void flacLengthComesFromStreamInfo() {
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(new byte[0]),
+                format, AudioSystem.NOT_SPECIFIED);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("duration", 1000000L);
+        properties.put("flac.totalSamples", 44123L);
+        assertEquals(44123L, player.getExactFrameLength(stream, properties));
+        // Encoders write 0 when they don't know the length.
+        properties.put("flac.totalSamples", 0L);
+        assertEquals(AudioSystem.NOT_SPECIFIED, player.getExactFrameLength(stream, properties));
+    }
+
+    @Test
+    public void trimmedTrackEndsAtTheAudibleEnd() throws Exception {
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        open(TestStreams.wave(format, new byte[12345 * 4]));
+        player.setSilenceTrimEnabled(true);
+        player.trackEndFrame = 10000L;
+        assertEquals(10000L, player.getTrackFrameLength());
+        // The audible end is exact even if the length isn't.
+        player.properties.remove("audio.type");
+        assertEquals(10000L, player.getTrackFrameLength());
+        player.trackEndFrame = AudioSystem.NOT_SPECIFIED;
+        assertEquals(AudioSystem.NOT_SPECIFIED, player.getTrackFrameLength());
+        player.audioInputStream.close();
+    }
+
+    private void open(File file) throws Exception {
+        player.initAudioInputStream(file);
+        player.audioInputStream = player.getDecodedAudioInputStream(player.audioInputStream);
+        player.properties = player.getAudioProperties(player.audioFileFormat);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to run one second of 48 kHz stereo audio through the processing
+ * chain, with the equalizer bypassed, partly or fully active. The score in
+ * milliseconds is also the share of one core taken by playback, in tenths
+ * of a percent.
+ *
+ * @author Besmir Beqiri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EqualizerBenchmark {
+
+    private static final float SAMPLE_RATE = 48000.0F;
+    private static final int BLOCK_FRAMES = 960;
+    private static final int BLOCKS = (int) SAMPLE_RATE / BLOCK_FRAMES;
+
+    @Param({"0", "5", "10"})
+    public int activeBands;
+
+    private SampleProcessingChain chain;
+    private byte[] block;
+
+    @Setup
+    public void createChain() {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+        EqualizerProcessor equalizer = new EqualizerProcessor();
+        equalizer.setEnabled(true);
+        for (int band = 0; band < activeBands; band++) {
+            equalizer.setBandGain(band * EqualizerProcessor.BAND_COUNT / activeBands, 6.0F);
+        }
+        chain = new SampleProcessingChain();
+        chain.add(equalizer);
+        block = new byte[BLOCK_FRAMES * format.getFrameSize()];
+        chain.init(format, format, block.length);
+        Random random = new Random(1L);
+        for (int i = 0; i < block.length; i += 2) {
+            int sample = random.nextInt(32768) - 16384;
+            block[i] = (byte) sample;
+            block[i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    @Benchmark
+    public byte[] processOneSecond() {
+        for (int i = 0; i < BLOCKS; i++) {
+            chain.process(block, block.length);
+        }
+        return chain.getOutput();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(EqualizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
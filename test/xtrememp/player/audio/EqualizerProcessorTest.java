@@ -0,0 +1,176 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the equalizer filters each channel on its own, designs its
+ * bands for the real sample rate, survives gain changes from another thread
+ * and allocates nothing on the audio thread.
+ *
+ * @author Besmir Beqiri
+ */
+public class EqualizerProcessorTest {
+
+    private static final int FRAMES = 4096;
+
+    @Test
+    public void channelsAreFilteredIndependently() {
+        float[] left = noise(FRAMES, 1L);
+        float[] mono = left.clone();
+        EqualizerProcessor monoEq = newEqualizer(48000.0F, 1);
+        monoEq.process(mono, FRAMES);
+
+        // The left channel as in mono, the right one silent.
+        float[] stereo = new float[FRAMES * 2];
+        for (int i = 0; i < FRAMES; i++) {
+            stereo[2 * i] = left[i];
+        }
+        EqualizerProcessor stereoEq = newEqualizer(48000.0F, 2);
+        stereoEq.process(stereo, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(mono[i], stereo[2 * i], 0.0F);
+            assertEquals(0.0F, stereo[2 * i + 1], 0.0F);
+        }
+    }
+
+    @Test
+    public void bandsFollowTheSampleRate() {
+        for (float sampleRate : new float[]{22050.0F, 44100.0F, 48000.0F, 96000.0F}) {
+            for (int band = 2; band < 8; band++) {
+                EqualizerProcessor eq = new EqualizerProcessor();
+                eq.init(FRAMES, sampleRate, 1);
+                eq.setEnabled(true);
+                eq.setBandGain(band, EqualizerProcessor.MAX_GAIN);
+                double frequency = EqualizerProcessor.getBandFrequency(band);
+                double inside = gainAt(eq, sampleRate, frequency);
+                double outside = gainAt(eq, sampleRate, frequency / 8.0);
+                String where = "band " + band + " at " + sampleRate + " Hz";
+                assertEquals(where, EqualizerProcessor.MAX_GAIN, inside, 0.5);
+                assertEquals(where, 0.0, outside, 0.5);
+            }
+        }
+    }
+
+    @Test
+    public void gainChangesWhileProcessingStayStable() throws Exception {
+        final EqualizerProcessor eq = newEqualizer(48000.0F, 2);
+        Thread sliders = new Thread(() -> {
+            Random random = new Random(2L);
+            for (int i = 0; i < 20000; i++) {
+                int band = random.nextInt(EqualizerProcessor.BAND_COUNT);
+                eq.setBandGain(band, random.nextInt(2 * EqualizerProcessor.MAX_GAIN + 1) - EqualizerProcessor.MAX_GAIN);
+            }
+        });
+        sliders.start();
+        float[] samples = new float[256 * 2];
+        Random random = new Random(3L);
+        while (sliders.isAlive()) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = random.nextFloat() - 0.5F;
+            }
+            eq.process(samples, 256);
+            for (float sample : samples) {
+                // Well above what the gains allow, well below a diverging filter.
+                assertTrue("unstable output " + sample, Math.abs(sample) < 16.0F);
+            }
+        }
+        sliders.join();
+    }
+
+    @Test
+    public void processingAllocatesNothing() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        AudioFormat format = new AudioFormat(48000.0F, 16, 2, true, false);
+        SampleProcessingChain chain = new SampleProcessingChain();
+        EqualizerProcessor eq = newEqualizer(48000.0F, 2);
+        chain.add(eq);
+        chain.init(format, format, FRAMES * 4);
+        byte[] block = new byte[FRAMES * 4];
+        new Random(4L).nextBytes(block);
+        for (int i = 0; i < 1000; i++) {
+            chain.process(block, block.length);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            chain.process(block, block.length);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Leave room for the measurement itself.
+        assertTrue("allocated " + allocated + " bytes", allocated < 1000L);
+    }
+
+    /**
+     * Returns an enabled equalizer with every band boosted or cut.
+     */
+    private static EqualizerProcessor newEqualizer(float sampleRate, int channels) {
+        EqualizerProcessor eq = new EqualizerProcessor();
+        eq.init(FRAMES, sampleRate, channels);
+        eq.setEnabled(true);
+        for (int band = 0; band < EqualizerProcessor.BAND_COUNT; band++) {
+            eq.setBandGain(band, band % 2 == 0 ? 9.0F : -6.0F);
+        }
+        return eq;
+    }
+
+    private static float[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = random.nextFloat() - 0.5F;
+        }
+        return samples;
+    }
+
+    /**
+     * Measures the steady-state gain of a mono equalizer for a sine wave.
+     *
+     * @return the gain in dB.
+     */
+    private static double gainAt(EqualizerProcessor eq, float sampleRate, double frequency) {
+        int frames = (int) sampleRate;
+        float[] samples = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = (float) (0.1 * Math.sin(2.0 * Math.PI * frequency * i / sampleRate));
+        }
+        eq.process(samples, frames);
+        // Skip the first half second, while the filters settle.
+        double in = 0.0;
+        double out = 0.0;
+        for (int i = frames / 2; i < frames; i++) {
+            double x = 0.1 * Math.sin(2.0 * Math.PI * frequency * i / sampleRate);
+            in += x * x;
+            out += samples[i] * samples[i];
+        }
+        return 10.0 * Math.log10(out / in);
+    }
+}
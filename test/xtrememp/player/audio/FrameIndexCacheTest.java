@@ -0,0 +1,108 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.File;
+import java.nio.file.Files;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FrameIndexCache} builds an index in the background,
+ * finds its sidecar again from a new cache and drops it once the file
+ * changes.
+ *
+ * @author Besmir Beqiri
+ */
+public class FrameIndexCacheTest {
+
+    private static final int FRAMES = 200;
+    private static final long TIMEOUT = 10000L;
+
+    private File cacheDir;
+    private File source;
+    private FrameIndexCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("xtrememp-index").toFile();
+        source = TestStreams.mpegLayer1(FRAMES, 1L);
+        cache = new FrameIndexCache(cacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+        cacheDir.delete();
+        source.delete();
+    }
+
+    @Test
+    public void submittedFileIsIndexedAndKept() throws Exception {
+        assertNull(cache.getIndex(source));
+        cache.submit(source);
+        MpegFrameIndex index = awaitIndex(cache);
+        assertEquals(FRAMES, index.getFrameCount());
+        assertEquals(source.length(), index.getFrameOffset(FRAMES));
+        assertTrue(cache.getSidecarFile(source).isFile());
+        assertFalse(new File(cache.getSidecarFile(source).getPath() + ".tmp").exists());
+        assertSame(index, cache.getIndex(source));
+
+        // A new cache reads the sidecar instead of scanning again.
+        cache.shutdown();
+        cache = new FrameIndexCache(cacheDir);
+        MpegFrameIndex loaded = cache.getIndex(source);
+        assertNotNull(loaded);
+        assertEquals(FRAMES, loaded.getFrameCount());
+        for (int frame = 0; frame <= FRAMES; frame++) {
+            assertEquals(index.getFrameOffset(frame), loaded.getFrameOffset(frame));
+        }
+    }
+
+    @Test
+    public void changedFileIsIndexedAgain() throws Exception {
+        cache.submit(source);
+        awaitIndex(cache);
+        long modified = source.lastModified();
+        Files.write(source.toPath(), Files.readAllBytes(TestStreams.mpegLayer1(FRAMES / 2, 2L).toPath()));
+        assertTrue(source.setLastModified(modified + 2000L));
+        assertNull(cache.getIndex(source));
+
+        cache.submit(source);
+        MpegFrameIndex index = awaitIndex(cache);
+        assertEquals(FRAMES / 2, index.getFrameCount());
+        assertTrue(index.matches(source));
+    }
+
+    private MpegFrameIndex awaitIndex(FrameIndexCache cache) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        MpegFrameIndex index;
+        while ((index = cache.getIndex(source)) == null) {
+            assertTrue("not indexed in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+        return index;
+    }
+}
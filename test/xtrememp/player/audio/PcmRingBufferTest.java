@@ -0,0 +1,143 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the watermark hysteresis of {@link PcmRingBuffer} and that blocks
+ * go through in order without lost wake-ups.
+ *
+ * @author Besmir Beqiri
+ */
+public class PcmRingBufferTest {
+
+    private static final long LONG_WAIT = TimeUnit.SECONDS.toNanos(10L);
+
+    @Test
+    public void producerResumesAtTheLowWatermark() {
+        PcmRingBuffer ring = new PcmRingBuffer(8, 4);
+        ring.setWatermarks(2, 6);
+        for (int i = 0; i < 6; i++) {
+            assertFalse(ring.isFilled());
+            fill(ring, i);
+        }
+        assertTrue(ring.isFilled());
+        for (int size = 5; size > 2; size--) {
+            ring.release();
+            assertEquals(size, ring.size());
+            assertTrue("size " + size, ring.isFilled());
+        }
+        ring.release();
+        assertFalse(ring.isFilled());
+        fill(ring, 0);
+        assertFalse(ring.isFilled());
+    }
+
+    @Test
+    public void awaitSpaceWaitsForTheLowWatermark() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(8, 4);
+        ring.setWatermarks(2, 6);
+        for (int i = 0; i < 6; i++) {
+            fill(ring, i);
+        }
+        final AtomicInteger sizeOnReturn = new AtomicInteger(-1);
+        Thread producer = new Thread(() -> {
+            ring.awaitSpace(LONG_WAIT);
+            sizeOnReturn.set(ring.size());
+        });
+        producer.start();
+        while (ring.size() > 0) {
+            Thread.sleep(5L);
+            ring.release();
+        }
+        producer.join(5000L);
+        assertFalse(producer.isAlive());
+        int size = sizeOnReturn.get();
+        assertTrue("returned at " + size, size >= 0 && size <= 2);
+    }
+
+    @Test
+    public void wakeProducerEndsTheWait() throws Exception {
+        final PcmRingBuffer ring = new PcmRingBuffer(4, 4);
+        for (int i = 0; i < 4; i++) {
+            fill(ring, i);
+        }
+        Thread producer = new Thread(() -> ring.awaitSpace(LONG_WAIT));
+        producer.start();
+        long start = System.nanoTime();
+        while (producer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1L);
+        }
+        ring.wakeProducer();
+        producer.join(5000L);
+        assertFalse(producer.isAlive());
+        assertTrue(System.nanoTime() - start < LONG_WAIT / 2);
+        assertEquals(4, ring.size());
+    }
+
+    @Test
+    public void blocksArriveInOrder() throws Exception {
+        final int blocks = 20000;
+        final PcmRingBuffer ring = new PcmRingBuffer(8, 4);
+        ring.setWatermarks(2, 6);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < blocks; i++) {
+                while (ring.isFilled()) {
+                    ring.awaitSpace(LONG_WAIT);
+                }
+                fill(ring, i);
+            }
+            ring.publishEndOfStream();
+        });
+        producer.start();
+        long start = System.nanoTime();
+        int expected = 0;
+        while (!ring.isEndOfStream()) {
+            byte[] block = ring.peek();
+            if (block == null) {
+                ring.awaitFill(1, LONG_WAIT);
+                continue;
+            }
+            assertEquals(4, ring.peekLength());
+            assertEquals(expected++, sequence(block));
+            ring.release();
+        }
+        producer.join(5000L);
+        assertEquals(blocks, expected);
+        // A lost wake-up would stall a side for the whole wait.
+        assertTrue(System.nanoTime() - start < LONG_WAIT);
+    }
+
+    private static void fill(PcmRingBuffer ring, int sequence) {
+        byte[] block = ring.claim();
+        assertNotNull(block);
+        for (int i = 0; i < 4; i++) {
+            block[i] = (byte) (sequence >> (i * 8));
+        }
+        ring.publish(4, false);
+    }
+
+    private static int sequence(byte[] block) {
+        return (block[0] & 0xFF) | (block[1] & 0xFF) << 8 | (block[2] & 0xFF) << 16 | block[3] << 24;
+    }
+}
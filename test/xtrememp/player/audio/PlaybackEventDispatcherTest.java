@@ -0,0 +1,211 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Besmir Beqiri
+ */
+public class PlaybackEventDispatcherTest {
+
+    private static final int CAPACITY = 2;
+    private final Map<String, Object> properties = Collections.emptyMap();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final List<PlaybackEvent> received = new CopyOnWriteArrayList<PlaybackEvent>();
+    private final List<Long> progress = new CopyOnWriteArrayList<Long>();
+    private final List<Integer> progressIndex = new CopyOnWriteArrayList<Integer>();
+    private PlaybackEventDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        List<PlaybackListener> listeners = new CopyOnWriteArrayList<PlaybackListener>();
+        listeners.add(new RecordingListener());
+        dispatcher = new PlaybackEventDispatcher(null, listeners, CAPACITY);
+        dispatcher.setOfferTimeout(50L);
+        // Hold the dispatcher thread in the listener.
+        dispatcher.post(Playback.OPENED, 0L, properties);
+        assertTrue(blocked.await(5L, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void offerDoesNotWaitOnFullQueue() {
+        fillQueue();
+        long start = System.nanoTime();
+        assertFalse(dispatcher.offer(Playback.TRANSITION, 0L, properties));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waited + " ms", waited < 1000L);
+        assertEquals(1L, dispatcher.getOverflowCount());
+    }
+
+    @Test
+    public void eventsAreDeliveredInOrder() throws Exception {
+        Playback[] states = {Playback.BUFFERING, Playback.PLAYING, Playback.PAUSED,
+            Playback.STOPPED, Playback.PLAYING, Playback.TRANSITION, Playback.EOM};
+        for (int i = 0; i < states.length; i++) {
+            dispatcher.offer(states[i], i, properties);
+        }
+        release.countDown();
+        awaitReceived(1 + states.length);
+        for (int i = 0; i < states.length; i++) {
+            assertEquals(states[i], received.get(1 + i).getState());
+            assertEquals(i, received.get(1 + i).getPosition());
+        }
+    }
+
+    @Test
+    public void repeatedStatesAreCoalesced() throws Exception {
+        dispatcher.post(Playback.PLAYING, 1L, properties);
+        dispatcher.post(Playback.PLAYING, 2L, properties);
+        dispatcher.post(Playback.PLAYING, 3L, properties);
+        dispatcher.post(Playback.EOM, 4L, properties);
+        dispatcher.post(Playback.EOM, 5L, properties);
+        dispatcher.post(Playback.TRANSITION, 6L, properties);
+        dispatcher.post(Playback.TRANSITION, 7L, properties);
+        assertTrue(dispatcher.isCoalescable(Playback.PLAYING));
+        assertFalse(dispatcher.isCoalescable(Playback.EOM));
+        assertFalse(dispatcher.isCoalescable(Playback.TRANSITION));
+        release.countDown();
+        awaitReceived(6);
+        List<Playback> states = new ArrayList<Playback>();
+        for (PlaybackEvent pe : received) {
+            states.add(pe.getState());
+        }
+        assertEquals(Arrays.asList(Playback.OPENED, Playback.PLAYING, Playback.EOM,
+                Playback.EOM, Playback.TRANSITION, Playback.TRANSITION), states);
+        // The merged event carries the latest position.
+        assertEquals(3L, received.get(1).getPosition());
+        assertEquals(2L, dispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void endOfMediaIsDeliveredUnderOverload() throws Exception {
+        int flood = 50 * CAPACITY;
+        for (int i = 0; i < flood; i++) {
+            // Alternate so that nothing is merged.
+            dispatcher.offer((i % 2 == 0) ? Playback.BUFFERING : Playback.PLAYING, i, properties);
+        }
+        dispatcher.offer(Playback.EOM, flood, properties);
+        dispatcher.post(Playback.STOPPED, flood + 1, properties);
+        assertTrue(dispatcher.getOverflowCount() > 0L);
+        release.countDown();
+        awaitReceived(flood + 3);
+        assertEquals(Playback.EOM, received.get(flood + 1).getState());
+        assertEquals(Playback.STOPPED, received.get(flood + 2).getState());
+    }
+
+    @Test
+    public void progressIsMergedAndKeepsItsPlace() throws Exception {
+        dispatcher.offer(Playback.PLAYING, 1L, properties);
+        dispatcher.publishProgress(2L);
+        dispatcher.publishProgress(3L);
+        dispatcher.offer(Playback.EOM, 4L, properties);
+        dispatcher.publishProgress(5L);
+        release.countDown();
+        awaitReceived(3);
+        assertEquals(Playback.PLAYING, received.get(1).getState());
+        assertEquals(Playback.EOM, received.get(2).getState());
+        // A single progress event with the latest position, ahead of the end of media.
+        assertEquals(Collections.singletonList(5L), progress);
+        assertEquals(Collections.singletonList(2), progressIndex);
+        assertEquals(1L, dispatcher.getProgressCount());
+    }
+
+    private void fillQueue() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(dispatcher.offer(Playback.TRANSITION, 0L, properties));
+        }
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(count, received.size());
+    }
+
+    private final class RecordingListener implements PlaybackListener {
+
+        @Override
+        public void playbackBuffering(PlaybackEvent pe) {
+            received.add(pe);
+        }
+
+        @Override
+        public void playbackOpened(PlaybackEvent pe) {
+            received.add(pe);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void playbackEndOfMedia(PlaybackEvent pe) {
+            received.add(pe);
+        }
+
+        @Override
+        public void playbackPlaying(PlaybackEvent pe) {
+            received.add(pe);
+        }
+
+        @Override
+        public void playbackProgress(PlaybackEvent pe) {
+            // The event instance is reused, keep what it carries now.
+            progressIndex.add(received.size());
+            progress.add(pe.getPosition());
+        }
+
+        @Override
+        public void playbackPaused(PlaybackEvent pe) {
+            received.add(pe);
+        }
+
+        @Override
+        public void playbackStopped(PlaybackEvent pe) {
+            received.add(pe);
+        }
+
+        @Override
+        public void playbackTransition(PlaybackEvent pe) {
+            received.add(pe);
+        }
+    }
+}
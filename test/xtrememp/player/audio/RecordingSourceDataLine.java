@@ -0,0 +1,244 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A line that plays nothing and records the calls changing its state, for
+ * tests that run the player without a sound card. Writes take a while, so
+ * the output thread keeps playing while the test acts on the player.
+ *
+ * @author Besmir Beqiri
+ */
+class RecordingSourceDataLine implements SourceDataLine {
+
+    static final int DEFAULT_BUFFER_SIZE = 44100;
+    private final List<String> calls = new CopyOnWriteArrayList<String>();
+    private volatile AudioFormat format;
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile boolean open = false;
+    private volatile boolean running = false;
+    private volatile boolean starved = false;
+    private volatile long writeDelay = 0L;
+    private volatile long framePosition = 0L;
+    private volatile long bytesWritten = 0L;
+    private volatile byte[] lastBlock = new byte[0];
+
+    RecordingSourceDataLine(AudioFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the calls that changed the line state, such as
+     * <code>"open 8820"</code> or <code>"flush"</code>, in order.
+     */
+    List<String> getCalls() {
+        return new ArrayList<String>(calls);
+    }
+
+    int count(String call) {
+        int count = 0;
+        for (String c : calls) {
+            if (c.equals(call) || c.startsWith(call + " ")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void clearCalls() {
+        calls.clear();
+    }
+
+    /**
+     * Makes the line report it has played out everything written to it.
+     */
+    void setStarved(boolean starved) {
+        this.starved = starved;
+    }
+
+    /**
+     * Sets how long each write blocks, as a real line does while its buffer
+     * is full.
+     */
+    void setWriteDelay(long millis) {
+        this.writeDelay = millis;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    byte[] getLastBlock() {
+        return lastBlock;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        this.format = format;
+        this.bufferSize = (bufferSize > 0) ? bufferSize : DEFAULT_BUFFER_SIZE;
+        open = true;
+        framePosition = 0L;
+        calls.add("open " + this.bufferSize);
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        open(format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    @Override
+    public void open() {
+        open(format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    @Override
+    public int write(byte[] b, int off, int len) {
+        long delay = writeDelay;
+        if (delay > 0L) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] block = new byte[len];
+        System.arraycopy(b, off, block, 0, len);
+        lastBlock = block;
+        bytesWritten += len;
+        framePosition += len / format.getFrameSize();
+        return len;
+    }
+
+    @Override
+    public void drain() {
+        calls.add("drain");
+    }
+
+    @Override
+    public void flush() {
+        calls.add("flush");
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        calls.add("start");
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        calls.add("stop");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int available() {
+        return starved ? bufferSize : 0;
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) framePosition;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return framePosition;
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (long) (framePosition * 1000000.0 / format.getFrameRate());
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public DataLine.Info getLineInfo() {
+        return new DataLine.Info(SourceDataLine.class, format, bufferSize);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        open = false;
+        calls.add("close");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("Unsupported control type: " + control);
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+    }
+}
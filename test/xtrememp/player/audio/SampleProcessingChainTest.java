@@ -0,0 +1,135 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2011 Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that 16 bit audio goes through the chain untouched unless a stage
+ * really changes it.
+ *
+ * @author Besmir Beqiri
+ */
+public class SampleProcessingChainTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0F, 16, 2, true, false);
+    private static final int BLOCK = 4608;
+
+    private SampleProcessingChain chain;
+    private EqualizerProcessor equalizer;
+    private byte[] block;
+
+    @Before
+    public void setUp() {
+        chain = new SampleProcessingChain();
+        equalizer = new EqualizerProcessor();
+        chain.add(equalizer);
+        chain.init(FORMAT, FORMAT, BLOCK);
+        block = new byte[BLOCK];
+        Random random = new Random(1L);
+        for (int i = 0; i < BLOCK; i += 2) {
+            // Half scale, so that the limiter stays out of the way.
+            int sample = random.nextInt(32768) - 16384;
+            block[i] = (byte) sample;
+            block[i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    @Test
+    public void bypassedStagesAreBitIdentical() {
+        equalizer.setEnabled(false);
+        assertArrayEquals(block, process());
+        // Enabled but flat.
+        equalizer.setEnabled(true);
+        assertArrayEquals(block, process());
+    }
+
+    @Test
+    public void activeEqualizerChangesTheOutput() {
+        equalizer.setEnabled(true);
+        equalizer.setBandGain(0, EqualizerProcessor.MAX_GAIN);
+        assertFalse(Arrays.equals(block, process()));
+    }
+
+    @Test
+    public void gainChangesTheOutput() {
+        chain.getGainProcessor().setGain(0.5F);
+        process();
+        assertFalse(Arrays.equals(block, process()));
+    }
+
+    @Test
+    public void fullScale16BitIsBitIdenticalAtUnityGain() {
+        assertFullScaleIsBitIdentical(FORMAT);
+    }
+
+    @Test
+    public void fullScale24BitIsBitIdenticalAtUnityGain() {
+        assertFullScaleIsBitIdentical(new AudioFormat(96000.0F, 24, 2, true, false));
+    }
+
+    @Test
+    public void limiterCatchesReplayGainBoost() {
+        LimiterProcessor limiter = chain.getLimiterProcessor();
+        chain.getGainProcessor().setReplayGain(4.0F);
+        process();
+        process();
+        assertTrue(limiter.getActiveFrames() > 0L);
+        byte[] output = process();
+        for (int i = 0; i < output.length; i += 2) {
+            int sample = (output[i + 1] << 8) | (output[i] & 0xFF);
+            assertTrue("sample " + i / 2, Math.abs(sample) <= 32768);
+        }
+    }
+
+    private void assertFullScaleIsBitIdentical(AudioFormat format) {
+        SampleProcessingChain unity = new SampleProcessingChain();
+        unity.add(new EqualizerProcessor());
+        unity.init(format, format, BLOCK * 3);
+        int bytes = format.getSampleSizeInBits() / 8;
+        int max = (1 << (format.getSampleSizeInBits() - 1)) - 1;
+        byte[] data = new byte[BLOCK * 3];
+        Random random = new Random(2L);
+        for (int i = 0, n = 0; i < data.length; i += bytes, n++) {
+            // Peaks at both ends of the range, the rest anywhere in it.
+            int sample = (n % 64 == 0) ? max : (n % 64 == 1) ? -max - 1
+                    : random.nextInt(2 * max + 1) - max;
+            for (int b = 0; b < bytes; b++) {
+                data[i + b] = (byte) (sample >> (b * 8));
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            int length = unity.process(data, data.length);
+            assertEquals(data.length, length);
+            assertArrayEquals("block " + i, data, Arrays.copyOf(unity.getOutput(), length));
+        }
+        assertEquals(0L, unity.getLimiterProcessor().getActiveFrames());
+    }
+
+    private byte[] process() {
+        int length = chain.process(block, block.length);
+        assertEquals(block.length, length);
+        return Arrays.copyOf(chain.getOutput(), length);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Xtreme Media Player a cross-platform media player.
+ * Copyright (C) 2005-2010 Besmir Beqiri
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package xtrememp.player.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Synthetic audio files for the player tests.
+ *
+ * @author Besmir Beqiri
+ */
+final class TestStreams {
+
+    private static final int LAYER1_FRAME_LENGTH = 484;
+
+    private TestStreams() {
+    }
+
+    /**
+     * Writes an MPEG-1 Layer I stream, 448 kbps stereo at 44.1 kHz, with
+     * random but valid allocations, scalefactors and samples.
+     */
+    static File mpegLayer1(int frames, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = File.createTempFile("xtrememp-test", ".mp3");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int f = 0; f < frames; f++) {
+                BitWriter frame = new BitWriter(LAYER1_FRAME_LENGTH);
+                frame.put(0xFFFF, 16);
+                frame.put(14, 4);
+                frame.put(0, 12);
+                int[][] allocation = new int[32][2];
+                for (int sb = 0; sb < 32; sb++) {
+                    for (int ch = 0; ch < 2; ch++) {
+                        allocation[sb][ch] = random.nextInt(4);
+                        frame.put(allocation[sb][ch], 4);
+                    }
+                }
+                for (int sb = 0; sb < 32; sb++) {
+                    for (int ch = 0; ch < 2; ch++) {
+                        if (allocation[sb][ch] != 0) {
+                            frame.put(random.nextInt(63), 6);
+                        }
+                    }
+                }
+                for (int s = 0; s < 12; s++) {
+                    for (int sb = 0; sb < 32; sb++) {
+                        for (int ch = 0; ch < 2; ch++) {
+                            int bits = allocation[sb][ch] + 1;
+                            if (bits > 1) {
+                                frame.put(random.nextInt(1 << bits), bits);
+                            }
+                        }
+                    }
+                }
+                out.write(frame.bytes);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes PCM data to a temporary WAVE file.
+     */
+    static File wave(AudioFormat format, byte[] data) throws IOException {
+        File file = File.createTempFile("xtrememp-test", ".wav");
+        file.deleteOnExit();
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format,
+                data.length / format.getFrameSize());
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    private static final class BitWriter {
+
+        final byte[] bytes;
+        int position;
+
+        BitWriter(int length) {
+            bytes = new byte[length];
+        }
+
+        void put(int value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                if (((value >> i) & 1) != 0) {
+                    bytes[position >> 3] |= (byte) (0x80 >>> (position & 7));
+                }
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Moves the frame position of the line by hand and checks that the DSS
+ * dispatches one block per block boundary crossed, skips the blocks the line
+ * played past, starts a new timeline when the position goes back and
+ * records all of it in its histograms.
+ *
+ * @author Besmir Beqiri
+ */
+public class DigitalSignalSynchronizerSchedulingTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0F, 16, 2, true, false);
+    // The default block rate at 44.1 kHz, a block every 1024 frames.
+    private static final int FRAMES_PER_BLOCK = 1024;
+    private static final int BLOCK_LENGTH = 1024;
+    // Long enough for the DSS to poll the line several times.
+    private static final long SETTLE_MILLIS = 150L;
+
+    private ClockedLine line;
+    private DigitalSignalSynchronizer dss;
+    private CountingDsp dsp;
+
+    @Before
+    public void setUp() {
+        line = new ClockedLine();
+        dss = new DigitalSignalSynchronizer(BLOCK_LENGTH, DigitalSignalSynchronizer.DEFAULT_BLOCK_RATE);
+        dsp = new CountingDsp();
+        dss.add(dsp);
+        dss.update(new LineEvent(line, LineEvent.Type.OPEN, 0L));
+        dss.writeAudioData(new byte[BLOCK_LENGTH * 4], 0, BLOCK_LENGTH * 4);
+        dss.update(new LineEvent(line, LineEvent.Type.START, 0L));
+    }
+
+    @After
+    public void tearDown() {
+        dss.update(new LineEvent(line, LineEvent.Type.STOP, 0L));
+        dss.update(new LineEvent(line, LineEvent.Type.CLOSE, 0L));
+    }
+
+    @Test
+    public void blocksFollowTheLinePosition() throws Exception {
+        awaitBlocks(1);
+        // Within the same block: nothing new to dispatch.
+        moveTo(FRAMES_PER_BLOCK - 1L);
+        assertEquals(1, dsp.blocks);
+        moveTo(FRAMES_PER_BLOCK);
+        awaitBlocks(2);
+        // The line played past three blocks: they are skipped, not caught up.
+        moveTo(5L * FRAMES_PER_BLOCK + 10L);
+        awaitBlocks(3);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(3, dsp.blocks);
+        assertEquals(3L, dss.getMissedCycleCount());
+
+        Histogram missed = dss.getMissedCycleHistogram();
+        assertEquals(2L, missed.getCount());
+        assertEquals(1L, missed.getBucketCount(Histogram.getBucket(0L)));
+        assertEquals(1L, missed.getBucketCount(Histogram.getBucket(3L)));
+        assertEquals(3L, missed.getMax());
+        // One frame time between two dispatches, one compute time each.
+        assertEquals(2L, dss.getFrameTimeHistogram().getCount());
+        assertEquals(3L, dss.getComputeTimeHistogram().getCount());
+        assertEquals(3L, dss.getDspTiming(dsp).getProcessTimeHistogram().getCount());
+    }
+
+    @Test
+    public void flushStartsANewTimeline() throws Exception {
+        awaitBlocks(1);
+        moveTo(FRAMES_PER_BLOCK);
+        awaitBlocks(2);
+        // Flushed and started again from frame 0.
+        moveTo(0L);
+        awaitBlocks(3);
+        moveTo(FRAMES_PER_BLOCK);
+        awaitBlocks(4);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(4, dsp.blocks);
+        // Going back is neither a missed block nor a negative count.
+        assertEquals(0L, dss.getMissedCycleCount());
+        Histogram missed = dss.getMissedCycleHistogram();
+        assertEquals(2L, missed.getCount());
+        assertEquals(2L, missed.getBucketCount(0));
+        assertEquals(0L, missed.getMax());
+
+        dss.resetMetrics();
+        assertEquals(0L, missed.getCount());
+        assertEquals(0L, dss.getFrameTimeHistogram().getCount());
+        assertEquals(0L, dss.getComputeTimeHistogram().getCount());
+    }
+
+    @Test
+    public void stoppedLineIsNotPolled() throws Exception {
+        awaitBlocks(1);
+        line.stop();
+        moveTo(3L * FRAMES_PER_BLOCK);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, dsp.blocks);
+        line.start();
+        awaitBlocks(2);
+        // A pause is neither a missed block nor a frame time.
+        assertEquals(2L, dss.getMissedCycleCount());
+        assertEquals(0L, dss.getFrameTimeHistogram().getCount());
+    }
+
+    private void moveTo(long frame) throws InterruptedException {
+        line.position = frame;
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    private void awaitBlocks(int blocks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (dsp.blocks < blocks) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+    /**
+     * A line whose frame position only moves when the test moves it.
+     */
+    private static final class ClockedLine extends OfflineSourceDataLine {
+
+        volatile long position;
+
+        ClockedLine() {
+            super(FORMAT, BLOCK_LENGTH * 4);
+        }
+
+        @Override
+        public long getLongFramePosition() {
+            return position;
+        }
+    }
+
+    private static final class CountingDsp implements DigitalSignalProcessor {
+
+        volatile int blocks;
+
+        @Override
+        public void init(int blockLength, SourceDataLine sourceDataLine) {
+        }
+
+        @Override
+        public void process(DssContext dssContext) {
+            blocks++;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Writes audio to the DSS from one thread while ten slow DSPs read it, until
+ * each of them got a number of blocks, and checks that the writer never
+ * blocked or waited, that no DSP ever saw a torn block and that with
+ * parallel dispatch no DSP was left out for long.
+ *
+ * @author Besmir Beqiri
+ */
+public class DigitalSignalSynchronizerStressTest {
+
+    private static final int DSP_COUNT = 10;
+    private static final int WRITE_LENGTH = 1024;
+    // Four times faster than real time.
+    private static final long WRITE_PERIOD = TimeUnit.SECONDS.toNanos(1L) * WRITE_LENGTH / (44100 * 4) / 4;
+    private static final int MIN_BLOCKS = 30;
+    // Only reached if a DSP starves.
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(60L);
+    // Two threads serve ten DSPs in rounds of five blocks or more, the slow
+    // blocks and a single core stretch a round to about ten.
+    private static final int MAX_DROP_RUN = 2 * DSP_COUNT;
+
+    private ThreadMXBean threadBean;
+    private OfflineSourceDataLine line;
+    private DigitalSignalSynchronizer dss;
+    private List<CheckingDsp> dsps;
+
+    @Before
+    public void setUp() {
+        threadBean = ManagementFactory.getThreadMXBean();
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        line = new OfflineSourceDataLine(format, 16384);
+        dss = new DigitalSignalSynchronizer(2048, DigitalSignalSynchronizer.DEFAULT_BLOCK_RATE);
+        dsps = new ArrayList<>();
+        for (int i = 0; i < DSP_COUNT; i++) {
+            CheckingDsp dsp = new CheckingDsp(i);
+            dsps.add(dsp);
+            dss.add(dsp);
+        }
+        dss.update(new LineEvent(line, LineEvent.Type.OPEN, 0L));
+        dss.update(new LineEvent(line, LineEvent.Type.START, 0L));
+    }
+
+    @After
+    public void tearDown() {
+        dss.update(new LineEvent(line, LineEvent.Type.STOP, line.getLongFramePosition()));
+        dss.update(new LineEvent(line, LineEvent.Type.CLOSE, line.getLongFramePosition()));
+        dss.setParallelDispatchEnabled(false);
+    }
+
+    @Test
+    public void writerNeverBlocksWithSerialDispatch() throws Exception {
+        stress();
+    }
+
+    @Test
+    public void writerNeverBlocksWithParallelDispatch() throws Exception {
+        // Two threads whatever the cores, the public setter stays serial
+        // on small machines.
+        dss.setParallelDispatchEnabled(true, 2);
+        assertTrue(dss.isParallelDispatchEnabled());
+        stress();
+        for (CheckingDsp dsp : dsps) {
+            int run = dss.getDspTiming(dsp).getLongestDropRun();
+            assertTrue("DSP " + dsp.index + " dropped " + run + " blocks in a row", run <= MAX_DROP_RUN);
+        }
+    }
+
+    @Test
+    public void singleWorkerFallsBackToSerialDispatch() {
+        dss.setParallelDispatchEnabled(true, 1);
+        assertFalse(dss.isParallelDispatchEnabled());
+    }
+
+    private void stress() throws Exception {
+        Writer writer = new Writer();
+        Thread thread = new Thread(writer, "AudioOutput");
+        thread.start();
+        thread.join();
+        if (writer.failure != null) {
+            throw new AssertionError(writer.failure);
+        }
+        assertEquals("writer blocked " + writer.blocked + " times", 0L, writer.blocked);
+        assertEquals("writer waited " + writer.waited + " times", 0L, writer.waited);
+        for (CheckingDsp dsp : dsps) {
+            assertNull(dsp.failure, dsp.failure);
+            assertTrue("DSP " + dsp.index + " got " + dsp.blocks + " blocks", dsp.blocks >= MIN_BLOCKS);
+        }
+        // A torn snapshot is read again or skipped, never handed out.
+        assertTrue(dss.getSkippedSnapshotCount() <= dss.getTornSnapshotCount());
+    }
+
+    /**
+     * Plays a ramp on the line, the left sample of frame n being n modulo
+     * 32768 and the right one its opposite, so any block can be checked
+     * against its position.
+     */
+    private final class Writer implements Runnable {
+
+        volatile long blocked;
+        volatile long waited;
+        volatile Throwable failure;
+
+        @Override
+        public void run() {
+            try {
+                long id = Thread.currentThread().getId();
+                byte[] block = new byte[WRITE_LENGTH];
+                long frame = 0L;
+                long start = System.nanoTime();
+                for (long next = start; !enoughBlocks(); next += WRITE_PERIOD) {
+                    if (next - start > TIMEOUT) {
+                        throw new AssertionError("DSPs starved");
+                    }
+                    frame = fill(block, frame);
+                    // Only the DSS write is checked, the line may block.
+                    ThreadInfo before = threadBean.getThreadInfo(id);
+                    dss.writeAudioData(block, 0, block.length);
+                    ThreadInfo after = threadBean.getThreadInfo(id);
+                    blocked += after.getBlockedCount() - before.getBlockedCount();
+                    waited += after.getWaitedCount() - before.getWaitedCount();
+                    line.write(block, 0, block.length);
+                    LockSupport.parkNanos(next + WRITE_PERIOD - System.nanoTime());
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        private boolean enoughBlocks() {
+            for (CheckingDsp dsp : dsps) {
+                if (dsp.blocks < MIN_BLOCKS) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long fill(byte[] block, long frame) {
+            for (int i = 0; i < block.length; i += 4, frame++) {
+                int value = (int) (frame & 0x7FFF);
+                block[i] = (byte) value;
+                block[i + 1] = (byte) (value >> 8);
+                block[i + 2] = (byte) -value;
+                block[i + 3] = (byte) (-value >> 8);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Checks every block against the ramp and takes a while over it, longer
+     * than the block period from time to time.
+     */
+    private static final class CheckingDsp implements DigitalSignalProcessor {
+
+        final int index;
+        volatile int blocks;
+        volatile String failure;
+
+        CheckingDsp(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void init(int blockLength, SourceDataLine sourceDataLine) {
+        }
+
+        @Override
+        public void process(DssContext dssContext) {
+            float[][] data = dssContext.getAudioData();
+            long frame = dssContext.getPosition() / 4L;
+            for (int i = 0; i < dssContext.getSampleSize(); i++) {
+                float expected = ((frame + i) & 0x7FFF) / 32768.0F;
+                if (data[0][i] != expected || data[1][i] != -expected) {
+                    failure = "DSP " + index + " got a torn block at frame " + (frame + i);
+                    break;
+                }
+            }
+            blocks++;
+            try {
+                Thread.sleep(blocks % 10 == index ? 30L : 2L);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to turn a snapshot of 8192 frames into the float channels the DSPs
+ * read, on the 16-bit little-endian fast path and on the generic path.
+ *
+ * @author Besmir Beqiri
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DssContextBenchmark {
+
+    private static final int BLOCK_LENGTH = 8192;
+
+    @Param({"16le-stereo", "16le-mono", "16be-stereo", "24le-stereo"})
+    public String format;
+
+    private DssContext context;
+
+    @Setup
+    public void createContext() {
+        String[] parts = format.split("-");
+        int bits = Integer.parseInt(parts[0].substring(0, 2));
+        boolean bigEndian = parts[0].endsWith("be");
+        int channels = parts[1].equals("stereo") ? 2 : 1;
+        AudioFormat audioFormat = new AudioFormat(44100.0F, bits, channels, true, bigEndian);
+        context = new DssContext(new OfflineSourceDataLine(audioFormat, 16384), BLOCK_LENGTH);
+        new Random(1L).nextBytes(context.getSnapshot());
+    }
+
+    @Benchmark
+    public float[][] extractData() {
+        context.extractData(0L, 0);
+        return context.getAudioData();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(DssContextBenchmark.class.getSimpleName()).build()).run();
+    }
+}
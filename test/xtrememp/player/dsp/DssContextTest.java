@@ -0,0 +1,122 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the 16-bit little-endian fast path of {@link DssContext} against
+ * the generic path, fed the same samples in big-endian order, and the views
+ * handed to the DSPs.
+ *
+ * @author Besmir Beqiri
+ */
+public class DssContextTest {
+
+    private static final int BLOCK_LENGTH = 8192;
+
+    @Test
+    public void fastPathMatchesGenericPathInStereo() {
+        checkFastPath(2);
+    }
+
+    @Test
+    public void fastPathMatchesGenericPathInMono() {
+        checkFastPath(1);
+    }
+
+    @Test
+    public void samplesAreScaledExactly() {
+        DssContext context = newContext(2, false);
+        byte[] snapshot = context.getSnapshot();
+        // -32768, 32767, -1 and 0.
+        byte[] frames = {0x00, (byte) 0x80, (byte) 0xFF, 0x7F, (byte) 0xFF, (byte) 0xFF, 0x00, 0x00};
+        System.arraycopy(frames, 0, snapshot, 0, frames.length);
+        context.extractData(0L, 0);
+        float[][] data = context.getAudioData();
+        assertEquals(-1.0F, data[0][0], 0.0F);
+        assertEquals(32767.0F / 32768.0F, data[1][0], 0.0F);
+        assertEquals(-1.0F / 32768.0F, data[0][1], 0.0F);
+        assertEquals(0.0F, data[1][1], 0.0F);
+    }
+
+    @Test
+    public void channelBuffersAreReadOnlyViews() {
+        DssContext context = newContext(2, false);
+        new Random(3L).nextBytes(context.getSnapshot());
+        context.extractData(0L, 0);
+        FloatBuffer left = context.getChannelBuffer(0);
+        assertTrue(left.isReadOnly());
+        assertEquals(BLOCK_LENGTH, left.remaining());
+        assertEquals(context.getAudioData()[0][5], left.get(5), 0.0F);
+        try {
+            left.put(0, 1.0F);
+            fail();
+        } catch (ReadOnlyBufferException ex) {
+        }
+        // Positions are private to each caller.
+        left.position(100);
+        assertEquals(0, context.getChannelBuffer(0).position());
+    }
+
+    @Test
+    public void copiesAreIsolatedAndReused() {
+        DssContext context = newContext(2, false);
+        new Random(4L).nextBytes(context.getSnapshot());
+        context.extractData(0L, 0);
+        float[][] copy = context.copyAudioData(null);
+        assertArrayEquals(context.getAudioData()[0], copy[0], 0.0F);
+        copy[0][0] = 2.0F;
+        assertNotEquals(2.0F, context.getAudioData()[0][0], 0.0F);
+        assertSame(copy, context.copyAudioData(copy));
+    }
+
+    private void checkFastPath(int channels) {
+        Random random = new Random(channels);
+        DssContext fast = newContext(channels, false);
+        DssContext generic = newContext(channels, true);
+        for (int round = 0; round < 10; round++) {
+            byte[] little = fast.getSnapshot();
+            byte[] big = generic.getSnapshot();
+            random.nextBytes(little);
+            for (int i = 0; i < little.length; i += 2) {
+                big[i] = little[i + 1];
+                big[i + 1] = little[i];
+            }
+            fast.extractData(0L, 0);
+            generic.extractData(0L, 0);
+            for (int ch = 0; ch < 2; ch++) {
+                assertArrayEquals(generic.getAudioData()[ch], fast.getAudioData()[ch], 0.0F);
+            }
+            if (channels == 1) {
+                assertArrayEquals(fast.getAudioData()[0], fast.getAudioData()[1], 0.0F);
+            }
+        }
+    }
+
+    private static DssContext newContext(int channels, boolean bigEndian) {
+        AudioFormat format = new AudioFormat(44100.0F, 16, channels, true, bigEndian);
+        return new DssContext(new OfflineSourceDataLine(format, 16384), BLOCK_LENGTH);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link LoudnessMeter} against the EBU Tech 3341 test signals and
+ * the album gating of {@link Loudness#merge}.
+ *
+ * @author Besmir Beqiri
+ */
+public class LoudnessMeterTest {
+
+    private static final float RATE = 48000.0F;
+    private static final double TOLERANCE = 0.1D; // LU
+
+    @Test
+    public void sineAtMinus23DbfsIsMinus23Lufs() {
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        new Tone(meter).play(-23.0D, 20.0D);
+        assertEquals(-23.0D, meter.getIntegratedLoudness(), TOLERANCE);
+        assertEquals((long) (20.0D * RATE), meter.getFrames());
+        // The same sine at 44.1 kHz.
+        LoudnessMeter cd = new LoudnessMeter(44100.0F, 2);
+        new Tone(cd, 44100.0F).play(-23.0D, 20.0D);
+        assertEquals(-23.0D, cd.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void quietPassagesAreGatedRelatively() {
+        // Tech 3341 case 3.
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        Tone tone = new Tone(meter);
+        tone.play(-36.0D, 10.0D);
+        tone.play(-23.0D, 60.0D);
+        tone.play(-36.0D, 10.0D);
+        assertEquals(-23.0D, meter.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void silenceIsGatedAbsolutely() {
+        // Tech 3341 case 4, the -72 dBFS parts are below the absolute gate.
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        Tone tone = new Tone(meter);
+        tone.play(-72.0D, 20.0D);
+        tone.play(-36.0D, 10.0D);
+        tone.play(-23.0D, 60.0D);
+        tone.play(-36.0D, 10.0D);
+        tone.play(-72.0D, 20.0D);
+        assertEquals(-23.0D, meter.getIntegratedLoudness(), TOLERANCE);
+
+        LoudnessMeter quiet = new LoudnessMeter(RATE, 2);
+        new Tone(quiet).play(-75.0D, 5.0D);
+        assertEquals(Double.NEGATIVE_INFINITY, quiet.getIntegratedLoudness(), 0.0D);
+        assertEquals(0.0D, quiet.getLoudness().getReplayGain(), 0.0D);
+    }
+
+    @Test
+    public void truePeakFindsInterSamplePeaks() {
+        // A quarter of the sample rate shifted by 45 degrees: every sample
+        // is at 0.707 of the peak, which lies between them.
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        float[] samples = new float[2 * 4800];
+        double amplitude = 0.5D;
+        float samplePeak = 0.0F;
+        for (int i = 0; i < samples.length / 2; i++) {
+            float s = (float) (amplitude * Math.sin(Math.PI / 2.0D * i + Math.PI / 4.0D));
+            samples[2 * i] = s;
+            samples[2 * i + 1] = s;
+            samplePeak = Math.max(samplePeak, Math.abs(s));
+        }
+        meter.process(samples, samples.length / 2);
+        assertEquals(amplitude * Math.sqrt(0.5D), samplePeak, 1.0E-6D);
+        double truePeakDb = 20.0D * Math.log10(meter.getTruePeak() / amplitude);
+        // The accuracy Tech 3341 asks of four times oversampling.
+        assertTrue("true peak " + truePeakDb + " dB", truePeakDb > -0.4D && truePeakDb < 0.2D);
+        assertEquals(meter.getTruePeak(), meter.getLoudness().getTruePeak(), 0.0F);
+    }
+
+    @Test
+    public void albumsAreGatedAsOneFile() {
+        LoudnessMeter loud = new LoudnessMeter(RATE, 2);
+        new Tone(loud).play(-20.0D, 20.0D);
+        LoudnessMeter quiet = new LoudnessMeter(RATE, 2);
+        new Tone(quiet).play(-40.0D, 20.0D);
+        Loudness album = Loudness.merge(Arrays.asList(loud.getLoudness(), quiet.getLoudness()));
+        // The quiet track is more than 10 LU below the album and gated out.
+        assertEquals(-20.0D, album.getIntegratedLoudness(), TOLERANCE);
+        assertEquals(loud.getTruePeak(), album.getTruePeak(), 0.0F);
+
+        LoudnessMeter medium = new LoudnessMeter(RATE, 2);
+        new Tone(medium).play(-26.0D, 20.0D);
+        album = Loudness.merge(Arrays.asList(loud.getLoudness(), medium.getLoudness()));
+        // Both count, by energy: 10 log10((10^-2 + 10^-2.6) / 2).
+        double expected = 10.0D * Math.log10((Math.pow(10.0D, -2.0D) + Math.pow(10.0D, -2.6D)) / 2.0D);
+        assertEquals(expected, album.getIntegratedLoudness(), TOLERANCE);
+        // As if both tracks were measured in one go.
+        LoudnessMeter whole = new LoudnessMeter(RATE, 2);
+        Tone tone = new Tone(whole);
+        tone.play(-20.0D, 20.0D);
+        tone.play(-26.0D, 20.0D);
+        assertEquals(whole.getIntegratedLoudness(), album.getIntegratedLoudness(), TOLERANCE);
+    }
+
+    @Test
+    public void loudnessSurvivesARoundTrip() throws Exception {
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        Tone tone = new Tone(meter);
+        tone.play(-30.0D, 5.0D);
+        tone.play(-18.0D, 5.0D);
+        Loudness loudness = meter.getLoudness();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            loudness.write(out);
+        }
+        Loudness read;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = Loudness.read(in);
+            assertEquals(-1, in.read());
+        }
+        assertEquals(loudness.getIntegratedLoudness(), read.getIntegratedLoudness(), 0.0D);
+        assertEquals(loudness.getTruePeak(), read.getTruePeak(), 0.0F);
+        assertEquals(loudness.getGainFactor(), read.getGainFactor(), 0.0F);
+        // The histogram comes back too, so the track can join an album.
+        assertEquals(loudness.getIntegratedLoudness(),
+                Loudness.merge(Collections.singleton(read)).getIntegratedLoudness(), 0.0D);
+    }
+
+    /**
+     * Feeds a meter a 1 kHz stereo sine, in blocks, keeping its phase.
+     */
+    private static final class Tone {
+
+        private final LoudnessMeter meter;
+        private final float rate;
+        private final float[] block = new float[2 * 4800];
+        private double phase;
+
+        Tone(LoudnessMeter meter) {
+            this(meter, RATE);
+        }
+
+        Tone(LoudnessMeter meter, float rate) {
+            this.meter = meter;
+            this.rate = rate;
+        }
+
+        void play(double dbfs, double seconds) {
+            double amplitude = Math.pow(10.0D, dbfs / 20.0D);
+            long frames = Math.round(seconds * rate);
+            while (frames > 0) {
+                int n = (int) Math.min(frames, block.length / 2);
+                for (int i = 0; i < n; i++) {
+                    float s = (float) (amplitude * Math.sin(phase));
+                    block[2 * i] = s;
+                    block[2 * i + 1] = s;
+                    phase += 2.0D * Math.PI * 1000.0D / rate;
+                }
+                meter.process(block, n);
+                frames -= n;
+            }
+        }
+    }
+}
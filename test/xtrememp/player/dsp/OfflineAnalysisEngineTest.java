@@ -0,0 +1,130 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link OfflineAnalysisEngine} hands its DSPs the blocks the
+ * {@link DigitalSignalSynchronizer} hands them while the same audio plays.
+ *
+ * @author Besmir Beqiri
+ */
+public class OfflineAnalysisEngineTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(44100.0F, 16, 2, true, false);
+    private static final int FRAME_SIZE = 4;
+    private static final int BLOCK_LENGTH = 8192;
+    private static final int HOP = 1024;
+    private static final int DSS_BLOCKS = 30;
+    private static final int FRAMES = BLOCK_LENGTH + (DSS_BLOCKS - 1) * HOP;
+
+    @Test
+    public void engineFeedsTheBlocksOfTheDss() throws Exception {
+        byte[] audio = new byte[FRAMES * FRAME_SIZE];
+        new Random(1L).nextBytes(audio);
+
+        RecordingDsp offline = new RecordingDsp();
+        OfflineAnalysisEngine engine = new OfflineAnalysisEngine(1, BLOCK_LENGTH,
+                DigitalSignalSynchronizer.DEFAULT_BLOCK_RATE);
+        try {
+            AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(audio), FORMAT, FRAMES);
+            OfflineAnalysisEngine.Result result = engine.analyze(null, stream,
+                    Collections.<DigitalSignalProcessor>singletonList(offline));
+            assertEquals(FRAMES, result.getFrames());
+            assertEquals(FRAMES / HOP, result.getBlocks());
+        } finally {
+            engine.shutdown();
+        }
+
+        RecordingDsp played = play(audio);
+        assertEquals(DSS_BLOCKS, played.positions.size());
+        // The first blocks of the engine are padded with silence ahead of
+        // the audio, the DSS waits for a whole block instead.
+        int padded = BLOCK_LENGTH / HOP - 1;
+        assertEquals(padded + DSS_BLOCKS, offline.positions.size());
+        for (int i = 0; i < DSS_BLOCKS; i++) {
+            assertEquals("block " + i, played.positions.get(i), offline.positions.get(padded + i));
+            float[][] expected = played.blocks.get(i);
+            float[][] actual = offline.blocks.get(padded + i);
+            for (int channel = 0; channel < 2; channel++) {
+                assertArrayEquals("block " + i, expected[channel], actual[channel], 0.0F);
+            }
+        }
+    }
+
+    /**
+     * Plays the audio through the DSS one hop at a time, each hop moving the
+     * line to the next block.
+     */
+    private static RecordingDsp play(byte[] audio) throws InterruptedException {
+        OfflineSourceDataLine line = new OfflineSourceDataLine(FORMAT, BLOCK_LENGTH * FRAME_SIZE);
+        DigitalSignalSynchronizer dss = new DigitalSignalSynchronizer(BLOCK_LENGTH,
+                DigitalSignalSynchronizer.DEFAULT_BLOCK_RATE);
+        RecordingDsp dsp = new RecordingDsp();
+        dss.add(dsp);
+        dss.update(new LineEvent(line, LineEvent.Type.OPEN, 0L));
+        dss.update(new LineEvent(line, LineEvent.Type.START, 0L));
+        try {
+            int offset = (BLOCK_LENGTH - HOP) * FRAME_SIZE;
+            dss.writeAudioData(audio, 0, offset);
+            for (int block = 1; block <= DSS_BLOCKS; block++) {
+                dss.writeAudioData(audio, offset, HOP * FRAME_SIZE);
+                offset += HOP * FRAME_SIZE;
+                line.advance(HOP);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+                while (dsp.positions.size() < block) {
+                    assertTrue("timed out", System.nanoTime() < deadline);
+                    Thread.sleep(1L);
+                }
+            }
+        } finally {
+            dss.update(new LineEvent(line, LineEvent.Type.STOP, line.getLongFramePosition()));
+            dss.update(new LineEvent(line, LineEvent.Type.CLOSE, line.getLongFramePosition()));
+        }
+        return dsp;
+    }
+
+    private static final class RecordingDsp implements DigitalSignalProcessor {
+
+        final List<Long> positions = Collections.synchronizedList(new ArrayList<Long>());
+        final List<float[][]> blocks = Collections.synchronizedList(new ArrayList<float[][]>());
+
+        @Override
+        public void init(int blockLength, SourceDataLine sourceDataLine) {
+        }
+
+        @Override
+        public void process(DssContext dssContext) {
+            blocks.add(dssContext.copyAudioData(null));
+            positions.add(dssContext.getPosition());
+        }
+    }
+}
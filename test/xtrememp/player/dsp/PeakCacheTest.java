@@ -0,0 +1,148 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sidecar format of {@link PeakCache}, resuming an unfinished
+ * extraction and rebuilding stale sidecars under a mapped overview.
+ *
+ * @author Besmir Beqiri
+ */
+public class PeakCacheTest {
+
+    private static final int FRAMES_PER_PEAK = 256;
+    private static final int PEAKS = 40;
+    // One sine period per peak, and a last partial peak.
+    private static final double FREQUENCY = 44100.0 / FRAMES_PER_PEAK;
+    private static final int FRAMES = PEAKS * FRAMES_PER_PEAK + 100;
+    private static final int ENTRY_SIZE = 2 * PeakOverview.BYTES_PER_CHANNEL;
+
+    private File cacheDir;
+    private File source;
+    private PeakCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("xtrememp-peaks").toFile();
+        source = TestStreams.wave(new File(cacheDir, "source.wav"), TestStreams.STEREO,
+                TestStreams.sine(FRAMES, FREQUENCY, 0.5));
+        cache = new PeakCache(cacheDir, 1, FRAMES_PER_PEAK);
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+        for (File file : cacheDir.listFiles()) {
+            file.delete();
+        }
+        cacheDir.delete();
+    }
+
+    @Test
+    public void sidecarDescribesTheSource() throws Exception {
+        PeakOverview overview = cache.submit(source, true).get();
+        assertNotNull(overview);
+        assertTrue(overview.isValid(source));
+        // Cached once done() has run, which may be after get() returns.
+        assertEquals(overview.getPeakCount(), cache.getOverview(source).getPeakCount());
+        assertFalse(cache.getTempFile(source).exists());
+        assertEquals(44100.0F, overview.getSampleRate(), 0.0F);
+        assertEquals(2, overview.getChannels());
+        assertEquals(FRAMES_PER_PEAK, overview.getFramesPerPeak());
+        assertEquals(PEAKS + 1, overview.getPeakCount());
+        assertEquals(FRAMES, overview.getTotalFrames());
+        assertEquals(PeakOverview.HEADER_SIZE + (PEAKS + 1) * ENTRY_SIZE,
+                cache.getSidecarFile(source).length());
+        for (int peak = 0; peak < PEAKS; peak++) {
+            assertEquals(0.5F, overview.getMax(peak, 0), 1.0F / 127.0F);
+            assertEquals(-0.5F, overview.getMin(peak, 0), 1.0F / 127.0F);
+            assertEquals(0.25F, overview.getMax(peak, 1), 1.0F / 127.0F);
+            assertEquals(0.5F / Math.sqrt(2.0), overview.getRms(peak, 0), 1.0F / 255.0F);
+        }
+        float[] summary = new float[3];
+        overview.summarize(0, PEAKS, summary);
+        assertEquals(-0.5F, summary[0], 1.0F / 127.0F);
+        assertEquals(0.5F, summary[1], 1.0F / 127.0F);
+    }
+
+    @Test
+    public void unfinishedExtractionResumes() throws Exception {
+        assertNotNull(cache.submit(source, true).get());
+        byte[] complete = Files.readAllBytes(cache.getSidecarFile(source).toPath());
+        cache.shutdown();
+        // What exit leaves behind after ten peaks: a counted prefix and an
+        // uncounted tail.
+        int resumeAt = 10;
+        ByteBuffer unfinished = ByteBuffer.wrap(Arrays.copyOf(complete,
+                PeakOverview.HEADER_SIZE + (resumeAt + 3) * ENTRY_SIZE));
+        unfinished.putInt(PeakOverview.OFFSET_PEAK_COUNT, resumeAt);
+        unfinished.putLong(PeakOverview.OFFSET_TOTAL_FRAMES, 0L);
+        unfinished.put(PeakOverview.OFFSET_COMPLETE, (byte) 0);
+        // Marks a peak that only survives if it isn't extracted again.
+        unfinished.put(PeakOverview.HEADER_SIZE, (byte) 85);
+        assertTrue(cache.getSidecarFile(source).delete());
+        Files.write(cache.getTempFile(source).toPath(), unfinished.array());
+
+        cache = new PeakCache(cacheDir, 1, FRAMES_PER_PEAK);
+        assertNull(cache.getOverview(source));
+        assertNotNull(cache.submit(source, true).get());
+        assertFalse(cache.getTempFile(source).exists());
+        byte[] resumed = Files.readAllBytes(cache.getSidecarFile(source).toPath());
+        complete[PeakOverview.HEADER_SIZE] = 85;
+        assertArrayEquals(complete, resumed);
+    }
+
+    @Test
+    public void staleSidecarIsRebuiltUnderItsReaders() throws Exception {
+        PeakOverview old = cache.submit(source, true).get();
+        byte[] stale = Files.readAllBytes(cache.getSidecarFile(source).toPath());
+        // Same length, new content and modification time.
+        long modified = source.lastModified();
+        TestStreams.wave(source, TestStreams.STEREO, TestStreams.sine(FRAMES, FREQUENCY, 0.25));
+        assertTrue(source.setLastModified(modified + 2000L));
+        assertFalse(old.isValid(source));
+        assertNull(cache.getOverview(source));
+        // An unfinished extraction of the old content is dropped too.
+        ByteBuffer unfinished = ByteBuffer.wrap(stale);
+        unfinished.putInt(PeakOverview.OFFSET_PEAK_COUNT, 10);
+        unfinished.put(PeakOverview.OFFSET_COMPLETE, (byte) 0);
+        Files.write(cache.getTempFile(source).toPath(), unfinished.array());
+
+        PeakOverview rebuilt = cache.submit(source, true).get();
+        assertNotNull(rebuilt);
+        assertTrue(rebuilt.isValid(source));
+        assertFalse(cache.getTempFile(source).exists());
+        for (int peak = 0; peak < PEAKS; peak++) {
+            assertEquals(0.25F, rebuilt.getMax(peak, 0), 1.0F / 127.0F);
+        }
+        // The old mapping still reads the old peaks.
+        for (int peak = 0; peak < PEAKS; peak++) {
+            assertEquals(0.5F, old.getMax(peak, 0), 1.0F / 127.0F);
+        }
+    }
+}
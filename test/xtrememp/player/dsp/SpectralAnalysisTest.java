@@ -0,0 +1,99 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the fast logarithm of the dB scale against {@link Math#log} and the
+ * scales of the shared spectrum against each other.
+ *
+ * @author Besmir Beqiri
+ */
+public class SpectralAnalysisTest {
+
+    private static final double DB_PER_NEPER = 10.0 / Math.log(10.0);
+    private static final double MAX_DB_ERROR = 0.01;
+
+    @Test
+    public void fastLogIsWithinABudgetOfMathLog() {
+        Random random = new Random(1L);
+        double worst = 0.0;
+        // Log-uniform over the range of the dB scale input, 1 to 1e12.
+        for (int i = 0; i < 2000000; i++) {
+            float x = (float) Math.pow(10.0, random.nextDouble() * 12.0);
+            worst = Math.max(worst, dbError(x));
+        }
+        // Both ends of the mantissa of every exponent.
+        for (int exponent = -126; exponent < 128; exponent++) {
+            float low = Math.scalb(1.0F, exponent);
+            worst = Math.max(worst, dbError(low));
+            worst = Math.max(worst, dbError(Math.nextDown(2.0F * low)));
+            worst = Math.max(worst, dbError(1.5F * low));
+        }
+        assertTrue("worst error " + worst + " dB", worst < MAX_DB_ERROR);
+    }
+
+    @Test
+    public void decibelSpectrumMatchesThePowerSpectrum() {
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        DssContext context = TestContexts.newContext(format, 8192);
+        byte[] block = new byte[context.getSnapshotLength()];
+        new Random(2L).nextBytes(block);
+        TestContexts.load(context, block, 0L);
+        for (int length : new int[]{512, 2048, 8192}) {
+            float[] power = context.getSpectrum(length, SpectralAnalysis.Window.HAMMING,
+                    SpectralAnalysis.Scale.POWER);
+            float[] decibel = context.getSpectrum(length, SpectralAnalysis.Window.HAMMING,
+                    SpectralAnalysis.Scale.DECIBEL);
+            assertEquals(length / 2, decibel.length);
+            for (int k = 0; k < decibel.length; k++) {
+                // The power scale is divided by 100, the dB one is 10 ln(1 + p / ln 10).
+                double expected = 10.0 * Math.log(1.0 + power[k] * 100.0 / Math.log(10.0));
+                assertEquals("bin " + k, expected, decibel[k], MAX_DB_ERROR);
+            }
+        }
+    }
+
+    @Test
+    public void spectraAreSharedWithinABlock() {
+        AudioFormat format = new AudioFormat(44100.0F, 16, 1, true, false);
+        DssContext context = TestContexts.newContext(format, 4096);
+        byte[] block = new byte[context.getSnapshotLength()];
+        new Random(3L).nextBytes(block);
+        TestContexts.load(context, block, 0L);
+        float[] first = context.getSpectrum(4096, SpectralAnalysis.Window.HANN, SpectralAnalysis.Scale.AMPLITUDE);
+        float[] copy = first.clone();
+        assertSame(first, context.getSpectrum(4096, SpectralAnalysis.Window.HANN, SpectralAnalysis.Scale.AMPLITUDE));
+        // The next block is computed again, into the same array.
+        new Random(4L).nextBytes(block);
+        TestContexts.load(context, block, 1L);
+        float[] second = context.getSpectrum(4096, SpectralAnalysis.Window.HANN, SpectralAnalysis.Scale.AMPLITUDE);
+        assertSame(first, second);
+        assertFalse(Arrays.equals(copy, second));
+    }
+
+    private static double dbError(float x) {
+        return DB_PER_NEPER * Math.abs(SpectralAnalysis.log(x) - Math.log(x));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * DSS contexts fed by the tests instead of a playing line, for DSPs and
+ * visualizations outside of this package.
+ *
+ * @author Besmir Beqiri
+ */
+public final class TestContexts {
+
+    private TestContexts() {
+    }
+
+    /**
+     * Creates a context for a line that plays nothing.
+     *
+     * @param format the format of the audio data.
+     * @param blockLength the number of frames in a block.
+     * @return a context with no data yet.
+     */
+    public static DssContext newContext(AudioFormat format, int blockLength) {
+        return new DssContext(new OfflineSourceDataLine(format, blockLength * format.getFrameSize()), blockLength);
+    }
+
+    /**
+     * Makes a block the current data of a context, as the DSS does.
+     *
+     * @param context the context.
+     * @param data a block of audio data in the format of the context.
+     * @param position the stream position of the block.
+     */
+    public static void load(DssContext context, byte[] data, long position) {
+        System.arraycopy(data, 0, context.getSnapshot(), 0, context.getSnapshotLength());
+        context.extractData(position, 0);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.player.dsp;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Synthetic audio files for the analysis tests.
+ *
+ * @author Besmir Beqiri
+ */
+final class TestStreams {
+
+    static final AudioFormat STEREO = new AudioFormat(44100.0F, 16, 2, true, false);
+
+    private TestStreams() {
+    }
+
+    /**
+     * Writes PCM data to a WAVE file.
+     */
+    static File wave(File file, AudioFormat format, byte[] data) throws IOException {
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format,
+                data.length / format.getFrameSize());
+        AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+
+    /**
+     * Writes PCM data to a temporary WAVE file.
+     */
+    static File wave(AudioFormat format, byte[] data) throws IOException {
+        File file = File.createTempFile("xtrememp-test", ".wav");
+        file.deleteOnExit();
+        return wave(file, format, data);
+    }
+
+    /**
+     * Fills 16-bit little-endian stereo PCM with a sine of the given peak on
+     * the left channel and its inverse at half the peak on the right one.
+     */
+    static byte[] sine(int frames, double frequency, double peak) {
+        byte[] data = new byte[frames * 4];
+        for (int i = 0; i < frames; i++) {
+            double s = peak * Math.sin(2.0 * Math.PI * frequency * i / STEREO.getSampleRate());
+            putSample(data, i * 2, (int) Math.round(s * 32767.0));
+            putSample(data, i * 2 + 1, (int) Math.round(-s * 16383.0));
+        }
+        return data;
+    }
+
+    static void putSample(byte[] data, int index, int sample) {
+        data[index * 2] = (byte) sample;
+        data[index * 2 + 1] = (byte) (sample >> 8);
+    }
+}
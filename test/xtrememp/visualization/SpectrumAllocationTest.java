@@ -0,0 +1,146 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.visualization;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import xtrememp.player.dsp.DssContext;
+import xtrememp.player.dsp.SpectralAnalysis;
+import xtrememp.player.dsp.TestContexts;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the spectrum math and the spectrum visualizations allocate
+ * nothing per frame once they have reached a steady state.
+ *
+ * SpectrumBars is left out: it draws its frequency labels as text, which
+ * Java2D lays out anew on every call.
+ *
+ * @author Besmir Beqiri
+ */
+public class SpectrumAllocationTest {
+
+    private static final int BLOCK_LENGTH = 8192;
+    private static final int FRAMES = 100;
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private DssContext context;
+    private byte[][] blocks;
+    private long position;
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        AudioFormat format = new AudioFormat(44100.0F, 16, 2, true, false);
+        context = TestContexts.newContext(format, BLOCK_LENGTH);
+        Random random = new Random(1L);
+        blocks = new byte[4][BLOCK_LENGTH * format.getFrameSize()];
+        for (byte[] block : blocks) {
+            random.nextBytes(block);
+        }
+        // One silent block, the maximum of its spectrum is zero.
+        blocks[3] = new byte[blocks[3].length];
+    }
+
+    @Test
+    public void spectrumMathAllocatesNothing() {
+        AbstractSpectrumAnalyzer analyzer = new FullSpectrum();
+        float[] normalized = new float[BLOCK_LENGTH / 2];
+        float[] average = new float[BLOCK_LENGTH];
+        // values() returns a new array on every call.
+        SpectralAnalysis.Scale[] scales = SpectralAnalysis.Scale.values();
+        SpectralAnalysis.Window[] windows = SpectralAnalysis.Window.values();
+        Runnable frame = () -> {
+            nextBlock();
+            for (SpectralAnalysis.Scale scale : scales) {
+                for (SpectralAnalysis.Window window : windows) {
+                    float[] spectrum = context.getSpectrum(BLOCK_LENGTH, window, scale);
+                    analyzer.applyMaxOverLineNormalization(spectrum, normalized);
+                }
+            }
+            analyzer.averageChannels(context.getAudioData(), average);
+        };
+        assertAllocatesNothing("spectrum math", frame);
+    }
+
+    @Test
+    public void spectrumVisualizationsRenderWithoutAllocating() {
+        GraphicsConfiguration gc = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+                .createGraphics().getDeviceConfiguration();
+        AbstractVisualization[] visualizations = {
+            new FullSpectrogram(), new QuarterSpectrogram(),
+            new FullColorSpectrogram(), new QuarterColorSpectrogram(),
+            new PianoRoll(), new FullSpectrum(), new QuarterSpectrum(),
+            new WhiteFullSpectrum(), new WhiteQuarterSpectrum()
+        };
+        for (boolean dark : new boolean[]{true, false}) {
+            for (final AbstractVisualization visualization : visualizations) {
+                visualization.setColorSchemeDark(dark);
+                visualization.init(BLOCK_LENGTH, context.getSourceDataLine());
+                visualization.checkBuffImage(gc, WIDTH, HEIGHT);
+                Runnable frame = () -> {
+                    nextBlock();
+                    visualization.render(context, visualization.getBuffGraphics(), WIDTH, HEIGHT);
+                };
+                assertAllocatesNothing(visualization.getDisplayName(), frame);
+                visualization.freeImage();
+            }
+        }
+    }
+
+    private void nextBlock() {
+        TestContexts.load(context, blocks[(int) (position % blocks.length)], position);
+        position++;
+    }
+
+    private void assertAllocatesNothing(String name, Runnable frame) {
+        // Reach a steady state, compiled and with every buffer allocated.
+        for (int i = 0; i < 10 * FRAMES; i++) {
+            frame.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        // An allocation per frame shows in every round, a late compilation
+        // or deoptimization of the JIT in one at most.
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < FRAMES; i++) {
+                frame.run();
+            }
+            allocated = Math.min(allocated, threadBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        // Leave room for the measurement itself, not for one object per frame.
+        assertTrue(name + " allocated " + allocated + " bytes over " + FRAMES + " frames",
+                allocated < FRAMES);
+    }
+}
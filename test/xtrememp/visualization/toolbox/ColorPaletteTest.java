@@ -0,0 +1,66 @@
+/**
+ * Xtreme Media Player a cross-platform media player. Copyright (C) 2005-2014
+ * Besmir Beqiri
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package xtrememp.visualization.toolbox;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a palette blended over its background paints the pixels that
+ * its translucent colors paint over that background.
+ *
+ * @author Besmir Beqiri
+ */
+public class ColorPaletteTest {
+
+    @Test
+    public void blendedPalettePaintsLikeTheTranslucentOne() {
+        ColorPalette translucent = new ColorPalette(value -> new Color(
+                value, 1.0F - value, 0.5F, value));
+        for (Color background : new Color[]{Color.BLACK, Color.WHITE, new Color(40, 90, 160)}) {
+            ColorPalette opaque = translucent.over(background);
+            BufferedImage image = new BufferedImage(ColorPalette.SIZE, 2, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            for (int x = 0; x < ColorPalette.SIZE; x++) {
+                float value = x / (float) (ColorPalette.SIZE - 1);
+                // The way the color spectrograms used to draw a bin.
+                g2d.setColor(background);
+                g2d.drawLine(x, 0, x, 0);
+                g2d.setColor(translucent.getColor(value));
+                g2d.drawLine(x, 0, x, 0);
+                Color color = opaque.getColor(value);
+                assertEquals(255, color.getAlpha());
+                g2d.setColor(color);
+                g2d.drawLine(x, 1, x, 1);
+            }
+            g2d.dispose();
+            for (int x = 0; x < ColorPalette.SIZE; x++) {
+                int expected = image.getRGB(x, 0);
+                int actual = image.getRGB(x, 1);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+                    assertTrue("pixel " + x + " over " + background, Math.abs(difference) <= 1);
+                }
+            }
+        }
+    }
+}
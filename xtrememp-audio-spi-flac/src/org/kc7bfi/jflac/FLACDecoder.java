@@ -61,6 +61,7 @@ public class FLACDecoder {
     private int outputChannels = 0;
     private int lastFrameNumber;
     private long samplesDecoded = 0;
+    private long frameOffset = -1;
     private StreamInfo streamInfo;
     private Frame frame = new Frame();
     private byte[] headerWarmup = new byte[2]; // contains the sync code and reserved bits
@@ -491,6 +492,7 @@ public class FLACDecoder {
                 //    break;
                 //case DECODER_SEARCH_FOR_FRAME_SYNC :
                 findFrameSync(); /* above function sets the status for us */
+                frameOffset = bitStream.getInputBytesConsumed() - headerWarmup.length;
                 //System.exit(0);
                 //break;
                 //case DECODER_READ_FRAME :
@@ -514,6 +516,56 @@ public class FLACDecoder {
         return null;
     }
     
+    /**
+     * Skip forward in the input stream and read the first frame found after
+     * the skipped bytes. Frames whose header disagrees with the StreamInfo
+     * are taken as false syncs and passed over.
+     * @param bytes The number of bytes to skip
+     * @return  The frame, or null at the end of the stream
+     * @throws IOException  on read error
+     */
+    public Frame seekNextFrame(long bytes) throws IOException {
+        bitStream.skipBytes(bytes);
+        eof = false;
+        // let findFrameSync() search past the samples decoded so far
+        samplesDecoded = 0;
+        Frame next;
+        while ((next = readNextFrame()) != null) {
+            if (isPlausible(next.header)) {
+                samplesDecoded = next.header.sampleNumber + next.header.blockSize;
+                return next;
+            }
+        }
+        return null;
+    }
+    
+    private boolean isPlausible(Header header) {
+        if (streamInfo == null) return true;
+        if (header.channels != streamInfo.getChannels()) return false;
+        if (header.bitsPerSample != streamInfo.getBitsPerSample()) return false;
+        if (header.sampleRate != streamInfo.getSampleRate()) return false;
+        if (streamInfo.getMaxBlockSize() > 0 && header.blockSize > streamInfo.getMaxBlockSize()) return false;
+        if (header.sampleNumber < 0) return false;
+        return streamInfo.getTotalSamples() == 0 || header.sampleNumber < streamInfo.getTotalSamples();
+    }
+    
+    /**
+     * Offset in the input stream of the frame returned by the last call
+     * to readNextFrame().
+     * @return  The frame offset in bytes
+     */
+    public long getFrameOffset() {
+        return frameOffset;
+    }
+    
+    /**
+     * Offset in the input stream of the next byte to decode.
+     * @return  The number of bytes consumed
+     */
+    public long getStreamPosition() {
+        return bitStream.getInputBytesConsumed();
+    }
+    
     /**
      * Bytes consumed.
      * @return  The number of bytes read
@@ -0,0 +1,42 @@
+package org.kc7bfi.jflac;
+
+/**
+ *  libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2000,2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+import java.io.IOException;
+
+/**
+ * A decoded stream that can jump forward to a given PCM frame without
+ * decoding everything in between.
+ *
+ * @author kc7bfi
+ */
+public interface FrameSeekable {
+
+    /**
+     * Positions the stream so that the next byte read is the first byte of
+     * the given PCM frame.
+     *
+     * @param frame PCM frame (sample) index counted from the start of the stream.
+     * @return the PCM frame reached, or -1 if the stream cannot seek there.
+     * @throws IOException on read error
+     */
+    public long seekToFrame(long frame) throws IOException;
+}
@@ -56,6 +56,7 @@ public class BitInputStream {
     private int getBit = 0;
     private int availBits = 0;
     private int totalBitsRead = 0;
+    private long bytesFetched = 0;
     
     private short readCRC16 = 0;
     
@@ -104,6 +105,7 @@ public class BitInputStream {
         // finally, read in some data
         bytes = inStream.read(buffer, putByte, bytes);
         if (bytes <= 0) throw new EOFException();
+        bytesFetched += bytes;
         
         // now we have to handle partial blurb cases:
         // blurb == byte, so no gyrations necessary:
@@ -162,6 +164,46 @@ public class BitInputStream {
         return availBits >> 3;
     }   
         
+    /**
+     * return the offset in the input stream of the next byte to consume.
+     * @return  The number of bytes consumed from the input stream
+     */
+    public long getInputBytesConsumed() {
+        return bytesFetched - (putByte - getByte);
+    }
+    
+    /**
+     * skip forward in the input stream, starting at the next byte boundary.
+     * Buffered bytes are consumed first, the rest is skipped on the
+     * underlying input stream without being read.
+     * @param bytes Number of bytes to skip
+     * @return  The number of bytes skipped
+     * @throws IOException  Thrown if error reading from input stream
+     */
+    public long skipBytes(long bytes) throws IOException {
+        if (getBit != 0) {
+            getByte++;
+            getBit = 0;
+        }
+        long skipped = Math.min(bytes, putByte - getByte);
+        getByte += (int) skipped;
+        if (getByte >= putByte) {
+            getByte = 0;
+            putByte = 0;
+        }
+        availBits = (putByte - getByte) << 3;
+        while (skipped < bytes) {
+            long n = inStream.skip(bytes - skipped);
+            if (n <= 0) {
+                if (inStream.read() < 0) break;
+                n = 1;
+            }
+            skipped += n;
+            bytesFetched += n;
+        }
+        return skipped;
+    }
+    
     /**
      * skip over bits in bit stream without updating CRC.
      * @param bits  Number of bits to skip
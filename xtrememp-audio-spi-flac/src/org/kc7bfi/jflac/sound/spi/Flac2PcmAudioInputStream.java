@@ -26,9 +26,12 @@ import javax.sound.sampled.AudioFormat;
 
 import org.kc7bfi.jflac.PCMProcessor;
 import org.kc7bfi.jflac.FLACDecoder;
+import org.kc7bfi.jflac.FrameSeekable;
 import org.kc7bfi.jflac.PropertiesContainer;
 import org.kc7bfi.jflac.frame.Frame;
 import org.kc7bfi.jflac.metadata.Metadata;
+import org.kc7bfi.jflac.metadata.SeekPoint;
+import org.kc7bfi.jflac.metadata.SeekTable;
 import org.kc7bfi.jflac.metadata.StreamInfo;
 import org.kc7bfi.jflac.util.ByteData;
 import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
@@ -41,7 +44,10 @@ import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
  * @version $Revision: 1.6 $
  */
 public class Flac2PcmAudioInputStream extends TAsynchronousFilteredAudioInputStream
-        implements PropertiesContainer, PCMProcessor {
+        implements PropertiesContainer, PCMProcessor, FrameSeekable {
+
+    /** Below this distance in bytes, seek decodes frame by frame. */
+    private static final int SEEK_LINEAR_BYTES = 64 * 1024;
 
     /** The underlying inputStream. */
     private InputStream in;
@@ -52,6 +58,10 @@ public class Flac2PcmAudioInputStream extends TAsynchronousFilteredAudioInputStr
     private StreamInfo streamInfo;
     /** the meta data from the stream */
     private Metadata[] metaData;
+    /** Offset of the first audio frame in the stream. */
+    private long firstFrameOffset = -1;
+    /** Decoded bytes to drop before output, after a seek. */
+    private long discardBytes = 0;
 
     /**
      * Constructor.
@@ -75,6 +85,7 @@ public class Flac2PcmAudioInputStream extends TAsynchronousFilteredAudioInputStr
         decoder = new FLACDecoder(in);
         decoder.addPCMProcessor(this);
         metaData = decoder.readMetadata();
+        firstFrameOffset = decoder.getStreamPosition();
     }
 
     /**
@@ -95,7 +106,14 @@ public class Flac2PcmAudioInputStream extends TAsynchronousFilteredAudioInputStr
      * @see org.kc7bfi.jflac.PCMProcessor#processPCM(ByteData)
      */
     public void processPCM(ByteData pcm) {
-        getCircularBuffer().write(pcm.getData(), 0, pcm.getLen());
+        int offset = 0;
+        if (discardBytes > 0) {
+            offset = (int) Math.min(discardBytes, pcm.getLen());
+            discardBytes -= offset;
+        }
+        if (offset < pcm.getLen()) {
+            getCircularBuffer().write(pcm.getData(), offset, pcm.getLen() - offset);
+        }
     }
 
     /**
@@ -135,6 +153,118 @@ public class Flac2PcmAudioInputStream extends TAsynchronousFilteredAudioInputStr
         return -1;
     }
 
+    /**
+     * Seek to the given PCM frame. The search starts from the closest
+     * SEEKTABLE point and narrows down by interpolating between known frame
+     * positions. Past the last seek point, the end of the stream is placed
+     * from the STREAMINFO total samples and the average frame length; a
+     * stream of unknown length is read frame by frame. Probes aim short of
+     * the estimate because the stream can only move forward, then frames
+     * are decoded up to the target.
+     *
+     * @param frame the PCM frame to seek to.
+     * @return the PCM frame reached, or -1 if it cannot be reached.
+     * @throws IOException on read error
+     */
+    public long seekToFrame(long frame) throws IOException {
+        if (decoder == null) {
+            initDecoder();
+        }
+        if (frame < 0 || streamInfo == null) {
+            return -1;
+        }
+        long totalSamples = streamInfo.getTotalSamples();
+        if (totalSamples > 0 && frame >= totalSamples) {
+            return -1;
+        }
+        int frameSize = getFormat().getFrameSize();
+        long next = decoder.getSamplesDecoded() + (discardBytes - getCircularBuffer().availableRead()) / frameSize;
+        if (frame < next) {
+            return -1;
+        }
+        // drop what is already decoded
+        byte[] scratch = new byte[4096];
+        int available;
+        while ((available = getCircularBuffer().availableRead()) > 0) {
+            getCircularBuffer().read(scratch, 0, Math.min(available, scratch.length));
+        }
+        discardBytes = 0;
+
+        long position = decoder.getStreamPosition();
+        long loSample = decoder.getSamplesDecoded();
+        long loOffset = position;
+        long hiSample = totalSamples;
+        long hiOffset = -1;
+        SeekTable seekTable = getSeekTable();
+        if (seekTable != null) {
+            for (int i = 0; i < seekTable.numberOfPoints(); i++) {
+                SeekPoint point = seekTable.getSeekPoint(i);
+                long sample = point.getSampleNumber();
+                long offset = firstFrameOffset + point.getStreamOffset();
+                if (sample < 0 || offset < position) {
+                    // placeholder or already passed
+                    continue;
+                }
+                if (sample <= frame && sample > loSample) {
+                    loSample = sample;
+                    loOffset = offset;
+                } else if (sample > frame && sample < hiSample) {
+                    hiSample = sample;
+                    hiOffset = offset;
+                }
+            }
+        }
+
+        Frame found = null;
+        if (loOffset - position >= SEEK_LINEAR_BYTES) {
+            // seek points are exact frame offsets
+            found = decoder.seekNextFrame(loOffset - position);
+        }
+        while (found == null || found.header.sampleNumber + found.header.blockSize <= frame) {
+            if (found != null) {
+                loSample = found.header.sampleNumber;
+                loOffset = decoder.getFrameOffset();
+            }
+            long endOffset = hiOffset;
+            if (endOffset < 0 && hiSample > loSample && loSample > 0) {
+                // no seek point past the target, the end of the stream is
+                // placed from the average frame length so far
+                endOffset = firstFrameOffset + (long) ((double) (loOffset - firstFrameOffset) / loSample * hiSample);
+            }
+            long aim = -1;
+            if (hiSample > loSample && endOffset > loOffset) {
+                double ratio = (double) (frame - loSample) / (hiSample - loSample);
+                aim = loOffset + (long) (ratio * (endOffset - loOffset) * 0.75) - streamInfo.getMaxFrameSize();
+            }
+            position = decoder.getStreamPosition();
+            if (aim - position >= SEEK_LINEAR_BYTES) {
+                found = decoder.seekNextFrame(aim - position);
+            } else {
+                found = decoder.readNextFrame();
+            }
+            if (found == null) {
+                getCircularBuffer().close();
+                return -1;
+            }
+        }
+        long reached = Math.max(frame, found.header.sampleNumber);
+        discardBytes = (reached - found.header.sampleNumber) * frameSize;
+        pcmData = decoder.decodeFrame(found, pcmData);
+        processPCM(pcmData);
+        return reached;
+    }
+
+    private SeekTable getSeekTable() {
+        if (metaData != null) {
+            for (int i = 0; i < metaData.length; i++) {
+                if (metaData[i] instanceof SeekTable) {
+                    return (SeekTable) metaData[i];
+                }
+            }
+        }
+        return null;
+    }
+
     public void execute() {
         try {
             if (decoder == null) {
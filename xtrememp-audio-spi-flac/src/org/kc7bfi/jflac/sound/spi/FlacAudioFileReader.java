@@ -19,13 +19,12 @@
  */
 package org.kc7bfi.jflac.sound.spi;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.io.PushbackInputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -424,12 +423,13 @@ public class FlacAudioFileReader extends TAudioFileReader {
         bis.readByteBlockAlignedNoCRC(b, bytesLeft);
         byteOutStream.write(b);
 
-        ByteArrayInputStream byteInStream = new ByteArrayInputStream(byteOutStream.toByteArray());
-
-        //ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        SequenceInputStream sequenceInputStream = new SequenceInputStream(byteInStream, inputStream);
+        // unread rather than chain the header bytes, so that skip() reaches
+        // the underlying stream and seeking does not read through the file
+        byte[] header = byteOutStream.toByteArray();
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, header.length);
+        pushbackInputStream.unread(header);
         //return new AudioInputStream(sequenceInputStream, audioFileFormat
         //        .getFormat(), audioFileFormat.getFrameLength());
-        return new AudioInputStream(sequenceInputStream, audioFileFormat.getFormat(), audioFileFormat.getFrameLength());
+        return new AudioInputStream(pushbackInputStream, audioFileFormat.getFormat(), audioFileFormat.getFrameLength());
     }
 }
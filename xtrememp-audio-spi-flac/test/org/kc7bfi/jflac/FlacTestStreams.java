@@ -0,0 +1,228 @@
+package org.kc7bfi.jflac;
+
+/**
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.kc7bfi.jflac.util.CRC16;
+import org.kc7bfi.jflac.util.CRC8;
+
+/**
+ * Synthetic FLAC streams for the decoder tests: 16 bit stereo at
+ * 44.1 kHz in fixed blocks of verbatim subframes, so that every decoded
+ * sample is known.
+ */
+public final class FlacTestStreams {
+
+    public static final int BLOCK_SIZE = 4096;
+    private static final int SEEK_POINT_INTERVAL = 16; // frames
+    private static final int PADDING_LENGTH = 64;
+
+    private FlacTestStreams() {
+    }
+
+    /**
+     * Returns the samples of the stream, interleaved, as written by
+     * {@link #write(short[], boolean)}.
+     */
+    public static short[] samples(int sampleCount, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[sampleCount * 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        return samples;
+    }
+
+    /**
+     * Encodes interleaved stereo samples to a temporary FLAC file.
+     * @param samples the interleaved samples.
+     * @param seekTable true to add a seek point every few frames.
+     */
+    public static File write(short[] samples, boolean seekTable) throws IOException {
+        int sampleCount = samples.length / 2;
+        int frameCount = (sampleCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        long[] frameOffsets = new long[frameCount];
+        int maxFrameSize = 0;
+        for (int f = 0; f < frameCount; f++) {
+            frameOffsets[f] = frames.size();
+            int blockSize = Math.min(BLOCK_SIZE, sampleCount - f * BLOCK_SIZE);
+            byte[] frame = frame(f, samples, f * BLOCK_SIZE, blockSize);
+            maxFrameSize = Math.max(maxFrameSize, frame.length);
+            frames.write(frame, 0, frame.length);
+        }
+
+        BitWriter out = new BitWriter();
+        out.put('f', 8);
+        out.put('L', 8);
+        out.put('a', 8);
+        out.put('C', 8);
+        // STREAMINFO
+        out.put(0, 1);
+        out.put(0, 7);
+        out.put(34, 24);
+        out.put(BLOCK_SIZE, 16);
+        out.put(BLOCK_SIZE, 16);
+        out.put(0, 24);
+        out.put(maxFrameSize, 24);
+        out.put(44100, 20);
+        out.put(2 - 1, 3);
+        out.put(16 - 1, 5);
+        out.putLong(sampleCount, 36);
+        for (int i = 0; i < 16; i++) {
+            out.put(0, 8); // no MD5
+        }
+        if (seekTable) {
+            int points = (frameCount + SEEK_POINT_INTERVAL - 1) / SEEK_POINT_INTERVAL;
+            out.put(0, 1);
+            out.put(3, 7);
+            out.put(points * 18, 24);
+            for (int p = 0; p < points; p++) {
+                int f = p * SEEK_POINT_INTERVAL;
+                out.putLong((long) f * BLOCK_SIZE, 64);
+                out.putLong(frameOffsets[f], 64);
+                out.put(BLOCK_SIZE, 16);
+            }
+        }
+        // PADDING, last as the reference encoder writes it.
+        out.put(1, 1);
+        out.put(1, 7);
+        out.put(PADDING_LENGTH, 24);
+        for (int i = 0; i < PADDING_LENGTH; i++) {
+            out.put(0, 8);
+        }
+        File file = File.createTempFile("flacspi-test", ".flac");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(out.toByteArray());
+            frames.writeTo(fos);
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+
+    private static byte[] frame(int number, short[] samples, int first, int blockSize) {
+        BitWriter out = new BitWriter();
+        out.put(0x3FFE, 14);
+        out.put(0, 1);
+        out.put(0, 1); // fixed block size
+        boolean fullBlock = blockSize == BLOCK_SIZE;
+        out.put(fullBlock ? 12 : 7, 4); // 4096, or 16 bit size at the end of the header
+        out.put(9, 4); // 44.1 kHz
+        out.put(1, 4); // left, right
+        out.put(4, 3); // 16 bits per sample
+        out.put(0, 1);
+        putUtf8(out, number);
+        if (!fullBlock) {
+            out.put(blockSize - 1, 16);
+        }
+        byte[] header = out.toByteArray();
+        out.put(CRC8.calc(header, header.length) & 0xFF, 8);
+        for (int channel = 0; channel < 2; channel++) {
+            out.put(0x02, 8); // verbatim, no wasted bits
+            for (int i = 0; i < blockSize; i++) {
+                out.put(samples[(first + i) * 2 + channel] & 0xFFFF, 16);
+            }
+        }
+        short crc = 0;
+        for (byte b : out.toByteArray()) {
+            crc = CRC16.update(b, crc);
+        }
+        out.put(crc & 0xFFFF, 16);
+        return out.toByteArray();
+    }
+
+    private static void putUtf8(BitWriter out, int value) {
+        if (value < 0x80) {
+            out.put(value, 8);
+        } else if (value < 0x800) {
+            out.put(0xC0 | (value >> 6), 8);
+            out.put(0x80 | (value & 0x3F), 8);
+        } else {
+            out.put(0xE0 | (value >> 12), 8);
+            out.put(0x80 | ((value >> 6) & 0x3F), 8);
+            out.put(0x80 | (value & 0x3F), 8);
+        }
+    }
+
+    /**
+     * Opens the file as 16 bit little-endian PCM through the SPI.
+     */
+    public static AudioInputStream open(File file) throws Exception {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat format = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, source);
+    }
+
+    public static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int current;
+        private int bits;
+
+        void put(int value, int count) {
+            putLong(value & 0xFFFFFFFFL, count);
+        }
+
+        void putLong(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if (++bits == 8) {
+                    bytes.write(current);
+                    current = 0;
+                    bits = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.kc7bfi.jflac.sound.spi;
+
+/**
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.kc7bfi.jflac.FlacTestStreams;
+import org.junit.Test;
+
+/**
+ * Checks that seekToFrame lands on the requested sample: what is read
+ * after the seek is exactly the tail of the encoded samples.
+ */
+public class Flac2PcmAudioInputStreamSeekTest {
+
+    private static final int SAMPLES = 300 * FlacTestStreams.BLOCK_SIZE + 1234;
+    private static final double[] TARGETS = {0.0, 0.01, 0.1, 0.3333, 0.5, 0.9, 0.999};
+
+    @Test
+    public void seekWithSeekTable() throws Exception {
+        checkLanding(true, false);
+    }
+
+    @Test
+    public void seekWithoutSeekTable() throws Exception {
+        checkLanding(false, false);
+    }
+
+    /**
+     * A stream that does not tell how much is left, as a network stream.
+     */
+    @Test
+    public void seekWithoutAvailableBytes() throws Exception {
+        checkLanding(false, true);
+    }
+
+    private void checkLanding(boolean seekTable, boolean hideAvailable) throws Exception {
+        short[] samples = FlacTestStreams.samples(SAMPLES, 7L);
+        File file = FlacTestStreams.write(samples, seekTable);
+        for (int i = 0; i < TARGETS.length; i++) {
+            long target = (long) (TARGETS[i] * SAMPLES) + i;
+            AudioInputStream stream = hideAvailable ? openWithoutAvailable(file) : FlacTestStreams.open(file);
+            assertEquals(target, ((Flac2PcmAudioInputStream) stream).seekToFrame(target));
+            byte[] rest = FlacTestStreams.readAll(stream);
+            assertEquals("frames left after seeking to " + target, SAMPLES - target, rest.length / 4);
+            for (int s = 0; s < rest.length / 2; s++) {
+                short sample = (short) ((rest[2 * s] & 0xFF) | (rest[2 * s + 1] << 8));
+                if (sample != samples[(int) (target * 2) + s]) {
+                    throw new AssertionError("seek to " + target + ": sample " + s + " is " + sample
+                            + ", expected " + samples[(int) (target * 2) + s]);
+                }
+            }
+        }
+    }
+
+    private static AudioInputStream openWithoutAvailable(File file) throws Exception {
+        InputStream in = new BufferedInputStream(new FileInputStream(file)) {
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        };
+        AudioInputStream source = AudioSystem.getAudioInputStream(in);
+        AudioFormat format = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, source);
+    }
+}
@@ -0,0 +1,93 @@
+package org.kc7bfi.jflac.sound.spi;
+
+/**
+ * libFLAC - Free Lossless Audio Codec library
+ * Copyright (C) 2001,2002,2003  Josh Coalson
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA  02111-1307, USA.
+ */
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.kc7bfi.jflac.FlacTestStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to seek into a five minute FLAC stream and read the first block
+ * of PCM after the seek. A seek to 90% should cost what a seek to 1%
+ * does, with or without a seek table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SeekBenchmark {
+
+    /** Five minutes at 44.1 kHz. */
+    private static final int SAMPLES = 3230 * FlacTestStreams.BLOCK_SIZE;
+
+    @Param({"0.01", "0.9"})
+    public double fraction;
+
+    @Param({"false", "true"})
+    public boolean seekTable;
+
+    private File file;
+    private Flac2PcmAudioInputStream stream;
+    private final byte[] block = new byte[4 * FlacTestStreams.BLOCK_SIZE];
+
+    @Setup(Level.Trial)
+    public void writeStream() throws Exception {
+        file = FlacTestStreams.write(FlacTestStreams.samples(SAMPLES, 1L), seekTable);
+    }
+
+    @Setup(Level.Invocation)
+    public void openStream() throws Exception {
+        stream = (Flac2PcmAudioInputStream) FlacTestStreams.open(file);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStream() throws Exception {
+        stream.close();
+    }
+
+    @Benchmark
+    public int seek() throws Exception {
+        stream.seekToFrame((long) (fraction * SAMPLES));
+        return stream.read(block, 0, block.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(SeekBenchmark.class.getSimpleName()).build()).run();
+    }
+}
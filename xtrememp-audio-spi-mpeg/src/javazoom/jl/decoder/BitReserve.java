@@ -1,5 +1,8 @@
 /*
  * 11/19/04			1.0 moved to LGPL.
+ *
+ *					Bits are stored packed in bytes again, and read
+ *					several at a time.
  * 
  * 12/12/99 0.0.7	Implementation stores single bits 
  *					as ints for better performance. mdm@techie.com.
@@ -30,11 +33,11 @@ package javazoom.jl.decoder;
 /**
  * Implementation of Bit Reservoir for Layer III.
  * <p>
- * The implementation stores single bits as a word in the buffer. If
- * a bit is set, the corresponding word in the buffer will be non-zero.
- * If a bit is clear, the corresponding word is zero. Although this
- * may seem waseful, this can be a factor of two quicker than 
- * packing 8 bits to a byte and extracting. 
+ * The implementation stores the bits packed in a circular byte buffer.
+ * A read gathers the bytes holding the requested bits into a long and
+ * shifts them out, so a field of up to 32 bits costs the same as a
+ * single bit. The first bytes of the buffer are mirrored past its end,
+ * so that reads near the end don't need to wrap.
  * <p> 
  */
 
@@ -44,8 +47,7 @@ final class BitReserve
 {
    /**
     * Size of the internal buffer to store the reserved bits.
-    * Must be a power of 2. And x8, as each bit is stored as a single
-    * entry.
+    * Must be a power of 2.
     */
 	private static final int		BUFSIZE = 4096*8;
 	
@@ -54,17 +56,22 @@ final class BitReserve
 	 * modulus operation on BUFSIZE.
 	 */
 	private static final int		BUFSIZE_MASK = BUFSIZE-1;
+
+	/**
+	 * Number of bytes mirrored past the end of the buffer, enough
+	 * for a read of 32 bits at any bit offset.
+	 */
+	private static final int		MIRROR = 8;
 	
-	private int 					offset, totbit, buf_byte_idx;
-	private final int[] 			buf = new int[BUFSIZE];
-	private int 					buf_bit_idx;
+	private int 					offset, totbit, buf_bit_idx;
+	private final byte[] 			buf = new byte[(BUFSIZE >>> 3) + MIRROR];
 	
    BitReserve()
    {
 	  
 	  offset = 0;
       totbit = 0;
-      buf_byte_idx = 0;	  
+      buf_bit_idx = 0;	  
    }
       
    
@@ -78,59 +85,47 @@ final class BitReserve
 
    /**
     * Read a number bits from the bit stream.
+    * Of more than 32 bits, only the last 32 are returned.
     * @param N the number of
 	*/
    public int hgetbits(int N)
    {
-   	 totbit += N;
-	 
-	 int val = 0;
-	 
-	 int pos = buf_byte_idx;
-	 if (pos+N < BUFSIZE)
+	 if (N > 32)
 	 {
-		while (N-- > 0)
-		{
-			val <<= 1;
-			val |= ((buf[pos++]!=0) ? 1 : 0);		 
-		}
-	}
-	 else
-	 {	 
-		 while (N-- > 0)
-		{
-			 val <<= 1;			 
-			 val |= ((buf[pos]!=0) ? 1 : 0);
-			 pos = (pos+1) & BUFSIZE_MASK;
-		}		 
-	 }	
-	 buf_byte_idx = pos;
+		 hskipbits(N - 32);
+		 N = 32;
+	 }
+	 int val = hpeekbits(N);
+	 hskipbits(N);
 	 return val;
    }
-   
-	 
-   
+
    /**
-    * Read 1 bit from the bit stream.
-	*/
-/*
-   public int hget1bit_old()
+    * Returns the next N bits without reading them.
+    * @param N the number of bits, at most 32.
+    */
+   public int hpeekbits(int N)
    {
-   	  int val;
-	  totbit++;
-	  if (buf_bit_idx == 0)
-	  {
-         buf_bit_idx = 8;
-	     buf_byte_idx++;		 
-	  }
-      // BUFSIZE = 4096 = 2^12, so
-      // buf_byte_idx%BUFSIZE == buf_byte_idx & 0xfff
-      val = buf[buf_byte_idx & BUFSIZE_MASK] & putmask[buf_bit_idx];
-      buf_bit_idx--;
-	  val = val >>> buf_bit_idx;
-      return val;   
+	 int pos = buf_bit_idx;
+	 int i = pos >>> 3;
+	 long bits = ((long) (buf[i] & 0xFF) << 32)
+			 | ((long) (buf[i+1] & 0xFF) << 24)
+			 | ((buf[i+2] & 0xFF) << 16)
+			 | ((buf[i+3] & 0xFF) << 8)
+			 | (buf[i+4] & 0xFF);
+	 int val = (int) (bits >>> (40 - (pos & 7) - N));
+	 return (N < 32) ? (val & ((1 << N) - 1)) : val;
    }
- */
+
+   /**
+    * Skips N bits, usually after they have been peeked.
+    */
+   public void hskipbits(int N)
+   {
+	 totbit += N;
+	 buf_bit_idx = (buf_bit_idx+N) & BUFSIZE_MASK;
+   }
+
    /**
     * Returns next bit from reserve.
     * @returns 0 if next bit is reset, or 1 if next bit is set.
@@ -138,43 +133,10 @@ final class BitReserve
    public int hget1bit()
    {   	  
 	  totbit++;	  
-	  int val = buf[buf_byte_idx];
-	  buf_byte_idx = (buf_byte_idx+1) & BUFSIZE_MASK;
-      return val;
-   }
-   
-   /**
-    * Retrieves bits from the reserve.     
-    */
-/*   
-   public int readBits(int[] out, int len)
-   {
-		if (buf_bit_idx == 0)
-		{
-		   buf_bit_idx = 8;
-		   buf_byte_idx++;
-		   current = buf[buf_byte_idx & BUFSIZE_MASK];
-		}      
-		
-		
-		
-		// save total number of bits returned
-		len = buf_bit_idx;
-		buf_bit_idx = 0;
-		  
-		int b = current;
-		int count = len-1;
-		  
-		while (count >= 0)
-		{
-		    out[count--] = (b & 0x1);
-		    b >>>= 1;
-		}
-	  
-		totbit += len;
-		return len;
+	  int pos = buf_bit_idx;
+	  buf_bit_idx = (pos+1) & BUFSIZE_MASK;
+      return (buf[pos >>> 3] >>> (7 - (pos & 7))) & 1;
    }
-  */
    
    /**
     * Write 8 bits into the bit stream.
@@ -182,20 +144,9 @@ final class BitReserve
    public void hputbuf(int val)
    {   	  
 	   int ofs = offset;
-	   buf[ofs++] = val & 0x80;
-	   buf[ofs++] = val & 0x40;
-	   buf[ofs++] = val & 0x20;
-	   buf[ofs++] = val & 0x10;
-	   buf[ofs++] = val & 0x08;
-	   buf[ofs++] = val & 0x04;
-	   buf[ofs++] = val & 0x02;
-	   buf[ofs++] = val & 0x01;
-	   
-	   if (ofs==BUFSIZE)
-			offset = 0;
-	   else
-			offset = ofs;
-	   
+	   buf[ofs] = (byte) val;
+	   if (ofs < MIRROR) buf[(BUFSIZE >>> 3) + ofs] = (byte) val;
+	   offset = (ofs+1) & (BUFSIZE_MASK >>> 3);
    }
  
    /**
@@ -204,9 +155,9 @@ final class BitReserve
    public void rewindNbits(int N)
    {
  	  totbit -= N;	  	  
-	  buf_byte_idx -= N;
-	  if (buf_byte_idx<0)
-		  buf_byte_idx += BUFSIZE;
+	  buf_bit_idx -= N;
+	  if (buf_bit_idx<0)
+		  buf_bit_idx += BUFSIZE;
    }
 	
    /**
@@ -216,8 +167,8 @@ final class BitReserve
    {
       int bits = (N << 3);
 	  totbit -= bits;
-	  buf_byte_idx -= bits;	  
-	  if (buf_byte_idx<0)
-		  buf_byte_idx += BUFSIZE;
+	  buf_bit_idx -= bits;	  
+	  if (buf_bit_idx<0)
+		  buf_bit_idx += BUFSIZE;
    }
 }
@@ -132,6 +132,16 @@ public final class Bitstream implements BitstreamErrors
 
 	private boolean					firstframe = true;
 
+	/**
+	 * Number of bytes consumed from the input stream.
+	 */
+	private long					position = 0;
+
+	/**
+	 * Stream offset of the header of the current frame.
+	 */
+	private long					frame_start = -1;
+
 
 	/**
 	 * Construct a IBitstream that reads data from a
@@ -195,7 +205,8 @@ public final class Bitstream implements BitstreamErrors
 			if (size > 0)
 			{
 				rawid3v2 = new byte[size];
-				in.read(rawid3v2,0,rawid3v2.length);
+				int read = in.read(rawid3v2,0,rawid3v2.length);
+				if (read > 0) position += read;
 			}			
 		}
 		catch (IOException e)
@@ -326,6 +337,7 @@ public final class Bitstream implements BitstreamErrors
 	{
 		// entire frame is read by the header class.
 		header.read_header(this, crc);
+		frame_start = position - framesize - 4;
 	}
 
 	/**
@@ -340,6 +352,7 @@ public final class Bitstream implements BitstreamErrors
 			try
 			{
 				source.unread(frame_bytes, 0, framesize);
+				position -= framesize;
 			}
 			catch (IOException ex)
 			{
@@ -348,6 +361,58 @@ public final class Bitstream implements BitstreamErrors
 		}
 	}
 
+	/**
+	 * Return the number of bytes consumed from the input stream,
+	 * including any ID3v2 tag.
+	 * @return stream offset of the next byte to read.
+	 */
+	public long position()
+	{
+		return position;
+	}
+
+	/**
+	 * Return the stream offset of the header of the last frame read.
+	 * @return stream offset, or -1 if no frame has been read yet.
+	 */
+	public long frame_start()
+	{
+		return frame_start;
+	}
+
+	/**
+	 * Skips forward in the input stream without parsing frames. The
+	 * current frame is closed and the next call to readFrame()
+	 * synchronizes on the first frame header found after the skipped bytes.
+	 * @param n number of bytes to skip.
+	 * @return number of bytes actually skipped.
+	 */
+	public long skipBytes(long n) throws BitstreamException
+	{
+		closeFrame();
+		long skipped = 0;
+		try
+		{
+			while (skipped < n)
+			{
+				long s = source.skip(n - skipped);
+				if (s <= 0)
+				{
+					// Stream may not support skip, read through it.
+					if (source.read() == -1) break;
+					s = 1;
+				}
+				skipped += s;
+			}
+		}
+		catch (IOException ex)
+		{
+			throw newBitstreamException(STREAM_ERROR, ex);
+		}
+		position += skipped;
+		return skipped;
+	}
+
 	/**
 	 * Close MP3 frame.
 	 */
@@ -370,6 +435,7 @@ public final class Bitstream implements BitstreamErrors
 		try
 		{
 			source.unread(syncbuf, 0, read);
+			position -= read;
 		}
 		catch (IOException ex)
 		{
@@ -621,6 +687,7 @@ public final class Bitstream implements BitstreamErrors
 		{
 			throw newBitstreamException(STREAM_ERROR, ex);
 		}
+		position += nRead;
 		return nRead;
 	}
 
@@ -650,6 +717,7 @@ public final class Bitstream implements BitstreamErrors
 		{
 			throw newBitstreamException(STREAM_ERROR, ex);
 		}
+		position += totalBytesRead;
 		return totalBytesRead;
 	}
 }
@@ -144,7 +144,16 @@ public class Decoder implements DecoderErrors
 		
 		FrameDecoder decoder = retrieveDecoder(header, stream, layer);
 		
-		decoder.decodeFrame();
+		try
+		{
+			decoder.decodeFrame();
+		}
+		finally
+		{
+			filter1.flush();
+			if (filter2!=null)
+				filter2.flush();
+		}
 				
 		output.write_buffer(1);
 		
@@ -411,6 +411,28 @@ public final class Header
 	 */
 	public byte[] vbr_toc() { return h_vbr_toc; }
 
+	/**
+	 * Return VBR frames count.
+	 * @return number of frames or -1 if not available
+	 */
+	public int vbr_frames() { return h_vbr_frames; }
+
+	/**
+	 * Return VBR stream size.
+	 * @return size in bytes or -1 if not available
+	 */
+	public int vbr_bytes() { return h_vbr_bytes; }
+
+	/**
+	 * Returns the number of PCM samples per channel in a frame.
+	 */
+	public int samples_per_frame()
+	{
+		if (h_layer == 1) return 384;
+		if ((h_layer == 3) && (h_version != MPEG1)) return 576;
+		return 1152;
+	}
+
 	/**
 	 * Returns Checksum flag.
 	 * Compares computed checksum with stream checksum.
@@ -39,10 +39,10 @@ import java.io.IOException;
  */
 final class SynthesisFilter
 {
-  private float[] 			 v1;
-  private float[]		 	 v2;
-  private float[]			 actual_v;			// v1 or v2
-  private int 			 	 actual_write_pos;	// 0-15
+  private float[] 			 v1;				// V[0-31] of the last 15 + BATCH slots
+  private float[]		 	 v2;				// V[32-63] of the same slots
+  private int 			 	 pending;			// slots not yet windowed, 0-BATCH
+  private Obuffer			 pending_buffer;
   private float[]			 samples;			// 32 new subband samples
   private int				 channel;
   private float 			 scalefactor;
@@ -70,14 +70,13 @@ final class SynthesisFilter
    */
   public SynthesisFilter(int channelnumber, float factor, float[] eq0)
   {  	 
-	  if (d==null)
+	  if (dRep==null)
 	  {
-			d = load_d();
-			d16 = splitArray(d, 16);
+			dRep = replicate(load_d());
 	  }
 	  
-	  v1 = new float[512];
-	 v2 = new float[512];
+	  v1 = new float[HISTORY + BATCH_LEN];
+	 v2 = new float[HISTORY + BATCH_LEN];
 	 samples = new float[32];
      channel = channelnumber;
 	 scalefactor = factor;
@@ -136,7 +135,7 @@ final class SynthesisFilter
      // initialize v1[] and v2[]:
      //for (floatp = v1 + 512, floatp2 = v2 + 512; floatp > v1; )
 	 //   *--floatp = *--floatp2 = 0.0;
-	 for (int p=0;p<512;p++) 
+	 for (int p=0;p<v1.length;p++) 
 		 v1[p] = v2[p] = 0.0f;
 
      // initialize samples[]:
@@ -145,8 +144,8 @@ final class SynthesisFilter
 	 for (int p2=0;p2<32;p2++) 
 		 samples[p2] = 0.0f;
 
-     actual_v = v1;
-     actual_write_pos = 15;
+     pending = 0;
+     pending_buffer = null;
   }
 
 
@@ -445,1112 +444,171 @@ final class SynthesisFilter
 	new_v30/*47-17*/ = (tmp1 = -p8 - p12 - p14 - p15) - p0;
 	new_v28/*45-17*/ = tmp1 - tmp2;
 
-	// insert V[0-15] (== new_v[0-15]) into actual v:	
-	// float[] x2 = actual_v + actual_write_pos;
-	float dest[] = actual_v;
-	
-	int pos = actual_write_pos;
-	
-	dest[0 + pos] = new_v0;
-	dest[16 + pos] = new_v1;
-	dest[32 + pos] = new_v2;
-	dest[48 + pos] = new_v3;
-	dest[64 + pos] = new_v4;
-	dest[80 + pos] = new_v5;
-	dest[96 + pos] = new_v6;
-	dest[112 + pos] = new_v7;
-	dest[128 + pos] = new_v8;
-	dest[144 + pos] = new_v9;
-	dest[160 + pos] = new_v10;
-	dest[176 + pos] = new_v11;
-	dest[192 + pos] = new_v12;
-	dest[208 + pos] = new_v13;
-	dest[224 + pos] = new_v14;
-	dest[240 + pos] = new_v15;
+	// insert V[0-15] (== new_v[0-15]) into v1:	
+	float dest[] = v1;
+	
+	int pos = HISTORY + (pending << 5);
+	
+	dest[pos + 0] = new_v0;
+	dest[pos + 1] = new_v1;
+	dest[pos + 2] = new_v2;
+	dest[pos + 3] = new_v3;
+	dest[pos + 4] = new_v4;
+	dest[pos + 5] = new_v5;
+	dest[pos + 6] = new_v6;
+	dest[pos + 7] = new_v7;
+	dest[pos + 8] = new_v8;
+	dest[pos + 9] = new_v9;
+	dest[pos + 10] = new_v10;
+	dest[pos + 11] = new_v11;
+	dest[pos + 12] = new_v12;
+	dest[pos + 13] = new_v13;
+	dest[pos + 14] = new_v14;
+	dest[pos + 15] = new_v15;
 
 	// V[16] is always 0.0:
-	dest[256 + pos] = 0.0f;
-
-	// insert V[17-31] (== -new_v[15-1]) into actual v:
-	dest[272 + pos] = -new_v15;
-	dest[288 + pos] = -new_v14;
-	dest[304 + pos] = -new_v13;
-	dest[320 + pos] = -new_v12;
-	dest[336 + pos] = -new_v11;
-	dest[352 + pos] = -new_v10;
-	dest[368 + pos] = -new_v9;
-	dest[384 + pos] = -new_v8;
-	dest[400 + pos] = -new_v7;
-	dest[416 + pos] = -new_v6;
-	dest[432 + pos] = -new_v5;
-	dest[448 + pos] = -new_v4;
-	dest[464 + pos] = -new_v3;
-	dest[480 + pos] = -new_v2;
-	dest[496 + pos] = -new_v1;
-
-	// insert V[32] (== -new_v[0]) into other v:
-	dest = (actual_v==v1) ? v2 : v1;
-	
-	dest[0 + pos] = -new_v0;
-	// insert V[33-48] (== new_v[16-31]) into other v:
-	dest[16 + pos] = new_v16;
-	dest[32 + pos] = new_v17;
-	dest[48 + pos] = new_v18;
-	dest[64 + pos] = new_v19;
-	dest[80 + pos] = new_v20;
-	dest[96 + pos] = new_v21;
-	dest[112 + pos] = new_v22;
-	dest[128 + pos] = new_v23;
-	dest[144 + pos] = new_v24;
-	dest[160 + pos] = new_v25;
-	dest[176 + pos] = new_v26;
-	dest[192 + pos] = new_v27;
-	dest[208 + pos] = new_v28;
-	dest[224 + pos] = new_v29;
-	dest[240 + pos] = new_v30;
-	dest[256 + pos] = new_v31;
-	
-	// insert V[49-63] (== new_v[30-16]) into other v:
-	dest[272 + pos] = new_v30;
-	dest[288 + pos] = new_v29;
-	dest[304 + pos] = new_v28;
-	dest[320 + pos] = new_v27;
-	dest[336 + pos] = new_v26;
-	dest[352 + pos] = new_v25;
-	dest[368 + pos] = new_v24;
-	dest[384 + pos] = new_v23;
-	dest[400 + pos] = new_v22;
-	dest[416 + pos] = new_v21;
-	dest[432 + pos] = new_v20;
-	dest[448 + pos] = new_v19;
-	dest[464 + pos] = new_v18;
-	dest[480 + pos] = new_v17;
-	dest[496 + pos] = new_v16; 			
-/*
-	}
-	else
-	{
-		v1[0 + actual_write_pos] = -new_v0;
-		// insert V[33-48] (== new_v[16-31]) into other v:
-		v1[16 + actual_write_pos] = new_v16;
-		v1[32 + actual_write_pos] = new_v17;
-		v1[48 + actual_write_pos] = new_v18;
-		v1[64 + actual_write_pos] = new_v19;
-		v1[80 + actual_write_pos] = new_v20;
-		v1[96 + actual_write_pos] = new_v21;
-		v1[112 + actual_write_pos] = new_v22;
-		v1[128 + actual_write_pos] = new_v23;
-		v1[144 + actual_write_pos] = new_v24;
-		v1[160 + actual_write_pos] = new_v25;
-		v1[176 + actual_write_pos] = new_v26;
-		v1[192 + actual_write_pos] = new_v27;
-		v1[208 + actual_write_pos] = new_v28;
-		v1[224 + actual_write_pos] = new_v29;
-		v1[240 + actual_write_pos] = new_v30;
-		v1[256 + actual_write_pos] = new_v31;
-
-		// insert V[49-63] (== new_v[30-16]) into other v:
-		v1[272 + actual_write_pos] = new_v30;
-		v1[288 + actual_write_pos] = new_v29;
-		v1[304 + actual_write_pos] = new_v28;
-		v1[320 + actual_write_pos] = new_v27;
-		v1[336 + actual_write_pos] = new_v26;
-		v1[352 + actual_write_pos] = new_v25;
-		v1[368 + actual_write_pos] = new_v24;
-		v1[384 + actual_write_pos] = new_v23;
-		v1[400 + actual_write_pos] = new_v22;
-		v1[416 + actual_write_pos] = new_v21;
-		v1[432 + actual_write_pos] = new_v20;
-		v1[448 + actual_write_pos] = new_v19;
-		v1[464 + actual_write_pos] = new_v18;
-		v1[480 + actual_write_pos] = new_v17;
-		v1[496 + actual_write_pos] = new_v16;	
-	}
-*/	
+	dest[pos + 16] = 0.0f;
+
+	// insert V[17-31] (== -new_v[15-1]) into v1:
+	dest[pos + 17] = -new_v15;
+	dest[pos + 18] = -new_v14;
+	dest[pos + 19] = -new_v13;
+	dest[pos + 20] = -new_v12;
+	dest[pos + 21] = -new_v11;
+	dest[pos + 22] = -new_v10;
+	dest[pos + 23] = -new_v9;
+	dest[pos + 24] = -new_v8;
+	dest[pos + 25] = -new_v7;
+	dest[pos + 26] = -new_v6;
+	dest[pos + 27] = -new_v5;
+	dest[pos + 28] = -new_v4;
+	dest[pos + 29] = -new_v3;
+	dest[pos + 30] = -new_v2;
+	dest[pos + 31] = -new_v1;
+
+	// insert V[32] (== -new_v[0]) into v2:
+	dest = v2;
+	
+	dest[pos + 0] = -new_v0;
+	// insert V[33-48] (== new_v[16-31]) into v2:
+	dest[pos + 1] = new_v16;
+	dest[pos + 2] = new_v17;
+	dest[pos + 3] = new_v18;
+	dest[pos + 4] = new_v19;
+	dest[pos + 5] = new_v20;
+	dest[pos + 6] = new_v21;
+	dest[pos + 7] = new_v22;
+	dest[pos + 8] = new_v23;
+	dest[pos + 9] = new_v24;
+	dest[pos + 10] = new_v25;
+	dest[pos + 11] = new_v26;
+	dest[pos + 12] = new_v27;
+	dest[pos + 13] = new_v28;
+	dest[pos + 14] = new_v29;
+	dest[pos + 15] = new_v30;
+	dest[pos + 16] = new_v31;
+	
+	// insert V[49-63] (== new_v[30-16]) into v2:
+	dest[pos + 17] = new_v30;
+	dest[pos + 18] = new_v29;
+	dest[pos + 19] = new_v28;
+	dest[pos + 20] = new_v27;
+	dest[pos + 21] = new_v26;
+	dest[pos + 22] = new_v25;
+	dest[pos + 23] = new_v24;
+	dest[pos + 24] = new_v23;
+	dest[pos + 25] = new_v22;
+	dest[pos + 26] = new_v21;
+	dest[pos + 27] = new_v20;
+	dest[pos + 28] = new_v19;
+	dest[pos + 29] = new_v18;
+	dest[pos + 30] = new_v17;
+	dest[pos + 31] = new_v16; 			
   }
 	
-  /**
-   * Compute new values via a fast cosine transform.
-   */
-  private void compute_new_v_old()
-  {
-	// p is fully initialized from x1
-	 //float[] p = _p;
-	 // pp is fully initialized from p
-	 //float[] pp = _pp; 
-	  
-	 //float[] new_v = _new_v;
-	  
-  	float[] new_v = new float[32]; // new V[0-15] and V[33-48] of Figure 3-A.2 in ISO DIS 11172-3
-	float[] p = new float[16];
-	float[] pp = new float[16];
-	  
-	  
-	 for (int i=31; i>=0; i--)
-	 {
-		 new_v[i] = 0.0f;
-	 }
-	 
-//	float[] new_v = new float[32]; // new V[0-15] and V[33-48] of Figure 3-A.2 in ISO DIS 11172-3
-//	float[] p = new float[16];
-//	float[] pp = new float[16];
-
-    float[] x1 = samples;
-	
-	p[0] = x1[0] + x1[31];
-	p[1] = x1[1] + x1[30];
-	p[2] = x1[2] + x1[29];
-	p[3] = x1[3] + x1[28];
-	p[4] = x1[4] + x1[27];
-	p[5] = x1[5] + x1[26];
-	p[6] = x1[6] + x1[25];
-	p[7] = x1[7] + x1[24];
-	p[8] = x1[8] + x1[23];
-	p[9] = x1[9] + x1[22];
-	p[10] = x1[10] + x1[21];
-	p[11] = x1[11] + x1[20];
-	p[12] = x1[12] + x1[19];
-	p[13] = x1[13] + x1[18];
-	p[14] = x1[14] + x1[17];
-	p[15] = x1[15] + x1[16];
-	
-	pp[0] = p[0] + p[15];
-	pp[1] = p[1] + p[14];
-	pp[2] = p[2] + p[13];
-	pp[3] = p[3] + p[12];
-	pp[4] = p[4] + p[11];
-	pp[5] = p[5] + p[10];
-	pp[6] = p[6] + p[9];
-	pp[7] = p[7] + p[8];
-	pp[8] = (p[0] - p[15]) * cos1_32;
-	pp[9] = (p[1] - p[14]) * cos3_32;
-	pp[10] = (p[2] - p[13]) * cos5_32;
-	pp[11] = (p[3] - p[12]) * cos7_32;
-	pp[12] = (p[4] - p[11]) * cos9_32;
-	pp[13] = (p[5] - p[10]) * cos11_32;
-	pp[14] = (p[6] - p[9]) * cos13_32;
-	pp[15] = (p[7] - p[8]) * cos15_32;
-
-	p[0] = pp[0] + pp[7];
-	p[1] = pp[1] + pp[6];
-	p[2] = pp[2] + pp[5];
-	p[3] = pp[3] + pp[4];
-	p[4] = (pp[0] - pp[7]) * cos1_16;
-	p[5] = (pp[1] - pp[6]) * cos3_16;
-	p[6] = (pp[2] - pp[5]) * cos5_16;
-	p[7] = (pp[3] - pp[4]) * cos7_16;
-	p[8] = pp[8] + pp[15];
-	p[9] = pp[9] + pp[14];
-	p[10] = pp[10] + pp[13];
-	p[11] = pp[11] + pp[12];
-	p[12] = (pp[8] - pp[15]) * cos1_16;
-	p[13] = (pp[9] - pp[14]) * cos3_16;
-	p[14] = (pp[10] - pp[13]) * cos5_16;
-	p[15] = (pp[11] - pp[12]) * cos7_16;
-	
-
-	pp[0] = p[0] + p[3];
-	pp[1] = p[1] + p[2];
-	pp[2] = (p[0] - p[3]) * cos1_8;
-	pp[3] = (p[1] - p[2]) * cos3_8;
-	pp[4] = p[4] + p[7];
-	pp[5] = p[5] + p[6];
-	pp[6] = (p[4] - p[7]) * cos1_8;
-	pp[7] = (p[5] - p[6]) * cos3_8;
-	pp[8] = p[8] + p[11];
-	pp[9] = p[9] + p[10];
-	pp[10] = (p[8] - p[11]) * cos1_8;
-	pp[11] = (p[9] - p[10]) * cos3_8;
-	pp[12] = p[12] + p[15];
-	pp[13] = p[13] + p[14];
-	pp[14] = (p[12] - p[15]) * cos1_8;
-	pp[15] = (p[13] - p[14]) * cos3_8;
-
-	p[0] = pp[0] + pp[1];
-	p[1] = (pp[0] - pp[1]) * cos1_4;
-	p[2] = pp[2] + pp[3];
-	p[3] = (pp[2] - pp[3]) * cos1_4;
-	p[4] = pp[4] + pp[5];
-	p[5] = (pp[4] - pp[5]) * cos1_4;
-	p[6] = pp[6] + pp[7];
-	p[7] = (pp[6] - pp[7]) * cos1_4;
-	p[8] = pp[8] + pp[9];
-	p[9] = (pp[8] - pp[9]) * cos1_4;
-	p[10] = pp[10] + pp[11];
-	p[11] = (pp[10] - pp[11]) * cos1_4;
-	p[12] = pp[12] + pp[13];
-	p[13] = (pp[12] - pp[13]) * cos1_4;
-	p[14] = pp[14] + pp[15];
-	p[15] = (pp[14] - pp[15]) * cos1_4;
-
-	// this is pretty insane coding
-	float tmp1;
-	new_v[36-17] = -(new_v[4] = (new_v[12] = p[7]) + p[5]) - p[6];
-	new_v[44-17] = -p[6] - p[7] - p[4];
-	new_v[6] = (new_v[10] = (new_v[14] = p[15]) + p[11]) + p[13];
-	new_v[34-17] = -(new_v[2] = p[15] + p[13] + p[9]) - p[14];
-	new_v[38-17] = (tmp1 = -p[14] - p[15] - p[10] - p[11]) - p[13];
-	new_v[46-17] = -p[14] - p[15] - p[12] - p[8];
-	new_v[42-17] = tmp1 - p[12];
-	new_v[48-17] = -p[0];
-	new_v[0] = p[1];
-	new_v[40-17] = -(new_v[8] = p[3]) - p[2];
-	
-	p[0] = (x1[0] - x1[31]) * cos1_64;
-	p[1] = (x1[1] - x1[30]) * cos3_64;
-	p[2] = (x1[2] - x1[29]) * cos5_64;
-	p[3] = (x1[3] - x1[28]) * cos7_64;
-	p[4] = (x1[4] - x1[27]) * cos9_64;
-	p[5] = (x1[5] - x1[26]) * cos11_64;
-	p[6] = (x1[6] - x1[25]) * cos13_64;
-	p[7] = (x1[7] - x1[24]) * cos15_64;
-	p[8] = (x1[8] - x1[23]) * cos17_64;
-	p[9] = (x1[9] - x1[22]) * cos19_64;
-	p[10] = (x1[10] - x1[21]) * cos21_64;
-	p[11] = (x1[11] - x1[20]) * cos23_64;
-	p[12] = (x1[12] - x1[19]) * cos25_64;
-	p[13] = (x1[13] - x1[18]) * cos27_64;
-	p[14] = (x1[14] - x1[17]) * cos29_64;
-	p[15] = (x1[15] - x1[16]) * cos31_64;
-
-	
-	pp[0] = p[0] + p[15];
-	pp[1] = p[1] + p[14];
-	pp[2] = p[2] + p[13];
-	pp[3] = p[3] + p[12];
-	pp[4] = p[4] + p[11];
-	pp[5] = p[5] + p[10];
-	pp[6] = p[6] + p[9];
-	pp[7] = p[7] + p[8];
-	pp[8] = (p[0] - p[15]) * cos1_32;
-	pp[9] = (p[1] - p[14]) * cos3_32;
-	pp[10] = (p[2] - p[13]) * cos5_32;
-	pp[11] = (p[3] - p[12]) * cos7_32;
-	pp[12] = (p[4] - p[11]) * cos9_32;
-	pp[13] = (p[5] - p[10]) * cos11_32;
-	pp[14] = (p[6] - p[9]) * cos13_32;
-	pp[15] = (p[7] - p[8]) * cos15_32;
-	
-
-	p[0] = pp[0] + pp[7];
-	p[1] = pp[1] + pp[6];
-	p[2] = pp[2] + pp[5];
-	p[3] = pp[3] + pp[4];
-	p[4] = (pp[0] - pp[7]) * cos1_16;
-	p[5] = (pp[1] - pp[6]) * cos3_16;
-	p[6] = (pp[2] - pp[5]) * cos5_16;
-	p[7] = (pp[3] - pp[4]) * cos7_16;
-	p[8] = pp[8] + pp[15];
-	p[9] = pp[9] + pp[14];
-	p[10] = pp[10] + pp[13];
-	p[11] = pp[11] + pp[12];
-	p[12] = (pp[8] - pp[15]) * cos1_16;
-	p[13] = (pp[9] - pp[14]) * cos3_16;
-	p[14] = (pp[10] - pp[13]) * cos5_16;
-	p[15] = (pp[11] - pp[12]) * cos7_16;
-
-
-	pp[0] = p[0] + p[3];
-	pp[1] = p[1] + p[2];
-	pp[2] = (p[0] - p[3]) * cos1_8;
-	pp[3] = (p[1] - p[2]) * cos3_8;
-	pp[4] = p[4] + p[7];
-	pp[5] = p[5] + p[6];
-	pp[6] = (p[4] - p[7]) * cos1_8;
-	pp[7] = (p[5] - p[6]) * cos3_8;
-	pp[8] = p[8] + p[11];
-	pp[9] = p[9] + p[10];
-	pp[10] = (p[8] - p[11]) * cos1_8;
-	pp[11] = (p[9] - p[10]) * cos3_8;
-	pp[12] = p[12] + p[15];
-	pp[13] = p[13] + p[14];
-	pp[14] = (p[12] - p[15]) * cos1_8;
-	pp[15] = (p[13] - p[14]) * cos3_8;
-
-	
-	p[0] = pp[0] + pp[1];
-	p[1] = (pp[0] - pp[1]) * cos1_4;
-	p[2] = pp[2] + pp[3];
-	p[3] = (pp[2] - pp[3]) * cos1_4;
-	p[4] = pp[4] + pp[5];
-	p[5] = (pp[4] - pp[5]) * cos1_4;
-	p[6] = pp[6] + pp[7];
-	p[7] = (pp[6] - pp[7]) * cos1_4;
-	p[8] = pp[8] + pp[9];
-	p[9] = (pp[8] - pp[9]) * cos1_4;
-	p[10] = pp[10] + pp[11];
-	p[11] = (pp[10] - pp[11]) * cos1_4;
-	p[12] = pp[12] + pp[13];
-	p[13] = (pp[12] - pp[13]) * cos1_4;
-	p[14] = pp[14] + pp[15];
-	p[15] = (pp[14] - pp[15]) * cos1_4;
-	
-
-	// manually doing something that a compiler should handle sucks
-	// coding like this is hard to read
-	float tmp2;
-	new_v[5] = (new_v[11] = (new_v[13] = (new_v[15] = p[15]) + p[7]) + p[11])
-							+ p[5] + p[13];
-	new_v[7] = (new_v[9] = p[15] + p[11] + p[3]) + p[13];
-	new_v[33-17] = -(new_v[1] = (tmp1 = p[13] + p[15] + p[9]) + p[1]) - p[14];
-	new_v[35-17] = -(new_v[3] = tmp1 + p[5] + p[7]) - p[6] - p[14];
-
-	new_v[39-17] = (tmp1 = -p[10] - p[11] - p[14] - p[15])
-									- p[13] - p[2] - p[3];
-	new_v[37-17] = tmp1 - p[13] - p[5] - p[6] - p[7];
-	new_v[41-17] = tmp1 - p[12] - p[2] - p[3];
-	new_v[43-17] = tmp1 - p[12] - (tmp2 = p[4] + p[6] + p[7]);
-	new_v[47-17] = (tmp1 = -p[8] - p[12] - p[14] - p[15]) - p[0];
-	new_v[45-17] = tmp1 - tmp2;
-
-	// insert V[0-15] (== new_v[0-15]) into actual v:
-	x1 = new_v;
-	// float[] x2 = actual_v + actual_write_pos;
-	float[] dest = actual_v;
-	
-	dest[0 + actual_write_pos] = x1[0];
-	dest[16 + actual_write_pos] = x1[1];
-	dest[32 + actual_write_pos] = x1[2];
-	dest[48 + actual_write_pos] = x1[3];
-	dest[64 + actual_write_pos] = x1[4];
-	dest[80 + actual_write_pos] = x1[5];
-	dest[96 + actual_write_pos] = x1[6];
-	dest[112 + actual_write_pos] = x1[7];
-	dest[128 + actual_write_pos] = x1[8];
-	dest[144 + actual_write_pos] = x1[9];
-	dest[160 + actual_write_pos] = x1[10];
-	dest[176 + actual_write_pos] = x1[11];
-	dest[192 + actual_write_pos] = x1[12];
-	dest[208 + actual_write_pos] = x1[13];
-	dest[224 + actual_write_pos] = x1[14];
-	dest[240 + actual_write_pos] = x1[15];
-
-	// V[16] is always 0.0:
-	dest[256 + actual_write_pos] = 0.0f;
-
-	// insert V[17-31] (== -new_v[15-1]) into actual v:
-	dest[272 + actual_write_pos] = -x1[15];
-	dest[288 + actual_write_pos] = -x1[14];
-	dest[304 + actual_write_pos] = -x1[13];
-	dest[320 + actual_write_pos] = -x1[12];
-	dest[336 + actual_write_pos] = -x1[11];
-	dest[352 + actual_write_pos] = -x1[10];
-	dest[368 + actual_write_pos] = -x1[9];
-	dest[384 + actual_write_pos] = -x1[8];
-	dest[400 + actual_write_pos] = -x1[7];
-	dest[416 + actual_write_pos] = -x1[6];
-	dest[432 + actual_write_pos] = -x1[5];
-	dest[448 + actual_write_pos] = -x1[4];
-	dest[464 + actual_write_pos] = -x1[3];
-	dest[480 + actual_write_pos] = -x1[2];
-	dest[496 + actual_write_pos] = -x1[1];
-
-	// insert V[32] (== -new_v[0]) into other v:
-	
-  }
-
   /**
    * Compute PCM Samples.
    */
   
   private float[] _tmpOut = new float[32];
+  private float[] _out = new float[BATCH_LEN];
   
-  
-  private void compute_pcm_samples0(Obuffer buffer)
-  {
-	final float[] vp = actual_v;	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-		float pcm_sample;
-		final float[] dp = d16[i];
-		pcm_sample = (float)(((vp[0 + dvp] * dp[0]) +
-			(vp[15 + dvp] * dp[1]) +
-			(vp[14 + dvp] * dp[2]) +
-			(vp[13 + dvp] * dp[3]) +
-			(vp[12 + dvp] * dp[4]) +
-			(vp[11 + dvp] * dp[5]) +
-			(vp[10 + dvp] * dp[6]) +
-			(vp[9 + dvp] * dp[7]) +
-			(vp[8 + dvp] * dp[8]) +
-			(vp[7 + dvp] * dp[9]) +
-			(vp[6 + dvp] * dp[10]) +
-			(vp[5 + dvp] * dp[11]) +
-			(vp[4 + dvp] * dp[12]) +
-			(vp[3 + dvp] * dp[13]) +
-			(vp[2 + dvp] * dp[14]) +
-			(vp[1 + dvp] * dp[15])
-			) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-	} // for
-  }
-  
-  private void compute_pcm_samples1(Obuffer buffer)
-  {
-	final float[] vp = actual_v;	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[1 + dvp] * dp[0]) +
-					(vp[0 + dvp] * dp[1]) +
-					(vp[15 + dvp] * dp[2]) +
-					(vp[14 + dvp] * dp[3]) +
-					(vp[13 + dvp] * dp[4]) +
-					(vp[12 + dvp] * dp[5]) +
-					(vp[11 + dvp] * dp[6]) +
-					(vp[10 + dvp] * dp[7]) +
-					(vp[9 + dvp] * dp[8]) +
-					(vp[8 + dvp] * dp[9]) +
-					(vp[7 + dvp] * dp[10]) +
-					(vp[6 + dvp] * dp[11]) +
-					(vp[5 + dvp] * dp[12]) +
-					(vp[4 + dvp] * dp[13]) +
-					(vp[3 + dvp] * dp[14]) +
-					(vp[2 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-         } // for
-  }
-    private void compute_pcm_samples2(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[2 + dvp] * dp[0]) +
-					(vp[1 + dvp] * dp[1]) +
-					(vp[0 + dvp] * dp[2]) +
-					(vp[15 + dvp] * dp[3]) +
-					(vp[14 + dvp] * dp[4]) +
-					(vp[13 + dvp] * dp[5]) +
-					(vp[12 + dvp] * dp[6]) +
-					(vp[11 + dvp] * dp[7]) +
-					(vp[10 + dvp] * dp[8]) +
-					(vp[9 + dvp] * dp[9]) +
-					(vp[8 + dvp] * dp[10]) +
-					(vp[7 + dvp] * dp[11]) +
-					(vp[6 + dvp] * dp[12]) +
-					(vp[5 + dvp] * dp[13]) +
-					(vp[4 + dvp] * dp[14]) +
-					(vp[3 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-	}
-	
-	  private void compute_pcm_samples3(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	int idx = 0;
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[3 + dvp] * dp[0]) +
-					(vp[2 + dvp] * dp[1]) +
-					(vp[1 + dvp] * dp[2]) +
-					(vp[0 + dvp] * dp[3]) +
-					(vp[15 + dvp] * dp[4]) +
-					(vp[14 + dvp] * dp[5]) +
-					(vp[13 + dvp] * dp[6]) +
-					(vp[12 + dvp] * dp[7]) +
-					(vp[11 + dvp] * dp[8]) +
-					(vp[10 + dvp] * dp[9]) +
-					(vp[9 + dvp] * dp[10]) +
-					(vp[8 + dvp] * dp[11]) +
-					(vp[7 + dvp] * dp[12]) +
-					(vp[6 + dvp] * dp[13]) +
-					(vp[5 + dvp] * dp[14]) +
-					(vp[4 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-	  }
-			
-  private void compute_pcm_samples4(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[4 + dvp] * dp[0]) +
-					(vp[3 + dvp] * dp[1]) +
-					(vp[2 + dvp] * dp[2]) +
-					(vp[1 + dvp] * dp[3]) +
-					(vp[0 + dvp] * dp[4]) +
-					(vp[15 + dvp] * dp[5]) +
-					(vp[14 + dvp] * dp[6]) +
-					(vp[13 + dvp] * dp[7]) +
-					(vp[12 + dvp] * dp[8]) +
-					(vp[11 + dvp] * dp[9]) +
-					(vp[10 + dvp] * dp[10]) +
-					(vp[9 + dvp] * dp[11]) +
-					(vp[8 + dvp] * dp[12]) +
-					(vp[7 + dvp] * dp[13]) +
-					(vp[6 + dvp] * dp[14]) +
-					(vp[5 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  
-  private void compute_pcm_samples5(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[5 + dvp] * dp[0]) +
-					(vp[4 + dvp] * dp[1]) +
-					(vp[3 + dvp] * dp[2]) +
-					(vp[2 + dvp] * dp[3]) +
-					(vp[1 + dvp] * dp[4]) +
-					(vp[0 + dvp] * dp[5]) +
-					(vp[15 + dvp] * dp[6]) +
-					(vp[14 + dvp] * dp[7]) +
-					(vp[13 + dvp] * dp[8]) +
-					(vp[12 + dvp] * dp[9]) +
-					(vp[11 + dvp] * dp[10]) +
-					(vp[10 + dvp] * dp[11]) +
-					(vp[9 + dvp] * dp[12]) +
-					(vp[8 + dvp] * dp[13]) +
-					(vp[7 + dvp] * dp[14]) +
-					(vp[6 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  
-  private void compute_pcm_samples6(Obuffer buffer)
-  {
-	final float[] vp = actual_v;	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[6 + dvp] * dp[0]) +
-					(vp[5 + dvp] * dp[1]) +
-					(vp[4 + dvp] * dp[2]) +
-					(vp[3 + dvp] * dp[3]) +
-					(vp[2 + dvp] * dp[4]) +
-					(vp[1 + dvp] * dp[5]) +
-					(vp[0 + dvp] * dp[6]) +
-					(vp[15 + dvp] * dp[7]) +
-					(vp[14 + dvp] * dp[8]) +
-					(vp[13 + dvp] * dp[9]) +
-					(vp[12 + dvp] * dp[10]) +
-					(vp[11 + dvp] * dp[11]) +
-					(vp[10 + dvp] * dp[12]) +
-					(vp[9 + dvp] * dp[13]) +
-					(vp[8 + dvp] * dp[14]) +
-					(vp[7 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  
-    private void compute_pcm_samples7(Obuffer buffer)
+  /**
+   * Windows all pending slots of V into PCM samples. Slot t sums V[0-31]
+   * of slots t, t-2, ... and V[32-63] of slots t-1, t-3, ... against the
+   * 16 coefficient blocks. Each call to mac() covers every pending slot
+   * with constant offsets, which gives the JIT loops long enough to
+   * vectorize, and each sample still adds its 16 products in the order
+   * of the former per-position code.
+   */
+  private void compute_pcm_samples()
   {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[7 + dvp] * dp[0]) +
-					(vp[6 + dvp] * dp[1]) +
-					(vp[5 + dvp] * dp[2]) +
-					(vp[4 + dvp] * dp[3]) +
-					(vp[3 + dvp] * dp[4]) +
-					(vp[2 + dvp] * dp[5]) +
-					(vp[1 + dvp] * dp[6]) +
-					(vp[0 + dvp] * dp[7]) +
-					(vp[15 + dvp] * dp[8]) +
-					(vp[14 + dvp] * dp[9]) +
-					(vp[13 + dvp] * dp[10]) +
-					(vp[12 + dvp] * dp[11]) +
-					(vp[11 + dvp] * dp[12]) +
-					(vp[10 + dvp] * dp[13]) +
-					(vp[9 + dvp] * dp[14]) +
-					(vp[8 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
+	final float[] out = _out;
+	final float[] dp = dRep;
+	final int len = pending << 5;
+
+	for (int i=0; i<len; i++)
+		out[i] = 0.0f;
+
+	mac(out, v1, 15 * 32, dp,  0 * BATCH_LEN, len);
+	mac(out, v2, 14 * 32, dp,  1 * BATCH_LEN, len);
+	mac(out, v1, 13 * 32, dp,  2 * BATCH_LEN, len);
+	mac(out, v2, 12 * 32, dp,  3 * BATCH_LEN, len);
+	mac(out, v1, 11 * 32, dp,  4 * BATCH_LEN, len);
+	mac(out, v2, 10 * 32, dp,  5 * BATCH_LEN, len);
+	mac(out, v1,  9 * 32, dp,  6 * BATCH_LEN, len);
+	mac(out, v2,  8 * 32, dp,  7 * BATCH_LEN, len);
+	mac(out, v1,  7 * 32, dp,  8 * BATCH_LEN, len);
+	mac(out, v2,  6 * 32, dp,  9 * BATCH_LEN, len);
+	mac(out, v1,  5 * 32, dp, 10 * BATCH_LEN, len);
+	mac(out, v2,  4 * 32, dp, 11 * BATCH_LEN, len);
+	mac(out, v1,  3 * 32, dp, 12 * BATCH_LEN, len);
+	mac(out, v2,  2 * 32, dp, 13 * BATCH_LEN, len);
+	mac(out, v1,  1 * 32, dp, 14 * BATCH_LEN, len);
+	mac(out, v2,  0 * 32, dp, 15 * BATCH_LEN, len);
+
+	final float factor = scalefactor;
+	for (int i=0; i<len; i++)
+		out[i] *= factor;
+
+	if (pending_buffer!=null)
+	{
+		final float[] tmpOut = _tmpOut;
+		for (int i=0; i<len; i+=32)
+		{
+			System.arraycopy(out, i, tmpOut, 0, 32);
+			pending_buffer.appendSamples(channel, tmpOut);
+		}
 	}
-  private void compute_pcm_samples8(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[8 + dvp] * dp[0]) +
-					(vp[7 + dvp] * dp[1]) +
-					(vp[6 + dvp] * dp[2]) +
-					(vp[5 + dvp] * dp[3]) +
-					(vp[4 + dvp] * dp[4]) +
-					(vp[3 + dvp] * dp[5]) +
-					(vp[2 + dvp] * dp[6]) +
-					(vp[1 + dvp] * dp[7]) +
-					(vp[0 + dvp] * dp[8]) +
-					(vp[15 + dvp] * dp[9]) +
-					(vp[14 + dvp] * dp[10]) +
-					(vp[13 + dvp] * dp[11]) +
-					(vp[12 + dvp] * dp[12]) +
-					(vp[11 + dvp] * dp[13]) +
-					(vp[10 + dvp] * dp[14]) +
-					(vp[9 + dvp] * dp[15])
-					) * scalefactor);
 
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
+	// keep the last 15 slots as history for the next batch
+	System.arraycopy(v1, len, v1, 0, HISTORY);
+	System.arraycopy(v2, len, v2, 0, HISTORY);
+	pending = 0;
+	pending_buffer = null;
   }
-  
-  private void compute_pcm_samples9(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[9 + dvp] * dp[0]) +
-					(vp[8 + dvp] * dp[1]) +
-					(vp[7 + dvp] * dp[2]) +
-					(vp[6 + dvp] * dp[3]) +
-					(vp[5 + dvp] * dp[4]) +
-					(vp[4 + dvp] * dp[5]) +
-					(vp[3 + dvp] * dp[6]) +
-					(vp[2 + dvp] * dp[7]) +
-					(vp[1 + dvp] * dp[8]) +
-					(vp[0 + dvp] * dp[9]) +
-					(vp[15 + dvp] * dp[10]) +
-					(vp[14 + dvp] * dp[11]) +
-					(vp[13 + dvp] * dp[12]) +
-					(vp[12 + dvp] * dp[13]) +
-					(vp[11 + dvp] * dp[14]) +
-					(vp[10 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  
-  private void compute_pcm_samples10(Obuffer buffer)
-  {
-	final float[] vp = actual_v;	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[10 + dvp] * dp[0]) +
-					(vp[9 + dvp] * dp[1]) +
-					(vp[8 + dvp] * dp[2]) +
-					(vp[7 + dvp] * dp[3]) +
-					(vp[6 + dvp] * dp[4]) +
-					(vp[5 + dvp] * dp[5]) +
-					(vp[4 + dvp] * dp[6]) +
-					(vp[3 + dvp] * dp[7]) +
-					(vp[2 + dvp] * dp[8]) +
-					(vp[1 + dvp] * dp[9]) +
-					(vp[0 + dvp] * dp[10]) +
-					(vp[15 + dvp] * dp[11]) +
-					(vp[14 + dvp] * dp[12]) +
-					(vp[13 + dvp] * dp[13]) +
-					(vp[12 + dvp] * dp[14]) +
-					(vp[11 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  private void compute_pcm_samples11(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[11 + dvp] * dp[0]) +
-					(vp[10 + dvp] * dp[1]) +
-					(vp[9 + dvp] * dp[2]) +
-					(vp[8 + dvp] * dp[3]) +
-					(vp[7 + dvp] * dp[4]) +
-					(vp[6 + dvp] * dp[5]) +
-					(vp[5 + dvp] * dp[6]) +
-					(vp[4 + dvp] * dp[7]) +
-					(vp[3 + dvp] * dp[8]) +
-					(vp[2 + dvp] * dp[9]) +
-					(vp[1 + dvp] * dp[10]) +
-					(vp[0 + dvp] * dp[11]) +
-					(vp[15 + dvp] * dp[12]) +
-					(vp[14 + dvp] * dp[13]) +
-					(vp[13 + dvp] * dp[14]) +
-					(vp[12 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-    private void compute_pcm_samples12(Obuffer buffer)
-  {
-	final float[] vp = actual_v;	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-			    final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[12 + dvp] * dp[0]) +
-					(vp[11 + dvp] * dp[1]) +
-					(vp[10 + dvp] * dp[2]) +
-					(vp[9 + dvp] * dp[3]) +
-					(vp[8 + dvp] * dp[4]) +
-					(vp[7 + dvp] * dp[5]) +
-					(vp[6 + dvp] * dp[6]) +
-					(vp[5 + dvp] * dp[7]) +
-					(vp[4 + dvp] * dp[8]) +
-					(vp[3 + dvp] * dp[9]) +
-					(vp[2 + dvp] * dp[10]) +
-					(vp[1 + dvp] * dp[11]) +
-					(vp[0 + dvp] * dp[12]) +
-					(vp[15 + dvp] * dp[13]) +
-					(vp[14 + dvp] * dp[14]) +
-					(vp[13 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-	}
-  private void compute_pcm_samples13(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
 
-				pcm_sample = (float)(((vp[13 + dvp] * dp[0]) +
-					(vp[12 + dvp] * dp[1]) +
-					(vp[11 + dvp] * dp[2]) +
-					(vp[10 + dvp] * dp[3]) +
-					(vp[9 + dvp] * dp[4]) +
-					(vp[8 + dvp] * dp[5]) +
-					(vp[7 + dvp] * dp[6]) +
-					(vp[6 + dvp] * dp[7]) +
-					(vp[5 + dvp] * dp[8]) +
-					(vp[4 + dvp] * dp[9]) +
-					(vp[3 + dvp] * dp[10]) +
-					(vp[2 + dvp] * dp[11]) +
-					(vp[1 + dvp] * dp[12]) +
-					(vp[0 + dvp] * dp[13]) +
-					(vp[15 + dvp] * dp[14]) +
-					(vp[14 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  private void compute_pcm_samples14(Obuffer buffer)
-  {
-	final float[] vp = actual_v;
-	
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				final float[] dp = d16[i];
-				float pcm_sample;
-
-				pcm_sample = (float)(((vp[14 + dvp] * dp[0]) +
-					(vp[13 + dvp] * dp[1]) +
-					(vp[12 + dvp] * dp[2]) +
-					(vp[11 + dvp] * dp[3]) +
-					(vp[10 + dvp] * dp[4]) +
-					(vp[9 + dvp] * dp[5]) +
-					(vp[8 + dvp] * dp[6]) +
-					(vp[7 + dvp] * dp[7]) +
-					(vp[6 + dvp] * dp[8]) +
-					(vp[5 + dvp] * dp[9]) +
-					(vp[4 + dvp] * dp[10]) +
-					(vp[3 + dvp] * dp[11]) +
-					(vp[2 + dvp] * dp[12]) +
-					(vp[1 + dvp] * dp[13]) +
-					(vp[0 + dvp] * dp[14]) +
-					(vp[15 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;
-			
-			dvp += 16;
-			} // for
-  }
-  private void compute_pcm_samples15(Obuffer buffer)
+  /**
+   * Accumulates the products of two float runs into <code>out</code>.
+   */
+  private static void mac(float[] out, float[] v, int voffs, float[] d, int doffs, int len)
   {
-	final float[] vp = actual_v;
-		
-	//int inc = v_inc;
-	final float[] tmpOut = _tmpOut;
-	 int dvp =0;
-	
-			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
-			{
-				float pcm_sample;
-				final float dp[] = d16[i];
-				pcm_sample = (float)(((vp[15 + dvp] * dp[0]) +
-					(vp[14 + dvp] * dp[1]) +
-					(vp[13 + dvp] * dp[2]) +
-					(vp[12 + dvp] * dp[3]) +
-					(vp[11 + dvp] * dp[4]) +
-					(vp[10 + dvp] * dp[5]) +
-					(vp[9 + dvp] * dp[6]) +
-					(vp[8 + dvp] * dp[7]) +
-					(vp[7 + dvp] * dp[8]) +
-					(vp[6 + dvp] * dp[9]) +
-					(vp[5 + dvp] * dp[10]) +
-					(vp[4 + dvp] * dp[11]) +
-					(vp[3 + dvp] * dp[12]) +
-					(vp[2 + dvp] * dp[13]) +
-					(vp[1 + dvp] * dp[14]) +
-					(vp[0 + dvp] * dp[15])
-					) * scalefactor);
-
-            tmpOut[i] = pcm_sample;			
-			dvp += 16;
-			} // for
-		}
-	 	 	 	 
-private void compute_pcm_samples(Obuffer buffer)
-{
-	
-	switch (actual_write_pos)
-	{
-	case 0: 
-		compute_pcm_samples0(buffer);
-		break;
-	case 1: 
-		compute_pcm_samples1(buffer);
-		break;
-	case 2: 
-		compute_pcm_samples2(buffer);
-		break;
-	case 3: 
-		compute_pcm_samples3(buffer);
-		break;
-	case 4: 
-		compute_pcm_samples4(buffer);
-		break;
-	case 5: 
-		compute_pcm_samples5(buffer);
-		break;
-	case 6: 
-		compute_pcm_samples6(buffer);
-		break;
-	case 7: 
-		compute_pcm_samples7(buffer);
-		break;
-	case 8: 
-		compute_pcm_samples8(buffer);
-		break;
-	case 9: 
-		compute_pcm_samples9(buffer);
-		break;
-	case 10: 
-		compute_pcm_samples10(buffer);
-		break;
-	case 11: 
-		compute_pcm_samples11(buffer);
-		break;
-	case 12: 
-		compute_pcm_samples12(buffer);
-		break;
-	case 13: 
-		compute_pcm_samples13(buffer);
-		break;
-	case 14: 
-		compute_pcm_samples14(buffer);
-		break;
-	case 15: 
-		compute_pcm_samples15(buffer);
-		break;
-	}
-		
-	if (buffer!=null)
-	{		
-		buffer.appendSamples(channel, _tmpOut);
-	}
-	 
-/*
-	 // MDM: I was considering putting in quality control for
-	 // low-spec CPUs, but the performance gain (about 10-15%) 
-	 // did not justify the considerable drop in audio quality.
-		switch (inc)
-		{
-		case 16:		 
-		    buffer.appendSamples(channel, tmpOut);
-		    break;
-		case 32:
-			for (int i=0; i<16; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-		case 64:
-			for (int i=0; i<8; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-	
-		}
-*/	 
+	for (int i=0; i<len; i++)
+		out[i] += v[voffs + i] * d[doffs + i];
   }
 
   /**
    * Calculate 32 PCM samples and put the into the Obuffer-object.
+   * The samples are windowed in batches of up to BATCH slots, so they
+   * reach the buffer once the batch is full or flush() is called.
    */
 	
   public void calculate_pcm_samples(Obuffer buffer)
   {
 	compute_new_v();	
-	compute_pcm_samples(buffer);
-    
-	actual_write_pos = (actual_write_pos + 1) & 0xf;
-	actual_v = (actual_v == v1) ? v2 : v1;
+	pending_buffer = buffer;
+	if (++pending == BATCH)
+		compute_pcm_samples();
 
 	// initialize samples[]:	
     //for (register float *floatp = samples + 32; floatp > samples; )
@@ -1561,6 +619,16 @@ private void compute_pcm_samples(Obuffer buffer)
 	for (int p=0;p<32;p++) 
 		samples[p] = 0.0f;
   }
+
+  /**
+   * Puts the PCM samples of all pending slots into the Obuffer-object
+   * given to calculate_pcm_samples().
+   */
+  public void flush()
+  {
+	if (pending > 0)
+		compute_pcm_samples();
+  }
   
   
   private static final double MY_PI = 3.14159265358979323846;
@@ -1600,14 +668,19 @@ private void compute_pcm_samples(Obuffer buffer)
   // as in Annex 3-B.3 of the ISO/IEC DIS 11172-3 
   // private float d[] = {0.000000000, -4.000442505};
   
-  private static float d[] = null;
-  
+  /**
+   * Number of slots windowed in one pass, one granule of Layer III.
+   */
+  private static final int BATCH = 18;
+  private static final int BATCH_LEN = BATCH * 32;
+  private static final int HISTORY = 15 * 32;
+
   /** 
-   * d[] split into subarrays of length 16. This provides for
-   * more faster access by allowing a block of 16 to be addressed
-   * with constant offset. 
+   * d[] transposed and repeated for each slot of a batch, so that the
+   * coefficients applied to slot t-j of V are contiguous:
+   * dRep[j * BATCH_LEN + s * 32 + i] holds d[i * 16 + j].
    **/
-  private static float d16[][] = null;	
+  private static float dRep[] = null;	
   
   /**
    * Loads the data for the d[] from the resource SFd.ser. 
@@ -1628,55 +701,25 @@ private void compute_pcm_samples(Obuffer buffer)
 	}
 	
 	/**
-	 * Converts a 1D array into a number of smaller arrays. This is used
-	 * to achieve offset + constant indexing into an array. Each sub-array
-	 * represents a block of values of the original array. 
-	 * @param array			The array to split up into blocks.
-	 * @param blockSize		The size of the blocks to split the array
-	 *						into. This must be an exact divisor of
-	 *						the length of the array, or some data
-	 *						will be lost from the main array.
-	 * 
-	 * @return	An array of arrays in which each element in the returned
-	 *			array will be of length <code>blockSize</code>.
+	 * Transposes the 32 blocks of 16 coefficients in d[] into 16 blocks
+	 * of 32 and repeats each block BATCH times.
+	 * @param array		The 512 values of d[].
+	 * @return	The layout of <code>array</code> used by compute_pcm_samples().
 	 */
-	static private float[][] splitArray(final float[] array, final int blockSize)
+	static private float[] replicate(final float[] array)
 	{
-		int size = array.length / blockSize;
-		float[][] split = new float[size][];
-		for (int i=0; i<size; i++)
+		float[] r = new float[16 * BATCH_LEN];
+		for (int j=0; j<16; j++)
 		{
-			split[i] = subArray(array, i*blockSize, blockSize);
-		}
-		return split;
-	}
-	
-	/**
-	 * Returns a subarray of an existing array.
-	 * 
-	 * @param array	The array to retrieve a subarra from.
-	 * @param offs	The offset in the array that corresponds to
-	 *				the first index of the subarray.
-	 * @param len	The number of indeces in the subarray.
-	 * @return The subarray, which may be of length 0.
-	 */
-	static private float[] subArray(final float[] array, final int offs, int len)
-	{
-		if (offs+len > array.length)
-		{
-			len = array.length-offs;
-		}
-		
-		if (len < 0)
-			len = 0;
-		
-		float[] subarray = new float[len];
-		for (int i=0; i<len; i++)
-		{
-			subarray[i] = array[offs+i];
+			for (int s=0; s<BATCH; s++)
+			{
+				for (int i=0; i<32; i++)
+				{
+					r[j * BATCH_LEN + (s << 5) + i] = array[(i << 4) + j];
+				}
+			}
 		}
-		
-		return subarray;
+		return r;
 	}
 	
 	// The original data for d[]. This data is loaded from a file
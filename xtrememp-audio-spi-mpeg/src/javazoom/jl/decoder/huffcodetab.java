@@ -46,6 +46,12 @@ final class huffcodetab
 {
   private static final int	 MXOFF=250;
   private static final int	 HTN=34;
+  /**
+   * Number of bits decoded by a single lookup. Longer codes go on
+   * in subtables, indexed by the bits that follow.
+   */
+  private static final int	 LOOKUP_BITS=8;
+  private static final int	 MAX_CODE_LENGTH=32;
   
   private char				 tablename0 = ' ';      /* string, containing table_description   */
   private char				 tablename1 = ' ';      /* string, containing table_description   */
@@ -60,6 +66,8 @@ final class huffcodetab
   private int[]   			 hlen=null;             /* pointer to array[xlen][ylen]		      */
   private int[][]			 val=null;		        /* decoder tree		    	              */
   private int 				 treelen;	            /* length of decoder tree  	              */
+  private int[]				 lookup=null;		    /* lookup tables built from the tree      */
+  private int				 lookupbits;	        /* bits of the first lookup	              */
 
   private static int ValTab0[][] = {
 	{0,0}	// dummy
@@ -437,6 +445,87 @@ final class huffcodetab
     hlen = HLEN;
     val = VAL;
     treelen = TREELEN;
+    if (treelen > 0) build_lookup();
+  }
+
+  /**
+   * Builds the lookup tables from the decoder tree.
+   * An entry holds either a code value and its length, or, with the
+   * sign bit set, the offset and the number of bits of a subtable.
+   * The tree is kept for a table that can't be tabulated.
+   */
+  private void build_lookup()
+  {
+	int depth = tree_depth(0, 0);
+	if (depth <= 0) return;
+	lookupbits = Math.min(depth, LOOKUP_BITS);
+	int[] tables = new int[1 << lookupbits];
+	int[] size = {0};
+	tables = fill_lookup(tables, size, 0, lookupbits);
+	if (tables != null) lookup = java.util.Arrays.copyOf(tables, size[0]);
+  }
+
+  /**
+   * Appends the table of the codes following the given node.
+   * @return the tables, grown if needed, or null if the tree is invalid.
+   */
+  private int[] fill_lookup(int[] tables, int[] size, int node, int bits)
+  {
+	int base = size[0];
+	size[0] += 1 << bits;
+	if (size[0] > tables.length) tables = java.util.Arrays.copyOf(tables, Math.max(size[0], tables.length * 2));
+	for (int code = 0; code < (1 << bits); code++)
+	{
+	  int point = node;
+	  int n = 0;
+	  while ((n < bits) && (val[point][0] != 0))
+	  {
+		point = tree_child(point, (code >>> (bits - 1 - n)) & 1);
+		n++;
+	  }
+	  if (val[point][0] == 0)
+	  {
+		tables[base + code] = (val[point][1] << 8) | n;
+	  }
+	  else
+	  {
+		int subbits = Math.min(tree_depth(point, 0), LOOKUP_BITS);
+		if (subbits <= 0) return null;
+		int sub = size[0];
+		tables = fill_lookup(tables, size, point, subbits);
+		if (tables == null) return null;
+		tables[base + code] = 0x80000000 | (sub << 5) | subbits;
+	  }
+	}
+	return tables;
+  }
+
+  /**
+   * Returns the length of the longest code from the given node, or -1
+   * if the tree doesn't end on a value within MAX_CODE_LENGTH bits.
+   */
+  private int tree_depth(int point, int level)
+  {
+	if (val[point][0] == 0) return 0;
+	if (level >= MAX_CODE_LENGTH) return -1;
+	int d0 = tree_depth(tree_child(point, 0), level + 1);
+	int d1 = tree_depth(tree_child(point, 1), level + 1);
+	if ((d0 < 0) || (d1 < 0)) return -1;
+	return 1 + Math.max(d0, d1);
+  }
+
+  /**
+   * Follows one bit down the decoder tree.
+   */
+  private int tree_child(int point, int bit)
+  {
+	if (bit != 0)
+	{
+	  while (val[point][1] >= MXOFF) point += val[point][1];
+	  return point + val[point][1];
+	}
+	while (val[point][0] >= MXOFF) point += val[point][0];
+	return point + val[point][0];
   }
 
   
@@ -452,12 +541,7 @@ final class huffcodetab
 	// 0..31 Huffman code table 0..31
 	// 32,33 count1-tables
 
-	int dmask = 1 << ((4 * 8) - 1);
-	int hs    = 4 * 8;
-  	int level;
-  	int point = 0;
   	int error = 1;
-  	level = dmask;
 
   	if (h.val == null) return 2;
 
@@ -468,45 +552,17 @@ final class huffcodetab
 	   return 0;
      }
 
-     /* Lookup in Huffman table. */
-
-	 /*int bitsAvailable = 0;	 
-	 int bitIndex = 0;
-	 
-	 int bits[] = bitbuf;*/
-   	 do 
-	 {
-	    if (h.val[point][0]==0)
-		{   /*end of tree*/
-		   x[0] = h.val[point][1] >>> 4;
-		   y[0] = h.val[point][1] & 0xf;
-		   error = 0;
-		   break;
- 	    }
-	    
-		// hget1bit() is called thousands of times, and so needs to be
-		// ultra fast. 
-		/*
-		if (bitIndex==bitsAvailable)
-		{
-			bitsAvailable = br.readBits(bits, 32);			
-			bitIndex = 0;
-		}
-		*/
-		//if (bits[bitIndex++]!=0)
-		if (br.hget1bit()!=0)
-		{
-		   while (h.val[point][1] >= MXOFF) point += h.val[point][1];
-		   point += h.val[point][1];
-	    }
-	    else
-		{
-		   while (h.val[point][0] >= MXOFF) point += h.val[point][0];
-		   point += h.val[point][0];
-	    }
-	    level >>>= 1;
-		// MDM: ht[0] is always 0;
-	 } while ((level !=0 )  || (point < 0 /*ht[0].treelen*/) );
+     if (h.lookup != null)
+     {
+	   /* Lookup in Huffman table, LOOKUP_BITS bits at a time. */
+	   lookup_decode(h, x, y, br);
+	   error = 0;
+     }
+     else
+     {
+	   /* Walk the Huffman tree. */
+	   error = tree_decode(h, x, y, br);
+     }
 		
 		// put back any bits not consumed
 	/*	
@@ -555,6 +611,85 @@ final class huffcodetab
   	   return error;
   }
 
+  /**
+   * Reads one code through the lookup tables of a tabulated table.
+   */
+  static void lookup_decode(huffcodetab h, int[] x, int[] y, BitReserve br)
+  {
+	int[] tables = h.lookup;
+	int bits = h.lookupbits;
+	int entry = tables[br.hpeekbits(bits)];
+	while (entry < 0)
+	{
+	  br.hskipbits(bits);
+	  bits = entry & 31;
+	  entry = tables[((entry >>> 5) & 0x3FFFFFF) + br.hpeekbits(bits)];
+	}
+	br.hskipbits(entry & 0xFF);
+	x[0] = entry >>> 12;
+	y[0] = (entry >>> 8) & 0xf;
+  }
+
+  /**
+   * Reads one code walking the decoder tree a bit at a time.
+   * @return 0, or 1 if the bits read don't lead to a value.
+   */
+  static int tree_decode(huffcodetab h, int[] x, int[] y, BitReserve br)
+  {
+	int dmask = 1 << ((4 * 8) - 1);
+  	int level;
+  	int point = 0;
+  	int error = 1;
+  	level = dmask;
+
+	 /*int bitsAvailable = 0;	 
+	 int bitIndex = 0;
+	 
+	 int bits[] = bitbuf;*/
+   	 do 
+	 {
+	    if (h.val[point][0]==0)
+		{   /*end of tree*/
+		   x[0] = h.val[point][1] >>> 4;
+		   y[0] = h.val[point][1] & 0xf;
+		   error = 0;
+		   break;
+ 	    }
+	    
+		// hget1bit() is called thousands of times, and so needs to be
+		// ultra fast. 
+		/*
+		if (bitIndex==bitsAvailable)
+		{
+			bitsAvailable = br.readBits(bits, 32);			
+			bitIndex = 0;
+		}
+		*/
+		//if (bits[bitIndex++]!=0)
+		if (br.hget1bit()!=0)
+		{
+		   while (h.val[point][1] >= MXOFF) point += h.val[point][1];
+		   point += h.val[point][1];
+	    }
+	    else
+		{
+		   while (h.val[point][0] >= MXOFF) point += h.val[point][0];
+		   point += h.val[point][0];
+	    }
+	    level >>>= 1;
+		// MDM: ht[0] is always 0;
+	 } while ((level !=0 )  || (point < 0 /*ht[0].treelen*/) );
+	 return error;
+  }
+
+  /**
+   * Returns true if codes are read through the lookup tables.
+   */
+  boolean is_tabulated()
+  {
+	return lookup != null;
+  }
+
   public static void inithuff()
   {
 	
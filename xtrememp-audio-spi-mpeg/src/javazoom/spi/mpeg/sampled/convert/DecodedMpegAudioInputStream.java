@@ -37,8 +37,10 @@ import javazoom.jl.decoder.DecoderException;
 import javazoom.jl.decoder.Equalizer;
 import javazoom.jl.decoder.Header;
 import javazoom.jl.decoder.Obuffer;
+import javazoom.spi.FrameSeekable;
 import javazoom.spi.PropertiesContainer;
 import javazoom.spi.mpeg.sampled.file.IcyListener;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
 import javazoom.spi.mpeg.sampled.file.tag.TagParseEvent;
 import javazoom.spi.mpeg.sampled.file.tag.TagParseListener;
 
@@ -48,8 +50,14 @@ import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
 /**
  * Main decoder.
  */
-public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInputStream implements PropertiesContainer, TagParseListener
+public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInputStream implements PropertiesContainer, FrameSeekable, TagParseListener
 {
+	/**
+	 * Frames decoded and dropped before the seek target, so that
+	 * the bit reservoir and the synthesis filters are refilled.
+	 */
+	private static final int SEEK_WARMUP_FRAMES = 4;
+
 	private InputStream m_encodedStream;
 	private Bitstream m_bitstream;
 	private Decoder m_decoder;
@@ -68,6 +76,13 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 	private int currentBitrate = -1;
 	// Time info.
 	private long currentMicrosecond = 0;
+	// Seek info, taken from the first frame.
+	private long firstFrameOffset = -1;
+	private int samplesPerFrame = -1;
+	// Exact frame offsets, when an index of the file is available.
+	private volatile MpegFrameIndex seekIndex = null;
+	// Decoded bytes to drop before output, after a seek.
+	private long discardBytes = 0;
 	// Shoutcast stream info
 	private IcyListener shoutlst = null;
 	
@@ -109,6 +124,7 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 		{
 			m_header = m_bitstream.readFrame();
 			if ((m_header != null) && (frameslength == -1) && (byteslength > 0))  frameslength = m_header.max_number_of_frames((int)byteslength);
+			if (m_header != null) initSeekInfo(m_header);
 		}
 		catch (BitstreamException e)
 		{
@@ -184,7 +200,17 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 			m_decoder.setEqualizer(m_equalizer);
 			Obuffer decoderOutput = m_decoder.decodeFrame(header, m_bitstream);
 			m_bitstream.closeFrame();
-			getCircularBuffer().write(m_oBuffer.getBuffer(), 0, m_oBuffer.getCurrentBufferSize());
+			int size = m_oBuffer.getCurrentBufferSize();
+			int offset = 0;
+			if (discardBytes > 0)
+			{
+				offset = (int) Math.min(discardBytes, size);
+				// A Layer III frame entered after a seek has no output until
+				// the bit reservoir is filled, it still counts as a frame.
+				if (size == 0) discardBytes -= Math.min(discardBytes, (long) samplesPerFrame * getFormat().getFrameSize());
+				else discardBytes -= offset;
+			}
+			if (offset < size) getCircularBuffer().write(m_oBuffer.getBuffer(), offset, size - offset);
 			m_oBuffer.reset();
 			if (m_header != null) m_header = null;
 		}
@@ -205,8 +231,32 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 		if (TDebug.TraceAudioConverter) TDebug.out("execute() : end");		
 	}
 
+	/**
+	 * Skip the given number of encoded bytes.
+	 * With a frame index the stream lands exactly on the frame holding
+	 * the target byte, otherwise the frame count is estimated from the
+	 * average frame size.
+	 * @param bytes
+	 * @return bytes length skipped matching to frames skipped.
+	 */
 	public long skip(long bytes)
 	{
+		MpegFrameIndex index = seekIndex;
+		if ((index != null) && (samplesPerFrame > 0))
+		{
+			long before = currentByte;
+			int target = index.getFrameAt(firstFrameOffset + currentByte + bytes);
+			try
+			{
+				if (seekToFrame((long) target * samplesPerFrame) == -1) return -1;
+			}
+			catch (IOException e)
+			{
+				if (TDebug.TraceAudioConverter) TDebug.out(e);
+				return -1;
+			}
+			return currentByte - before;
+		}
 		if ((byteslength > 0) && (frameslength > 0))
 		{
 			float ratio = bytes*1.0f/byteslength*1.0f;
@@ -234,11 +284,9 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 			for (int i=0;i<frames;i++)
 			{
 				Header header = m_bitstream.readFrame();
-				if (header != null)
-				{
-					int fsize = header.calculate_framesize();					
-					bytesReads = bytesReads + fsize;
-				} 
+				if (header == null) break;
+				int fsize = header.calculate_framesize();					
+				bytesReads = bytesReads + fsize;
 				m_bitstream.closeFrame();
 				framesRead++;
 			} 
@@ -252,11 +300,135 @@ public class DecodedMpegAudioInputStream extends TAsynchronousFilteredAudioInput
 		return bytesReads;
 	}
 	
+	/**
+	 * Records what is needed to locate frames from the first frame header.
+	 */
+	private void initSeekInfo(Header header)
+	{
+		firstFrameOffset = m_bitstream.frame_start();
+		samplesPerFrame = header.samples_per_frame();
+	}
+
+	/**
+	 * Sets the frame index of the file being decoded, making seeks exact
+	 * and immediate. An index that does not match the stream is ignored.
+	 * @param index the index, built from the same file.
+	 * @return true if the index is used.
+	 */
+	public boolean setFrameIndex(MpegFrameIndex index)
+	{
+		if ((index == null) || (index.getSamplesPerFrame() != samplesPerFrame)
+			|| (index.getFrameOffset(0) != firstFrameOffset)) return false;
+		frameslength = index.getFrameCount();
+		seekIndex = index;
+		return true;
+	}
+
+	public MpegFrameIndex getFrameIndex()
+	{
+		return seekIndex;
+	}
+
+	/**
+	 * Seek to the given PCM frame.
+	 * With a frame index the stream jumps to the MPEG frame. Without one
+	 * frame headers are read up to it: neither the bitrate of the first
+	 * frame nor a Xing TOC tells which frame an estimated offset lands on,
+	 * and the frame reached has to be known for the PCM to be.
+	 * Seeking backward is not supported.
+	 * @param frame PCM frame to seek to.
+	 * @return PCM frame reached, or -1 if it cannot be reached.
+	 */
+	public long seekToFrame(long frame) throws IOException
+	{
+		if (TDebug.TraceAudioConverter) TDebug.out("seekToFrame(long frame) : begin");
+		if ((frame < 0) || (samplesPerFrame <= 0)) return -1;
+		int frameSize = getFormat().getFrameSize();
+		long targetFrame = frame / samplesPerFrame;
+		// PCM frame of the next byte to be read.
+		long next = currentFrame * samplesPerFrame + (discardBytes - getCircularBuffer().availableRead()) / frameSize;
+		if (frame < next) return -1;
+		// Drop what is already decoded.
+		byte[] scratch = new byte[4096];
+		int available;
+		while ((available = getCircularBuffer().availableRead()) > 0)
+		{
+			getCircularBuffer().read(scratch, 0, Math.min(available, scratch.length));
+		}
+		discardBytes = 0;
+		long startFrame = Math.max(currentFrame, targetFrame - SEEK_WARMUP_FRAMES);
+		try
+		{
+			MpegFrameIndex index = seekIndex;
+			if ((index != null) && (startFrame > currentFrame))
+			{
+				long offset = index.getFrameOffset(startFrame);
+				long position = m_bitstream.position();
+				if (offset > position)
+				{
+					m_bitstream.skipBytes(offset - position);
+					m_header = m_bitstream.readFrame();
+					if (m_header == null)
+					{
+						getCircularBuffer().close();
+						return -1;
+					}
+					currentFrame = index.getFrameAt(m_bitstream.frame_start());
+					currentByte = m_bitstream.frame_start() - firstFrameOffset;
+				}
+			}
+			if (currentFrame < startFrame)
+			{
+				if (m_header != null)
+				{
+					// Already read, it is the first frame skipped.
+					currentByte = currentByte + m_header.calculate_framesize();
+					m_bitstream.closeFrame();
+					m_header = null;
+					currentFrame++;
+				}
+				currentByte = currentByte + skipFrames(startFrame - currentFrame);
+			}
+		}
+		catch (BitstreamException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+		if (currentFrame < startFrame)
+		{
+			// The stream ended before the target.
+			getCircularBuffer().close();
+			return -1;
+		}
+		long reached = Math.max(frame, currentFrame * samplesPerFrame);
+		discardBytes = (reached - currentFrame * samplesPerFrame) * frameSize;
+		currentMicrosecond = (long) (reached * 1000000.0 / getFormat().getSampleRate());
+		if (TDebug.TraceAudioConverter) TDebug.out("seekToFrame(long frame) : end");
+		return reached;
+	}
+
 	private boolean isBigEndian()
 	{
 		return getFormat().isBigEndian();
 	}
 
+	/**
+	 * A frame decoded only to be dropped after a seek leaves nothing
+	 * to read, decoding goes on until some PCM or the end is reached.
+	 */
+	public int read(byte[] abData, int nOffset, int nLength) throws IOException
+	{
+		int read;
+		boolean discarding;
+		do
+		{
+			discarding = discardBytes > 0;
+			read = super.read(abData, nOffset, nLength);
+		}
+		while ((read == 0) && (nLength > 0) && discarding);
+		return read;
+	}
+
 	public void close() throws IOException
 	{
 		super.close();
@@ -0,0 +1,429 @@
+/*
+ *   ParallelMpegDecoder.
+ *
+ *   JavaZOOM : mp3spi@javazoom.net
+ * 				http://www.javazoom.net
+ *
+ *-----------------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *------------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.DecoderException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.Obuffer;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+
+/**
+ * Decodes a whole MPEG audio file on several threads, for offline work
+ * such as analysis or transcoding where the file is read from start to end
+ * as fast as possible.
+ * The file is cut into chunks of frames, decoded each by its own decoder on
+ * a ForkJoinPool, and the PCM of the chunks is read back in order as
+ * 16 bit signed little endian samples, the same bytes the sequential
+ * decoder would give.
+ * A chunk starts decoding ahead of its first frame: from a frame whose
+ * Layer III bit reservoir can be refilled by the frames before it, which
+ * is the frame itself when its main_data_begin is 0, and then through
+ * WARMUP_FRAMES frames whose output is dropped, so that the overlap of
+ * the hybrid filterbank and the history of the synthesis filters are
+ * rebuilt.
+ */
+public class ParallelMpegDecoder
+{
+	public static final int DEFAULT_CHUNK_FRAMES = 128;
+	/**
+	 * Frames decoded and dropped before the first frame of a chunk, so that
+	 * the overlap of the IMDCT and the 15 slots of synthesis history are
+	 * rebuilt: a Layer I frame has 12 slots only, and an MPEG-2 Layer III
+	 * frame a single granule.
+	 */
+	private static final int WARMUP_FRAMES = 2;
+
+	private final File file;
+	private final MpegFrameIndex index;
+	private final ForkJoinPool pool;
+	private final AudioFormat format;
+	private final int channels;
+	private final int chunkFrames;
+	private final int chunkCount;
+	// First frame decoded by each chunk, warm-up included.
+	private final int[] starts;
+
+	/**
+	 * Creates a decoder with chunks of DEFAULT_CHUNK_FRAMES frames.
+	 * @param file an MPEG audio file.
+	 * @param index the frame index of the file.
+	 * @param pool the pool decoding the chunks.
+	 * @throws IOException if the file can't be read or isn't MPEG audio.
+	 */
+	public ParallelMpegDecoder(File file, MpegFrameIndex index, ForkJoinPool pool) throws IOException
+	{
+		this(file, index, pool, DEFAULT_CHUNK_FRAMES);
+	}
+
+	/**
+	 * @param file an MPEG audio file.
+	 * @param index the frame index of the file.
+	 * @param pool the pool decoding the chunks.
+	 * @param chunkFrames the number of frames of each chunk, more than WARMUP_FRAMES.
+	 * @throws IOException if the file can't be read or isn't MPEG audio.
+	 */
+	public ParallelMpegDecoder(File file, MpegFrameIndex index, ForkJoinPool pool, int chunkFrames) throws IOException
+	{
+		if (chunkFrames <= WARMUP_FRAMES) throw new IllegalArgumentException("chunkFrames: " + chunkFrames);
+		if (!index.matches(file)) throw new IOException("Stale frame index: " + file);
+		this.file = file;
+		this.index = index;
+		this.pool = pool;
+		this.chunkFrames = chunkFrames;
+		int frameCount = index.getFrameCount();
+		chunkCount = (frameCount + chunkFrames - 1) / chunkFrames;
+		starts = new int[chunkCount];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			int header = readInt(raf, index.getFrameOffset(0));
+			if ((header & 0xFFE00000) != 0xFFE00000) throw new IOException("Not an MPEG audio frame: " + file);
+			channels = (((header >>> 6) & 3) == 3) ? 1 : 2;
+			for (int c = 1; c < chunkCount; c++)
+			{
+				starts[c] = findStart(raf, c * chunkFrames - WARMUP_FRAMES);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+		float sampleRate = index.getSampleRate();
+		format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, 16, channels, channels * 2, sampleRate, false);
+	}
+
+	/**
+	 * Returns the format of the decoded stream.
+	 */
+	public AudioFormat getFormat()
+	{
+		return format;
+	}
+
+	public int getChunkCount()
+	{
+		return chunkCount;
+	}
+
+	/**
+	 * Starts decoding and returns the decoded stream. Up to twice as many
+	 * chunks as the pool has threads are decoded ahead of the reader;
+	 * closing the stream cancels them.
+	 */
+	public AudioInputStream getAudioInputStream()
+	{
+		return new AudioInputStream(new ChunkInputStream(), format, AudioSystem.NOT_SPECIFIED);
+	}
+
+	/**
+	 * Returns the first frame to decode so that the given frame gets all
+	 * the main data it refers to: the frame itself for Layer I and II and
+	 * for Layer III frames with a main_data_begin of 0, else the frames
+	 * before it whose main data covers main_data_begin.
+	 */
+	private int findStart(RandomAccessFile raf, int frame) throws IOException
+	{
+		long offset = index.getFrameOffset(frame);
+		int header = readInt(raf, offset);
+		if (((header >>> 17) & 3) != 1) return frame;
+		boolean mpeg1 = ((header >>> 19) & 3) == 3;
+		raf.seek(offset + (((header & 0x10000) == 0) ? 6 : 4));
+		int mainDataBegin = mpeg1 ? (raf.readUnsignedShort() >>> 7) : raf.readUnsignedByte();
+		int start = frame;
+		while ((mainDataBegin > 0) && (start > 0))
+		{
+			start--;
+			mainDataBegin -= mainDataSize(raf, start);
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the number of bytes of main data of a Layer III frame, what
+	 * follows its side information.
+	 */
+	private int mainDataSize(RandomAccessFile raf, int frame) throws IOException
+	{
+		long offset = index.getFrameOffset(frame);
+		int header = readInt(raf, offset);
+		boolean mpeg1 = ((header >>> 19) & 3) == 3;
+		boolean mono = ((header >>> 6) & 3) == 3;
+		int sideInfo = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+		int crc = ((header & 0x10000) == 0) ? 2 : 0;
+		return (int) (index.getFrameOffset(frame + 1) - offset) - 4 - crc - sideInfo;
+	}
+
+	private static int readInt(RandomAccessFile raf, long offset) throws IOException
+	{
+		raf.seek(offset);
+		return raf.readInt();
+	}
+
+	/**
+	 * Decodes a chunk and returns its PCM.
+	 */
+	private byte[] decodeChunk(int chunk) throws IOException
+	{
+		int first = chunk * chunkFrames;
+		int end = Math.min(first + chunkFrames, index.getFrameCount());
+		int start = starts[chunk];
+		// The first chunk reads the stream from the start, as the sequential
+		// decoder does. One more frame is read so that the bitstream finds
+		// the header following the last frame.
+		long from = (chunk == 0) ? 0 : index.getFrameOffset(start);
+		long to = (end + 1 < index.getFrameCount()) ? index.getFrameOffset(end + 1) : file.length();
+		byte[] data = new byte[(int) (to - from)];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			raf.seek(from);
+			raf.readFully(data);
+		}
+		finally
+		{
+			raf.close();
+		}
+		Bitstream bitstream = new Bitstream(new ByteArrayInputStream(data));
+		Decoder decoder = new Decoder(null);
+		ChunkObuffer output = new ChunkObuffer(channels, (end - first) * index.getSamplesPerFrame() * channels * 2);
+		decoder.setOutputBuffer(output);
+		try
+		{
+			for (int frame = start; frame < end; frame++)
+			{
+				if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+				Header header = bitstream.readFrame();
+				if (header == null) break;
+				try
+				{
+					decoder.decodeFrame(header, bitstream);
+				}
+				catch (DecoderException e)
+				{
+					// As in the sequential decoder, the samples of the
+					// frame are left to go out with the next one.
+					continue;
+				}
+				bitstream.closeFrame();
+				output.commit(frame >= first);
+			}
+		}
+		catch (BitstreamException e)
+		{
+			// Ends the chunk, its frames are truncated.
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Reads the chunks in order, keeping the next ones decoding.
+	 */
+	private class ChunkInputStream extends InputStream
+	{
+		private final ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<ForkJoinTask<byte[]>>();
+		private final int ahead = Math.max(2, pool.getParallelism() * 2);
+		private int nextChunk = 0;
+		private byte[] current = new byte[0];
+		private int position = 0;
+		private boolean closed = false;
+
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (closed) throw new IOException("Stream closed");
+			if (len == 0) return 0;
+			while (position == current.length)
+			{
+				if (!nextChunk()) return -1;
+			}
+			int n = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		public int available()
+		{
+			return current.length - position;
+		}
+
+		public void close()
+		{
+			closed = true;
+			for (ForkJoinTask<byte[]> task : pending)
+			{
+				task.cancel(true);
+			}
+			pending.clear();
+		}
+
+		private boolean nextChunk() throws IOException
+		{
+			try
+			{
+				while ((pending.size() < ahead) && (nextChunk < chunkCount))
+				{
+					final int chunk = nextChunk++;
+					pending.add(pool.submit(new Callable<byte[]>()
+					{
+						public byte[] call() throws IOException
+						{
+							return decodeChunk(chunk);
+						}
+					}));
+				}
+			}
+			catch (RejectedExecutionException e)
+			{
+				close();
+				throw new IOException("Decoder pool shut down", e);
+			}
+			ForkJoinTask<byte[]> task = pending.poll();
+			if (task == null) return false;
+			try
+			{
+				current = task.get();
+			}
+			catch (InterruptedException e)
+			{
+				close();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			catch (CancellationException e)
+			{
+				throw new InterruptedIOException();
+			}
+			catch (ExecutionException e)
+			{
+				close();
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) throw (IOException) cause;
+				throw new IOException(cause);
+			}
+			position = 0;
+			return true;
+		}
+	}
+
+	/**
+	 * Collects the PCM of a chunk in the layout of the DMAISObuffer of
+	 * DecodedMpegAudioInputStream, little endian.
+	 */
+	private static class ChunkObuffer extends Obuffer
+	{
+		private final int m_nChannels;
+		private final byte[] m_abBuffer;
+		private final int[] m_anBufferPointers;
+		private byte[] pcm;
+		private int length = 0;
+
+		public ChunkObuffer(int nChannels, int capacity)
+		{
+			m_nChannels = nChannels;
+			m_abBuffer = new byte[OBUFFERSIZE * nChannels];
+			m_anBufferPointers = new int[nChannels];
+			pcm = new byte[capacity];
+			reset();
+		}
+
+		public void append(int nChannel, short sValue)
+		{
+			m_abBuffer[m_anBufferPointers[nChannel]] = (byte) (sValue & 0xFF);
+			m_abBuffer[m_anBufferPointers[nChannel] + 1] = (byte) ((sValue >>> 8) & 0xFF);
+			m_anBufferPointers[nChannel] += m_nChannels * 2;
+		}
+
+		/**
+		 * Ends a frame, keeping or dropping its samples.
+		 */
+		public void commit(boolean keep)
+		{
+			if (keep)
+			{
+				int size = m_anBufferPointers[0];
+				if (length + size > pcm.length) pcm = Arrays.copyOf(pcm, Math.max(length + size, pcm.length * 2));
+				System.arraycopy(m_abBuffer, 0, pcm, length, size);
+				length += size;
+			}
+			reset();
+		}
+
+		public byte[] toByteArray()
+		{
+			return (length == pcm.length) ? pcm : Arrays.copyOf(pcm, length);
+		}
+
+		public void set_stop_flag()
+		{
+		}
+
+		public void close()
+		{
+		}
+
+		public void write_buffer(int nValue)
+		{
+		}
+
+		public void clear_buffer()
+		{
+		}
+
+		private void reset()
+		{
+			for (int i = 0; i < m_nChannels; i++)
+			{
+				m_anBufferPointers[i] = i * 2;
+			}
+		}
+	}
+}
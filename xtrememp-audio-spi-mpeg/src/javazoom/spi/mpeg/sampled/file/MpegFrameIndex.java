@@ -0,0 +1,400 @@
+/*
+ * MpegFrameIndex.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+/**
+ * Offsets of the MPEG audio frames of a file, so that a stream can be
+ * positioned on any frame at once, CBR or VBR.
+ * The index is built by a scan that reads the frame headers only and
+ * skips the frame bodies, and is saved as the sequence of frame sizes,
+ * each stored as a variable length delta of one or two bytes.
+ */
+public class MpegFrameIndex
+{
+	private static final int MAGIC = 0x4D504958; // "MPIX"
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 65536;
+	/**
+	 * Sync, version, layer and sampling frequency, which stay the same
+	 * for all the frames of a stream.
+	 */
+	private static final int HEADER_MASK = 0xFFFE0C00;
+	private static final int[][] BITRATES =
+	{
+		// MPEG-1 Layer I, II, III
+		{0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448, -1},
+		{0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384, -1},
+		{0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, -1},
+		// MPEG-2 and MPEG-2.5 Layer I, II and III
+		{0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256, -1},
+		{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, -1},
+	};
+	private static final int[][] FREQUENCIES =
+	{
+		{11025, 12000, 8000},	// MPEG-2.5
+		null,
+		{22050, 24000, 16000},	// MPEG-2
+		{44100, 48000, 32000},	// MPEG-1
+	};
+
+	private final long sourceLength;
+	private final long sourceModified;
+	private final int sampleRate;
+	private final int samplesPerFrame;
+	private final int frameCount;
+	// Frame offsets, followed by the end of the last frame.
+	private final int[] offsets;
+
+	private MpegFrameIndex(long sourceLength, long sourceModified, int sampleRate, int samplesPerFrame, int[] offsets, int frameCount)
+	{
+		this.sourceLength = sourceLength;
+		this.sourceModified = sourceModified;
+		this.sampleRate = sampleRate;
+		this.samplesPerFrame = samplesPerFrame;
+		this.offsets = offsets;
+		this.frameCount = frameCount;
+	}
+
+	/**
+	 * Builds the index of a file by reading its frame headers.
+	 * @param file an MPEG audio file.
+	 * @return the index, or null if no frame was found or the stream
+	 * is free format.
+	 * @throws InterruptedIOException if the thread is interrupted.
+	 */
+	public static MpegFrameIndex scan(File file) throws IOException
+	{
+		long length = file.length();
+		long modified = file.lastModified();
+		if (length > Integer.MAX_VALUE) return null;
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try
+		{
+			long position = skipID3v2(in);
+			int[] offsets = new int[4096];
+			int count = 0;
+			int first = 0;
+			int header = 0;
+			int valid = 0;
+			while (true)
+			{
+				if (valid < 4)
+				{
+					int b = in.read();
+					if (b == -1) break;
+					header = (header << 8) | b;
+					position++;
+					valid++;
+					continue;
+				}
+				int frameSize = frameSize(header);
+				long start = position - 4;
+				boolean sync = (frameSize > 0) && (start + frameSize <= length)
+					&& ((first == 0) || ((header & HEADER_MASK) == (first & HEADER_MASK)));
+				if (sync && (first == 0))
+				{
+					// Locks on a header followed by a matching one.
+					in.mark(frameSize + 4);
+					long skipped = skipFully(in, frameSize - 4);
+					long next = readInt(in);
+					in.reset();
+					sync = (skipped == frameSize - 4)
+						&& ((next == -1) || ((frameSize((int) next) > 0) && (((int) next & HEADER_MASK) == (header & HEADER_MASK))));
+					if (sync) first = header;
+				}
+				if (!sync)
+				{
+					// Resync one byte further.
+					valid = 3;
+					continue;
+				}
+				if (count + 1 >= offsets.length)
+				{
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				if (((count & 4095) == 0) && Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+				offsets[count++] = (int) start;
+				offsets[count] = (int) (start + frameSize);
+				position += skipFully(in, frameSize - 4);
+				valid = 0;
+			}
+			if (count == 0) return null;
+			return new MpegFrameIndex(length, modified, frequency(first), samplesPerFrame(first),
+					Arrays.copyOf(offsets, count + 1), count);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads an index saved by {@link #save(File)}.
+	 * @param indexFile the saved index.
+	 * @param source the file it indexes.
+	 * @return the index, or null if it is missing or the source changed.
+	 */
+	public static MpegFrameIndex load(File indexFile, File source) throws IOException
+	{
+		if (!indexFile.isFile()) return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE));
+		try
+		{
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) return null;
+			long length = in.readLong();
+			long modified = in.readLong();
+			if ((length != source.length()) || (modified != source.lastModified())) return null;
+			int sampleRate = in.readInt();
+			int samplesPerFrame = in.readInt();
+			int count = in.readInt();
+			if ((count <= 0) || (count > length / 4)) return null;
+			int[] offsets = new int[count + 1];
+			offsets[0] = in.readInt();
+			for (int i = 1; i <= count; i++)
+			{
+				offsets[i] = offsets[i - 1] + readVarInt(in);
+			}
+			return new MpegFrameIndex(length, modified, sampleRate, samplesPerFrame, offsets, count);
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves the index, as a temporary file renamed once complete.
+	 * @param indexFile the file to save to.
+	 */
+	public void save(File indexFile) throws IOException
+	{
+		File temp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sourceLength);
+			out.writeLong(sourceModified);
+			out.writeInt(sampleRate);
+			out.writeInt(samplesPerFrame);
+			out.writeInt(frameCount);
+			out.writeInt(offsets[0]);
+			for (int i = 1; i <= frameCount; i++)
+			{
+				writeVarInt(out, offsets[i] - offsets[i - 1]);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		indexFile.delete();
+		if (!temp.renameTo(indexFile))
+		{
+			temp.delete();
+			throw new IOException("Cannot rename " + temp);
+		}
+	}
+
+	/**
+	 * Returns true if the index was built from the given file as it is now.
+	 */
+	public boolean matches(File source)
+	{
+		return (sourceLength == source.length()) && (sourceModified == source.lastModified());
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public int getSampleRate()
+	{
+		return sampleRate;
+	}
+
+	public int getSamplesPerFrame()
+	{
+		return samplesPerFrame;
+	}
+
+	/**
+	 * Returns the number of PCM frames (samples) of the stream.
+	 */
+	public long getSampleCount()
+	{
+		return (long) frameCount * samplesPerFrame;
+	}
+
+	/**
+	 * Returns the offset in the file of the given MPEG frame. Frames past
+	 * the last one are located at the end of the last one.
+	 */
+	public long getFrameOffset(long frame)
+	{
+		if (frame <= 0) return offsets[0];
+		return offsets[(int) Math.min(frame, frameCount)];
+	}
+
+	/**
+	 * Returns the index of the MPEG frame holding the given file offset,
+	 * 0 before the first frame and the frame count past the last one.
+	 */
+	public int getFrameAt(long offset)
+	{
+		if (offset < offsets[0]) return 0;
+		if (offset >= offsets[frameCount]) return frameCount;
+		int i = Arrays.binarySearch(offsets, 0, frameCount, (int) offset);
+		return (i >= 0) ? i : -i - 2;
+	}
+
+	/**
+	 * Returns the size in bytes of the frame starting with the given
+	 * header, or -1 if it is not a valid header.
+	 */
+	private static int frameSize(int header)
+	{
+		if ((header & 0xFFE00000) != 0xFFE00000) return -1;
+		int version = (header >>> 19) & 3;
+		int layer = 4 - ((header >>> 17) & 3);
+		int bitrateIndex = (header >>> 12) & 15;
+		int frequencyIndex = (header >>> 10) & 3;
+		int padding = (header >>> 9) & 1;
+		if ((version == 1) || (layer == 4) || (frequencyIndex == 3)) return -1;
+		int bitrate = BITRATES[(version == 3) ? layer - 1 : ((layer == 1) ? 3 : 4)][bitrateIndex];
+		// Free format frames have no size in their header.
+		if (bitrate <= 0) return -1;
+		int frequency = FREQUENCIES[version][frequencyIndex];
+		if (layer == 1) return (12000 * bitrate / frequency + padding) * 4;
+		if ((layer == 3) && (version != 3)) return 72000 * bitrate / frequency + padding;
+		return 144000 * bitrate / frequency + padding;
+	}
+
+	private static int frequency(int header)
+	{
+		return FREQUENCIES[(header >>> 19) & 3][(header >>> 10) & 3];
+	}
+
+	private static int samplesPerFrame(int header)
+	{
+		int layer = 4 - ((header >>> 17) & 3);
+		if (layer == 1) return 384;
+		if ((layer == 3) && (((header >>> 19) & 3) != 3)) return 576;
+		return 1152;
+	}
+
+	/**
+	 * Skips an ID3v2 tag at the start of the stream.
+	 * @return the number of bytes skipped.
+	 */
+	private static long skipID3v2(InputStream in) throws IOException
+	{
+		byte[] tag = new byte[10];
+		in.mark(tag.length);
+		int read = 0;
+		int n;
+		while ((read < tag.length) && ((n = in.read(tag, read, tag.length - read)) != -1)) read += n;
+		if ((read < tag.length) || (tag[0] != 'I') || (tag[1] != 'D') || (tag[2] != '3'))
+		{
+			in.reset();
+			return 0;
+		}
+		int size = ((tag[6] & 0x7F) << 21) | ((tag[7] & 0x7F) << 14) | ((tag[8] & 0x7F) << 7) | (tag[9] & 0x7F);
+		// Footer present.
+		if ((tag[5] & 0x10) != 0) size += 10;
+		return tag.length + skipFully(in, size);
+	}
+
+	private static long skipFully(InputStream in, long n) throws IOException
+	{
+		long skipped = 0;
+		while (skipped < n)
+		{
+			long s = in.skip(n - skipped);
+			if (s <= 0)
+			{
+				if (in.read() == -1) break;
+				s = 1;
+			}
+			skipped += s;
+		}
+		return skipped;
+	}
+
+	/**
+	 * Reads a big endian int, or returns -1 at the end of the stream.
+	 */
+	private static long readInt(InputStream in) throws IOException
+	{
+		long value = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			int b = in.read();
+			if (b == -1) return -1;
+			value = (value << 8) | b;
+		}
+		return value;
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed index");
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * BitReserveTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the byte-packed bit reservoir against the former implementation,
+ * which stored one bit per int and read them one at a time.
+ */
+public class BitReserveTest
+{
+	private static final int BUFSIZE = 4096 * 8;
+
+	@Test
+	public void everyOffsetAndWidthMatches()
+	{
+		Random random = new Random(1L);
+		BitReserve packed = new BitReserve();
+		ReferenceBitReserve reference = new ReferenceBitReserve();
+		// Three rounds, each ending the writes at another byte, so that
+		// reads cross the end of the buffer over fresh and stale data.
+		for (int round = 0; round < 3; round++)
+		{
+			for (int i = 0; i < BUFSIZE / 8 + 3 * round + 1; i++) put(random.nextInt(256), packed, reference);
+			for (int offset = 0; offset < BUFSIZE; offset++)
+			{
+				String at = "round " + round + ", offset " + offset;
+				for (int n = 0; n <= 32; n++)
+				{
+					assertEquals(at + ", peek " + n, reference.hpeekbits(n), packed.hpeekbits(n));
+					assertEquals(at + ", get " + n, reference.hgetbits(n), packed.hgetbits(n));
+					assertEquals(at, reference.hsstell(), packed.hsstell());
+					packed.rewindNbits(n);
+					reference.rewindNbits(n);
+				}
+				assertEquals(at + ", bit", reference.hget1bit() != 0 ? 1 : 0, packed.hget1bit());
+				assertEquals(at, reference.hsstell(), packed.hsstell());
+			}
+		}
+	}
+
+	@Test
+	public void randomOperationsMatch()
+	{
+		Random random = new Random(2L);
+		BitReserve packed = new BitReserve();
+		ReferenceBitReserve reference = new ReferenceBitReserve();
+		for (int i = 0; i < 1000000; i++)
+		{
+			String at = "operation " + i;
+			int n;
+			switch (random.nextInt(7))
+			{
+			case 0:
+				for (n = random.nextInt(64); n > 0; n--) put(random.nextInt(256), packed, reference);
+				break;
+			case 1:
+				// Longer than 32 bits, as when stuffing bits are skipped.
+				n = random.nextInt(48);
+				assertEquals(at, reference.hgetbits(n), packed.hgetbits(n));
+				break;
+			case 2:
+				n = random.nextInt(33);
+				assertEquals(at, reference.hpeekbits(n), packed.hpeekbits(n));
+				break;
+			case 3:
+				n = random.nextInt(64);
+				reference.hskipbits(n);
+				packed.hskipbits(n);
+				break;
+			case 4:
+				assertEquals(at, reference.hget1bit() != 0 ? 1 : 0, packed.hget1bit());
+				break;
+			case 5:
+				n = random.nextInt(64);
+				reference.rewindNbits(n);
+				packed.rewindNbits(n);
+				break;
+			default:
+				n = random.nextInt(8);
+				reference.rewindNbytes(n);
+				packed.rewindNbytes(n);
+				break;
+			}
+			assertEquals(at, reference.hsstell(), packed.hsstell());
+		}
+	}
+
+	private static void put(int value, BitReserve packed, ReferenceBitReserve reference)
+	{
+		packed.hputbuf(value);
+		reference.hputbuf(value);
+	}
+
+	/**
+	 * The former BitReserve, storing each bit as an int.
+	 */
+	private static final class ReferenceBitReserve
+	{
+		private static final int BUFSIZE_MASK = BUFSIZE - 1;
+		private int offset, totbit, buf_byte_idx;
+		private final int[] buf = new int[BUFSIZE];
+
+		int hsstell()
+		{
+			return totbit;
+		}
+
+		int hgetbits(int N)
+		{
+			totbit += N;
+			int val = 0;
+			int pos = buf_byte_idx;
+			while (N-- > 0)
+			{
+				val <<= 1;
+				val |= ((buf[pos] != 0) ? 1 : 0);
+				pos = (pos + 1) & BUFSIZE_MASK;
+			}
+			buf_byte_idx = pos;
+			return val;
+		}
+
+		int hpeekbits(int N)
+		{
+			int val = 0;
+			int pos = buf_byte_idx;
+			while (N-- > 0)
+			{
+				val <<= 1;
+				val |= ((buf[pos] != 0) ? 1 : 0);
+				pos = (pos + 1) & BUFSIZE_MASK;
+			}
+			return val;
+		}
+
+		void hskipbits(int N)
+		{
+			totbit += N;
+			buf_byte_idx = (buf_byte_idx + N) & BUFSIZE_MASK;
+		}
+
+		int hget1bit()
+		{
+			totbit++;
+			int val = buf[buf_byte_idx];
+			buf_byte_idx = (buf_byte_idx + 1) & BUFSIZE_MASK;
+			return val;
+		}
+
+		void hputbuf(int val)
+		{
+			int ofs = offset;
+			for (int mask = 0x80; mask != 0; mask >>>= 1) buf[ofs++] = val & mask;
+			offset = (ofs == BUFSIZE) ? 0 : ofs;
+		}
+
+		void rewindNbits(int N)
+		{
+			totbit -= N;
+			buf_byte_idx -= N;
+			if (buf_byte_idx < 0) buf_byte_idx += BUFSIZE;
+		}
+
+		void rewindNbytes(int N)
+		{
+			rewindNbits(N << 3);
+		}
+	}
+}
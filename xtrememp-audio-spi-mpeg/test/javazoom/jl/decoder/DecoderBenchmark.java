@@ -0,0 +1,99 @@
+/*
+ * DecoderBenchmark.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to decode one frame of a synthetic Layer I or Layer III stream,
+ * from the frame header to the PCM samples, with the whole stream in
+ * memory. The Layer III stream covers every Huffman table, block type and
+ * stereo mode, so it weighs the Huffman decoding, the bit reservoir, the
+ * hybrid filter bank and the synthesis filter together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DecoderBenchmark
+{
+	private static final int FRAMES = 2000;
+
+	@Param({"1", "3"})
+	public int layer;
+
+	private byte[] stream;
+	private Bitstream bitstream;
+	private Decoder decoder;
+
+	@Setup
+	public void createDecoder()
+	{
+		stream = (layer == 1) ? MpegTestStreams.layer1(FRAMES, 1L) : MpegTestStreams.layer3(FRAMES, 1L, false, false);
+		bitstream = new Bitstream(new ByteArrayInputStream(stream));
+		decoder = new Decoder();
+	}
+
+	@Benchmark
+	public Obuffer decodeFrame() throws Exception
+	{
+		Header header = bitstream.readFrame();
+		if (header == null)
+		{
+			// Played through, start over. The decoder keeps the bitstream it
+			// was first given, so it is replaced as well.
+			bitstream.close();
+			bitstream = new Bitstream(new ByteArrayInputStream(stream));
+			decoder = new Decoder();
+			header = bitstream.readFrame();
+		}
+		Obuffer output = decoder.decodeFrame(header, bitstream);
+		bitstream.closeFrame();
+		return output;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(DecoderBenchmark.class.getSimpleName()).build()).run();
+	}
+}
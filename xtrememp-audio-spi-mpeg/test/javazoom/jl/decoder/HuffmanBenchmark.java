@@ -0,0 +1,99 @@
+/*
+ * HuffmanBenchmark.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to read one Huffman code from random bits, through the lookup
+ * tables and walking the decoder tree, for a small, a large and an
+ * escape table and a quadruples table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HuffmanBenchmark
+{
+	private static final int CODES = 1024;
+	/** The whole reservoir, which is read round and round. */
+	private static final int BYTES = 4096;
+
+	@Param({"1", "13", "24", "32"})
+	public int table;
+
+	private huffcodetab h;
+	private final BitReserve br = new BitReserve();
+	private final int[] x = new int[1];
+	private final int[] y = new int[1];
+
+	@Setup
+	public void initTables()
+	{
+		huffcodetab.inithuff();
+		h = huffcodetab.ht[table];
+		byte[] data = new byte[BYTES];
+		new Random(1L).nextBytes(data);
+		for (int i = 0; i < BYTES; i++) br.hputbuf(data[i]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CODES)
+	public int lookup()
+	{
+		for (int i = 0; i < CODES; i++) huffcodetab.lookup_decode(h, x, y, br);
+		return x[0] + y[0];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CODES)
+	public int tree()
+	{
+		for (int i = 0; i < CODES; i++) huffcodetab.tree_decode(h, x, y, br);
+		return x[0] + y[0];
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(HuffmanBenchmark.class.getSimpleName()).build()).run();
+	}
+}
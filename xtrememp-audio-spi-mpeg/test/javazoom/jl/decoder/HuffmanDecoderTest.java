@@ -0,0 +1,102 @@
+/*
+ * HuffmanDecoderTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the Huffman lookup tables against the decoder tree they are
+ * built from, for every code of every Layer III table.
+ */
+public class HuffmanDecoderTest
+{
+	/** Every code is a prefix of this many bits, 19 is the longest. */
+	private static final int CODE_BITS = 19;
+	/** Codes tried per fill of the reservoir, 4 bytes each. */
+	private static final int SEGMENTS = 1024;
+
+	@BeforeClass
+	public static void initTables()
+	{
+		huffcodetab.inithuff();
+	}
+
+	@Test
+	public void everyTableWithCodesIsTabulated()
+	{
+		for (int t = 0; t < huffcodetab.ht.length; t++)
+		{
+			// Tables 0, 4 and 14 have no codes.
+			boolean codes = (t != 0) && (t != 4) && (t != 14);
+			assertEquals("table " + t, codes, huffcodetab.ht[t].is_tabulated());
+		}
+	}
+
+	@Test
+	public void lookupMatchesTreeWalkForEveryCode()
+	{
+		Random random = new Random(1L);
+		int[] x = new int[1], y = new int[1], tx = new int[1], ty = new int[1];
+		for (int t = 0; t < huffcodetab.ht.length; t++)
+		{
+			huffcodetab h = huffcodetab.ht[t];
+			if (!h.is_tabulated()) continue;
+			BitReserve lookup = new BitReserve();
+			BitReserve tree = new BitReserve();
+			// Every combination of the first CODE_BITS bits, followed by random bits.
+			for (int base = 0; base < (1 << CODE_BITS); base += SEGMENTS)
+			{
+				for (int i = 0; i < SEGMENTS; i++)
+				{
+					int word = ((base + i) << (32 - CODE_BITS)) | random.nextInt(1 << (32 - CODE_BITS));
+					for (int shift = 24; shift >= 0; shift -= 8)
+					{
+						lookup.hputbuf(word >>> shift & 0xFF);
+						tree.hputbuf(word >>> shift & 0xFF);
+					}
+				}
+				for (int i = 0; i < SEGMENTS; i++)
+				{
+					int start = tree.hsstell();
+					assertEquals(0, huffcodetab.tree_decode(h, tx, ty, tree));
+					huffcodetab.lookup_decode(h, x, y, lookup);
+					int length = tree.hsstell() - start;
+					String code = "table " + t + ", code " + Integer.toBinaryString(base + i);
+					assertEquals(code, tx[0], x[0]);
+					assertEquals(code, ty[0], y[0]);
+					assertEquals(code, tree.hsstell(), lookup.hsstell());
+					assertTrue(code, length > 0 && length <= CODE_BITS);
+					tree.hskipbits(32 - length);
+					lookup.hskipbits(32 - length);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * SynthesisBenchmark.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time for the polyphase synthesis filter to turn one slot of 32 subband
+ * samples into 32 PCM samples, flushed after a Layer I frame (12 slots)
+ * or a Layer III granule (18 slots).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SynthesisBenchmark
+{
+	private static final int SLOTS = 36;
+
+	@Param({"12", "18"})
+	public int slotsPerFlush;
+
+	private SynthesisFilter filter;
+	private final float[][] samples = new float[SLOTS][32];
+	private final SinkBuffer buffer = new SinkBuffer();
+
+	@Setup
+	public void createFilter()
+	{
+		filter = new SynthesisFilter(0, 32768.0f, null);
+		Random random = new Random(1L);
+		for (int t = 0; t < SLOTS; t++)
+		{
+			for (int sb = 0; sb < 32; sb++) samples[t][sb] = random.nextFloat() * 2f - 1f;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SLOTS)
+	public float synthesize()
+	{
+		for (int t = 0; t < SLOTS; t++)
+		{
+			filter.input_samples(samples[t]);
+			filter.calculate_pcm_samples(buffer);
+			if ((t + 1) % slotsPerFlush == 0) filter.flush();
+		}
+		filter.flush();
+		return buffer.sum;
+	}
+
+	/**
+	 * Keeps the output alive without converting it.
+	 */
+	private static final class SinkBuffer extends Obuffer
+	{
+		float sum;
+
+		public void append(int channel, short value)
+		{
+		}
+
+		public void appendSamples(int channel, float[] f)
+		{
+			sum += f[0] + f[31];
+		}
+
+		public void write_buffer(int val)
+		{
+		}
+
+		public void close()
+		{
+		}
+
+		public void clear_buffer()
+		{
+		}
+
+		public void set_stop_flag()
+		{
+		}
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(SynthesisBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * SynthesisFilterTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.jl.decoder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * Checks the batched polyphase synthesis filter against the former filter,
+ * which windowed every slot as soon as it was computed through sixteen
+ * unrolled variants. The checksums of the float output were taken from
+ * that filter, so the output must be bit-identical however the slots are
+ * batched: one at a time, a Layer I or II frame, a Layer III granule, or
+ * all at once.
+ */
+public class SynthesisFilterTest
+{
+	/** 40 full batches and a partial one. */
+	private static final int SLOTS = 18 * 40 + 5;
+	private static final int[] FLUSH_EVERY = {1, 12, 18, 36, SLOTS};
+
+	@Test
+	public void fullScaleNoiseIsBitIdentical()
+	{
+		check(noise(1L), null, 0x55DBEA27L);
+	}
+
+	@Test
+	public void bandLimitedInputWithEqualizerIsBitIdentical()
+	{
+		Random random = new Random(2L);
+		float[][] samples = new float[SLOTS][32];
+		for (int t = 0; t < SLOTS; t++)
+		{
+			// Subbands above 20 are zero, as above the coded bandwidth.
+			for (int sb = 0; sb < 20; sb++) samples[t][sb] = (float) random.nextGaussian() * 0.25f;
+		}
+		random = new Random(2L);
+		float[] eq = new float[32];
+		for (int i = 0; i < 32; i++) eq[i] = 0.5f + random.nextFloat();
+		check(samples, eq, 0x78D8B5A0L);
+	}
+
+	@Test
+	public void everySubbandImpulseIsBitIdentical()
+	{
+		float[][] samples = new float[SLOTS][32];
+		for (int t = 0; t < SLOTS; t++) samples[t][t % 32] = 1.0f;
+		check(samples, null, 0xD39DCCCEL);
+	}
+
+	private static float[][] noise(long seed)
+	{
+		Random random = new Random(seed);
+		float[][] samples = new float[SLOTS][32];
+		for (int t = 0; t < SLOTS; t++)
+		{
+			for (int sb = 0; sb < 32; sb++) samples[t][sb] = random.nextFloat() * 2f - 1f;
+		}
+		return samples;
+	}
+
+	private static void check(float[][] samples, float[] eq, long crc)
+	{
+		for (int every : FLUSH_EVERY)
+		{
+			SynthesisFilter filter = new SynthesisFilter(0, 32768.0f, eq);
+			RecordingBuffer buffer = new RecordingBuffer();
+			for (int t = 0; t < SLOTS; t++)
+			{
+				filter.input_samples(samples[t]);
+				filter.calculate_pcm_samples(buffer);
+				if ((t + 1) % every == 0) filter.flush();
+			}
+			filter.flush();
+			assertEquals("flushed every " + every, SLOTS * 32, buffer.count);
+			assertEquals("flushed every " + every, Long.toHexString(crc), Long.toHexString(buffer.crc.getValue()));
+		}
+	}
+
+	/**
+	 * Keeps a checksum of the float samples, before they are clipped.
+	 */
+	private static final class RecordingBuffer extends Obuffer
+	{
+		final CRC32 crc = new CRC32();
+		int count;
+
+		public void append(int channel, short value)
+		{
+			throw new IllegalStateException("float samples expected");
+		}
+
+		public void appendSamples(int channel, float[] f)
+		{
+			for (int i = 0; i < 32; i++)
+			{
+				int bits = Float.floatToIntBits(f[i]);
+				crc.update(bits >>> 24);
+				crc.update(bits >>> 16);
+				crc.update(bits >>> 8);
+				crc.update(bits);
+			}
+			count += 32;
+		}
+
+		public void write_buffer(int val)
+		{
+		}
+
+		public void close()
+		{
+		}
+
+		public void clear_buffer()
+		{
+		}
+
+		public void set_stop_flag()
+		{
+		}
+	}
+}
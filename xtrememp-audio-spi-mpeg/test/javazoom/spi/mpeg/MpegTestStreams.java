@@ -0,0 +1,330 @@
+/*
+ * MpegTestStreams.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Synthetic MPEG audio streams for the decoder tests.
+ * 
+ * Frames are padded as an encoder pads them, so that the average frame
+ * length matches the bitrate. The Layer III streams are laid out as an
+ * encoder would: main data
+ * starts in the bit reservoir of earlier frames and never runs past the
+ * data written so far, so every frame decodes the same way whether the
+ * stream is played from the start or entered after a seek. Side info
+ * and main data are otherwise random, which exercises every Huffman
+ * table, block type and stereo mode.
+ */
+public final class MpegTestStreams
+{
+	/** Huffman tables that exist, 4 and 14 are unused by the standard. */
+	private static final int[] TABLES = {0,1,2,3,5,6,7,8,9,10,11,12,13,15,16,17,18,19,20,21,22,23,24,25,26,27,28,29,30,31};
+	/** Layer III bitrate indexes used for VBR streams, 192 to 320 kbps. */
+	private static final int[] VBR_BITRATES = {11, 12, 13, 14};
+	private static final int[] BITRATES = {0,32,40,48,56,64,80,96,112,128,160,192,224,256,320};
+	private static final int ID3_LENGTH = 300;
+
+	private MpegTestStreams()
+	{
+	}
+
+	/**
+	 * MPEG-1 Layer III, 44.1 kHz stereo.
+	 * @param frames number of frames.
+	 * @param seed random seed.
+	 * @param vbr true to change the bitrate on every frame, 320 kbps otherwise.
+	 * @param id3 true to start the stream with an ID3v2 tag.
+	 */
+	public static byte[] layer3(int frames, long seed, boolean vbr, boolean id3)
+	{
+		return layer3(frames, seed, vbr ? VBR_BITRATES : new int[] {14}, id3, 16, 850, 2400);
+	}
+
+	/**
+	 * MPEG-1 Layer III, 64 kbps stereo at 44.1 kHz. Its granules are
+	 * shorter than its frames, so the bit reservoir fills up and main data
+	 * starts up to 511 bytes back, several frames before its own.
+	 * @param frames number of frames.
+	 * @param seed random seed.
+	 */
+	public static byte[] lowBitrateLayer3(int frames, long seed)
+	{
+		return layer3(frames, seed, new int[] {5}, false, 3, 300, 40);
+	}
+
+	/**
+	 * @param bitrates bitrate indexes to pick from on every frame.
+	 * @param maxBigValues the most big_values pairs of a granule.
+	 * @param minLength the fewest bits of a granule, enough for the
+	 *        scalefactors and maxBigValues pairs of the longest codes.
+	 * @param spread the random bits added to minLength.
+	 */
+	private static byte[] layer3(int frames, long seed, int[] bitrates, boolean id3, int maxBigValues, int minLength, int spread)
+	{
+		Random r = new Random(seed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (id3) writeId3(out);
+		// Main data of the whole stream, cut into the frames' data areas.
+		byte[] main = new byte[frames * (1045 - 36)];
+		r.nextBytes(main);
+		int before = 0;
+		int prevEnd = 0;
+		int rest = 0;
+		for (int f = 0; f < frames; f++)
+		{
+			int bitrate = (bitrates.length > 1) ? bitrates[r.nextInt(bitrates.length)] : bitrates[0];
+			int length144 = 144 * BITRATES[bitrate] * 1000;
+			rest += length144 % 44100;
+			int padding = (rest >= 44100) ? 1 : 0;
+			rest -= padding * 44100;
+			int frameLength = length144 / 44100 + padding;
+			int dataLength = frameLength - 36;
+			int after = before + dataLength;
+			int start = Math.max(prevEnd + (r.nextInt(4) == 0 ? r.nextInt(20) : 0), before - 511);
+			start = Math.min(start, before);
+			int[] length = new int[4];
+			int sum = 0;
+			for (int k = 0; k < 4; k++)
+			{
+				length[k] = minLength + r.nextInt(spread);
+				sum += length[k];
+			}
+			int room = (after - start - 8) * 8;
+			if (sum > room)
+			{
+				sum = 0;
+				for (int k = 0; k < 4; k++)
+				{
+					length[k] = Math.max(minLength, (int) ((long) length[k] * room / (4L * (minLength + spread))));
+					sum += length[k];
+				}
+			}
+			prevEnd = start + (sum + 7) / 8;
+			BitWriter w = new BitWriter(frameLength);
+			w.put(0xFFFB, 16);
+			w.put(bitrate, 4);
+			w.put(0, 2);
+			w.put(padding, 1);
+			w.put(0, 1);
+			w.put(r.nextInt(3), 2);
+			w.put(r.nextInt(4), 2);
+			w.put(0, 4);
+			w.put(before - start, 9);
+			w.put(0, 3);
+			w.put(0, 8);
+			for (int gr = 0; gr < 2; gr++)
+			{
+				for (int ch = 0; ch < 2; ch++)
+				{
+					w.put(length[gr * 2 + ch], 12);
+					w.put(r.nextInt(maxBigValues + 1), 9);
+					w.put(120 + r.nextInt(50), 8);
+					w.put(r.nextInt(16), 4);
+					boolean windowSwitching = r.nextInt(3) == 0;
+					w.put(windowSwitching ? 1 : 0, 1);
+					if (windowSwitching)
+					{
+						int blockType = 1 + r.nextInt(3);
+						w.put(blockType, 2);
+						w.put(blockType == 2 && r.nextBoolean() ? 1 : 0, 1);
+						w.put(TABLES[r.nextInt(TABLES.length)], 5);
+						w.put(TABLES[r.nextInt(TABLES.length)], 5);
+						for (int k = 0; k < 3; k++) w.put(r.nextInt(8), 3);
+					}
+					else
+					{
+						for (int k = 0; k < 3; k++) w.put(TABLES[r.nextInt(TABLES.length)], 5);
+						w.put(r.nextInt(16), 4);
+						w.put(r.nextInt(8), 3);
+					}
+					w.put(r.nextInt(8), 3);
+				}
+			}
+			System.arraycopy(main, before, w.bytes, 36, dataLength);
+			out.write(w.bytes, 0, frameLength);
+			before = after;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * MPEG-1 Layer I, 448 kbps stereo at 44.1 kHz, with random but valid
+	 * allocations, scalefactors and samples.
+	 */
+	public static byte[] layer1(int frames, long seed)
+	{
+		Random r = new Random(seed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int rest = 0;
+		for (int f = 0; f < frames; f++)
+		{
+			// Slots of 4 bytes, 12 * 448000 / 44100 on average.
+			rest += 12 * 448000 % 44100;
+			int padding = (rest >= 44100) ? 1 : 0;
+			rest -= padding * 44100;
+			BitWriter w = new BitWriter((12 * 448000 / 44100 + padding) * 4);
+			w.put(0xFFFF, 16);
+			w.put(14, 4);
+			w.put(0, 2);
+			w.put(padding, 1);
+			w.put(0, 9);
+			int[][] allocation = new int[32][2];
+			for (int sb = 0; sb < 32; sb++)
+			{
+				for (int ch = 0; ch < 2; ch++)
+				{
+					allocation[sb][ch] = r.nextInt(4);
+					w.put(allocation[sb][ch], 4);
+				}
+			}
+			for (int sb = 0; sb < 32; sb++)
+			{
+				for (int ch = 0; ch < 2; ch++)
+				{
+					if (allocation[sb][ch] != 0) w.put(r.nextInt(63), 6);
+				}
+			}
+			for (int s = 0; s < 12; s++)
+			{
+				for (int sb = 0; sb < 32; sb++)
+				{
+					for (int ch = 0; ch < 2; ch++)
+					{
+						int bits = allocation[sb][ch] + 1;
+						if (bits > 1) w.put(r.nextInt(1 << bits), bits);
+					}
+				}
+			}
+			out.write(w.bytes, 0, w.bytes.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeId3(ByteArrayOutputStream out)
+	{
+		byte[] tag = new byte[10 + ID3_LENGTH];
+		tag[0] = 'I';
+		tag[1] = 'D';
+		tag[2] = '3';
+		tag[3] = 3;
+		tag[8] = (byte) (ID3_LENGTH >> 7);
+		tag[9] = (byte) (ID3_LENGTH & 127);
+		out.write(tag, 0, tag.length);
+	}
+
+	/**
+	 * Writes the stream to a temporary file, deleted on exit.
+	 */
+	public static File write(byte[] stream) throws IOException
+	{
+		return write(stream, 1);
+	}
+
+	/**
+	 * Writes the stream the given number of times in a row to a temporary
+	 * file, deleted on exit. The streams made here start with an empty bit
+	 * reservoir, so the copies play on as one longer stream.
+	 */
+	public static File write(byte[] stream, int times) throws IOException
+	{
+		File file = File.createTempFile("mpegspi-test", ".mp3");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			for (int i = 0; i < times; i++) out.write(stream);
+		}
+		finally
+		{
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Opens the file as 16 bit little-endian PCM through the SPI.
+	 */
+	public static AudioInputStream open(File file) throws Exception
+	{
+		AudioInputStream source = AudioSystem.getAudioInputStream(file);
+		AudioFormat format = source.getFormat();
+		int channels = format.getChannels();
+		AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, channels, channels * 2, format.getSampleRate(), false);
+		return AudioSystem.getAudioInputStream(pcm, source);
+	}
+
+	/**
+	 * Decodes the whole file as 16 bit little-endian PCM through the SPI.
+	 */
+	public static byte[] decode(File file) throws Exception
+	{
+		return readAll(open(file));
+	}
+
+	public static byte[] readAll(InputStream in) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static final class BitWriter
+	{
+		final byte[] bytes;
+		private int position;
+
+		BitWriter(int length)
+		{
+			bytes = new byte[length];
+		}
+
+		void put(int value, int bits)
+		{
+			for (int i = bits - 1; i >= 0; i--)
+			{
+				if (((value >> i) & 1) != 0) bytes[position >> 3] |= (byte) (0x80 >>> (position & 7));
+				position++;
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * DecodedMpegAudioInputStreamPcmTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.zip.CRC32;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+
+import org.junit.Test;
+
+/**
+ * Checks that the decoder output is bit-identical to that of the original
+ * JLayer decoder, which walked the Huffman trees bit by bit, kept the bit
+ * reservoir as one int per bit and used the unrolled synthesis filter.
+ * The checksums were taken from that decoder on the same streams.
+ */
+public class DecodedMpegAudioInputStreamPcmTest
+{
+	private static final int FRAMES = 200;
+
+	@Test
+	public void layer1IsBitIdentical() throws Exception
+	{
+		check(MpegTestStreams.layer1(FRAMES, 1L), 307200, 0xD1C8BA9FL);
+		check(MpegTestStreams.layer1(FRAMES, 2L), 307200, 0x6D5D4582L);
+		check(MpegTestStreams.layer1(FRAMES, 3L), 307200, 0x57E036D3L);
+		check(MpegTestStreams.layer1(FRAMES, 4L), 307200, 0x343D6506L);
+	}
+
+	@Test
+	public void layer3IsBitIdentical() throws Exception
+	{
+		check(MpegTestStreams.layer3(FRAMES, 1L, false, false), 921600, 0x45EA7DCEL);
+		check(MpegTestStreams.layer3(FRAMES, 2L, false, false), 921600, 0x2D573BCAL);
+		check(MpegTestStreams.layer3(FRAMES, 3L, false, false), 921600, 0xE546B150L);
+		check(MpegTestStreams.layer3(FRAMES, 4L, false, false), 921600, 0xF90B1F0CL);
+		check(MpegTestStreams.layer3(FRAMES, 5L, false, false), 921600, 0x126FD134L);
+	}
+
+	@Test
+	public void vbrLayer3IsBitIdentical() throws Exception
+	{
+		check(MpegTestStreams.layer3(FRAMES, 6L, true, false), 921600, 0xCE5B9D21L);
+		check(MpegTestStreams.layer3(FRAMES, 7L, true, false), 921600, 0x2B51A128L);
+		check(MpegTestStreams.layer3(FRAMES, 8L, true, false), 921600, 0x660FF352L);
+		check(MpegTestStreams.layer3(FRAMES, 9L, true, false), 921600, 0x657E6597L);
+	}
+
+	@Test
+	public void taggedLayer3IsBitIdentical() throws Exception
+	{
+		check(MpegTestStreams.layer3(FRAMES, 10L, false, true), 921600, 0xBA67904CL);
+		check(MpegTestStreams.layer3(FRAMES, 11L, false, true), 921600, 0xBAB571F6L);
+		check(MpegTestStreams.layer3(FRAMES, 12L, true, true), 921600, 0x0EAB16B3L);
+		check(MpegTestStreams.layer3(FRAMES, 13L, true, true), 921600, 0xC9F236C4L);
+	}
+
+	private static void check(byte[] stream, int length, long crc) throws Exception
+	{
+		byte[] pcm = MpegTestStreams.decode(MpegTestStreams.write(stream));
+		assertEquals(length, pcm.length);
+		int silent = 0;
+		for (int i = 0; i < pcm.length; i += 2)
+		{
+			if (pcm[i] == 0 && pcm[i + 1] == 0) silent++;
+		}
+		// The streams are random, a checksum of silence would prove nothing.
+		assertTrue(silent < pcm.length / 4);
+		CRC32 checksum = new CRC32();
+		checksum.update(pcm);
+		assertEquals(Long.toHexString(crc), Long.toHexString(checksum.getValue()));
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * DecodedMpegAudioInputStreamSeekTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.sound.sampled.AudioInputStream;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+
+import org.junit.Test;
+
+/**
+ * Checks that seekToFrame lands on the requested PCM frame: the samples
+ * read after the seek are those of a decode from the start.
+ */
+public class DecodedMpegAudioInputStreamSeekTest
+{
+	private static final int FRAMES = 400;
+	/** Targets as fractions of the stream, including unaligned frames. */
+	private static final double[] TARGETS = {0.0, 0.01, 0.1, 0.3333, 0.5, 0.9, 0.999};
+
+	@Test
+	public void seekLayer1WithoutIndex() throws Exception
+	{
+		checkLanding(MpegTestStreams.write(MpegTestStreams.layer1(FRAMES, 1L)), false);
+	}
+
+	@Test
+	public void seekLayer3WithoutIndex() throws Exception
+	{
+		checkLanding(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 2L, false, false)), false);
+	}
+
+	@Test
+	public void seekLayer3WithIndex() throws Exception
+	{
+		checkLanding(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 3L, false, true)), true);
+	}
+
+	@Test
+	public void seekVbrLayer3WithoutIndex() throws Exception
+	{
+		checkLanding(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 5L, true, false)), false);
+	}
+
+	@Test
+	public void seekVbrLayer3WithIndex() throws Exception
+	{
+		checkLanding(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 4L, true, false)), true);
+	}
+
+	private void checkLanding(File file, boolean indexed) throws Exception
+	{
+		byte[] reference = MpegTestStreams.decode(file);
+		MpegFrameIndex index = indexed ? MpegFrameIndex.scan(file) : null;
+		for (int i = 0; i < TARGETS.length; i++)
+		{
+			AudioInputStream stream = MpegTestStreams.open(file);
+			int frameSize = stream.getFormat().getFrameSize();
+			long total = reference.length / frameSize;
+			long target = (long) (TARGETS[i] * total) + i;
+			DecodedMpegAudioInputStream decoded = (DecodedMpegAudioInputStream) stream;
+			if (index != null) assertTrue(decoded.setFrameIndex(index));
+			assertEquals(target, decoded.seekToFrame(target));
+			byte[] rest = MpegTestStreams.readAll(stream);
+			assertEquals("frames left after seeking to " + target, total - target, rest.length / frameSize);
+			assertWithinOneLsb(reference, (int) (target * frameSize), rest, target);
+		}
+	}
+
+	private static void assertWithinOneLsb(byte[] reference, int offset, byte[] actual, long target)
+	{
+		for (int i = 0; i + 1 < actual.length; i += 2)
+		{
+			int expected = (short) ((reference[offset + i] & 0xFF) | (reference[offset + i + 1] << 8));
+			int sample = (short) ((actual[i] & 0xFF) | (actual[i + 1] << 8));
+			if (Math.abs(expected - sample) > 1)
+			{
+				throw new AssertionError("seek to " + target + ": sample " + i / 2 + " is " + sample + ", expected " + expected);
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * ParallelDecodeBenchmark.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to decode a five minute Layer III file from start to end, through
+ * the sequential decoder and in parallel chunks on 1 to 8 threads. On a
+ * machine with enough cores the chunked decode should scale with the
+ * threads until the reader, which copies the chunks in order, is the
+ * bottleneck. With 1 thread it shows the cost of the warm-up frames each
+ * chunk decodes and drops.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParallelDecodeBenchmark
+{
+	/** Five minutes at 44.1 kHz. */
+	private static final int FRAMES = 11500;
+
+	private File file;
+	private MpegFrameIndex index;
+
+	@Setup
+	public void writeStream() throws Exception
+	{
+		file = MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 1L, false, false));
+		index = MpegFrameIndex.scan(file);
+	}
+
+	/**
+	 * The pool and chunk size of the parallel decode, kept apart so that
+	 * the sequential decode runs once.
+	 */
+	@State(Scope.Thread)
+	public static class Chunks
+	{
+		@Param({"1", "2", "4", "8"})
+		public int threads;
+
+		@Param({"32", "128", "512"})
+		public int chunkFrames;
+
+		ForkJoinPool pool;
+
+		@Setup
+		public void createPool()
+		{
+			pool = new ForkJoinPool(threads);
+		}
+
+		@TearDown
+		public void shutdownPool()
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	public long sequential() throws Exception
+	{
+		return drain(MpegTestStreams.open(file));
+	}
+
+	@Benchmark
+	public long parallel(Chunks chunks) throws Exception
+	{
+		return drain(new ParallelMpegDecoder(file, index, chunks.pool, chunks.chunkFrames).getAudioInputStream());
+	}
+
+	private static long drain(InputStream in) throws Exception
+	{
+		byte[] block = new byte[65536];
+		long total = 0;
+		try
+		{
+			int n;
+			while ((n = in.read(block, 0, block.length)) > 0) total += n;
+		}
+		finally
+		{
+			in.close();
+		}
+		return total;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(ParallelDecodeBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * ParallelMpegDecoderTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.sampled.AudioInputStream;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that decoding a file in parallel chunks gives the bytes the
+ * sequential decoder gives, whatever the chunk size, and that a stream
+ * closed early stops cleanly.
+ */
+public class ParallelMpegDecoderTest
+{
+	private static final int FRAMES = 600;
+	/** From the smallest chunk allowed to a single chunk for the file. */
+	private static final int[] CHUNK_FRAMES = {3, 4, 7, 32, 128, 1000};
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void createPool()
+	{
+		// More threads than this machine may have cores, so that chunks
+		// finish out of order.
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void shutdownPool()
+	{
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void layer3MatchesSequentialDecode() throws Exception
+	{
+		checkEquivalence(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 1L, false, false)));
+	}
+
+	@Test
+	public void vbrLayer3WithId3MatchesSequentialDecode() throws Exception
+	{
+		checkEquivalence(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 2L, true, true)));
+	}
+
+	@Test
+	public void lowBitrateLayer3MatchesSequentialDecode() throws Exception
+	{
+		// Main data reaches back past the warm-up frames of a chunk.
+		checkEquivalence(MpegTestStreams.write(MpegTestStreams.lowBitrateLayer3(FRAMES, 6L)));
+	}
+
+	@Test
+	public void layer1MatchesSequentialDecode() throws Exception
+	{
+		checkEquivalence(MpegTestStreams.write(MpegTestStreams.layer1(FRAMES, 3L)));
+	}
+
+	@Test
+	public void closingEarlyStopsTheStream() throws Exception
+	{
+		File file = MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 4L, false, false));
+		ParallelMpegDecoder decoder = new ParallelMpegDecoder(file, MpegFrameIndex.scan(file), pool, 8);
+		AudioInputStream stream = decoder.getAudioInputStream();
+		byte[] block = new byte[4608];
+		assertTrue(stream.read(block) > 0);
+		stream.close();
+		try
+		{
+			stream.read(block);
+			fail("read after close");
+		}
+		catch (IOException e)
+		{
+			// Expected.
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void chunksMustOutlastTheWarmUp() throws Exception
+	{
+		File file = MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 5L, false, false));
+		new ParallelMpegDecoder(file, MpegFrameIndex.scan(file), pool, 2);
+	}
+
+	private void checkEquivalence(File file) throws Exception
+	{
+		byte[] reference = MpegTestStreams.decode(file);
+		MpegFrameIndex index = MpegFrameIndex.scan(file);
+		for (int i = 0; i < CHUNK_FRAMES.length; i++)
+		{
+			int chunkFrames = CHUNK_FRAMES[i];
+			ParallelMpegDecoder decoder = new ParallelMpegDecoder(file, index, pool, chunkFrames);
+			assertEquals((FRAMES + chunkFrames - 1) / chunkFrames, decoder.getChunkCount());
+			byte[] decoded = MpegTestStreams.readAll(decoder.getAudioInputStream());
+			assertEquals("length with chunks of " + chunkFrames, reference.length, decoded.length);
+			assertArrayEquals("chunks of " + chunkFrames, reference, decoded);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * SeekBenchmark.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.convert;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+import javazoom.spi.mpeg.sampled.file.MpegFrameIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to seek into a two hour Layer III stream and read the first block
+ * of PCM after the seek. With a frame index a seek to 90% costs what a
+ * seek to 1% does. Without one the frame headers up to the target are
+ * read, so the cost grows with the position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SeekBenchmark
+{
+	/** Ten minutes at 44.1 kHz, written twelve times. */
+	private static final int FRAMES = 23000;
+	private static final int COPIES = 12;
+
+	@Param({"0.01", "0.9"})
+	public double fraction;
+
+	@Param({"false", "true"})
+	public boolean indexed;
+
+	private File file;
+	private MpegFrameIndex index;
+	private DecodedMpegAudioInputStream stream;
+	private final byte[] block = new byte[4608];
+
+	@Setup(Level.Trial)
+	public void writeStream() throws Exception
+	{
+		file = MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 1L, false, false), COPIES);
+		index = MpegFrameIndex.scan(file);
+	}
+
+	@Setup(Level.Invocation)
+	public void openStream() throws Exception
+	{
+		stream = (DecodedMpegAudioInputStream) MpegTestStreams.open(file);
+		if (indexed) stream.setFrameIndex(index);
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeStream() throws Exception
+	{
+		stream.close();
+	}
+
+	@Benchmark
+	public int seek() throws Exception
+	{
+		stream.seekToFrame((long) (fraction * FRAMES * COPIES * 1152));
+		return stream.read(block, 0, block.length);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder().include(SeekBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * MpegFrameIndexTest.
+ * 
+ * JavaZOOM : mp3spi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package javazoom.spi.mpeg.sampled.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javazoom.spi.mpeg.MpegTestStreams;
+
+import org.junit.Test;
+
+/**
+ * Checks the frame offsets found by a scan, the delta encoded sidecar and
+ * the detection of a changed source.
+ */
+public class MpegFrameIndexTest
+{
+	private static final int FRAMES = 120;
+
+	@Test
+	public void scanFindsEveryFrame() throws Exception
+	{
+		byte[] stream = MpegTestStreams.layer1(FRAMES, 1L);
+		MpegFrameIndex index = MpegFrameIndex.scan(MpegTestStreams.write(stream));
+		assertNotNull(index);
+		assertEquals(FRAMES, index.getFrameCount());
+		assertEquals(44100, index.getSampleRate());
+		assertEquals(384, index.getSamplesPerFrame());
+		assertEquals(FRAMES * 384L, index.getSampleCount());
+		// Layer I frames are 4 byte slots, one more when padded.
+		long offset = 0;
+		for (int i = 0; i < FRAMES; i++)
+		{
+			assertEquals("frame " + i, offset, index.getFrameOffset(i));
+			int padding = (stream[(int) offset + 2] >>> 1) & 1;
+			offset += (12 * 448000 / 44100 + padding) * 4;
+		}
+		assertEquals(stream.length, offset);
+		assertEquals(stream.length, index.getFrameOffset(FRAMES));
+	}
+
+	@Test
+	public void scanSkipsTagsAndResyncsAfterJunk() throws Exception
+	{
+		byte[] stream = MpegTestStreams.layer3(FRAMES, 2L, true, true);
+		MpegFrameIndex clean = MpegFrameIndex.scan(MpegTestStreams.write(stream));
+		assertNotNull(clean);
+		assertEquals(FRAMES, clean.getFrameCount());
+		assertEquals(310, clean.getFrameOffset(0));
+		assertEquals(FRAMES * 1152L, clean.getSampleCount());
+
+		// A header not followed by another one, then the frames with junk
+		// in between, then an ID3v1 tag.
+		int split = FRAMES / 2;
+		int start = (int) clean.getFrameOffset(0);
+		int middle = (int) clean.getFrameOffset(split);
+		byte[] lead = new byte[64];
+		lead[0] = (byte) 0xFF;
+		lead[1] = (byte) 0xFB;
+		lead[2] = (byte) 0x90;
+		byte[] junk = "junk between frames, no sync in here".getBytes(StandardCharsets.US_ASCII);
+		byte[] id3v1 = new byte[128];
+		Arrays.fill(id3v1, (byte) ' ');
+		id3v1[0] = 'T';
+		id3v1[1] = 'A';
+		id3v1[2] = 'G';
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(lead);
+		out.write(stream, start, middle - start);
+		out.write(junk);
+		out.write(stream, middle, stream.length - middle);
+		out.write(id3v1);
+		MpegFrameIndex index = MpegFrameIndex.scan(MpegTestStreams.write(out.toByteArray()));
+		assertNotNull(index);
+		assertEquals(FRAMES, index.getFrameCount());
+		for (int i = 0; i <= FRAMES; i++)
+		{
+			long expected = clean.getFrameOffset(i) - start + lead.length + ((i >= split) ? junk.length : 0);
+			assertEquals("frame " + i, expected, index.getFrameOffset(i));
+		}
+	}
+
+	@Test
+	public void scanOfNoFramesIsNull() throws Exception
+	{
+		byte[] noise = "not an mpeg stream at all".getBytes(StandardCharsets.US_ASCII);
+		assertNull(MpegFrameIndex.scan(MpegTestStreams.write(noise)));
+	}
+
+	@Test
+	public void savedIndexLoadsBack() throws Exception
+	{
+		File source = MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 3L, true, true));
+		MpegFrameIndex index = MpegFrameIndex.scan(source);
+		File sidecar = sidecar();
+		index.save(sidecar);
+		assertFalse(new File(sidecar.getPath() + ".tmp").exists());
+		// A header, then one or two bytes per frame size.
+		assertTrue(sidecar.length() <= 44 + 2 * FRAMES);
+		MpegFrameIndex loaded = MpegFrameIndex.load(sidecar, source);
+		assertNotNull(loaded);
+		assertTrue(loaded.matches(source));
+		assertEquals(index.getFrameCount(), loaded.getFrameCount());
+		assertEquals(index.getSampleRate(), loaded.getSampleRate());
+		assertEquals(index.getSamplesPerFrame(), loaded.getSamplesPerFrame());
+		for (int i = 0; i <= FRAMES; i++)
+		{
+			assertEquals("frame " + i, index.getFrameOffset(i), loaded.getFrameOffset(i));
+		}
+	}
+
+	@Test
+	public void changedSourceIsStale() throws Exception
+	{
+		File source = MpegTestStreams.write(MpegTestStreams.layer1(FRAMES, 4L));
+		MpegFrameIndex index = MpegFrameIndex.scan(source);
+		File sidecar = sidecar();
+		index.save(sidecar);
+		long modified = source.lastModified();
+		assertTrue(source.setLastModified(modified + 2000L));
+		assertFalse(index.matches(source));
+		assertNull(MpegFrameIndex.load(sidecar, source));
+		assertTrue(source.setLastModified(modified));
+		assertNotNull(MpegFrameIndex.load(sidecar, source));
+		// Appending changes the length, with the same modification time.
+		FileOutputStream out = new FileOutputStream(source, true);
+		try
+		{
+			out.write(new byte[16]);
+		}
+		finally
+		{
+			out.close();
+		}
+		assertTrue(source.setLastModified(modified));
+		assertFalse(index.matches(source));
+		assertNull(MpegFrameIndex.load(sidecar, source));
+	}
+
+	@Test
+	public void damagedSidecarIsIgnored() throws Exception
+	{
+		File source = MpegTestStreams.write(MpegTestStreams.layer1(FRAMES, 5L));
+		File sidecar = sidecar();
+		MpegFrameIndex.scan(source).save(sidecar);
+		RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+		try
+		{
+			raf.setLength(raf.length() / 2);
+			assertNull(MpegFrameIndex.load(sidecar, source));
+			raf.seek(0);
+			raf.writeInt(0);
+			assertNull(MpegFrameIndex.load(sidecar, source));
+		}
+		finally
+		{
+			raf.close();
+		}
+		assertTrue(sidecar.delete());
+		assertNull(MpegFrameIndex.load(sidecar, source));
+	}
+
+	@Test
+	public void frameAtFindsTheFrameHoldingAnOffset() throws Exception
+	{
+		MpegFrameIndex index = MpegFrameIndex.scan(MpegTestStreams.write(MpegTestStreams.layer3(FRAMES, 6L, true, true)));
+		long first = index.getFrameOffset(0);
+		long end = index.getFrameOffset(FRAMES);
+		assertEquals(0, index.getFrameAt(0));
+		assertEquals(0, index.getFrameAt(first - 1));
+		assertEquals(0, index.getFrameAt(first));
+		for (int i = 0; i < FRAMES; i++)
+		{
+			long offset = index.getFrameOffset(i);
+			long next = index.getFrameOffset(i + 1);
+			assertTrue(next > offset);
+			assertEquals(i, index.getFrameAt(offset));
+			assertEquals(i, index.getFrameAt(offset + 1));
+			assertEquals(i, index.getFrameAt(next - 1));
+		}
+		assertEquals(FRAMES, index.getFrameAt(end));
+		assertEquals(FRAMES, index.getFrameAt(end + 1000));
+		assertEquals(first, index.getFrameOffset(-1));
+		assertEquals(end, index.getFrameOffset(FRAMES + 10));
+	}
+
+	private static File sidecar() throws Exception
+	{
+		File file = File.createTempFile("mpegspi-test", ".index");
+		file.deleteOnExit();
+		assertTrue(file.delete());
+		return file;
+	}
+}
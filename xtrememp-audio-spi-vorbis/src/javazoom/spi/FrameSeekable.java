@@ -0,0 +1,40 @@
+/*
+ * FrameSeekable.
+ * 
+ * JavaZOOM : vorbisspi@javazoom.net
+ * 			  http://www.javazoom.net
+ * 
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+package javazoom.spi;
+
+import java.io.IOException;
+
+/**
+ * A decoded stream that can jump forward to a given PCM frame without
+ * decoding everything in between.
+ */
+public interface FrameSeekable {
+
+    /**
+     * Positions the stream so that the next byte read is the first byte
+     * of the given PCM frame.
+     * @param frame PCM frame (sample) index counted from the start of the stream.
+     * @return the PCM frame reached, or -1 if the stream cannot seek there.
+     */
+    public long seekToFrame(long frame) throws IOException;
+}
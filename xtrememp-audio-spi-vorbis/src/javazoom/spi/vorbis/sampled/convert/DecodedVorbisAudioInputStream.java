@@ -30,6 +30,7 @@ import java.util.Map;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
+import javazoom.spi.FrameSeekable;
 import javazoom.spi.PropertiesContainer;
 
 import com.jcraft.jogg.Packet;
@@ -47,7 +48,10 @@ import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
 /**
  * This class implements the Vorbis decoding.
  */
-public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInputStream implements PropertiesContainer {
+public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInputStream implements PropertiesContainer, FrameSeekable {
+
+    /** Below this distance in bytes, seek decodes page by page. */
+    private static final int SEEK_LINEAR_BYTES = 64 * 1024;
 
     private InputStream oggBitStream_ = null;
     private SyncState oggSyncState_ = null;
@@ -80,6 +84,16 @@ public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInp
     private HashMap properties = null;
     private long byteslength = -1;
     private long currentBytes = 0;
+    private int serialNumber = -1;
+    // PCM frame of the next decoded sample, -1 until a page end is reached after a seek.
+    private long framePosition = 0;
+    // False until the position has been checked against a page granule position.
+    private boolean calibrated = false;
+    // Decoded samples before this PCM frame are dropped.
+    private long seekTarget = 0;
+    // Samples decoded after a seek, held until their position is known.
+    private byte[] seekPending = null;
+    private int seekPendingLength = 0;
 
     /**
      * Constructor.
@@ -235,6 +249,10 @@ public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInp
                 while (true) {
                     result = oggStreamState_.packetout(oggPacket_);
                     if (result == 0) {
+                        if (!calibrated && oggPage_.granulepos() >= 0) {
+                            // All packets up to the page end are out.
+                            calibrate(oggPage_.granulepos());
+                        }
                         if (TDebug.TraceAudioConverter) {
                             TDebug.out("Packetout returned 0, going to read state.");
                         }
@@ -351,7 +369,7 @@ public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInp
                 playState = playState_BufferFull;
                 return;
             }
-            getCircularBuffer().write(convbuffer, 0, 2 * vorbisInfo.channels * bout);
+            writeSamples(convbuffer, 2 * vorbisInfo.channels * bout);
             if (bytes < bufferSize_) {
                 if (TDebug.TraceAudioConverter) {
                     TDebug.out("Finished with final buffer of music?");
@@ -374,11 +392,205 @@ public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInp
             }
             return;
         }
-        getCircularBuffer().write(convbuffer, 0, 2 * vorbisInfo.channels * bout);
+        writeSamples(convbuffer, 2 * vorbisInfo.channels * bout);
+        // These samples are out, do not get them again from the dsp state.
+        vorbisDspState.synthesis_read(bout);
         // Don't change play state. Let outputSamples change play state, if necessary.
         outputSamples();
     }
 
+    /**
+     * Writes decoded samples to the circular buffer, dropping those before
+     * the seek target.
+     */
+    private void writeSamples(byte[] data, int length) {
+        if (!calibrated) {
+            // Position unknown until the end of the page.
+            if (seekPending == null || seekPending.length < seekPendingLength + length) {
+                byte[] grown = new byte[Math.max(seekPendingLength + length, 2 * seekPendingLength)];
+                if (seekPending != null) {
+                    System.arraycopy(seekPending, 0, grown, 0, seekPendingLength);
+                }
+                seekPending = grown;
+            }
+            System.arraycopy(data, 0, seekPending, seekPendingLength, length);
+            seekPendingLength += length;
+            return;
+        }
+        int frameSize = 2 * vorbisInfo.channels;
+        int offset = 0;
+        if (framePosition < seekTarget) {
+            offset = (int) Math.min((seekTarget - framePosition) * frameSize, length);
+        }
+        framePosition += length / frameSize;
+        if (offset < length) {
+            getCircularBuffer().write(data, offset, length - offset);
+        }
+    }
+
+    /**
+     * Sets the position of the samples decoded since the start or the seek,
+     * from the granule position of the page that ends them. Samples beyond
+     * what the first granule position accounts for get a negative position
+     * and are dropped: the first block yields no audio in Vorbis, but does
+     * in jOrbis.
+     */
+    private void calibrate(long granulepos) {
+        int frameSize = 2 * vorbisInfo.channels;
+        long position = granulepos - seekPendingLength / frameSize;
+        // A stream that does not start at granule 0 still plays from frame 0.
+        framePosition = (framePosition < 0) ? position : Math.min(0, position);
+        calibrated = true;
+        if (seekPendingLength > 0) {
+            writeSamples(seekPending, seekPendingLength);
+        }
+        seekPending = null;
+        seekPendingLength = 0;
+    }
+
+    /**
+     * Seek to the given PCM frame. Pages are located by interpolating
+     * between the granule positions met so far, aiming short of the estimate
+     * since the stream only moves forward, then decoding resumes at the last
+     * page found and samples are dropped up to the target. That page is
+     * decoded before returning, so that a probe landing past the target
+     * returns the frame the samples really start at.
+     *
+     * @param frame PCM frame to seek to.
+     * @return PCM frame reached, or -1 if it cannot be reached.
+     */
+    @Override
+    public long seekToFrame(long frame) throws IOException {
+        if (frame < 0) {
+            return -1;
+        }
+        if (playState == playState_NeedHeaders) {
+            try {
+                readHeaders();
+            } catch (IOException ioe) {
+                playState = playState_Corrupt;
+                return -1;
+            }
+            playState = playState_ReadData;
+        }
+        if (playState == playState_Done || playState == playState_Corrupt || framePosition < 0) {
+            return -1;
+        }
+        int frameSize = 2 * vorbisInfo.channels;
+        long next = Math.max(framePosition, seekTarget) - getCircularBuffer().availableRead() / frameSize;
+        if (frame < next) {
+            return -1;
+        }
+        // Drop what is already decoded.
+        byte[] scratch = new byte[4096];
+        int available;
+        while ((available = getCircularBuffer().availableRead()) > 0) {
+            getCircularBuffer().read(scratch, 0, Math.min(available, scratch.length));
+        }
+        seekTarget = frame;
+
+        long loGranule = framePosition;
+        long loOffset = streamPosition();
+        double bytesPerFrame = -1;
+        boolean moved = false;
+        while (true) {
+            long position = streamPosition();
+            long skip = 0;
+            if (bytesPerFrame > 0) {
+                long aim = loOffset + (long) ((frame - loGranule) * bytesPerFrame * 0.75);
+                if (aim - position < SEEK_LINEAR_BYTES) {
+                    break;
+                }
+                skip = aim - position;
+            }
+            long granulepos = probePage(skip);
+            if (granulepos < 0) {
+                playState = playState_Done;
+                return -1;
+            }
+            moved = true;
+            long pageEnd = streamPosition();
+            if (granulepos > loGranule && pageEnd > loOffset) {
+                bytesPerFrame = (double) (pageEnd - loOffset) / (granulepos - loGranule);
+            }
+            loGranule = granulepos;
+            loOffset = pageEnd;
+            if (granulepos >= frame) {
+                break;
+            }
+        }
+        if (moved) {
+            // Restart decoding at the last page found, its samples are
+            // placed once the page is done.
+            oggStreamState_.reset();
+            vorbisDspState.synthesis_init(vorbisInfo);
+            vorbisBlock.init(vorbisDspState);
+            oggStreamState_.pagein(oggPage_);
+            framePosition = -1;
+            calibrated = false;
+            seekPending = null;
+            seekPendingLength = 0;
+            playState = playState_WriteData;
+            while (!calibrated) {
+                if (playState == playState_Done || playState == playState_Corrupt) {
+                    return -1;
+                }
+                execute();
+            }
+            // What the page gave past the target is in the buffer.
+            return Math.max(frame, framePosition - getCircularBuffer().availableRead() / frameSize);
+        }
+        return frame;
+    }
+
+    /**
+     * Skips forward in the Ogg bitstream and reads pages up to the first
+     * one with a granule position.
+     *
+     * @return the page granule position, or -1 at the end of the stream.
+     */
+    private long probePage(long skip) throws IOException {
+        if (skip > 0) {
+            oggSyncState_.reset();
+            long skipped = 0;
+            while (skipped < skip) {
+                long n = oggBitStream_.skip(skip - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            currentBytes += skipped;
+        }
+        while (true) {
+            int result = oggSyncState_.pageout(oggPage_);
+            if (result == 1) {
+                if (oggPage_.granulepos() >= 0 && oggPage_.serialno() == serialNumber) {
+                    return oggPage_.granulepos();
+                }
+                continue;
+            }
+            if (result == -1) {
+                // Skipped into the middle of a page.
+                continue;
+            }
+            index = oggSyncState_.buffer(bufferSize_);
+            buffer = oggSyncState_.data;
+            bytes = readFromStream(buffer, index, bufferSize_);
+            if (bytes <= 0) {
+                return -1;
+            }
+            oggSyncState_.wrote(bytes);
+        }
+    }
+
+    /**
+     * Offset in the Ogg bitstream of the next byte not yet parsed into pages.
+     */
+    private long streamPosition() {
+        return currentBytes - (oggSyncState_.getBufferOffset() - oggSyncState_.getDataOffset());
+    }
+
     /**
      * Reads headers and comments.
      */
@@ -405,7 +617,8 @@ public class DecodedVorbisAudioInputStream extends TAsynchronousFilteredAudioInp
             }
             throw new IOException("Input does not appear to be an Ogg bitstream.");
         }
-        oggStreamState_.init(oggPage_.serialno());
+        serialNumber = oggPage_.serialno();
+        oggStreamState_.init(serialNumber);
         vorbisInfo.init();
         vorbisComment.init();
         if (oggStreamState_.pagein(oggPage_) < 0) {
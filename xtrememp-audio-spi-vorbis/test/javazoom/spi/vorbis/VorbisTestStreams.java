@@ -0,0 +1,314 @@
+/*
+ *   VorbisTestStreams
+ *   
+ *    JavaZOOM : vorbisspi@javazoom.net
+ *               http://www.javazoom.net
+ *
+ * ----------------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * ----------------------------------------------------------------------------
+ */
+package javazoom.spi.vorbis;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Synthetic Ogg Vorbis streams for the decoder tests.
+ *
+ * The setup header declares a short and a long block mode whose floors
+ * are never used, so every audio packet decodes to silence. Packets pick
+ * their block size at random and are padded with random bytes, which
+ * the decoder ignores, to give the stream a realistic size. Pages carry
+ * exact granule positions, which is what seeking relies on.
+ */
+public final class VorbisTestStreams {
+
+    public static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int SHORT_BLOCK = 256;
+    private static final int LONG_BLOCK = 2048;
+    private static final int PACKET_LENGTH = 200;
+    private static final int PACKETS_PER_PAGE = 20;
+    private static final int SERIAL = 0x1234;
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = ((r & 0x80000000) != 0) ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private VorbisTestStreams() {
+    }
+
+    /**
+     * Writes a stream of the given number of audio packets to a
+     * temporary file.
+     *
+     * @return the file, deleted on exit.
+     */
+    public static File write(int packets, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = File.createTempFile("vorbisspi-test", ".ogg");
+        file.deleteOnExit();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            writePackets(out, packets, random);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void writePackets(OutputStream out, int packets, Random random) throws IOException {
+        int sequence = 0;
+        writePage(out, 0x02, 0L, sequence++, new byte[][]{identification()});
+        writePage(out, 0, 0L, sequence++, new byte[][]{comment(), setup()});
+
+        boolean[] longBlock = new boolean[packets + 1];
+        for (int i = 0; i <= packets; i++) {
+            longBlock[i] = random.nextBoolean();
+        }
+        long granule = 0;
+        for (int first = 0; first < packets; first += PACKETS_PER_PAGE) {
+            int count = Math.min(PACKETS_PER_PAGE, packets - first);
+            byte[][] page = new byte[count][];
+            for (int k = 0; k < count; k++) {
+                int i = first + k;
+                page[k] = audio(random, longBlock[i], i > 0 && longBlock[i - 1], longBlock[i + 1]);
+                if (i > 0) {
+                    // Each block completes the overlap with the previous one.
+                    granule += blockSize(longBlock[i - 1]) / 4 + blockSize(longBlock[i]) / 4;
+                }
+            }
+            boolean last = first + count == packets;
+            writePage(out, last ? 0x04 : 0, granule, sequence++, page);
+        }
+    }
+
+    private static int blockSize(boolean longBlock) {
+        return longBlock ? LONG_BLOCK : SHORT_BLOCK;
+    }
+
+    private static byte[] identification() {
+        BitWriter w = new BitWriter();
+        header(w, 1);
+        w.put(0, 32);
+        w.put(CHANNELS, 8);
+        w.put(SAMPLE_RATE, 32);
+        w.put(0, 32);
+        w.put(0, 32);
+        w.put(0, 32);
+        w.put(8, 4); // 256
+        w.put(11, 4); // 2048
+        w.put(1, 1);
+        return w.toByteArray();
+    }
+
+    private static byte[] comment() {
+        BitWriter w = new BitWriter();
+        header(w, 3);
+        w.put(0, 32); // vendor
+        w.put(0, 32); // user comments
+        w.put(1, 1);
+        return w.toByteArray();
+    }
+
+    private static byte[] setup() {
+        BitWriter w = new BitWriter();
+        header(w, 5);
+        // One codebook of two one bit words.
+        w.put(0, 8);
+        w.put(0x564342, 24);
+        w.put(1, 16);
+        w.put(2, 24);
+        w.put(0, 1);
+        w.put(0, 1);
+        w.put(0, 5);
+        w.put(0, 5);
+        w.put(0, 4);
+        // Time domain transform placeholder.
+        w.put(0, 6);
+        w.put(0, 16);
+        // One floor 1 with no partitions.
+        w.put(0, 6);
+        w.put(1, 16);
+        w.put(0, 5);
+        w.put(0, 2);
+        w.put(8, 4);
+        // One residue 0 covering nothing.
+        w.put(0, 6);
+        w.put(0, 16);
+        w.put(0, 24);
+        w.put(0, 24);
+        w.put(0, 24);
+        w.put(0, 6);
+        w.put(0, 8);
+        w.put(0, 3);
+        w.put(0, 1);
+        // One mapping.
+        w.put(0, 6);
+        w.put(0, 16);
+        w.put(0, 1);
+        w.put(0, 1);
+        w.put(0, 2);
+        w.put(0, 8);
+        w.put(0, 8);
+        w.put(0, 8);
+        // Short and long block modes.
+        w.put(1, 6);
+        for (int blockFlag = 0; blockFlag < 2; blockFlag++) {
+            w.put(blockFlag, 1);
+            w.put(0, 16);
+            w.put(0, 16);
+            w.put(0, 8);
+        }
+        w.put(1, 1);
+        return w.toByteArray();
+    }
+
+    private static byte[] audio(Random random, boolean longBlock, boolean previousLong, boolean nextLong) {
+        BitWriter w = new BitWriter();
+        w.put(0, 1);
+        w.put(longBlock ? 1 : 0, 1);
+        if (longBlock) {
+            w.put(previousLong ? 1 : 0, 1);
+            w.put(nextLong ? 1 : 0, 1);
+        }
+        for (int ch = 0; ch < CHANNELS; ch++) {
+            w.put(0, 1); // floor unused
+        }
+        byte[] packet = w.toByteArray();
+        byte[] padded = new byte[PACKET_LENGTH];
+        random.nextBytes(padded);
+        System.arraycopy(packet, 0, padded, 0, packet.length);
+        return padded;
+    }
+
+    private static void header(BitWriter w, int type) {
+        w.put(type, 8);
+        for (char c : "vorbis".toCharArray()) {
+            w.put(c, 8);
+        }
+    }
+
+    private static void writePage(OutputStream out, int flags, long granule, int sequence, byte[][] packets) throws IOException {
+        ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] packet : packets) {
+            int length = packet.length;
+            while (length >= 255) {
+                lacing.write(255);
+                length -= 255;
+            }
+            lacing.write(length);
+            body.write(packet, 0, packet.length);
+        }
+        byte[] page = new byte[27 + lacing.size() + body.size()];
+        page[0] = 'O';
+        page[1] = 'g';
+        page[2] = 'g';
+        page[3] = 'S';
+        page[5] = (byte) flags;
+        for (int b = 0; b < 8; b++) {
+            page[6 + b] = (byte) (granule >>> (8 * b));
+        }
+        for (int b = 0; b < 4; b++) {
+            page[14 + b] = (byte) (SERIAL >>> (8 * b));
+            page[18 + b] = (byte) (sequence >>> (8 * b));
+        }
+        page[26] = (byte) lacing.size();
+        System.arraycopy(lacing.toByteArray(), 0, page, 27, lacing.size());
+        System.arraycopy(body.toByteArray(), 0, page, 27 + lacing.size(), body.size());
+        int crc = 0;
+        for (byte b : page) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xFF];
+        }
+        for (int b = 0; b < 4; b++) {
+            page[22 + b] = (byte) (crc >>> (8 * b));
+        }
+        out.write(page, 0, page.length);
+    }
+
+    /**
+     * Opens the file as 16 bit little-endian PCM through the SPI.
+     */
+    public static AudioInputStream open(File file) throws Exception {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat format = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, source);
+    }
+
+    public static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Packs bits least significant first, as Vorbis does.
+     */
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int current;
+        private int bits;
+
+        void put(int value, int count) {
+            for (int i = 0; i < count; i++) {
+                current |= ((value >>> i) & 1) << bits;
+                if (++bits == 8) {
+                    bytes.write(current);
+                    current = 0;
+                    bits = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bits > 0) {
+                bytes.write(current);
+                current = 0;
+                bits = 0;
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
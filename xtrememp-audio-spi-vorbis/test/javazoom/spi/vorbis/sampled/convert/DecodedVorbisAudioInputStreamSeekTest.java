@@ -0,0 +1,73 @@
+/*
+ *   DecodedVorbisAudioInputStreamSeekTest
+ *   
+ *    JavaZOOM : vorbisspi@javazoom.net
+ *               http://www.javazoom.net
+ *
+ * ----------------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * ----------------------------------------------------------------------------
+ */
+package javazoom.spi.vorbis.sampled.convert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.sound.sampled.AudioInputStream;
+
+import javazoom.spi.vorbis.VorbisTestStreams;
+
+import org.junit.Test;
+
+/**
+ * Checks that seekToFrame returns the sample it lands on: the number of
+ * samples read after the seek is what a decode from the start has left
+ * from there. The test stream is silent, so only the count is compared.
+ */
+public class DecodedVorbisAudioInputStreamSeekTest {
+
+    private static final double[] TARGETS = {0.0, 0.01, 0.1, 0.3333, 0.5, 0.9, 0.999};
+
+    @Test
+    public void seekLandsOnTarget() throws Exception {
+        File file = VorbisTestStreams.write(3000, 11L);
+        long total = VorbisTestStreams.readAll(VorbisTestStreams.open(file)).length / 4;
+        for (int i = 0; i < TARGETS.length; i++) {
+            long target = (long) (TARGETS[i] * total) + i;
+            assertEquals(target, checkLanding(file, total, target));
+        }
+    }
+
+    @Test
+    public void seekReturnsFrameReached() throws Exception {
+        File file = VorbisTestStreams.write(1500, 12L);
+        long total = VorbisTestStreams.readAll(VorbisTestStreams.open(file)).length / 4;
+        // Targets on every side of page boundaries.
+        for (long target = 0; target < total; target += 997) {
+            checkLanding(file, total, target);
+        }
+    }
+
+    private static long checkLanding(File file, long total, long target) throws Exception {
+        AudioInputStream stream = VorbisTestStreams.open(file);
+        long reached = ((DecodedVorbisAudioInputStream) stream).seekToFrame(target);
+        assertTrue("seek to " + target + " reached " + reached, reached >= target);
+        byte[] rest = VorbisTestStreams.readAll(stream);
+        assertEquals("frames left after seeking to " + target, total - reached, rest.length / 4);
+        return reached;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *   SeekBenchmark
+ *   
+ *    JavaZOOM : vorbisspi@javazoom.net
+ *               http://www.javazoom.net
+ *
+ * ----------------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ * ----------------------------------------------------------------------------
+ */
+package javazoom.spi.vorbis.sampled.convert;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javazoom.spi.vorbis.VorbisTestStreams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to seek into a two hour Ogg Vorbis stream and read the first
+ * block of PCM after the seek. The seek bisects on page granule
+ * positions, so a seek to 90% should cost what a seek to 1% does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SeekBenchmark {
+
+    /** Packets of the test streams hold 576 frames on average. */
+    private static final int FRAMES_PER_PACKET = 576;
+    /** Two hours at 44.1 kHz. */
+    private static final int PACKETS = 2 * 3600 * VorbisTestStreams.SAMPLE_RATE / FRAMES_PER_PACKET;
+
+    @Param({"0.01", "0.9"})
+    public double fraction;
+
+    private File file;
+    private long frames;
+    private DecodedVorbisAudioInputStream stream;
+    private final byte[] block = new byte[4096];
+
+    @Setup(Level.Trial)
+    public void writeStream() throws Exception {
+        file = VorbisTestStreams.write(PACKETS, 1L);
+        frames = (long) PACKETS * FRAMES_PER_PACKET;
+    }
+
+    @Setup(Level.Invocation)
+    public void openStream() throws Exception {
+        stream = (DecodedVorbisAudioInputStream) VorbisTestStreams.open(file);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStream() throws Exception {
+        stream.close();
+    }
+
+    @Benchmark
+    public int seek() throws Exception {
+        stream.seekToFrame((long) (fraction * frames));
+        return stream.read(block, 0, block.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(SeekBenchmark.class.getSimpleName()).build()).run();
+    }
+}